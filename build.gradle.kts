@@ -41,6 +41,11 @@ dependencies {
     // ModMenu
     modImplementation("com.terraformersmc:modmenu:${rootProject.property("modmenu_version")}")
 
+    // The headless backup engine, which is shared with the command line tool
+    implementation(project(":engine"))
+    include(project(":engine"))
+    include("com.github.luben:zstd-jni:${rootProject.property("zstd_jni_version")}")
+
     /* -- Google API Libraries -- */
     implementation("com.google.api-client:google-api-client:${rootProject.property("google_api_version")}")
     implementation("com.google.oauth-client:google-oauth-client-jetty:${rootProject.property("google_oauth_client_version")}")
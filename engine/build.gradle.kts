@@ -0,0 +1,45 @@
+plugins {
+    id("java-library")
+    id("application")
+}
+
+version = rootProject.property("mod_version").toString()
+group = rootProject.property("maven_group").toString()
+
+base.archivesName.set("${rootProject.property("archives_base_name").toString()}-engine")
+
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    // The engine has no Minecraft dependency. These are the same libraries the game ships with, so the mod doesn't have to bundle them
+    api("com.google.guava:guava:${rootProject.property("guava_version")}")
+    api("com.google.code.gson:gson:${rootProject.property("gson_version")}")
+    api("org.apache.logging.log4j:log4j-api:${rootProject.property("log4j_version")}")
+    api("org.jspecify:jspecify:${rootProject.property("jspecify_version")}")
+    implementation("org.apache.commons:commons-lang3:${rootProject.property("commons_lang3_version")}")
+    implementation("com.github.luben:zstd-jni:${rootProject.property("zstd_jni_version")}")
+
+    compileOnly("org.jetbrains:annotations:${rootProject.property("jetbrains_annotations_version")}")
+
+    // Only the command line tool needs an implementation to log to, as the game provides its own
+    runtimeOnly("org.apache.logging.log4j:log4j-core:${rootProject.property("log4j_version")}")
+}
+
+application {
+    mainClass = "com.ayydxn.worldbackmachine.engine.cli.WorldbackMachineCli"
+    applicationName = "worldback-machine"
+}
+
+tasks.withType<JavaCompile> {
+    options.encoding = "UTF-8"
+    options.release = 21
+}
+
+java {
+    withSourcesJar()
+
+    sourceCompatibility = JavaVersion.VERSION_21
+    targetCompatibility = JavaVersion.VERSION_21
+}
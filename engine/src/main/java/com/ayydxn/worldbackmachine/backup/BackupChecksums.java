@@ -0,0 +1,68 @@
+package com.ayydxn.worldbackmachine.backup;
+
+import org.jspecify.annotations.Nullable;
+
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * The checksums of a backup archive, computed while the archive is being written.
+ * <p>
+ * They are stored alongside the backup on the cloud storage provider so its integrity can later be verified using
+ * only the metadata the provider holds for it.
+ *
+ * @param size   The size of the archive in bytes
+ * @param crc32c The CRC32C checksum of the archive
+ * @param sha256 The hex-encoded SHA-256 digest of the archive
+ * @param md5    The hex-encoded MD5 digest of the archive, which most providers (Google Drive included) report for stored files
+ *
+ * @author Ayydxn
+ * @see ChecksummingOutputStream
+ */
+public record BackupChecksums(long size, long crc32c, String sha256, String md5)
+{
+    public static final String SIZE_PROPERTY = "worldback-machine.size";
+    public static final String CRC32C_PROPERTY = "worldback-machine.crc32c";
+    public static final String SHA256_PROPERTY = "worldback-machine.sha256";
+    public static final String MD5_PROPERTY = "worldback-machine.md5";
+
+    /**
+     * Converts the checksums into a map of properties that can be stored alongside a file on a cloud storage provider.
+     *
+     * @return A map of property names to their values
+     */
+    public Map<String, String> toProperties()
+    {
+        return Map.of(SIZE_PROPERTY, Long.toString(this.size),
+                CRC32C_PROPERTY, HexFormat.of().toHexDigits((int) this.crc32c),
+                SHA256_PROPERTY, this.sha256,
+                MD5_PROPERTY, this.md5);
+    }
+
+    /**
+     * Reads checksums back from the properties stored alongside a file on a cloud storage provider.
+     *
+     * @param properties The properties stored alongside the file
+     * @return The checksums, or null if the properties don't contain a complete set of them
+     */
+    @Nullable
+    public static BackupChecksums fromProperties(Map<String, String> properties)
+    {
+        String size = properties.get(SIZE_PROPERTY);
+        String crc32c = properties.get(CRC32C_PROPERTY);
+        String sha256 = properties.get(SHA256_PROPERTY);
+        String md5 = properties.get(MD5_PROPERTY);
+
+        if (size == null || crc32c == null || sha256 == null || md5 == null)
+            return null;
+
+        try
+        {
+            return new BackupChecksums(Long.parseLong(size), Integer.toUnsignedLong(HexFormat.fromHexDigits(crc32c)), sha256, md5);
+        }
+        catch (IllegalArgumentException exception)
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.ayydxn.worldbackmachine.backup;
+
+import com.ayydxn.worldbackmachine.backup.archive.BackupArchiveFormat;
+import com.ayydxn.worldbackmachine.backup.crypto.ArchiveEncryption;
+import com.ayydxn.worldbackmachine.backup.shard.BackupManifest;
+import org.jspecify.annotations.Nullable;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+
+/**
+ * Defines how world backups are named on cloud storage providers.
+ * <p>
+ * The most recent backup of a world is always stored as {@code <world name>.zip}. Whenever a new backup replaces it,
+ * the previous one is kept as a snapshot named {@code <world name>@<UTC timestamp>.zip}, where the timestamp is when that backup was created.
+ * <p>
+ * Backups of a {@link BackupTier} other than the full world have the tier's suffix added to the world's name,
+ * such as {@code <world name>+players.zip}.
+ * <p>
+ * The shards of {@link com.ayydxn.worldbackmachine.backup.shard.BackupManifest sharded backups} are named after the MD5 digest of their contents,
+ * such as {@code <world name>#<MD5>.shard}, so a shard that's referenced by several backups is only ever stored once.
+ * <p>
+ * A backup's name doesn't reflect its format. Block archives, encrypted archives and the manifests of sharded backups are all stored
+ * under {@code .zip} names too, so a world's backups are found under the same names whichever settings they were written with.
+ * What a backup actually holds is recorded in the properties stored alongside it, which {@link #getContentType(Map)} turns into a media type.
+ *
+ * @author Ayydxn
+ */
+public final class BackupNames
+{
+    /**
+     * The property storing when a backup was created, as an ISO-8601 instant.
+     */
+    public static final String CREATED_AT_PROPERTY = "worldback-machine.created-at";
+
+    private static final String ARCHIVE_EXTENSION = ".zip";
+    private static final char SNAPSHOT_SEPARATOR = '@';
+    private static final char TIER_SEPARATOR = '+';
+    private static final String SHARD_EXTENSION = ".shard";
+    private static final char SHARD_SEPARATOR = '#';
+    private static final int MD5_HEX_LENGTH = 32;
+    private static final DateTimeFormatter SNAPSHOT_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'")
+            .withZone(ZoneOffset.UTC);
+
+    private BackupNames()
+    {
+    }
+
+    /**
+     * Returns the name of the most recent backup of a world.
+     *
+     * @param worldName The name of the world
+     * @return The name of the world's most recent backup
+     */
+    public static String latest(String worldName)
+    {
+        return latest(worldName, BackupTier.FULL);
+    }
+
+    /**
+     * Returns the name of the most recent backup of a tier of a world.
+     *
+     * @param worldName The name of the world
+     * @param tier      The tier of the backup
+     * @return The name of the tier's most recent backup
+     */
+    public static String latest(String worldName, BackupTier tier)
+    {
+        return getBaseName(worldName, tier) + ARCHIVE_EXTENSION;
+    }
+
+    /**
+     * Returns the name of a snapshot of a world taken at the given time.
+     *
+     * @param worldName    The name of the world
+     * @param snapshotTime When the snapshot's backup was created
+     * @return The name of the snapshot
+     */
+    public static String snapshot(String worldName, Instant snapshotTime)
+    {
+        return snapshot(worldName, BackupTier.FULL, snapshotTime);
+    }
+
+    /**
+     * Returns the name of a snapshot of a tier of a world taken at the given time.
+     *
+     * @param worldName    The name of the world
+     * @param tier         The tier of the backup
+     * @param snapshotTime When the snapshot's backup was created
+     * @return The name of the snapshot
+     */
+    public static String snapshot(String worldName, BackupTier tier, Instant snapshotTime)
+    {
+        return getBaseName(worldName, tier) + SNAPSHOT_SEPARATOR + SNAPSHOT_TIME_FORMATTER.format(snapshotTime) + ARCHIVE_EXTENSION;
+    }
+
+    /**
+     * Returns the name of a shard of a tier of a world with the given contents.
+     *
+     * @param worldName  The name of the world
+     * @param tier       The tier of the backups the shard belongs to
+     * @param contentMd5 The MD5 digest of the shard's contents before it was encrypted, in hexadecimal
+     * @return The name of the shard
+     */
+    public static String shard(String worldName, BackupTier tier, String contentMd5)
+    {
+        return getBaseName(worldName, tier) + SHARD_SEPARATOR + contentMd5.toLowerCase() + SHARD_EXTENSION;
+    }
+
+    /**
+     * Checks whether a stored file is a shard of a tier of a world.
+     *
+     * @param fileName  The name of the stored file
+     * @param worldName The name of the world
+     * @param tier      The tier of the backups
+     * @return True if the file is one of the tier's shards, false otherwise
+     */
+    public static boolean isShardOf(String fileName, String worldName, BackupTier tier)
+    {
+        String shardPrefix = getBaseName(worldName, tier) + SHARD_SEPARATOR;
+
+        return fileName.length() == shardPrefix.length() + MD5_HEX_LENGTH + SHARD_EXTENSION.length() && fileName.startsWith(shardPrefix) &&
+                fileName.endsWith(SHARD_EXTENSION);
+    }
+
+    /**
+     * Checks whether a stored file is a shard of any world.
+     *
+     * @param fileName The name of the stored file
+     * @return True if the file is a shard, false otherwise
+     */
+    public static boolean isShard(String fileName)
+    {
+        int separatorIndex = fileName.length() - MD5_HEX_LENGTH - SHARD_EXTENSION.length() - 1;
+
+        return separatorIndex > 0 && fileName.endsWith(SHARD_EXTENSION) && fileName.charAt(separatorIndex) == SHARD_SEPARATOR;
+    }
+
+    /**
+     * Parses the name of a stored file back into the world, tier and snapshot time it refers to.
+     *
+     * @param fileName The name of the stored file
+     * @return The parsed name, or null if the file isn't a world backup, which includes the shards of sharded backups
+     */
+    @Nullable
+    public static ParsedName parse(String fileName)
+    {
+        if (!fileName.endsWith(ARCHIVE_EXTENSION))
+            return null;
+
+        String baseName = fileName.substring(0, fileName.length() - ARCHIVE_EXTENSION.length());
+        int separatorIndex = baseName.lastIndexOf(SNAPSHOT_SEPARATOR);
+
+        if (separatorIndex > 0)
+        {
+            try
+            {
+                Instant snapshotTime = SNAPSHOT_TIME_FORMATTER.parse(baseName.substring(separatorIndex + 1), Instant::from);
+
+                return parseTier(baseName.substring(0, separatorIndex), snapshotTime);
+            }
+            catch (DateTimeParseException ignored)
+            {
+                // Not a snapshot, the world's name just happens to contain the separator
+            }
+        }
+
+        return parseTier(baseName, null);
+    }
+
+    private static ParsedName parseTier(String baseName, @Nullable Instant snapshotTime)
+    {
+        for (BackupTier tier : BackupTier.values())
+        {
+            String tierSuffix = TIER_SEPARATOR + tier.getNameSuffix();
+
+            if (!tier.isFullWorld() && baseName.length() > tierSuffix.length() && baseName.endsWith(tierSuffix))
+                return new ParsedName(baseName.substring(0, baseName.length() - tierSuffix.length()), tier, snapshotTime);
+        }
+
+        return new ParsedName(baseName, BackupTier.FULL, snapshotTime);
+    }
+
+    /**
+     * Returns the media type of a stored backup or shard, which only says {@code application/zip} for files that really are plain ZIP archives.
+     *
+     * @param properties The properties stored alongside the backup
+     * @return The backup's media type
+     */
+    public static String getContentType(Map<String, String> properties)
+    {
+        if (properties.containsKey(ArchiveEncryption.KEY_ID_PROPERTY))
+            return "application/octet-stream";
+
+        if (BackupManifest.isSharded(properties))
+            return "application/json";
+
+        return BackupArchiveFormat.fromProperties(properties) == BackupArchiveFormat.ZIP ? "application/zip" : "application/octet-stream";
+    }
+
+    private static String getBaseName(String worldName, BackupTier tier)
+    {
+        return tier.isFullWorld() ? worldName : worldName + TIER_SEPARATOR + tier.getNameSuffix();
+    }
+
+    /**
+     * A stored file name that has been parsed back into the world, tier and snapshot time it refers to.
+     *
+     * @param worldName    The name of the world the backup belongs to
+     * @param tier         The tier of the world the backup is of
+     * @param snapshotTime When the snapshot's backup was created, or null if it's the tier's most recent backup
+     */
+    public record ParsedName(String worldName, BackupTier tier, @Nullable Instant snapshotTime)
+    {
+        public boolean isSnapshot()
+        {
+            return this.snapshotTime != null;
+        }
+    }
+}
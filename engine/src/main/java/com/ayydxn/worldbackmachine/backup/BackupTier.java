@@ -0,0 +1,60 @@
+package com.ayydxn.worldbackmachine.backup;
+
+import java.util.List;
+
+/**
+ * A class of a world's data which is backed up on its own schedule.
+ * <p>
+ * Losing an hour of players' inventories hurts far more than losing an hour of terrain, so the small files describing players
+ * are backed up far more often than the rest of the world. Each tier is stored as its own backup, so a backup of the players tier
+ * only costs as much as the player data itself.
+ *
+ * @author Ayydxn
+ */
+public enum BackupTier
+{
+    /**
+     * The entire world, including its regions, entities and points of interest.
+     */
+    FULL("", List.of("")),
+
+    /**
+     * The world's {@code level.dat}, and the data, advancements and statistics of its players.
+     */
+    PLAYERS("players", List.of("level.dat", "playerdata", "advancements", "stats"));
+
+    private final String nameSuffix;
+    private final List<String> rootPaths;
+
+    BackupTier(String nameSuffix, List<String> rootPaths)
+    {
+        this.nameSuffix = nameSuffix;
+        this.rootPaths = rootPaths;
+    }
+
+    /**
+     * Returns the suffix added to the names of this tier's backups, or an empty string if its backups are named after the world alone.
+     *
+     * @return The tier's name suffix
+     */
+    public String getNameSuffix()
+    {
+        return this.nameSuffix;
+    }
+
+    /**
+     * Returns the files and directories this tier backs up, relative to the world's directory.
+     * An empty path stands for the entire world.
+     *
+     * @return The tier's root paths
+     */
+    public List<String> getRootPaths()
+    {
+        return this.rootPaths;
+    }
+
+    public boolean isFullWorld()
+    {
+        return this == FULL;
+    }
+}
@@ -0,0 +1,31 @@
+package com.ayydxn.worldbackmachine.backup;
+
+/**
+ * The outcome of verifying a single stored backup against the checksums recorded when it was created.
+ *
+ * @param name    The name of the backup file on the cloud storage provider
+ * @param status  Whether the backup could be verified, and if so, whether it is intact
+ * @param message A human-readable explanation of the status
+ *
+ * @author Ayydxn
+ */
+public record BackupVerificationResult(String name, Status status, String message)
+{
+    public enum Status
+    {
+        /**
+         * The provider's checksum and size match those recorded when the backup was created.
+         */
+        INTACT,
+
+        /**
+         * The provider's checksum or size differ from those recorded when the backup was created.
+         */
+        CORRUPT,
+
+        /**
+         * The backup doesn't have any recorded checksums, or the provider doesn't report any for it.
+         */
+        UNVERIFIABLE
+    }
+}
@@ -0,0 +1,78 @@
+package com.ayydxn.worldbackmachine.backup;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.CRC32C;
+
+/**
+ * An {@link OutputStream} which computes the {@link BackupChecksums checksums} of everything written through it.
+ * <p>
+ * This allows an archive's checksums to be computed in the same pass that writes it, rather than reading the entire archive back afterward.
+ *
+ * @author Ayydxn
+ */
+public class ChecksummingOutputStream extends FilterOutputStream
+{
+    private final CRC32C crc32c = new CRC32C();
+    private final MessageDigest sha256Digest;
+    private final MessageDigest md5Digest;
+
+    private long bytesWritten = 0L;
+
+    public ChecksummingOutputStream(OutputStream outputStream)
+    {
+        super(outputStream);
+
+        try
+        {
+            this.sha256Digest = MessageDigest.getInstance("SHA-256");
+            this.md5Digest = MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException exception)
+        {
+            // Every Java platform is required to support both of these algorithms
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        this.out.write(b);
+
+        this.crc32c.update(b);
+        this.sha256Digest.update((byte) b);
+        this.md5Digest.update((byte) b);
+        this.bytesWritten++;
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException
+    {
+        this.out.write(buffer, offset, length);
+
+        this.crc32c.update(buffer, offset, length);
+        this.sha256Digest.update(buffer, offset, length);
+        this.md5Digest.update(buffer, offset, length);
+        this.bytesWritten += length;
+    }
+
+    /**
+     * Returns the checksums of everything that has been written so far.
+     * <p>
+     * This should only be called once all data has been written, as it finalizes the underlying digests.
+     *
+     * @return The checksums of the written data
+     */
+    public BackupChecksums getChecksums()
+    {
+        HexFormat hexFormat = HexFormat.of();
+
+        return new BackupChecksums(this.bytesWritten, this.crc32c.getValue(), hexFormat.formatHex(this.sha256Digest.digest()),
+                hexFormat.formatHex(this.md5Digest.digest()));
+    }
+}
@@ -0,0 +1,152 @@
+package com.ayydxn.worldbackmachine.backup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An {@link InputStream} which reads ahead of its consumer on a separate thread, using a bounded buffer.
+ * <p>
+ * This lets two stages of a pipeline overlap, such as downloading a backup and extracting it: while the consumer is busy
+ * decompressing and writing files, the next chunks are already being read from the network. At most {@code maxBufferedChunks}
+ * chunks are held in memory at once, after which the reading thread waits for the consumer to catch up.
+ *
+ * @author Ayydxn
+ */
+public class ReadAheadInputStream extends InputStream
+{
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    private final InputStream source;
+    private final BlockingQueue<byte[]> bufferedChunks;
+    private final Thread readerThread;
+
+    private volatile IOException readerException;
+    private volatile boolean isClosed = false;
+
+    private byte[] currentChunk;
+    private int currentChunkOffset = 0;
+
+    public ReadAheadInputStream(InputStream source, int chunkSize, int maxBufferedChunks, String threadName)
+    {
+        this.source = source;
+        this.bufferedChunks = new ArrayBlockingQueue<>(maxBufferedChunks);
+        this.readerThread = Thread.ofPlatform()
+                .name(threadName)
+                .daemon(true)
+                .start(() -> this.readAhead(chunkSize));
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        byte[] singleByte = new byte[1];
+
+        return this.read(singleByte, 0, 1) == -1 ? -1 : singleByte[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException
+    {
+        if (this.isClosed)
+            throw new IOException("Tried to read from a closed stream!");
+
+        if (length == 0)
+            return 0;
+
+        if (!this.ensureChunkAvailable())
+            return -1;
+
+        int bytesRead = Math.min(length, this.currentChunk.length - this.currentChunkOffset);
+        System.arraycopy(this.currentChunk, this.currentChunkOffset, buffer, offset, bytesRead);
+
+        this.currentChunkOffset += bytesRead;
+
+        return bytesRead;
+    }
+
+    @Override
+    public int available()
+    {
+        return this.currentChunk != null && this.currentChunk != END_OF_STREAM ? this.currentChunk.length - this.currentChunkOffset : 0;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (this.isClosed)
+            return;
+
+        this.isClosed = true;
+        this.readerThread.interrupt();
+
+        // Make room in case the reader is blocked on a full buffer
+        this.bufferedChunks.clear();
+
+        this.source.close();
+    }
+
+    private boolean ensureChunkAvailable() throws IOException
+    {
+        while (this.currentChunk == null || (this.currentChunk != END_OF_STREAM && this.currentChunkOffset >= this.currentChunk.length))
+        {
+            try
+            {
+                this.currentChunk = this.bufferedChunks.take();
+                this.currentChunkOffset = 0;
+            }
+            catch (InterruptedException exception)
+            {
+                Thread.currentThread().interrupt();
+
+                throw new InterruptedIOException("Interrupted while waiting for data to be read ahead");
+            }
+        }
+
+        if (this.currentChunk == END_OF_STREAM)
+        {
+            if (this.readerException != null)
+                throw new IOException("Failed to read ahead from the source stream", this.readerException);
+
+            return false;
+        }
+
+        return true;
+    }
+
+    private void readAhead(int chunkSize)
+    {
+        try
+        {
+            while (!this.isClosed)
+            {
+                byte[] chunk = this.source.readNBytes(chunkSize);
+                if (chunk.length == 0)
+                    break;
+
+                this.bufferedChunks.put(chunk);
+            }
+        }
+        catch (IOException exception)
+        {
+            if (!this.isClosed)
+                this.readerException = exception;
+        }
+        catch (InterruptedException exception)
+        {
+            // The stream has been closed
+            return;
+        }
+
+        try
+        {
+            this.bufferedChunks.put(END_OF_STREAM);
+        }
+        catch (InterruptedException ignored)
+        {
+            // The stream has been closed, so nothing is waiting for the end of it
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.ayydxn.worldbackmachine.backup.archive;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The container format a backup's files are packed into.
+ * <p>
+ * Backups keep their {@code .zip} names regardless of their format, which is recorded in the {@value #FORMAT_PROPERTY} property stored alongside them.
+ * Backups without the property were made before there was a choice, and are always ZIPs.
+ *
+ * @author Ayydxn
+ */
+public enum BackupArchiveFormat
+{
+    /**
+     * A standard ZIP archive, which any archive tool can open.
+     */
+    ZIP,
+
+    /**
+     * Worldback Machine's own {@link BlockArchive block archive}, which splits large files into blocks that are compressed and
+     * extracted in parallel, and can be read from at any offset.
+     */
+    BLOCK;
+
+    public static final String FORMAT_PROPERTY = "worldback-machine.format";
+
+    /**
+     * Reads the format of a backup from the properties stored alongside it.
+     *
+     * @param properties The properties stored alongside the backup
+     * @return The backup's format, which is {@link #ZIP} if it wasn't recorded or isn't known
+     */
+    public static BackupArchiveFormat fromProperties(Map<String, String> properties)
+    {
+        String format = properties.get(FORMAT_PROPERTY);
+        if (format == null)
+            return ZIP;
+
+        try
+        {
+            return BackupArchiveFormat.valueOf(format.toUpperCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException exception)
+        {
+            return ZIP;
+        }
+    }
+
+    /**
+     * Gets the value of the {@value #FORMAT_PROPERTY} property for backups in this format.
+     *
+     * @return The format's property value
+     */
+    public String getPropertyValue()
+    {
+        return this.name().toLowerCase(Locale.ROOT);
+    }
+}
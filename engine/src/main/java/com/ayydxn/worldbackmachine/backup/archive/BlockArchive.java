@@ -0,0 +1,163 @@
+package com.ayydxn.worldbackmachine.backup.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Worldback Machine's own archive format, made of independently compressed blocks followed by an index of every file in the archive.
+ * <p>
+ * A ZIP compresses each file as a single DEFLATE stream, so one large region file can only ever be compressed or extracted by a single core.
+ * A block archive splits every file into blocks of up to {@value #DEFAULT_BLOCK_SIZE} bytes instead, which are compressed and decompressed
+ * on every core at once. Since each block can be decompressed on its own, any byte range of any file can be read through the trailing index
+ * without touching the rest of the archive, and new files can be appended by rewriting only the index.
+ * <p>
+ * Small files, such as every player's data, stats and advancements, can be packed one after another into solid blocks instead of each
+ * getting blocks of their own. Solid blocks are compressed with zstd and a dictionary trained on the files being packed, which is stored
+ * in the archive ahead of the blocks that use it.
+ * <p>
+ * Region files can be {@link RegionFileCodec transcoded} before being split into blocks, so their chunks are compressed together rather
+ * than each on its own. They're rebuilt as they're read or extracted.
+ * <p>
+ * An archive is laid out as follows, with every number stored big-endian:
+ * <pre>
+ * header         "WBMA", version (1 byte), block size (4 bytes)
+ * for every dictionary, before the first block that uses it:
+ *   'D'          Its ID (4 bytes), length (4 bytes), contents
+ * for every file with blocks of its own:
+ *   'F'          The file's path (modified UTF-8), or
+ *   'T'          Its {@link BlockArchiveEntry.Encoding encoding} (1 byte) and path, if its contents are encoded
+ *   for every block of the file:
+ *     'B'        Block header, stored bytes
+ *   'E'          The file's size (8 bytes)
+ * for every solid block:
+ *   'S'          Block header, number of files (4 bytes), then every file's path and size (4 bytes) in the order they're packed, stored bytes
+ * 'I'            The index: every dictionary's ID, offset and length, then for every file, its path, size, encoding, and where each of its blocks is
+ * trailer        Offset of the index (8 bytes), length of the index (4 bytes), CRC32 of the index (4 bytes), "WBMI"
+ * </pre>
+ * A block header is its {@link BlockCompression compression} (1 byte), the ID of its dictionary (4 bytes, only if it's compressed with zstd),
+ * uncompressed length (4 bytes), stored length (4 bytes) and the CRC32C of its contents (4 bytes). Older versions only lack records and index
+ * fields that were added since, so their records are read the same way: version 1 has no dictionaries, solid blocks or zstd blocks, and version 2
+ * has no encoded files.
+ * The records before the index describe every file too, so an archive can also be extracted as it's read from a stream, such as while it's downloading.
+ * If a file appears more than once, such as after it's been appended again, its last copy is the one that counts.
+ *
+ * @author Ayydxn
+ * @see BlockArchiveWriter
+ * @see BlockArchiveReader
+ * @see BlockArchiveExtractor
+ */
+public final class BlockArchive
+{
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    static final byte[] MAGIC = { 'W', 'B', 'M', 'A' };
+    static final byte[] TRAILER_MAGIC = { 'W', 'B', 'M', 'I' };
+    static final byte VERSION = 3;
+    static final byte MIN_VERSION = 1;
+
+    static final int HEADER_SIZE = MAGIC.length + 1 + Integer.BYTES;
+    static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES + Integer.BYTES + TRAILER_MAGIC.length;
+
+    static final byte FILE_START_RECORD = 'F';
+    static final byte ENCODED_FILE_START_RECORD = 'T';
+    static final byte BLOCK_RECORD = 'B';
+    static final byte FILE_END_RECORD = 'E';
+    static final byte DICTIONARY_RECORD = 'D';
+    static final byte SOLID_BLOCK_RECORD = 'S';
+    static final byte INDEX_RECORD = 'I';
+
+    private static final int ARCHIVE_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int MAX_IN_FLIGHT_BLOCKS = ARCHIVE_THREADS * 2;
+
+    private static final AtomicInteger ARCHIVE_THREAD_COUNT = new AtomicInteger();
+    private static final ExecutorService ARCHIVE_EXECUTOR = Executors.newFixedThreadPool(ARCHIVE_THREADS, runnable ->
+    {
+        Thread archiveThread = new Thread(runnable, "WorldbackMachine-BlockArchive-" + ARCHIVE_THREAD_COUNT.incrementAndGet());
+        archiveThread.setDaemon(true);
+
+        return archiveThread;
+    });
+
+    private BlockArchive()
+    {
+    }
+
+    /**
+     * Starts writing a new block archive to a stream.
+     *
+     * @param outputStream The stream to write the archive to, which is closed along with the writer
+     * @throws IOException If writing the archive's header fails
+     * @return The archive's writer
+     */
+    public static BlockArchiveWriter newWriter(OutputStream outputStream) throws IOException
+    {
+        return new BlockArchiveWriter(outputStream, DEFAULT_BLOCK_SIZE, ARCHIVE_EXECUTOR, MAX_IN_FLIGHT_BLOCKS);
+    }
+
+    /**
+     * Opens an existing block archive so more files can be added to it. The files already in it are kept.
+     *
+     * @param archivePath The archive to append to
+     * @throws IOException If the archive can't be read, or isn't a block archive
+     * @return The archive's writer
+     */
+    public static BlockArchiveWriter append(Path archivePath) throws IOException
+    {
+        return BlockArchiveWriter.append(archivePath, ARCHIVE_EXECUTOR, MAX_IN_FLIGHT_BLOCKS);
+    }
+
+    /**
+     * Opens a block archive on disk for random access.
+     *
+     * @param archivePath The archive to open
+     * @throws IOException If the archive can't be read, or isn't a block archive
+     * @return The archive's reader, which must be closed once it's no longer needed
+     */
+    public static BlockArchiveReader open(Path archivePath) throws IOException
+    {
+        return BlockArchiveReader.open(archivePath, ARCHIVE_EXECUTOR);
+    }
+
+    /**
+     * Opens a block archive for random access, reading it through ranged reads, such as from a cloud storage provider.
+     *
+     * @param rangeSource The source of the archive's bytes, which must be safe to read from on several threads at once
+     * @param archiveSize The size of the archive in bytes
+     * @throws IOException If the archive's index can't be read, or it isn't a block archive
+     * @return The archive's reader
+     */
+    public static BlockArchiveReader open(BlockArchiveReader.RangeSource rangeSource, long archiveSize) throws IOException
+    {
+        return BlockArchiveReader.open(rangeSource, archiveSize, ARCHIVE_EXECUTOR);
+    }
+
+    /**
+     * Extracts a block archive as it's read from a stream, decompressing its blocks in parallel.
+     *
+     * @param inputStream The stream of the archive, which isn't closed
+     * @param targetPath  The directory to extract the archive's files to
+     * @throws IOException If reading the archive fails, it's corrupt, or a file would be extracted outside the target directory
+     */
+    public static void extract(InputStream inputStream, Path targetPath) throws IOException
+    {
+        new BlockArchiveExtractor(ARCHIVE_EXECUTOR, MAX_IN_FLIGHT_BLOCKS).extract(inputStream, targetPath);
+    }
+
+    /**
+     * Checks whether the end of an archive is the trailer of a block archive.
+     *
+     * @param trailingBytes The last bytes of the archive, of which at least the last 4 are needed
+     * @return True if the archive is a block archive, false otherwise
+     */
+    public static boolean hasTrailer(byte[] trailingBytes)
+    {
+        return trailingBytes.length >= TRAILER_MAGIC.length && Arrays.equals(trailingBytes, trailingBytes.length - TRAILER_MAGIC.length,
+                trailingBytes.length, TRAILER_MAGIC, 0, TRAILER_MAGIC.length);
+    }
+}
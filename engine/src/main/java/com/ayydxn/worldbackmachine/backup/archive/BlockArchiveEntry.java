@@ -0,0 +1,133 @@
+package com.ayydxn.worldbackmachine.backup.archive;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A file within a {@link BlockArchive block archive}, as described by the archive's index.
+ *
+ * @param name       The path of the file relative to the world's directory, using forward slashes
+ * @param size       The size of the file in bytes, or of its encoded form if it's encoded
+ * @param storedSize The number of bytes the file's blocks take up in the archive
+ * @param encoding   How the file's contents were encoded before being split into blocks
+ * @param blocks     The file's blocks, in order
+ *
+ * @author Ayydxn
+ */
+public record BlockArchiveEntry(String name, long size, long storedSize, Encoding encoding, List<Block> blocks)
+{
+    /**
+     * Finds the index of the block holding a byte of the file.
+     *
+     * @param fileOffset The offset of the byte within the file
+     * @return The index of the block holding it
+     */
+    int findBlockIndex(long fileOffset)
+    {
+        int low = 0;
+        int high = this.blocks.size() - 1;
+
+        while (low < high)
+        {
+            int middle = (low + high + 1) >>> 1;
+
+            if (this.blocks.get(middle).fileOffset() <= fileOffset)
+                low = middle;
+            else
+                high = middle - 1;
+        }
+
+        return low;
+    }
+
+    /**
+     * How a file's contents are encoded within a block archive. Files are always decoded again as they're read or extracted.
+     */
+    public enum Encoding
+    {
+        /**
+         * The file's contents as they are.
+         */
+        NONE((byte) 0),
+
+        /**
+         * A {@link RegionFileCodec transcoded} region file, whose chunks were inflated and compressed together as one zstd stream.
+         */
+        REGION((byte) 1);
+
+        private final byte id;
+
+        Encoding(byte id)
+        {
+            this.id = id;
+        }
+
+        /**
+         * Gets the encoding a file of an archive was recorded with.
+         *
+         * @param id The ID stored for the file
+         * @throws IOException If the ID isn't that of any known encoding
+         * @return The file's encoding
+         */
+        static Encoding fromId(byte id) throws IOException
+        {
+            for (Encoding encoding : values())
+            {
+                if (encoding.id == id)
+                    return encoding;
+            }
+
+            throw new IOException(String.format("The archive has a file with an unknown encoding (%d)!", id));
+        }
+
+        /**
+         * Gets the ID a file encoded this way is recorded with.
+         *
+         * @return The encoding's ID
+         */
+        byte getId()
+        {
+            return this.id;
+        }
+    }
+
+    /**
+     * A block of a file within a block archive. A solid block holds several small files one after another, of which a file is only part.
+     *
+     * @param archiveOffset      The offset of the block's stored bytes within the archive
+     * @param fileOffset         The offset of the block's first byte of the file within the file
+     * @param length             The number of bytes of the file the block holds
+     * @param compression        How the block is compressed
+     * @param dictionaryId       The ID of the dictionary the block was compressed with, or 0 if it wasn't compressed with one
+     * @param contentOffset      The offset of the file's bytes within the block's contents, which is only ever non-zero for solid blocks
+     * @param uncompressedLength The length of the block's contents
+     * @param storedLength       The length of the block as it's stored in the archive
+     * @param crc32c             The CRC32C checksum of the block's contents
+     */
+    public record Block(long archiveOffset, long fileOffset, int length, BlockCompression compression, int dictionaryId, int contentOffset,
+                        int uncompressedLength, int storedLength, int crc32c)
+    {
+        /**
+         * Checks whether the block holds other files besides this one.
+         *
+         * @return True if the block is a solid block, false otherwise
+         */
+        public boolean isSolid()
+        {
+            return this.contentOffset != 0 || this.length != this.uncompressedLength;
+        }
+
+        /**
+         * Gets how many of the block's stored bytes count towards the file, which for a solid block is the file's share of it.
+         *
+         * @return The number of stored bytes that count towards the file
+         */
+        public long storedShare()
+        {
+            if (this.uncompressedLength == 0)
+                return this.storedLength;
+
+            return this.isSolid() ? (long) this.storedLength * this.length / this.uncompressedLength : this.storedLength;
+        }
+    }
+}
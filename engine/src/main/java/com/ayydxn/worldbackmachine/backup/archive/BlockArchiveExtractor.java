@@ -0,0 +1,449 @@
+package com.ayydxn.worldbackmachine.backup.archive;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.jspecify.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Extracts a {@link BlockArchive block archive} as it's read from a stream, such as while it's being downloaded.
+ * <p>
+ * The records before the archive's index describe every file and block, so the index itself is never needed. Blocks are read in order
+ * on the calling thread and handed off to be decompressed and written on a shared pool of threads, so even a single large file is
+ * extracted on every core. At most {@code maxInFlightBlocks} blocks are held in memory at once, after which reading waits for them to be written.
+ * The files packed into a solid block are written by whichever thread decompressed it, and are only opened while they're being written.
+ * Encoded files are written out as they're stored next to where they're extracted to, then decoded once all of their blocks have been written.
+ *
+ * @author Ayydxn
+ */
+public class BlockArchiveExtractor
+{
+    private static final int MAX_EXTRACTING_FILES = 64;
+
+    private final Executor decompressionExecutor;
+    private final int maxInFlightBlocks;
+
+    BlockArchiveExtractor(Executor decompressionExecutor, int maxInFlightBlocks)
+    {
+        this.decompressionExecutor = decompressionExecutor;
+        this.maxInFlightBlocks = Math.max(1, maxInFlightBlocks);
+    }
+
+    /**
+     * Extracts an archive into a directory, replacing any files that already exist.
+     *
+     * @param inputStream The stream of the archive, which isn't closed
+     * @param targetPath  The directory to extract the archive's files to
+     * @throws IOException If reading the archive fails, it's corrupt, or a file would be extracted outside the target directory
+     */
+    public void extract(InputStream inputStream, Path targetPath) throws IOException
+    {
+        Path normalizedTargetPath = targetPath.toAbsolutePath().normalize();
+        Files.createDirectories(normalizedTargetPath);
+
+        DataInputStream archiveInputStream = new DataInputStream(new BufferedInputStream(inputStream));
+        this.readHeader(archiveInputStream);
+
+        Semaphore inFlightBlocks = new Semaphore(this.maxInFlightBlocks);
+
+        // Destination of a file -> The file while its blocks are being written, which may still be the case for an earlier copy of it
+        Map<Path, ExtractingFile> extractingFiles = Maps.newHashMap();
+        Deque<ExtractingFile> endedFiles = new ArrayDeque<>();
+        Deque<ExtractingSolidBlock> extractingSolidBlocks = new ArrayDeque<>();
+        ExtractingFile currentFile = null;
+
+        // ID of a dictionary -> The dictionary, which always comes before the blocks that use it
+        Map<Integer, BlockDictionary> dictionaries = Maps.newHashMap();
+
+        try
+        {
+            while (true)
+            {
+                byte recordType = archiveInputStream.readByte();
+
+                if (recordType == BlockArchive.FILE_START_RECORD || recordType == BlockArchive.ENCODED_FILE_START_RECORD)
+                {
+                    BlockArchiveEntry.Encoding encoding = recordType == BlockArchive.ENCODED_FILE_START_RECORD ?
+                            BlockArchiveEntry.Encoding.fromId(archiveInputStream.readByte()) : BlockArchiveEntry.Encoding.NONE;
+                    Path destination = resolveDestination(normalizedTargetPath, archiveInputStream.readUTF());
+
+                    // A file that appears again after being appended replaces its earlier copy, which mustn't still be writing over it
+                    this.finishEarlierCopy(destination, extractingFiles, extractingSolidBlocks);
+
+                    Files.createDirectories(destination.getParent());
+
+                    Path writtenPath = encoding != BlockArchiveEntry.Encoding.NONE ?
+                            Files.createTempFile(destination.getParent(), ".worldback-machine-", ".tmp") : destination;
+
+                    currentFile = new ExtractingFile(destination, encoding, writtenPath, FileChannel.open(writtenPath, StandardOpenOption.WRITE,
+                            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING));
+                    extractingFiles.put(destination, currentFile);
+                }
+                else if (recordType == BlockArchive.BLOCK_RECORD)
+                {
+                    if (currentFile == null)
+                        throw new IOException("The archive has a block that doesn't belong to any file!");
+
+                    BlockHeader blockHeader = this.readBlockHeader(archiveInputStream, dictionaries);
+
+                    byte[] storedData = new byte[blockHeader.storedLength()];
+                    archiveInputStream.readFully(storedData);
+
+                    this.acquire(inFlightBlocks);
+
+                    ExtractingFile blockFile = currentFile;
+                    long fileOffset = blockFile.reserve(blockHeader.uncompressedLength());
+
+                    blockFile.addBlock(CompletableFuture.runAsync(() ->
+                    {
+                        try
+                        {
+                            writeFully(blockFile.fileChannel, blockHeader.decode(storedData), fileOffset);
+                        }
+                        catch (IOException exception)
+                        {
+                            throw new UncheckedIOException(exception);
+                        }
+                        finally
+                        {
+                            inFlightBlocks.release();
+                        }
+                    }, this.decompressionExecutor));
+                }
+                else if (recordType == BlockArchive.FILE_END_RECORD)
+                {
+                    if (currentFile == null || archiveInputStream.readLong() != currentFile.size)
+                        throw new IOException("The archive has a file whose size doesn't match its blocks!");
+
+                    if (currentFile.encoding != BlockArchiveEntry.Encoding.NONE)
+                        currentFile.decodeOnceWritten(this.decompressionExecutor);
+
+                    endedFiles.addLast(currentFile);
+                    currentFile = null;
+
+                    // Worlds can have many thousands of files, so only so many of them are kept open while their blocks are written
+                    while (endedFiles.size() > MAX_EXTRACTING_FILES)
+                    {
+                        ExtractingFile endedFile = endedFiles.removeFirst();
+
+                        extractingFiles.remove(endedFile.destination, endedFile);
+                        endedFile.finish();
+                    }
+                }
+                else if (recordType == BlockArchive.SOLID_BLOCK_RECORD)
+                {
+                    if (currentFile != null)
+                        throw new IOException("The archive has a solid block within a file!");
+
+                    BlockHeader blockHeader = this.readBlockHeader(archiveInputStream, dictionaries);
+
+                    int fileCount = archiveInputStream.readInt();
+                    if (fileCount < 0)
+                        throw new IOException("The archive has a corrupt solid block!");
+
+                    List<SolidFile> solidFiles = Lists.newArrayListWithCapacity(fileCount);
+                    Set<Path> destinations = Sets.newHashSet();
+                    long packedLength = 0L;
+
+                    for (int fileIndex = 0; fileIndex < fileCount; fileIndex++)
+                    {
+                        Path destination = resolveDestination(normalizedTargetPath, archiveInputStream.readUTF());
+                        int length = archiveInputStream.readInt();
+
+                        if (length < 0)
+                            throw new IOException("The archive has a corrupt solid block!");
+
+                        solidFiles.add(new SolidFile(destination, packedLength, length));
+                        destinations.add(destination);
+                        packedLength += length;
+                    }
+
+                    if (packedLength > blockHeader.uncompressedLength())
+                        throw new IOException("The archive has a solid block that's shorter than the files packed into it!");
+
+                    byte[] storedData = new byte[blockHeader.storedLength()];
+                    archiveInputStream.readFully(storedData);
+
+                    for (SolidFile solidFile : solidFiles)
+                    {
+                        this.finishEarlierCopy(solidFile.destination(), extractingFiles, extractingSolidBlocks);
+                        Files.createDirectories(solidFile.destination().getParent());
+                    }
+
+                    this.acquire(inFlightBlocks);
+
+                    CompletableFuture<Void> writtenFiles = CompletableFuture.runAsync(() ->
+                    {
+                        try
+                        {
+                            byte[] data = blockHeader.decode(storedData);
+
+                            for (SolidFile solidFile : solidFiles)
+                            {
+                                try (FileChannel fileChannel = FileChannel.open(solidFile.destination(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                                        StandardOpenOption.TRUNCATE_EXISTING))
+                                {
+                                    writeFully(fileChannel, Arrays.copyOfRange(data, (int) solidFile.contentOffset(),
+                                            (int) solidFile.contentOffset() + solidFile.length()), 0L);
+                                }
+                            }
+                        }
+                        catch (IOException exception)
+                        {
+                            throw new UncheckedIOException(exception);
+                        }
+                        finally
+                        {
+                            inFlightBlocks.release();
+                        }
+                    }, this.decompressionExecutor);
+
+                    // Solid blocks that have already been written are forgotten, so later files only have to check the few still being written
+                    while (!extractingSolidBlocks.isEmpty() && extractingSolidBlocks.peekFirst().writtenFiles().isDone())
+                        BlockArchiveReader.await(extractingSolidBlocks.removeFirst().writtenFiles());
+
+                    extractingSolidBlocks.addLast(new ExtractingSolidBlock(destinations, writtenFiles));
+                }
+                else if (recordType == BlockArchive.DICTIONARY_RECORD)
+                {
+                    int id = archiveInputStream.readInt();
+                    int length = archiveInputStream.readInt();
+
+                    if (length < 0)
+                        throw new IOException("The archive has a corrupt dictionary!");
+
+                    byte[] contents = new byte[length];
+                    archiveInputStream.readFully(contents);
+
+                    dictionaries.put(id, new BlockDictionary(id, contents));
+                }
+                else if (recordType == BlockArchive.INDEX_RECORD)
+                {
+                    // The index only repeats what's already been read
+                    break;
+                }
+                else
+                {
+                    throw new IOException(String.format("The archive has an unknown record type (%d)!", recordType));
+                }
+            }
+
+            for (ExtractingFile extractingFile : extractingFiles.values())
+                extractingFile.finish();
+
+            extractingFiles.clear();
+
+            while (!extractingSolidBlocks.isEmpty())
+                BlockArchiveReader.await(extractingSolidBlocks.removeFirst().writtenFiles());
+        }
+        catch (EOFException exception)
+        {
+            throw new IOException("The archive is truncated!", exception);
+        }
+        finally
+        {
+            // If extraction failed, still wait for the blocks that are being written before closing their files
+            for (ExtractingSolidBlock extractingSolidBlock : extractingSolidBlocks)
+                extractingSolidBlock.writtenFiles().exceptionally(exception -> null).join();
+
+            for (ExtractingFile extractingFile : extractingFiles.values())
+            {
+                extractingFile.blocks.exceptionally(exception -> null).join();
+                extractingFile.close();
+            }
+        }
+    }
+
+    private void readHeader(DataInputStream archiveInputStream) throws IOException
+    {
+        byte[] magic = new byte[BlockArchive.MAGIC.length];
+        archiveInputStream.readFully(magic);
+
+        if (!Arrays.equals(magic, BlockArchive.MAGIC))
+            throw new IOException("The archive isn't a block archive!");
+
+        byte version = archiveInputStream.readByte();
+        if (version < BlockArchive.MIN_VERSION || version > BlockArchive.VERSION)
+            throw new IOException(String.format("The archive uses an unsupported format version (%d)!", version));
+
+        // Blocks describe their own sizes, so the block size isn't needed to extract them
+        archiveInputStream.readInt();
+    }
+
+    private BlockHeader readBlockHeader(DataInputStream archiveInputStream, Map<Integer, BlockDictionary> dictionaries) throws IOException
+    {
+        BlockCompression compression = BlockCompression.fromId(archiveInputStream.readByte());
+        int dictionaryId = compression == BlockCompression.ZSTD ? archiveInputStream.readInt() : 0;
+        int uncompressedLength = archiveInputStream.readInt();
+        int storedLength = archiveInputStream.readInt();
+        int crc32c = archiveInputStream.readInt();
+
+        if (uncompressedLength < 0 || storedLength < 0)
+            throw new IOException("The archive has a corrupt block!");
+
+        BlockDictionary dictionary = dictionaries.get(dictionaryId);
+        if (dictionaryId != 0 && dictionary == null)
+            throw new IOException(String.format("The archive has a block compressed with a dictionary it doesn't contain (%d)!", dictionaryId));
+
+        return new BlockHeader(compression, dictionary, uncompressedLength, storedLength, crc32c);
+    }
+
+    private void finishEarlierCopy(Path destination, Map<Path, ExtractingFile> extractingFiles, Deque<ExtractingSolidBlock> extractingSolidBlocks)
+            throws IOException
+    {
+        // A file that appears again after being appended replaces its earlier copy, which mustn't still be writing over it
+        ExtractingFile earlierCopy = extractingFiles.remove(destination);
+        if (earlierCopy != null)
+            earlierCopy.finish();
+
+        for (ExtractingSolidBlock extractingSolidBlock : extractingSolidBlocks)
+        {
+            if (extractingSolidBlock.destinations().contains(destination))
+                BlockArchiveReader.await(extractingSolidBlock.writtenFiles());
+        }
+    }
+
+    private void acquire(Semaphore inFlightBlocks) throws InterruptedIOException
+    {
+        try
+        {
+            inFlightBlocks.acquire();
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while extracting a block archive");
+        }
+    }
+
+    /**
+     * Resolves where a file in an archive is extracted to, making sure it stays within the target directory.
+     *
+     * @param normalizedTargetPath The absolute, normalized directory the archive is being extracted to
+     * @param name                 The path of the file within the archive
+     * @throws IOException If the file would be extracted outside the target directory
+     * @return Where to extract the file to
+     */
+    static Path resolveDestination(Path normalizedTargetPath, String name) throws IOException
+    {
+        Path destination = normalizedTargetPath.resolve(name).normalize();
+        if (!destination.startsWith(normalizedTargetPath) || destination.equals(normalizedTargetPath))
+            throw new IOException(String.format("Refusing to extract '%s' outside of '%s'!", name, normalizedTargetPath));
+
+        return destination;
+    }
+
+    static void writeFully(FileChannel fileChannel, byte[] data, long fileOffset) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+
+        while (buffer.hasRemaining())
+            fileChannel.write(buffer, fileOffset + buffer.position());
+    }
+
+    private record BlockHeader(BlockCompression compression, @Nullable BlockDictionary dictionary, int uncompressedLength, int storedLength, int crc32c)
+    {
+        private byte[] decode(byte[] storedData) throws IOException
+        {
+            return BlockCodec.decode(this.compression, this.dictionary, storedData, 0, storedData.length, this.uncompressedLength, this.crc32c);
+        }
+    }
+
+    private record SolidFile(Path destination, long contentOffset, int length)
+    {
+    }
+
+    private record ExtractingSolidBlock(Set<Path> destinations, CompletableFuture<Void> writtenFiles)
+    {
+    }
+
+    private static class ExtractingFile
+    {
+        private final Path destination;
+        private final BlockArchiveEntry.Encoding encoding;
+        private final Path writtenPath;
+        private final FileChannel fileChannel;
+        private CompletableFuture<Void> blocks = CompletableFuture.completedFuture(null);
+        private long size = 0L;
+
+        private ExtractingFile(Path destination, BlockArchiveEntry.Encoding encoding, Path writtenPath, FileChannel fileChannel)
+        {
+            this.destination = destination;
+            this.encoding = encoding;
+            this.writtenPath = writtenPath;
+            this.fileChannel = fileChannel;
+        }
+
+        private long reserve(int length)
+        {
+            long fileOffset = this.size;
+            this.size += length;
+
+            return fileOffset;
+        }
+
+        private void addBlock(CompletableFuture<Void> block)
+        {
+            this.blocks = CompletableFuture.allOf(this.blocks, block);
+        }
+
+        private void decodeOnceWritten(Executor decodingExecutor)
+        {
+            this.blocks = this.blocks.thenRunAsync(() ->
+            {
+                try
+                {
+                    RegionFileCodec.decode(Files.newInputStream(this.writtenPath), this.destination);
+                }
+                catch (IOException exception)
+                {
+                    throw new UncheckedIOException(exception);
+                }
+            }, decodingExecutor);
+        }
+
+        private void finish() throws IOException
+        {
+            try
+            {
+                BlockArchiveReader.await(this.blocks);
+            }
+            finally
+            {
+                this.close();
+            }
+        }
+
+        private void close() throws IOException
+        {
+            this.fileChannel.close();
+
+            // An encoded file is only written out so it can be decoded, after which it's no longer needed
+            if (this.encoding != BlockArchiveEntry.Encoding.NONE)
+                Files.deleteIfExists(this.writtenPath);
+        }
+    }
+}
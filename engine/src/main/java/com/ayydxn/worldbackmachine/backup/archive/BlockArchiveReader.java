@@ -0,0 +1,676 @@
+package com.ayydxn.worldbackmachine.backup.archive;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.jspecify.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+/**
+ * Reads any file, or any byte range of a file, out of a {@link BlockArchive block archive} using its index.
+ * <p>
+ * Only the blocks covering what's read are fetched and decompressed, and the blocks of files being extracted are decompressed in parallel.
+ * Archives can be read from a local file or through ranged reads from anywhere else, such as a cloud storage provider.
+ * <p>
+ * A solid block is decompressed once for all the files packed into it that are being extracted, rather than once for each of them.
+ * Transcoded region files are rebuilt as they're extracted, each on its own thread, and are rebuilt in full to read any part of them.
+ *
+ * @author Ayydxn
+ */
+public class BlockArchiveReader implements Closeable
+{
+    private static final int MAX_EXTRACTING_FILES = 64;
+
+    private final RangeSource rangeSource;
+    private final @Nullable Closeable closeable;
+    private final Executor decompressionExecutor;
+    private final byte version;
+    private final int blockSize;
+    private final long indexOffset;
+
+    // Path of a file -> Its entry
+    private final Map<String, BlockArchiveEntry> entries;
+
+    // ID of a dictionary -> Where it's stored
+    private final Map<Integer, BlockDictionary.Location> dictionaryLocations;
+
+    // ID of a dictionary -> The dictionary, which are only read once a block needs them
+    private final Map<Integer, BlockDictionary> dictionaries = Maps.newConcurrentMap();
+
+    private BlockArchiveReader(RangeSource rangeSource, @Nullable Closeable closeable, Executor decompressionExecutor, byte version, int blockSize,
+                               long indexOffset, ArchiveIndex archiveIndex)
+    {
+        this.rangeSource = rangeSource;
+        this.closeable = closeable;
+        this.decompressionExecutor = decompressionExecutor;
+        this.version = version;
+        this.blockSize = blockSize;
+        this.indexOffset = indexOffset;
+        this.entries = archiveIndex.entries();
+        this.dictionaryLocations = archiveIndex.dictionaryLocations();
+    }
+
+    static BlockArchiveReader open(Path archivePath, Executor decompressionExecutor) throws IOException
+    {
+        FileChannel fileChannel = FileChannel.open(archivePath, StandardOpenOption.READ);
+
+        try
+        {
+            // Positional reads don't move the channel's position, so several threads can read through it at once
+            RangeSource rangeSource = (offset, length) ->
+            {
+                ByteBuffer buffer = ByteBuffer.allocate(length);
+
+                while (buffer.hasRemaining() && fileChannel.read(buffer, offset + buffer.position()) != -1)
+                {
+                    // Keep reading until the range is filled or the archive ends
+                }
+
+                return buffer.position() == length ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+            };
+
+            return open(rangeSource, fileChannel.size(), fileChannel, decompressionExecutor);
+        }
+        catch (IOException | RuntimeException exception)
+        {
+            fileChannel.close();
+
+            throw exception;
+        }
+    }
+
+    static BlockArchiveReader open(RangeSource rangeSource, long archiveSize, Executor decompressionExecutor) throws IOException
+    {
+        return open(rangeSource, archiveSize, null, decompressionExecutor);
+    }
+
+    private static BlockArchiveReader open(RangeSource rangeSource, long archiveSize, @Nullable Closeable closeable, Executor decompressionExecutor)
+            throws IOException
+    {
+        if (archiveSize < BlockArchive.HEADER_SIZE + BlockArchive.TRAILER_SIZE)
+            throw new IOException(String.format("The archive is too small to be a block archive! (%d bytes)", archiveSize));
+
+        byte[] header = readFully(rangeSource, 0L, BlockArchive.HEADER_SIZE);
+        if (!Arrays.equals(header, 0, BlockArchive.MAGIC.length, BlockArchive.MAGIC, 0, BlockArchive.MAGIC.length))
+            throw new IOException("The archive isn't a block archive!");
+
+        DataInputStream headerInputStream = new DataInputStream(new ByteArrayInputStream(header, BlockArchive.MAGIC.length, header.length));
+
+        byte version = headerInputStream.readByte();
+        if (version < BlockArchive.MIN_VERSION || version > BlockArchive.VERSION)
+            throw new IOException(String.format("The archive uses an unsupported format version (%d)!", version));
+
+        int blockSize = headerInputStream.readInt();
+
+        byte[] trailer = readFully(rangeSource, archiveSize - BlockArchive.TRAILER_SIZE, BlockArchive.TRAILER_SIZE);
+        if (!BlockArchive.hasTrailer(trailer))
+            throw new IOException("The archive's index is missing, so it was never finished!");
+
+        DataInputStream trailerInputStream = new DataInputStream(new ByteArrayInputStream(trailer));
+
+        long indexOffset = trailerInputStream.readLong();
+        int indexLength = trailerInputStream.readInt();
+        int indexCrc32 = trailerInputStream.readInt();
+
+        if (indexOffset < BlockArchive.HEADER_SIZE || indexLength <= 0 || indexOffset + indexLength != archiveSize - BlockArchive.TRAILER_SIZE)
+            throw new IOException("The archive's trailer is corrupt!");
+
+        byte[] index = readFully(rangeSource, indexOffset, indexLength);
+
+        CRC32 indexChecksum = new CRC32();
+        indexChecksum.update(index);
+
+        if ((int) indexChecksum.getValue() != indexCrc32)
+            throw new IOException("The archive's index doesn't match its checksum!");
+
+        return new BlockArchiveReader(rangeSource, closeable, decompressionExecutor, version, blockSize, indexOffset, readIndex(index, version));
+    }
+
+    /**
+     * Lists the paths of every file in the archive.
+     *
+     * @return The paths of every file in the archive, in sorted order
+     */
+    public List<String> listFiles()
+    {
+        return this.entries.keySet().stream().sorted().toList();
+    }
+
+    /**
+     * Gets a file in the archive.
+     *
+     * @param name The path of the file
+     * @return The file's entry, or null if the archive doesn't contain it
+     */
+    public @Nullable BlockArchiveEntry getEntry(String name)
+    {
+        return this.entries.get(name);
+    }
+
+    /**
+     * Gets every file in the archive.
+     *
+     * @return An unmodifiable view of the archive's files
+     */
+    public Collection<BlockArchiveEntry> getEntries()
+    {
+        return Collections.unmodifiableCollection(this.entries.values());
+    }
+
+    /**
+     * Reads part of a file in the archive, fetching and decompressing only the blocks that cover it.
+     *
+     * @param name   The path of the file
+     * @param offset The offset of the first byte to read within the file
+     * @param length The maximum number of bytes to read
+     * @throws IOException If the archive doesn't contain the file, or reading any of its blocks fails
+     * @return The bytes that were read, which is fewer than {@code length} only if the end of the file was reached
+     */
+    public byte[] read(String name, long offset, int length) throws IOException
+    {
+        BlockArchiveEntry entry = this.getExistingEntry(name);
+
+        if (offset < 0 || length < 0)
+            throw new IllegalArgumentException(String.format("Invalid range! (Offset: %d, Length: %d)", offset, length));
+
+        if (entry.encoding() != BlockArchiveEntry.Encoding.NONE)
+            return this.readDecoded(entry, offset, length);
+
+        int boundedLength = (int) Math.max(0L, Math.min(length, entry.size() - offset));
+        byte[] data = new byte[boundedLength];
+
+        if (boundedLength == 0)
+            return data;
+
+        int dataPosition = 0;
+
+        for (int blockIndex = entry.findBlockIndex(offset); dataPosition < boundedLength; blockIndex++)
+        {
+            BlockArchiveEntry.Block block = entry.blocks().get(blockIndex);
+            byte[] blockData = this.readBlock(block);
+
+            int blockStart = (int) Math.max(0L, offset - block.fileOffset());
+            int copiedLength = Math.min(block.length() - blockStart, boundedLength - dataPosition);
+
+            System.arraycopy(blockData, block.contentOffset() + blockStart, data, dataPosition, copiedLength);
+            dataPosition += copiedLength;
+        }
+
+        return data;
+    }
+
+    /**
+     * Extracts a file out of the archive, decompressing its blocks in parallel. The file is replaced if it already exists.
+     *
+     * @param name        The path of the file within the archive
+     * @param destination Where to extract the file to
+     * @throws IOException If the archive doesn't contain the file, or extracting it fails
+     */
+    public void extract(String name, Path destination) throws IOException
+    {
+        this.extractAll(List.of(this.getExistingEntry(name)), entry -> destination);
+    }
+
+    /**
+     * Extracts every file in the archive into a directory, decompressing the blocks of every file in parallel.
+     *
+     * @param targetPath The directory to extract the archive's files to
+     * @throws IOException If extracting a file fails, or a file would be extracted outside the target directory
+     */
+    public void extractAll(Path targetPath) throws IOException
+    {
+        Path normalizedTargetPath = targetPath.toAbsolutePath().normalize();
+
+        this.extractAll(this.entries.values(), entry -> BlockArchiveExtractor.resolveDestination(normalizedTargetPath, entry.name()));
+    }
+
+    /**
+     * Gets the size of the blocks the archive was written with. Only the last block of each file may be smaller.
+     *
+     * @return The archive's block size in bytes
+     */
+    public int getBlockSize()
+    {
+        return this.blockSize;
+    }
+
+    /**
+     * Gets the version of the format the archive was written in.
+     *
+     * @return The archive's format version
+     */
+    public byte getVersion()
+    {
+        return this.version;
+    }
+
+    /**
+     * Gets the offset of the archive's index, which is where files appended to the archive start.
+     *
+     * @return The offset of the index
+     */
+    public long getIndexOffset()
+    {
+        return this.indexOffset;
+    }
+
+    /**
+     * Gets where each of the archive's dictionaries is stored.
+     *
+     * @return The locations of the archive's dictionaries
+     */
+    Collection<BlockDictionary.Location> getDictionaryLocations()
+    {
+        return this.dictionaryLocations.values();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (this.closeable != null)
+            this.closeable.close();
+    }
+
+    private void extractAll(Collection<BlockArchiveEntry> entries, DestinationResolver destinationResolver) throws IOException
+    {
+        Deque<ExtractingFile> extractingFiles = new ArrayDeque<>();
+
+        // Offset of a solid block -> The files packed into it that are being extracted
+        Map<Long, List<SolidFile>> solidBlocks = Maps.newLinkedHashMap();
+        List<CompletableFuture<Void>> extractedGroups = Lists.newArrayList();
+
+        try
+        {
+            for (BlockArchiveEntry entry : entries)
+            {
+                Path destination = destinationResolver.resolve(entry);
+                Files.createDirectories(destination.getParent());
+
+                if (entry.encoding() != BlockArchiveEntry.Encoding.NONE)
+                {
+                    // Encoded files are decoded as a stream, so each of them is extracted by a single thread
+                    extractedGroups.add(CompletableFuture.runAsync(() -> this.extractDecoded(entry, destination), this.decompressionExecutor));
+
+                    continue;
+                }
+
+                if (entry.blocks().size() == 1 && entry.blocks().getFirst().isSolid())
+                {
+                    BlockArchiveEntry.Block block = entry.blocks().getFirst();
+                    solidBlocks.computeIfAbsent(block.archiveOffset(), archiveOffset -> Lists.newArrayList()).add(new SolidFile(block, destination));
+
+                    continue;
+                }
+
+                FileChannel fileChannel = FileChannel.open(destination, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+
+                // Every block is written to its own place in the file, so they can be decompressed and written in any order
+                CompletableFuture<?>[] extractedBlocks = entry.blocks().stream()
+                        .map(block -> CompletableFuture.runAsync(() -> this.extractBlock(block, fileChannel), this.decompressionExecutor))
+                        .toArray(CompletableFuture[]::new);
+
+                extractingFiles.addLast(new ExtractingFile(fileChannel, CompletableFuture.allOf(extractedBlocks)));
+
+                // Worlds can have many thousands of files, so only so many of them are kept open at once
+                while (extractingFiles.size() > MAX_EXTRACTING_FILES)
+                    extractingFiles.removeFirst().finish();
+            }
+
+            while (!extractingFiles.isEmpty())
+                extractingFiles.removeFirst().finish();
+
+            // Solid blocks hold many small files each, so their files are only opened while they're being written
+            for (List<SolidFile> solidFiles : solidBlocks.values())
+                extractedGroups.add(CompletableFuture.runAsync(() -> this.extractSolidBlock(solidFiles), this.decompressionExecutor));
+
+            await(CompletableFuture.allOf(extractedGroups.toArray(CompletableFuture[]::new)));
+        }
+        finally
+        {
+            extractedGroups.forEach(extractedGroup -> extractedGroup.exceptionally(exception -> null).join());
+
+            // If extraction failed, still wait for the blocks that are being written before closing their files
+            for (ExtractingFile extractingFile : extractingFiles)
+            {
+                extractingFile.extractedBlocks().exceptionally(exception -> null).join();
+                extractingFile.fileChannel().close();
+            }
+        }
+    }
+
+    private void extractBlock(BlockArchiveEntry.Block block, FileChannel fileChannel)
+    {
+        try
+        {
+            BlockArchiveExtractor.writeFully(fileChannel, this.readBlock(block), block.fileOffset());
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    private void extractSolidBlock(List<SolidFile> solidFiles)
+    {
+        try
+        {
+            byte[] blockData = this.readBlock(solidFiles.getFirst().block());
+
+            for (SolidFile solidFile : solidFiles)
+            {
+                BlockArchiveEntry.Block block = solidFile.block();
+
+                try (FileChannel fileChannel = FileChannel.open(solidFile.destination(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING))
+                {
+                    BlockArchiveExtractor.writeFully(fileChannel, Arrays.copyOfRange(blockData, block.contentOffset(),
+                            block.contentOffset() + block.length()), 0L);
+                }
+            }
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    private void extractDecoded(BlockArchiveEntry entry, Path destination)
+    {
+        try
+        {
+            RegionFileCodec.decode(new EntryInputStream(entry), destination);
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    private byte[] readDecoded(BlockArchiveEntry entry, long offset, int length) throws IOException
+    {
+        Path temporaryFile = Files.createTempFile("worldback-machine-region-", ".mca");
+
+        try
+        {
+            RegionFileCodec.decode(new EntryInputStream(entry), temporaryFile);
+
+            try (FileChannel fileChannel = FileChannel.open(temporaryFile, StandardOpenOption.READ))
+            {
+                int boundedLength = (int) Math.max(0L, Math.min(length, fileChannel.size() - offset));
+                ByteBuffer buffer = ByteBuffer.allocate(boundedLength);
+
+                while (buffer.hasRemaining() && fileChannel.read(buffer, offset + buffer.position()) != -1)
+                {
+                    // Keep reading until the range is filled
+                }
+
+                return buffer.array();
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private byte[] readBlock(BlockArchiveEntry.Block block) throws IOException
+    {
+        byte[] storedData = readFully(this.rangeSource, block.archiveOffset(), block.storedLength());
+
+        if (block.contentOffset() + (long) block.length() > block.uncompressedLength())
+            throw new IOException("A block of the archive is shorter than its index says!");
+
+        return BlockCodec.decode(block.compression(), this.getDictionary(block.dictionaryId()), storedData, 0, storedData.length,
+                block.uncompressedLength(), block.crc32c());
+    }
+
+    private @Nullable BlockDictionary getDictionary(int dictionaryId) throws IOException
+    {
+        if (dictionaryId == 0)
+            return null;
+
+        BlockDictionary dictionary = this.dictionaries.get(dictionaryId);
+        if (dictionary != null)
+            return dictionary;
+
+        BlockDictionary.Location location = this.dictionaryLocations.get(dictionaryId);
+        if (location == null)
+            throw new IOException(String.format("The archive has a block compressed with a dictionary it doesn't contain (%d)!", dictionaryId));
+
+        // Two threads may both read the dictionary at first, but only one copy of it is kept so that threads' zstd contexts can tell it's loaded
+        dictionary = new BlockDictionary(dictionaryId, readFully(this.rangeSource, location.archiveOffset(), location.length()));
+
+        BlockDictionary existingDictionary = this.dictionaries.putIfAbsent(dictionaryId, dictionary);
+
+        return existingDictionary != null ? existingDictionary : dictionary;
+    }
+
+    private BlockArchiveEntry getExistingEntry(String name) throws IOException
+    {
+        BlockArchiveEntry entry = this.entries.get(name);
+        if (entry == null)
+            throw new IOException(String.format("The archive doesn't contain '%s'!", name));
+
+        return entry;
+    }
+
+    private static ArchiveIndex readIndex(byte[] index, byte version) throws IOException
+    {
+        DataInputStream indexInputStream = new DataInputStream(new ByteArrayInputStream(index));
+
+        if (indexInputStream.readByte() != BlockArchive.INDEX_RECORD)
+            throw new IOException("The archive's index is corrupt!");
+
+        Map<Integer, BlockDictionary.Location> dictionaryLocations = Maps.newLinkedHashMap();
+
+        // Version 1 archives have no dictionaries, nor any solid blocks
+        int dictionaryCount = version >= 2 ? indexInputStream.readInt() : 0;
+
+        for (int dictionaryIndex = 0; dictionaryIndex < dictionaryCount; dictionaryIndex++)
+        {
+            int id = indexInputStream.readInt();
+            long archiveOffset = indexInputStream.readLong();
+            int length = indexInputStream.readInt();
+
+            dictionaryLocations.put(id, new BlockDictionary.Location(id, archiveOffset, length));
+        }
+
+        int entryCount = indexInputStream.readInt();
+        Map<String, BlockArchiveEntry> entries = Maps.newLinkedHashMap();
+
+        for (int entryIndex = 0; entryIndex < entryCount; entryIndex++)
+        {
+            String name = indexInputStream.readUTF();
+            long size = indexInputStream.readLong();
+            BlockArchiveEntry.Encoding encoding = version >= 3 ? BlockArchiveEntry.Encoding.fromId(indexInputStream.readByte()) :
+                    BlockArchiveEntry.Encoding.NONE;
+            int blockCount = indexInputStream.readInt();
+
+            List<BlockArchiveEntry.Block> blocks = Lists.newArrayListWithCapacity(blockCount);
+            long fileOffset = 0L;
+
+            for (int blockIndex = 0; blockIndex < blockCount; blockIndex++)
+            {
+                long archiveOffset = indexInputStream.readLong();
+                BlockCompression compression = BlockCompression.fromId(indexInputStream.readByte());
+                int dictionaryId = version >= 2 ? indexInputStream.readInt() : 0;
+                int contentOffset = version >= 2 ? indexInputStream.readInt() : 0;
+                int length = version >= 2 ? indexInputStream.readInt() : -1;
+                int uncompressedLength = indexInputStream.readInt();
+                int storedLength = indexInputStream.readInt();
+                int crc32c = indexInputStream.readInt();
+
+                if (length == -1)
+                    length = uncompressedLength;
+
+                blocks.add(new BlockArchiveEntry.Block(archiveOffset, fileOffset, length, compression, dictionaryId, contentOffset, uncompressedLength,
+                        storedLength, crc32c));
+
+                fileOffset += length;
+            }
+
+            if (fileOffset != size)
+                throw new IOException(String.format("The index entry of '%s' is corrupt!", name));
+
+            long storedSize = blocks.stream().mapToLong(BlockArchiveEntry.Block::storedShare).sum();
+
+            entries.put(name, new BlockArchiveEntry(name, size, storedSize, encoding, List.copyOf(blocks)));
+        }
+
+        return new ArchiveIndex(entries, dictionaryLocations);
+    }
+
+    private static byte[] readFully(RangeSource rangeSource, long offset, int length) throws IOException
+    {
+        byte[] data = rangeSource.read(offset, length);
+        if (data.length != length)
+            throw new IOException("The archive is shorter than its index says!");
+
+        return data;
+    }
+
+    /**
+     * Waits for blocks being extracted on other threads, rethrowing the first failure.
+     *
+     * @param future Completes once the blocks have been extracted
+     * @throws IOException If extracting any of the blocks failed
+     */
+    static void await(CompletableFuture<?> future) throws IOException
+    {
+        try
+        {
+            future.get();
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while extracting a block archive");
+        }
+        catch (ExecutionException exception)
+        {
+            if (exception.getCause() instanceof UncheckedIOException uncheckedIOException)
+                throw uncheckedIOException.getCause();
+
+            throw new IOException("Failed to extract a block of the archive", exception.getCause());
+        }
+    }
+
+    /**
+     * A source of an archive's bytes, which must be safe to read from on several threads at once.
+     */
+    @FunctionalInterface
+    public interface RangeSource
+    {
+        /**
+         * Reads part of the archive.
+         *
+         * @param offset The offset of the first byte to read
+         * @param length The number of bytes to read
+         * @throws IOException If reading the archive fails
+         * @return The bytes that were read, which is fewer than {@code length} only if the end of the archive was reached
+         */
+        byte[] read(long offset, int length) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface DestinationResolver
+    {
+        Path resolve(BlockArchiveEntry entry) throws IOException;
+    }
+
+    private record ArchiveIndex(Map<String, BlockArchiveEntry> entries, Map<Integer, BlockDictionary.Location> dictionaryLocations)
+    {
+    }
+
+    private record SolidFile(BlockArchiveEntry.Block block, Path destination)
+    {
+    }
+
+    /**
+     * Reads a file's contents as they're stored in the archive, fetching and decompressing one block at a time as it's read.
+     */
+    private class EntryInputStream extends InputStream
+    {
+        private final Iterator<BlockArchiveEntry.Block> blocks;
+        private byte[] blockData = new byte[0];
+        private int blockPosition = 0;
+        private int blockEnd = 0;
+
+        private EntryInputStream(BlockArchiveEntry entry)
+        {
+            this.blocks = entry.blocks().iterator();
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            byte[] singleByte = new byte[1];
+
+            return this.read(singleByte, 0, 1) == -1 ? -1 : singleByte[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException
+        {
+            if (length == 0)
+                return 0;
+
+            while (this.blockPosition == this.blockEnd)
+            {
+                if (!this.blocks.hasNext())
+                    return -1;
+
+                BlockArchiveEntry.Block block = this.blocks.next();
+
+                this.blockData = BlockArchiveReader.this.readBlock(block);
+                this.blockPosition = block.contentOffset();
+                this.blockEnd = block.contentOffset() + block.length();
+            }
+
+            int readLength = Math.min(length, this.blockEnd - this.blockPosition);
+            System.arraycopy(this.blockData, this.blockPosition, buffer, offset, readLength);
+            this.blockPosition += readLength;
+
+            return readLength;
+        }
+    }
+
+    private record ExtractingFile(FileChannel fileChannel, CompletableFuture<Void> extractedBlocks)
+    {
+        private void finish() throws IOException
+        {
+            try
+            {
+                await(this.extractedBlocks);
+            }
+            finally
+            {
+                this.fileChannel.close();
+            }
+        }
+    }
+}
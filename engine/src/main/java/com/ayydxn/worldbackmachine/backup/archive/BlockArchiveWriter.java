@@ -0,0 +1,760 @@
+package com.ayydxn.worldbackmachine.backup.archive;
+
+import com.ayydxn.worldbackmachine.engine.WorldbackMachineEngine;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.CountingOutputStream;
+import org.jspecify.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Writes a {@link BlockArchive block archive}, compressing the blocks of the files added to it on a shared pool of threads.
+ * <p>
+ * Files are read and split into blocks on the calling thread while earlier blocks are being compressed, and the compressed blocks
+ * are written out in order. At most {@code maxInFlightRecords} records are held in memory at once, after which adding files
+ * waits for the oldest one to be written. The archive's index is written once the writer is closed.
+ * <p>
+ * Small files can be {@link #addSolidFile packed} together into solid blocks instead, which are compressed with zstd and whichever dictionary
+ * was {@link #trainDictionary trained} last, and region files can be {@link #addRegionFile transcoded} on the same pool of threads first.
+ *
+ * @author Ayydxn
+ */
+public class BlockArchiveWriter implements Closeable
+{
+    private final CountingOutputStream countingOutputStream;
+    private final DataOutputStream dataOutputStream;
+    private final long basePosition;
+    private final int blockSize;
+    private final Executor compressionExecutor;
+    private final int maxInFlightRecords;
+    private final Deque<PendingRecord> inFlightRecords = new ArrayDeque<>();
+    private final Queue<byte[]> freeBlockBuffers = new ConcurrentLinkedQueue<>();
+    private final List<SolidFile> solidFiles = Lists.newArrayList();
+
+    // Path of a file -> Its entry. A file that's added again replaces its earlier copy
+    private final Map<String, BlockArchiveEntry> entries = Maps.newLinkedHashMap();
+
+    // ID of a dictionary -> Where it's stored
+    private final Map<Integer, BlockDictionary.Location> dictionaries = Maps.newLinkedHashMap();
+
+    private @Nullable BlockDictionary dictionary;
+    private byte @Nullable [] solidBuffer;
+    private int solidLength = 0;
+    private int solidCompressionLevel = 0;
+    private boolean isClosed = false;
+
+    BlockArchiveWriter(OutputStream outputStream, int blockSize, Executor compressionExecutor, int maxInFlightRecords) throws IOException
+    {
+        this(outputStream, 0L, blockSize, compressionExecutor, maxInFlightRecords);
+
+        this.dataOutputStream.write(BlockArchive.MAGIC);
+        this.dataOutputStream.writeByte(BlockArchive.VERSION);
+        this.dataOutputStream.writeInt(blockSize);
+    }
+
+    private BlockArchiveWriter(OutputStream outputStream, long basePosition, int blockSize, Executor compressionExecutor, int maxInFlightRecords)
+    {
+        if (blockSize <= 0)
+            throw new IllegalArgumentException(String.format("A block's size must be positive! (%d)", blockSize));
+
+        // Records are mostly a handful of bytes, so they're buffered rather than each going straight to the underlying stream
+        this.countingOutputStream = new CountingOutputStream(new BufferedOutputStream(outputStream));
+        this.dataOutputStream = new DataOutputStream(this.countingOutputStream);
+        this.basePosition = basePosition;
+        this.blockSize = blockSize;
+        this.compressionExecutor = compressionExecutor;
+        this.maxInFlightRecords = Math.max(1, maxInFlightRecords);
+    }
+
+    static BlockArchiveWriter append(Path archivePath, Executor compressionExecutor, int maxInFlightRecords) throws IOException
+    {
+        long indexOffset;
+        int blockSize;
+        byte version;
+        Collection<BlockArchiveEntry> existingEntries;
+        Collection<BlockDictionary.Location> existingDictionaries;
+
+        try (BlockArchiveReader blockArchiveReader = BlockArchiveReader.open(archivePath, compressionExecutor))
+        {
+            indexOffset = blockArchiveReader.getIndexOffset();
+            blockSize = blockArchiveReader.getBlockSize();
+            version = blockArchiveReader.getVersion();
+            existingEntries = blockArchiveReader.getEntries();
+            existingDictionaries = blockArchiveReader.getDictionaryLocations();
+        }
+
+        // The new files are written over the old index, which is written again with them once the writer is closed
+        FileChannel fileChannel = FileChannel.open(archivePath, StandardOpenOption.WRITE);
+
+        try
+        {
+            fileChannel.truncate(indexOffset);
+
+            // The records of older versions are still valid, but the index is always rewritten in the current version's layout
+            if (version != BlockArchive.VERSION)
+                fileChannel.write(ByteBuffer.wrap(new byte[] { BlockArchive.VERSION }), BlockArchive.MAGIC.length);
+
+            fileChannel.position(indexOffset);
+        }
+        catch (IOException exception)
+        {
+            fileChannel.close();
+
+            throw exception;
+        }
+
+        BlockArchiveWriter blockArchiveWriter = new BlockArchiveWriter(Channels.newOutputStream(fileChannel), indexOffset, blockSize,
+                compressionExecutor, maxInFlightRecords);
+
+        existingEntries.forEach(entry -> blockArchiveWriter.entries.put(entry.name(), entry));
+        existingDictionaries.forEach(location -> blockArchiveWriter.dictionaries.put(location.id(), location));
+
+        return blockArchiveWriter;
+    }
+
+    /**
+     * Adds a file to the archive. The file's blocks may still be compressing once this returns, but the file mustn't change until the writer is closed.
+     *
+     * @param name             The path of the file within the archive, using forward slashes
+     * @param source           The file to add
+     * @param compressionLevel The DEFLATE level to compress the file's blocks at, or 0 to store them as they are
+     * @throws IOException If reading the file, or writing earlier records, fails
+     */
+    public void addFile(String name, Path source, int compressionLevel) throws IOException
+    {
+        if (this.isClosed)
+            throw new IOException("Tried to add a file to a closed archive!");
+
+        PendingEntry pendingEntry = new PendingEntry(name);
+        this.enqueue(new FileStartRecord(pendingEntry));
+
+        try (FileChannel fileChannel = FileChannel.open(source, StandardOpenOption.READ))
+        {
+            long fileOffset = 0L;
+
+            while (true)
+            {
+                byte[] blockBuffer = this.takeBlockBuffer();
+                int blockLength = this.readBlock(fileChannel, blockBuffer);
+
+                if (blockLength == 0)
+                {
+                    this.freeBlockBuffers.offer(blockBuffer);
+                    break;
+                }
+
+                Future<BlockCodec.EncodedBlock> encodedBlock = CompletableFuture.supplyAsync(() ->
+                {
+                    try
+                    {
+                        return BlockCodec.encode(blockBuffer, blockLength, BlockCompression.DEFLATE, compressionLevel, null);
+                    }
+                    finally
+                    {
+                        this.freeBlockBuffers.offer(blockBuffer);
+                    }
+                }, this.compressionExecutor);
+
+                this.enqueue(new BlockRecord(pendingEntry, fileOffset, encodedBlock));
+
+                fileOffset += blockLength;
+
+                if (blockLength < blockBuffer.length)
+                    break;
+            }
+        }
+        finally
+        {
+            // Even a file that failed to be read in full has to be ended, so the records that follow it are read correctly
+            this.enqueue(new FileEndRecord(pendingEntry));
+        }
+    }
+
+    /**
+     * Adds a region file to the archive, {@link RegionFileCodec transcoding} it first so its chunks are compressed together as one zstd stream.
+     * The file is transcoded on the archive's threads, and written once it has been. If it can't be transcoded, it's stored as it is instead.
+     *
+     * @param name             The path of the file within the archive, using forward slashes
+     * @param source           The region file to add
+     * @param compressionLevel The zstd level to compress the file's chunks at, or 0 to add it on its own and store it as it is
+     * @throws IOException If writing earlier records fails
+     */
+    public void addRegionFile(String name, Path source, int compressionLevel) throws IOException
+    {
+        if (this.isClosed)
+            throw new IOException("Tried to add a file to a closed archive!");
+
+        if (compressionLevel == 0 || !BlockCodec.IS_ZSTD_AVAILABLE)
+        {
+            this.addFile(name, source, compressionLevel);
+            return;
+        }
+
+        CompletableFuture<Path> encodedFile = CompletableFuture.supplyAsync(() ->
+        {
+            try
+            {
+                Path temporaryFile = Files.createTempFile("worldback-machine-region-", ".wbmr");
+
+                try
+                {
+                    RegionFileCodec.encode(source, Files.newOutputStream(temporaryFile), compressionLevel);
+                }
+                catch (IOException | RuntimeException exception)
+                {
+                    Files.deleteIfExists(temporaryFile);
+
+                    throw exception;
+                }
+
+                return temporaryFile;
+            }
+            catch (IOException exception)
+            {
+                throw new UncheckedIOException(exception);
+            }
+        }, this.compressionExecutor);
+
+        this.enqueue(new RegionFileRecord(name, source, encodedFile));
+    }
+
+    /**
+     * Trains a dictionary on samples of the small files about to be {@link #addSolidFile packed}, and stores it in the archive.
+     * Every solid block after this is compressed with it, until another one is trained.
+     *
+     * @param sampleFiles The files to sample, of which only so many are read if they're large altogether
+     * @throws IOException If reading any of the samples, or writing earlier records, fails
+     * @return True if a dictionary was trained, false if there weren't enough samples to train one
+     */
+    public boolean trainDictionary(Collection<Path> sampleFiles) throws IOException
+    {
+        if (this.isClosed)
+            throw new IOException("Tried to train a dictionary for a closed archive!");
+
+        long totalSampleBytes = 0L;
+        for (Path sampleFile : sampleFiles)
+            totalSampleBytes += Files.size(sampleFile);
+
+        // Every file is sampled if they fit, otherwise they're sampled evenly so the dictionary learns from every kind of file
+        long sampleInterval = Math.max(1L, (totalSampleBytes + BlockDictionary.MAX_SAMPLE_BYTES - 1) / BlockDictionary.MAX_SAMPLE_BYTES);
+        List<byte[]> samples = Lists.newArrayList();
+        long fileIndex = 0L;
+
+        for (Path sampleFile : sampleFiles)
+        {
+            if (fileIndex++ % sampleInterval != 0)
+                continue;
+
+            byte[] sample = Files.readAllBytes(sampleFile);
+
+            // Gzipped files, such as player data, look like noise to zstd and would only crowd out what it can learn from the rest
+            if (sample.length >= 2 && (sample[0] & 0xFF) == 0x1F && (sample[1] & 0xFF) == 0x8B)
+                continue;
+
+            samples.add(sample);
+        }
+
+        BlockDictionary trainedDictionary = BlockDictionary.train(samples);
+        if (trainedDictionary == null || this.dictionaries.containsKey(trainedDictionary.id()))
+            return false;
+
+        // Packed files waiting to be compressed belong with the dictionary that was current when they were added
+        this.flushSolidBlock();
+
+        this.dictionary = trainedDictionary;
+        this.enqueue(new DictionaryRecord(trainedDictionary));
+
+        return true;
+    }
+
+    /**
+     * Adds a small file to the archive by packing it into a solid block along with the files added before and after it.
+     * Files that are empty or wouldn't fit into a block are added {@link #addFile on their own} instead.
+     *
+     * @param name             The path of the file within the archive, using forward slashes
+     * @param source           The file to add
+     * @param compressionLevel The level to compress the file's block at, or 0 to add it on its own and store it as it is
+     * @throws IOException If reading the file, or writing earlier records, fails
+     */
+    public void addSolidFile(String name, Path source, int compressionLevel) throws IOException
+    {
+        if (this.isClosed)
+            throw new IOException("Tried to add a file to a closed archive!");
+
+        if (compressionLevel == 0 || Files.size(source) > this.blockSize)
+        {
+            this.addFile(name, source, compressionLevel);
+            return;
+        }
+
+        byte[] contents = Files.readAllBytes(source);
+
+        // The file may have grown since its size was checked
+        if (contents.length == 0 || contents.length > this.blockSize)
+        {
+            this.addFile(name, source, compressionLevel);
+            return;
+        }
+
+        if (this.solidBuffer != null && this.solidLength + contents.length > this.blockSize)
+            this.flushSolidBlock();
+
+        if (this.solidBuffer == null)
+            this.solidBuffer = this.takeBlockBuffer();
+
+        System.arraycopy(contents, 0, this.solidBuffer, this.solidLength, contents.length);
+
+        this.solidLength += contents.length;
+        this.solidCompressionLevel = Math.max(this.solidCompressionLevel, compressionLevel);
+        this.solidFiles.add(new SolidFile(name, contents.length));
+    }
+
+    /**
+     * Gets every file in the archive, including those it already had if it was opened to be appended to.
+     * Files that are still being written aren't included until the writer is closed.
+     *
+     * @return An unmodifiable view of the archive's files
+     */
+    public Collection<BlockArchiveEntry> getEntries()
+    {
+        return Collections.unmodifiableCollection(this.entries.values());
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (this.isClosed)
+            return;
+
+        this.isClosed = true;
+
+        try
+        {
+            this.flushSolidBlock();
+
+            while (!this.inFlightRecords.isEmpty())
+                this.writeOldestRecord();
+
+            this.writeIndex();
+            this.dataOutputStream.flush();
+        }
+        finally
+        {
+            // Don't leave blocks compressing for an archive that failed
+            for (PendingRecord pendingRecord : this.inFlightRecords)
+            {
+                if (pendingRecord instanceof BlockRecord blockRecord)
+                    blockRecord.encodedBlock().cancel(false);
+                else if (pendingRecord instanceof SolidBlockRecord solidBlockRecord)
+                    solidBlockRecord.encodedBlock().cancel(false);
+                else if (pendingRecord instanceof RegionFileRecord regionFileRecord)
+                    regionFileRecord.discard();
+            }
+
+            this.inFlightRecords.clear();
+
+            this.dataOutputStream.close();
+        }
+    }
+
+    private void enqueue(PendingRecord pendingRecord) throws IOException
+    {
+        this.inFlightRecords.addLast(pendingRecord);
+
+        while (this.inFlightRecords.size() > this.maxInFlightRecords)
+            this.writeOldestRecord();
+    }
+
+    private void flushSolidBlock() throws IOException
+    {
+        if (this.solidBuffer == null)
+            return;
+
+        byte[] blockBuffer = this.solidBuffer;
+        int blockLength = this.solidLength;
+        int compressionLevel = this.solidCompressionLevel;
+        BlockDictionary blockDictionary = this.dictionary;
+        BlockCompression compression = BlockCodec.IS_ZSTD_AVAILABLE ? BlockCompression.ZSTD : BlockCompression.DEFLATE;
+
+        Future<BlockCodec.EncodedBlock> encodedBlock = CompletableFuture.supplyAsync(() ->
+        {
+            try
+            {
+                return BlockCodec.encode(blockBuffer, blockLength, compression, compressionLevel, blockDictionary);
+            }
+            finally
+            {
+                this.freeBlockBuffers.offer(blockBuffer);
+            }
+        }, this.compressionExecutor);
+
+        List<SolidFile> blockFiles = List.copyOf(this.solidFiles);
+
+        this.solidBuffer = null;
+        this.solidLength = 0;
+        this.solidCompressionLevel = 0;
+        this.solidFiles.clear();
+
+        this.enqueue(new SolidBlockRecord(blockFiles, encodedBlock));
+    }
+
+    private void writeOldestRecord() throws IOException
+    {
+        switch (this.inFlightRecords.removeFirst())
+        {
+            case FileStartRecord(PendingEntry pendingEntry) ->
+            {
+                this.dataOutputStream.writeByte(BlockArchive.FILE_START_RECORD);
+                this.dataOutputStream.writeUTF(pendingEntry.name);
+            }
+            case BlockRecord(PendingEntry pendingEntry, long fileOffset, Future<BlockCodec.EncodedBlock> pendingBlock) ->
+            {
+                BlockCodec.EncodedBlock encodedBlock = this.awaitBlock(pendingBlock);
+
+                this.dataOutputStream.writeByte(BlockArchive.BLOCK_RECORD);
+                this.writeBlockHeader(encodedBlock);
+
+                pendingEntry.blocks.add(new BlockArchiveEntry.Block(this.getPosition(), fileOffset, encodedBlock.uncompressedLength(),
+                        encodedBlock.compression(), encodedBlock.dictionaryId(), 0, encodedBlock.uncompressedLength(), encodedBlock.data().length,
+                        encodedBlock.crc32c()));
+
+                this.dataOutputStream.write(encodedBlock.data());
+            }
+            case FileEndRecord(PendingEntry pendingEntry) ->
+            {
+                long fileSize = pendingEntry.blocks.stream().mapToLong(BlockArchiveEntry.Block::length).sum();
+
+                this.dataOutputStream.writeByte(BlockArchive.FILE_END_RECORD);
+                this.dataOutputStream.writeLong(fileSize);
+
+                this.putEntry(pendingEntry.name, fileSize, BlockArchiveEntry.Encoding.NONE, List.copyOf(pendingEntry.blocks));
+            }
+            case DictionaryRecord(BlockDictionary blockDictionary) ->
+            {
+                this.dataOutputStream.writeByte(BlockArchive.DICTIONARY_RECORD);
+                this.dataOutputStream.writeInt(blockDictionary.id());
+                this.dataOutputStream.writeInt(blockDictionary.contents().length);
+
+                this.dictionaries.put(blockDictionary.id(), new BlockDictionary.Location(blockDictionary.id(), this.getPosition(),
+                        blockDictionary.contents().length));
+
+                this.dataOutputStream.write(blockDictionary.contents());
+            }
+            case SolidBlockRecord(List<SolidFile> blockFiles, Future<BlockCodec.EncodedBlock> pendingBlock) ->
+            {
+                BlockCodec.EncodedBlock encodedBlock = this.awaitBlock(pendingBlock);
+
+                this.dataOutputStream.writeByte(BlockArchive.SOLID_BLOCK_RECORD);
+                this.writeBlockHeader(encodedBlock);
+                this.dataOutputStream.writeInt(blockFiles.size());
+
+                for (SolidFile solidFile : blockFiles)
+                {
+                    this.dataOutputStream.writeUTF(solidFile.name());
+                    this.dataOutputStream.writeInt(solidFile.length());
+                }
+
+                long archiveOffset = this.getPosition();
+                int contentOffset = 0;
+
+                for (SolidFile solidFile : blockFiles)
+                {
+                    this.putEntry(solidFile.name(), solidFile.length(), BlockArchiveEntry.Encoding.NONE, List.of(new BlockArchiveEntry.Block(archiveOffset, 0L, solidFile.length(),
+                            encodedBlock.compression(), encodedBlock.dictionaryId(), contentOffset, encodedBlock.uncompressedLength(),
+                            encodedBlock.data().length, encodedBlock.crc32c())));
+
+                    contentOffset += solidFile.length();
+                }
+
+                this.dataOutputStream.write(encodedBlock.data());
+            }
+            case RegionFileRecord(String name, Path source, CompletableFuture<Path> encodedFile) ->
+            {
+                Path temporaryFile;
+
+                try
+                {
+                    temporaryFile = encodedFile.get();
+                }
+                catch (InterruptedException exception)
+                {
+                    Thread.currentThread().interrupt();
+
+                    throw new InterruptedIOException("Interrupted while transcoding a region file");
+                }
+                catch (ExecutionException exception)
+                {
+                    // The file is still backed up, it just isn't any smaller for it
+                    WorldbackMachineEngine.LOGGER.warn("Failed to transcode region file '{}'. Storing it as it is", name, exception.getCause());
+
+                    this.writeStoredFile(name, source, BlockArchiveEntry.Encoding.NONE);
+                    return;
+                }
+
+                try
+                {
+                    this.writeStoredFile(name, temporaryFile, BlockArchiveEntry.Encoding.REGION);
+                }
+                finally
+                {
+                    Files.deleteIfExists(temporaryFile);
+                }
+            }
+        }
+    }
+
+    private void writeStoredFile(String name, Path source, BlockArchiveEntry.Encoding encoding) throws IOException
+    {
+        if (encoding == BlockArchiveEntry.Encoding.NONE)
+        {
+            this.dataOutputStream.writeByte(BlockArchive.FILE_START_RECORD);
+        }
+        else
+        {
+            this.dataOutputStream.writeByte(BlockArchive.ENCODED_FILE_START_RECORD);
+            this.dataOutputStream.writeByte(encoding.getId());
+        }
+
+        this.dataOutputStream.writeUTF(name);
+
+        // Encoded files are already compressed, so their blocks are stored as they are
+        List<BlockArchiveEntry.Block> blocks = Lists.newArrayList();
+        byte[] blockBuffer = this.takeBlockBuffer();
+        long fileOffset = 0L;
+
+        try (FileChannel fileChannel = FileChannel.open(source, StandardOpenOption.READ))
+        {
+            while (true)
+            {
+                int blockLength = this.readBlock(fileChannel, blockBuffer);
+                if (blockLength == 0)
+                    break;
+
+                BlockCodec.EncodedBlock encodedBlock = BlockCodec.encode(blockBuffer, blockLength, BlockCompression.STORED, 0, null);
+
+                this.dataOutputStream.writeByte(BlockArchive.BLOCK_RECORD);
+                this.writeBlockHeader(encodedBlock);
+
+                blocks.add(new BlockArchiveEntry.Block(this.getPosition(), fileOffset, blockLength, BlockCompression.STORED, 0, 0, blockLength,
+                        blockLength, encodedBlock.crc32c()));
+
+                this.dataOutputStream.write(encodedBlock.data());
+
+                fileOffset += blockLength;
+
+                if (blockLength < blockBuffer.length)
+                    break;
+            }
+        }
+        finally
+        {
+            this.freeBlockBuffers.offer(blockBuffer);
+
+            // Even a file that failed to be read in full has to be ended, so the records that follow it are read correctly
+            this.dataOutputStream.writeByte(BlockArchive.FILE_END_RECORD);
+            this.dataOutputStream.writeLong(fileOffset);
+        }
+
+        this.putEntry(name, fileOffset, encoding, List.copyOf(blocks));
+    }
+
+    private void writeBlockHeader(BlockCodec.EncodedBlock encodedBlock) throws IOException
+    {
+        this.dataOutputStream.writeByte(encodedBlock.compression().getId());
+
+        if (encodedBlock.compression() == BlockCompression.ZSTD)
+            this.dataOutputStream.writeInt(encodedBlock.dictionaryId());
+
+        this.dataOutputStream.writeInt(encodedBlock.uncompressedLength());
+        this.dataOutputStream.writeInt(encodedBlock.data().length);
+        this.dataOutputStream.writeInt(encodedBlock.crc32c());
+    }
+
+    private void putEntry(String name, long fileSize, BlockArchiveEntry.Encoding encoding, List<BlockArchiveEntry.Block> blocks)
+    {
+        long storedSize = blocks.stream().mapToLong(BlockArchiveEntry.Block::storedShare).sum();
+
+        // Remove any earlier copy first, so the file's position in the index reflects where its newest copy is
+        this.entries.remove(name);
+        this.entries.put(name, new BlockArchiveEntry(name, fileSize, storedSize, encoding, blocks));
+    }
+
+    private void writeIndex() throws IOException
+    {
+        long indexOffset = this.getPosition();
+
+        ByteArrayOutputStream indexByteStream = new ByteArrayOutputStream();
+        DataOutputStream indexOutputStream = new DataOutputStream(indexByteStream);
+
+        indexOutputStream.writeByte(BlockArchive.INDEX_RECORD);
+        indexOutputStream.writeInt(this.dictionaries.size());
+
+        for (BlockDictionary.Location location : this.dictionaries.values())
+        {
+            indexOutputStream.writeInt(location.id());
+            indexOutputStream.writeLong(location.archiveOffset());
+            indexOutputStream.writeInt(location.length());
+        }
+
+        indexOutputStream.writeInt(this.entries.size());
+
+        for (BlockArchiveEntry entry : this.entries.values())
+        {
+            indexOutputStream.writeUTF(entry.name());
+            indexOutputStream.writeLong(entry.size());
+            indexOutputStream.writeByte(entry.encoding().getId());
+            indexOutputStream.writeInt(entry.blocks().size());
+
+            for (BlockArchiveEntry.Block block : entry.blocks())
+            {
+                indexOutputStream.writeLong(block.archiveOffset());
+                indexOutputStream.writeByte(block.compression().getId());
+                indexOutputStream.writeInt(block.dictionaryId());
+                indexOutputStream.writeInt(block.contentOffset());
+                indexOutputStream.writeInt(block.length());
+                indexOutputStream.writeInt(block.uncompressedLength());
+                indexOutputStream.writeInt(block.storedLength());
+                indexOutputStream.writeInt(block.crc32c());
+            }
+        }
+
+        byte[] indexBytes = indexByteStream.toByteArray();
+
+        CRC32 indexChecksum = new CRC32();
+        indexChecksum.update(indexBytes);
+
+        this.dataOutputStream.write(indexBytes);
+        this.dataOutputStream.writeLong(indexOffset);
+        this.dataOutputStream.writeInt(indexBytes.length);
+        this.dataOutputStream.writeInt((int) indexChecksum.getValue());
+        this.dataOutputStream.write(BlockArchive.TRAILER_MAGIC);
+    }
+
+    private BlockCodec.EncodedBlock awaitBlock(Future<BlockCodec.EncodedBlock> encodedBlock) throws IOException
+    {
+        try
+        {
+            return encodedBlock.get();
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while compressing a block archive");
+        }
+        catch (ExecutionException exception)
+        {
+            throw new IOException("Failed to compress a block of the archive", exception.getCause());
+        }
+    }
+
+    private byte[] takeBlockBuffer()
+    {
+        byte[] blockBuffer = this.freeBlockBuffers.poll();
+
+        return blockBuffer != null ? blockBuffer : new byte[this.blockSize];
+    }
+
+    private int readBlock(FileChannel fileChannel, byte[] blockBuffer) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(blockBuffer);
+
+        while (buffer.hasRemaining() && fileChannel.read(buffer) != -1)
+        {
+            // Keep reading until the block is full or the file ends
+        }
+
+        return buffer.position();
+    }
+
+    private long getPosition()
+    {
+        return this.basePosition + this.countingOutputStream.getCount();
+    }
+
+    private static class PendingEntry
+    {
+        private final String name;
+        private final List<BlockArchiveEntry.Block> blocks = Lists.newArrayList();
+
+        private PendingEntry(String name)
+        {
+            this.name = name;
+        }
+    }
+
+    private sealed interface PendingRecord permits FileStartRecord, BlockRecord, FileEndRecord, DictionaryRecord, SolidBlockRecord,
+            RegionFileRecord
+    {
+    }
+
+    private record FileStartRecord(PendingEntry entry) implements PendingRecord
+    {
+    }
+
+    private record BlockRecord(PendingEntry entry, long fileOffset, Future<BlockCodec.EncodedBlock> encodedBlock) implements PendingRecord
+    {
+    }
+
+    private record FileEndRecord(PendingEntry entry) implements PendingRecord
+    {
+    }
+
+    private record DictionaryRecord(BlockDictionary dictionary) implements PendingRecord
+    {
+    }
+
+    private record SolidBlockRecord(List<SolidFile> files, Future<BlockCodec.EncodedBlock> encodedBlock) implements PendingRecord
+    {
+    }
+
+    private record RegionFileRecord(String name, Path source, CompletableFuture<Path> encodedFile) implements PendingRecord
+    {
+        private void discard()
+        {
+            // Don't leave behind the transcoded file of a region that's already been transcoded, or will be
+            this.encodedFile.thenAccept(temporaryFile ->
+            {
+                try
+                {
+                    Files.deleteIfExists(temporaryFile);
+                }
+                catch (IOException exception)
+                {
+                    WorldbackMachineEngine.LOGGER.warn("Failed to delete transcoded region file '{}'", temporaryFile, exception);
+                }
+            });
+        }
+    }
+
+    private record SolidFile(String name, int length)
+    {
+    }
+}
@@ -0,0 +1,271 @@
+package com.ayydxn.worldbackmachine.backup.archive;
+
+import com.ayydxn.worldbackmachine.engine.WorldbackMachineEngine;
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.github.luben.zstd.ZstdException;
+import com.github.luben.zstd.util.Native;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses and decompresses the blocks of a {@link BlockArchive}, each as its own raw DEFLATE stream or zstd frame.
+ * <p>
+ * Every thread keeps its own {@link Deflater}, {@link Inflater} and zstd contexts, since creating them allocates native memory.
+ * A zstd context keeps the last dictionary it was given loaded, so consecutive blocks compressed with the same dictionary only load it once.
+ *
+ * @author Ayydxn
+ */
+final class BlockCodec
+{
+    /**
+     * Whether zstd's native library could be loaded on this platform. If it can't, solid blocks are compressed with DEFLATE instead.
+     */
+    static final boolean IS_ZSTD_AVAILABLE = loadZstd();
+
+    private static final ThreadLocal<Deflater> THREAD_DEFLATERS = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private static final ThreadLocal<Inflater> THREAD_INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+    private static final ThreadLocal<ZstdContexts> THREAD_ZSTD_CONTEXTS = ThreadLocal.withInitial(ZstdContexts::new);
+    private static final ThreadLocal<byte[]> THREAD_OUTPUT_BUFFERS = ThreadLocal.withInitial(() -> new byte[0]);
+
+    private BlockCodec()
+    {
+    }
+
+    /**
+     * Compresses a block. Blocks that wouldn't get any smaller are stored as they are instead.
+     *
+     * @param data             A buffer holding the block's contents
+     * @param length           The number of bytes of {@code data} in the block
+     * @param compression      How to compress the block
+     * @param compressionLevel The level to compress the block at, or 0 to store it as it is
+     * @param dictionary       The dictionary to compress the block with, which is only used by {@link BlockCompression#ZSTD zstd}
+     * @return The block as it's stored in the archive
+     */
+    static EncodedBlock encode(byte[] data, int length, BlockCompression compression, int compressionLevel, @Nullable BlockDictionary dictionary)
+    {
+        CRC32C checksum = new CRC32C();
+        checksum.update(data, 0, length);
+
+        int crc32c = (int) checksum.getValue();
+
+        if (compression == BlockCompression.STORED || compressionLevel == 0 || length == 0)
+            return new EncodedBlock(BlockCompression.STORED, 0, Arrays.copyOf(data, length), length, crc32c);
+
+        if (compression == BlockCompression.ZSTD)
+            return encodeZstd(data, length, compressionLevel, dictionary, crc32c);
+
+        // Compressed blocks are only kept if they're smaller, so there's never a need for more room than the block itself
+        byte[] outputBuffer = getOutputBuffer(length);
+
+        Deflater deflater = THREAD_DEFLATERS.get();
+        deflater.reset();
+        deflater.setLevel(compressionLevel);
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+
+        int compressedLength = 0;
+        while (!deflater.finished() && compressedLength < length)
+            compressedLength += deflater.deflate(outputBuffer, compressedLength, length - compressedLength);
+
+        if (!deflater.finished() || compressedLength >= length)
+            return new EncodedBlock(BlockCompression.STORED, 0, Arrays.copyOf(data, length), length, crc32c);
+
+        return new EncodedBlock(BlockCompression.DEFLATE, 0, Arrays.copyOf(outputBuffer, compressedLength), length, crc32c);
+    }
+
+    /**
+     * Restores a block's contents and checks them against the checksum recorded for it.
+     *
+     * @param compression        How the block is compressed
+     * @param dictionary         The dictionary the block was compressed with, or null if it wasn't compressed with one
+     * @param storedData         A buffer holding the block as it's stored in the archive
+     * @param offset             The offset of the block within {@code storedData}
+     * @param storedLength       The length of the block as it's stored
+     * @param uncompressedLength The length of the block's contents
+     * @param crc32c             The CRC32C checksum recorded for the block's contents
+     * @throws IOException If the block is corrupt
+     * @return The block's contents
+     */
+    static byte[] decode(BlockCompression compression, @Nullable BlockDictionary dictionary, byte[] storedData, int offset, int storedLength,
+                         int uncompressedLength, int crc32c) throws IOException
+    {
+        byte[] data = switch (compression)
+        {
+            case STORED ->
+            {
+                if (storedLength != uncompressedLength)
+                    throw new IOException(String.format("A stored block is %d bytes instead of %d!", storedLength, uncompressedLength));
+
+                yield Arrays.copyOfRange(storedData, offset, offset + storedLength);
+            }
+            case DEFLATE -> inflate(storedData, offset, storedLength, uncompressedLength);
+            case ZSTD -> decodeZstd(dictionary, storedData, offset, storedLength, uncompressedLength);
+        };
+
+        CRC32C checksum = new CRC32C();
+        checksum.update(data);
+
+        if ((int) checksum.getValue() != crc32c)
+            throw new IOException("A block of the archive doesn't match its checksum!");
+
+        return data;
+    }
+
+    private static EncodedBlock encodeZstd(byte[] data, int length, int compressionLevel, @Nullable BlockDictionary dictionary, int crc32c)
+    {
+        byte[] outputBuffer = getOutputBuffer((int) Zstd.compressBound(length));
+
+        ZstdCompressCtx compressContext = THREAD_ZSTD_CONTEXTS.get().getCompressContext(dictionary);
+        compressContext.setLevel(compressionLevel);
+
+        int compressedLength = compressContext.compressByteArray(outputBuffer, 0, outputBuffer.length, data, 0, length);
+        if (compressedLength >= length)
+            return new EncodedBlock(BlockCompression.STORED, 0, Arrays.copyOf(data, length), length, crc32c);
+
+        return new EncodedBlock(BlockCompression.ZSTD, dictionary != null ? dictionary.id() : 0, Arrays.copyOf(outputBuffer, compressedLength),
+                length, crc32c);
+    }
+
+    private static byte[] decodeZstd(@Nullable BlockDictionary dictionary, byte[] storedData, int offset, int storedLength, int uncompressedLength)
+            throws IOException
+    {
+        if (!IS_ZSTD_AVAILABLE)
+            throw new IOException("The archive has zstd blocks, but zstd isn't available on this platform!");
+
+        byte[] data = new byte[uncompressedLength];
+
+        try
+        {
+            ZstdDecompressCtx decompressContext = THREAD_ZSTD_CONTEXTS.get().getDecompressContext(dictionary);
+
+            int decompressedLength = decompressContext.decompressByteArray(data, 0, uncompressedLength, storedData, offset, storedLength);
+            if (decompressedLength != uncompressedLength)
+                throw new IOException(String.format("A block decompressed to %d bytes instead of %d!", decompressedLength, uncompressedLength));
+        }
+        catch (ZstdException exception)
+        {
+            throw new IOException("A block of the archive is corrupt!", exception);
+        }
+
+        return data;
+    }
+
+    private static byte[] inflate(byte[] storedData, int offset, int storedLength, int uncompressedLength) throws IOException
+    {
+        byte[] data = new byte[uncompressedLength];
+
+        Inflater inflater = THREAD_INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(storedData, offset, storedLength);
+
+        try
+        {
+            int decompressedLength = 0;
+            while (decompressedLength < uncompressedLength && !inflater.finished())
+            {
+                int inflatedLength = inflater.inflate(data, decompressedLength, uncompressedLength - decompressedLength);
+                if (inflatedLength == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+
+                decompressedLength += inflatedLength;
+            }
+
+            if (decompressedLength != uncompressedLength)
+                throw new IOException(String.format("A block decompressed to %d bytes instead of %d!", decompressedLength, uncompressedLength));
+        }
+        catch (DataFormatException exception)
+        {
+            throw new IOException("A block of the archive is corrupt!", exception);
+        }
+
+        return data;
+    }
+
+    private static byte[] getOutputBuffer(int minimumLength)
+    {
+        byte[] outputBuffer = THREAD_OUTPUT_BUFFERS.get();
+        if (outputBuffer.length < minimumLength)
+        {
+            outputBuffer = new byte[minimumLength];
+            THREAD_OUTPUT_BUFFERS.set(outputBuffer);
+        }
+
+        return outputBuffer;
+    }
+
+    private static boolean loadZstd()
+    {
+        try
+        {
+            Native.load();
+
+            return true;
+        }
+        catch (LinkageError error)
+        {
+            WorldbackMachineEngine.LOGGER.warn("zstd isn't available on this platform, so small files will be packed with DEFLATE instead", error);
+
+            return false;
+        }
+    }
+
+    /**
+     * A block as it's stored in an archive.
+     *
+     * @param compression        How the block is compressed
+     * @param dictionaryId       The ID of the dictionary the block was compressed with, or 0 if it wasn't compressed with one
+     * @param data               The block's stored bytes
+     * @param uncompressedLength The length of the block's contents
+     * @param crc32c             The CRC32C checksum of the block's contents
+     */
+    record EncodedBlock(BlockCompression compression, int dictionaryId, byte[] data, int uncompressedLength, int crc32c)
+    {
+    }
+
+    private static class ZstdContexts
+    {
+        private final ZstdCompressCtx compressContext = new ZstdCompressCtx();
+        private final ZstdDecompressCtx decompressContext = new ZstdDecompressCtx();
+        private @Nullable BlockDictionary compressDictionary;
+        private @Nullable BlockDictionary decompressDictionary;
+
+        private ZstdCompressCtx getCompressContext(@Nullable BlockDictionary dictionary)
+        {
+            if (dictionary != this.compressDictionary)
+            {
+                // Resetting the context is the only way to unload its dictionary, and takes its level along with it
+                this.compressContext.reset();
+
+                if (dictionary != null)
+                    this.compressContext.loadDict(dictionary.contents());
+
+                this.compressDictionary = dictionary;
+            }
+
+            return this.compressContext;
+        }
+
+        private ZstdDecompressCtx getDecompressContext(@Nullable BlockDictionary dictionary)
+        {
+            if (dictionary != this.decompressDictionary)
+            {
+                this.decompressContext.reset();
+
+                if (dictionary != null)
+                    this.decompressContext.loadDict(dictionary.contents());
+
+                this.decompressDictionary = dictionary;
+            }
+
+            return this.decompressContext;
+        }
+    }
+}
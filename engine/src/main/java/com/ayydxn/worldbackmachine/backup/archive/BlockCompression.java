@@ -0,0 +1,62 @@
+package com.ayydxn.worldbackmachine.backup.archive;
+
+import java.io.IOException;
+
+/**
+ * How a block of a {@link BlockArchive block archive} is compressed.
+ *
+ * @author Ayydxn
+ */
+public enum BlockCompression
+{
+    /**
+     * Stored as it is, for blocks which wouldn't get any smaller.
+     */
+    STORED((byte) 0),
+
+    /**
+     * Compressed as a raw DEFLATE stream.
+     */
+    DEFLATE((byte) 1),
+
+    /**
+     * Compressed as a zstd frame, optionally with one of the archive's dictionaries. Solid blocks of small files are compressed this way.
+     */
+    ZSTD((byte) 2);
+
+    private final byte id;
+
+    BlockCompression(byte id)
+    {
+        this.id = id;
+    }
+
+    /**
+     * Gets the compression a block of an archive was recorded with.
+     *
+     * @param id The ID stored for the block
+     * @throws IOException If the ID isn't that of any known compression
+     * @return The block's compression
+     */
+    static BlockCompression fromId(byte id) throws IOException
+    {
+        for (BlockCompression compression : values())
+        {
+            if (compression.id == id)
+                return compression;
+        }
+
+        throw new IOException(String.format("The archive has a block with an unknown compression (%d)!", id));
+    }
+
+    /**
+     * Gets the ID a block compressed this way is recorded with. The IDs of {@link #STORED} and {@link #DEFLATE} match the flag
+     * version 1 archives recorded for whether a block was compressed, so their blocks can be read the same way.
+     *
+     * @return The compression's ID
+     */
+    byte getId()
+    {
+        return this.id;
+    }
+}
@@ -0,0 +1,76 @@
+package com.ayydxn.worldbackmachine.backup.archive;
+
+import com.ayydxn.worldbackmachine.engine.WorldbackMachineEngine;
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.github.luben.zstd.ZstdException;
+import org.jspecify.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * A zstd dictionary stored in a {@link BlockArchive block archive}, which its solid blocks are compressed with.
+ * <p>
+ * Small files on their own leave zstd little to learn from, so a dictionary is trained on samples of the files being packed, such as the
+ * JSON of every player's stats and advancements. The dictionary is stored in the archive it was trained for, so the archive can always
+ * be extracted without anything else.
+ *
+ * @param id       The dictionary's ID, which zstd picks when training it and records in every frame compressed with it
+ * @param contents The dictionary itself
+ *
+ * @author Ayydxn
+ */
+record BlockDictionary(int id, byte[] contents)
+{
+    static final int MAX_DICTIONARY_SIZE = 64 * 1024;
+    static final int MAX_SAMPLE_BYTES = 8 * 1024 * 1024;
+
+    // zstd can't train anything useful out of only a handful of samples, and fails outright with too few
+    private static final int MIN_SAMPLE_COUNT = 32;
+
+    /**
+     * Trains a dictionary out of samples of the files it'll compress.
+     *
+     * @param samples The contents of the sampled files, of which only the first {@value #MAX_SAMPLE_BYTES} bytes are used
+     * @return The trained dictionary, or null if there weren't enough samples or zstd couldn't train one out of them
+     */
+    static @Nullable BlockDictionary train(List<byte[]> samples)
+    {
+        if (samples.size() < MIN_SAMPLE_COUNT || !BlockCodec.IS_ZSTD_AVAILABLE)
+            return null;
+
+        ZstdDictTrainer dictionaryTrainer = new ZstdDictTrainer(MAX_SAMPLE_BYTES, MAX_DICTIONARY_SIZE);
+
+        for (byte[] sample : samples)
+        {
+            if (!dictionaryTrainer.addSample(sample))
+                break;
+        }
+
+        try
+        {
+            byte[] contents = dictionaryTrainer.trainSamples();
+            int id = (int) Zstd.getDictIdFromDict(contents);
+
+            // Frames only record the IDs of trained dictionaries, so anything else couldn't be told apart from having no dictionary
+            return id != 0 ? new BlockDictionary(id, contents) : null;
+        }
+        catch (ZstdException exception)
+        {
+            WorldbackMachineEngine.LOGGER.warn("Failed to train a dictionary out of {} files. Packing them without one", samples.size(), exception);
+
+            return null;
+        }
+    }
+
+    /**
+     * Where a dictionary is stored within an archive, as recorded by the archive's index.
+     *
+     * @param id            The dictionary's ID
+     * @param archiveOffset The offset of the dictionary's contents within the archive
+     * @param length        The length of the dictionary's contents
+     */
+    record Location(int id, long archiveOffset, int length)
+    {
+    }
+}
@@ -0,0 +1,327 @@
+package com.ayydxn.worldbackmachine.backup.archive;
+
+import com.ayydxn.worldbackmachine.backup.io.PooledFileIO;
+import com.ayydxn.worldbackmachine.engine.WorldbackMachineEngine;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * A local cache of the compressed bytes of a world's files, so files that haven't changed since the last backup are never compressed again.
+ * <p>
+ * Each file is cached as a raw DEFLATE stream alongside the CRC-32 and sizes a ZIP entry needs, which lets the {@link ZipArchiveWriter} copy it into
+ * a new archive as it is. Archives built this way are still complete on their own, but only cost as much as compressing the files that changed.
+ * <p>
+ * A file is looked up by its path, size and modification time first. If those don't match, or the file was modified too close to when it was
+ * cached to be sure it hasn't changed since, its contents are hashed and it's looked up by its SHA-256 digest instead. This still finds files that
+ * were copied into a snapshot without their modification time, or were rewritten without changing, and only costs reading them rather than compressing them.
+ * Files that do have to be compressed are hashed again as they're compressed, so the checksums cached for them always match their compressed bytes,
+ * even if they changed after they were first hashed.
+ * <p>
+ * Every world and tier has a cache of its own. Compressed files are stored by their digest and compression level, and once an archive has been
+ * {@link #save() saved}, the ones the archive didn't use are deleted, so a cache holds roughly one compressed copy of the files it was last used for.
+ *
+ * @author Ayydxn
+ */
+public class CompressedEntryCache
+{
+    /**
+     * The smallest file that's cached. Smaller files take less time to compress than to look up.
+     */
+    public static final long MIN_CACHED_FILE_SIZE = 64L * 1024L;
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final String INDEX_FILE_NAME = "index.json";
+    private static final String BLOB_EXTENSION = ".deflate";
+
+    // Some file systems only store modification times to the nearest 2 seconds
+    private static final long MODIFICATION_TIME_GRANULARITY_MILLIS = TimeUnit.SECONDS.toMillis(2L);
+
+    private final Path cacheDirectory;
+    private final PooledFileIO pooledFileIO;
+
+    // Path of a file within the world -> What it was last cached as
+    private final Map<String, CachedEntry> cachedEntries;
+
+    // Name of a blob -> An entry whose compressed bytes are stored in it
+    private final Map<String, CachedEntry> entriesByBlobName = Maps.newConcurrentMap();
+
+    // Paths looked up since the cache was opened, which are the only ones kept once it's saved
+    private final Set<String> usedNames = Sets.newConcurrentHashSet();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public CompressedEntryCache(Path cacheDirectory, PooledFileIO pooledFileIO) throws IOException
+    {
+        this.cacheDirectory = cacheDirectory;
+        this.pooledFileIO = pooledFileIO;
+
+        Files.createDirectories(cacheDirectory);
+
+        this.cachedEntries = this.loadIndex();
+        this.cachedEntries.values().forEach(cachedEntry -> this.entriesByBlobName.put(this.getBlobName(cachedEntry), cachedEntry));
+    }
+
+    /**
+     * Gets a file's compressed bytes, compressing and caching them if the file isn't cached or has changed.
+     * <p>
+     * This may be called for different files from several threads at once.
+     *
+     * @param name             The path of the file within the world, using forward slashes
+     * @param source           The file
+     * @param compressionLevel The DEFLATE level to compress the file at
+     * @throws IOException If reading or compressing the file fails
+     * @return The file's cached entry and the path of its compressed bytes
+     */
+    public CompressedEntry getOrCompress(String name, Path source, int compressionLevel) throws IOException
+    {
+        this.usedNames.add(name);
+
+        BasicFileAttributes fileAttributes = Files.readAttributes(source, BasicFileAttributes.class);
+        long lastModifiedMillis = fileAttributes.lastModifiedTime().toMillis();
+        long readStartMillis = System.currentTimeMillis();
+
+        CachedEntry cachedEntry = this.cachedEntries.get(name);
+        if (cachedEntry != null && cachedEntry.compressionLevel() == compressionLevel && cachedEntry.size() == fileAttributes.size() &&
+                cachedEntry.lastModifiedMillis() == lastModifiedMillis && this.isBlobIntact(cachedEntry))
+        {
+            // A file written in the same tick it was cached in could have changed without its modification time changing
+            if (lastModifiedMillis < cachedEntry.cachedAtMillis() - MODIFICATION_TIME_GRANULARITY_MILLIS)
+            {
+                this.hitCount.incrementAndGet();
+
+                return new CompressedEntry(cachedEntry, this.getBlobPath(cachedEntry.sha256(), compressionLevel));
+            }
+        }
+
+        // Hash the file and look for the same contents, which also finds files that were renamed or copied elsewhere in the world
+        CRC32 checksum = new CRC32();
+        MessageDigest sha256Digest = newSha256Digest();
+        long size = this.pooledFileIO.copy(source, new CheckedOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), sha256Digest), checksum));
+        String sha256 = HexFormat.of().formatHex(sha256Digest.digest());
+
+        Path blobPath = this.getBlobPath(sha256, compressionLevel);
+        CachedEntry matchingEntry = this.entriesByBlobName.get(blobPath.getFileName().toString());
+
+        if (matchingEntry != null && this.isBlobIntact(matchingEntry))
+        {
+            this.hitCount.incrementAndGet();
+
+            CachedEntry updatedEntry = new CachedEntry(size, lastModifiedMillis, readStartMillis, sha256, checksum.getValue(), matchingEntry.compressedSize(),
+                    compressionLevel);
+            this.putEntry(name, updatedEntry);
+
+            return new CompressedEntry(updatedEntry, blobPath);
+        }
+
+        this.missCount.incrementAndGet();
+
+        CachedEntry compressedEntry = this.compress(source, lastModifiedMillis, readStartMillis, compressionLevel);
+        this.putEntry(name, compressedEntry);
+
+        return new CompressedEntry(compressedEntry, this.getBlobPath(compressedEntry.sha256(), compressionLevel));
+    }
+
+    /**
+     * Saves the cache, keeping only the files that were looked up since it was opened and deleting the compressed bytes nothing uses anymore.
+     * <p>
+     * This should only be called once an archive was written in full, as any file it didn't get to would be dropped from the cache.
+     *
+     * @throws IOException If saving the cache's index fails
+     */
+    public void save() throws IOException
+    {
+        this.cachedEntries.keySet().retainAll(this.usedNames);
+
+        Set<String> referencedBlobNames = Sets.newHashSet();
+        this.cachedEntries.values().forEach(cachedEntry -> referencedBlobNames.add(this.getBlobName(cachedEntry)));
+
+        this.entriesByBlobName.keySet().retainAll(referencedBlobNames);
+
+        File[] blobFiles = this.cacheDirectory.toFile().listFiles((directory, fileName) -> fileName.endsWith(BLOB_EXTENSION) ||
+                fileName.endsWith(".tmp"));
+
+        if (blobFiles != null)
+        {
+            for (File blobFile : blobFiles)
+            {
+                if (!referencedBlobNames.contains(blobFile.getName()))
+                    blobFile.delete();
+            }
+        }
+
+        Path temporaryIndexPath = this.cacheDirectory.resolve(INDEX_FILE_NAME + ".tmp");
+
+        try (Writer indexWriter = Files.newBufferedWriter(temporaryIndexPath))
+        {
+            GSON.toJson(this.cachedEntries, indexWriter);
+        }
+
+        Files.move(temporaryIndexPath, this.cacheDirectory.resolve(INDEX_FILE_NAME), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public long getHitCount()
+    {
+        return this.hitCount.get();
+    }
+
+    public long getMissCount()
+    {
+        return this.missCount.get();
+    }
+
+    private CachedEntry compress(Path source, long lastModifiedMillis, long cachedAtMillis, int compressionLevel) throws IOException
+    {
+        // Compressed into a temporary file first, so a blob is never left half-written
+        Path temporaryBlobPath = Files.createTempFile(this.cacheDirectory, "blob-", ".tmp");
+        Deflater deflater = new Deflater(compressionLevel, true);
+
+        try
+        {
+            // The checksums are taken from the same bytes that are compressed, as the file may have changed since it was hashed to be looked up
+            CRC32 checksum = new CRC32();
+            MessageDigest sha256Digest = newSha256Digest();
+            long size;
+
+            try (OutputStream compressingOutputStream = new CheckedOutputStream(new DigestOutputStream(new DeflaterOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporaryBlobPath)), deflater, 64 * 1024), sha256Digest), checksum))
+            {
+                size = this.pooledFileIO.copy(source, compressingOutputStream);
+            }
+
+            String sha256 = HexFormat.of().formatHex(sha256Digest.digest());
+            long compressedSize = deflater.getBytesWritten();
+            Path blobPath = this.getBlobPath(sha256, compressionLevel);
+
+            try
+            {
+                Files.move(temporaryBlobPath, blobPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (IOException exception)
+            {
+                // Another thread compressing a file with the same contents got there first, which leaves the same bytes in place
+                if (blobPath.toFile().length() != compressedSize)
+                    throw exception;
+            }
+
+            return new CachedEntry(size, lastModifiedMillis, cachedAtMillis, sha256, checksum.getValue(), compressedSize, compressionLevel);
+        }
+        finally
+        {
+            deflater.end();
+            Files.deleteIfExists(temporaryBlobPath);
+        }
+    }
+
+    private void putEntry(String name, CachedEntry cachedEntry)
+    {
+        this.cachedEntries.put(name, cachedEntry);
+        this.entriesByBlobName.put(this.getBlobName(cachedEntry), cachedEntry);
+    }
+
+    private boolean isBlobIntact(CachedEntry cachedEntry)
+    {
+        // A blob that was deleted or cut short by hand is compressed again rather than copied into an archive
+        return this.getBlobPath(cachedEntry.sha256(), cachedEntry.compressionLevel()).toFile().length() == cachedEntry.compressedSize();
+    }
+
+    private Path getBlobPath(String sha256, int compressionLevel)
+    {
+        return this.cacheDirectory.resolve(sha256 + "-" + compressionLevel + BLOB_EXTENSION);
+    }
+
+    private String getBlobName(CachedEntry cachedEntry)
+    {
+        return cachedEntry.sha256() + "-" + cachedEntry.compressionLevel() + BLOB_EXTENSION;
+    }
+
+    private Map<String, CachedEntry> loadIndex() throws IOException
+    {
+        Path indexPath = this.cacheDirectory.resolve(INDEX_FILE_NAME);
+        if (Files.notExists(indexPath))
+            return Maps.newConcurrentMap();
+
+        try (Reader indexReader = Files.newBufferedReader(indexPath))
+        {
+            Map<String, CachedEntry> loadedEntries = GSON.fromJson(indexReader, new TypeToken<Map<String, CachedEntry>>() {}.getType());
+            Map<String, CachedEntry> cachedEntries = Maps.newConcurrentMap();
+
+            if (loadedEntries != null)
+                cachedEntries.putAll(loadedEntries);
+
+            return cachedEntries;
+        }
+        catch (JsonParseException exception)
+        {
+            // A corrupt index only costs us what was cached, so start over rather than failing
+            WorldbackMachineEngine.LOGGER.warn("The compressed entry cache at '{}' is corrupt. Every file will be compressed again", this.cacheDirectory);
+
+            return Maps.newConcurrentMap();
+        }
+    }
+
+    private static MessageDigest newSha256Digest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException exception)
+        {
+            throw new IllegalStateException("SHA-256 is not available!", exception);
+        }
+    }
+
+    /**
+     * What a file was last cached as.
+     *
+     * @param size               The size of the file in bytes
+     * @param lastModifiedMillis When the file was last modified
+     * @param cachedAtMillis     When the file was read to be cached
+     * @param sha256             The hex-encoded SHA-256 digest of the file's contents
+     * @param crc32              The CRC-32 of the file's contents
+     * @param compressedSize     The size of the file's compressed bytes
+     * @param compressionLevel   The DEFLATE level the file was compressed at
+     */
+    public record CachedEntry(long size, long lastModifiedMillis, long cachedAtMillis, String sha256, long crc32, long compressedSize, int compressionLevel)
+    {
+    }
+
+    /**
+     * A file's cached entry, along with where its compressed bytes are.
+     *
+     * @param cachedEntry What the file is cached as
+     * @param blobPath    The file holding the compressed bytes, which is a raw DEFLATE stream with no header
+     */
+    public record CompressedEntry(CachedEntry cachedEntry, Path blobPath)
+    {
+    }
+}
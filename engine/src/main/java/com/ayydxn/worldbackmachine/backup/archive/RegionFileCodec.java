@@ -0,0 +1,316 @@
+package com.ayydxn.worldbackmachine.backup.archive;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import com.google.common.io.ByteStreams;
+import org.jspecify.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Transcodes Anvil region files into a form that compresses far better, and rebuilds region files out of it.
+ * <p>
+ * A region file stores each of its chunks as its own zlib stream, padded out to 4 KiB sectors, so generic compressors only see
+ * already-compressed bytes and can't make use of how alike neighbouring chunks are. Transcoding inflates every chunk's NBT, drops
+ * the padding and any unused sectors, and compresses the chunks in order as a single zstd stream, which does find what they have in common.
+ * <p>
+ * Rebuilding a region file compresses each chunk the way the game does and lays them out one after another, so the rebuilt file
+ * holds the same chunks and timestamps, but isn't necessarily byte-for-byte the same as the original. Files that can't be parsed
+ * as region files, such as empty or corrupt ones, are kept exactly as they are instead.
+ * <p>
+ * The transcoded form is laid out as follows, with every number stored big-endian, and all of it compressed as one zstd stream:
+ * <pre>
+ * header         "WBMR", version (1 byte), layout (1 byte)
+ * raw layout:    The file's bytes, as they are
+ * region layout: Every chunk's timestamp (4096 bytes), number of chunks (4 bytes), then for every chunk in order of its index:
+ *                its index (2 bytes), compression type (1 byte), whether its payload was inflated (1 byte), payload length (4 bytes), payload
+ * </pre>
+ *
+ * @author Ayydxn
+ */
+final class RegionFileCodec
+{
+    private static final byte[] MAGIC = { 'W', 'B', 'M', 'R' };
+    private static final byte VERSION = 1;
+
+    private static final byte RAW_LAYOUT = 0;
+    private static final byte REGION_LAYOUT = 1;
+
+    private static final int SECTOR_SIZE = 4096;
+    private static final int CHUNKS_PER_REGION = 1024;
+    private static final int HEADER_SIZE = SECTOR_SIZE * 2;
+    private static final int CHUNK_HEADER_SIZE = Integer.BYTES + 1;
+    private static final int MAX_SECTORS_PER_CHUNK = 255;
+
+    private static final int GZIP_COMPRESSION = 1;
+    private static final int ZLIB_COMPRESSION = 2;
+    private static final int EXTERNAL_CHUNK_FLAG = 0x80;
+
+    // Chunks close to the most a region file can hold might no longer fit once they're compressed again, so they're kept as they are
+    private static final int MAX_INFLATED_CHUNK_SIZE = (MAX_SECTORS_PER_CHUNK - 8) * SECTOR_SIZE;
+
+    // Big enough to find what neighbouring rows of chunks have in common, while bounding how much memory each region being extracted takes
+    private static final int ZSTD_WINDOW_LOG = 23;
+
+    private RegionFileCodec()
+    {
+    }
+
+    /**
+     * Transcodes a region file.
+     *
+     * @param regionFile       The region file to transcode
+     * @param outputStream     The stream to write the transcoded region to, which is closed once it's written
+     * @param compressionLevel The zstd level to compress the transcoded region at
+     * @throws IOException If reading the region file or writing the transcoded region fails
+     */
+    static void encode(Path regionFile, OutputStream outputStream, int compressionLevel) throws IOException
+    {
+        try (FileChannel fileChannel = FileChannel.open(regionFile, StandardOpenOption.READ);
+             ZstdOutputStream zstdOutputStream = new ZstdOutputStream(new BufferedOutputStream(outputStream), compressionLevel))
+        {
+            zstdOutputStream.setWindowLog(ZSTD_WINDOW_LOG);
+
+            DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(zstdOutputStream));
+            dataOutputStream.write(MAGIC);
+            dataOutputStream.writeByte(VERSION);
+
+            Chunk[] chunks = readChunks(fileChannel);
+
+            if (chunks == null)
+            {
+                dataOutputStream.writeByte(RAW_LAYOUT);
+
+                ByteStreams.copy(Channels.newInputStream(fileChannel.position(0L)), dataOutputStream);
+            }
+            else
+            {
+                dataOutputStream.writeByte(REGION_LAYOUT);
+                dataOutputStream.write(readFully(fileChannel, SECTOR_SIZE, SECTOR_SIZE));
+                dataOutputStream.writeInt((int) Arrays.stream(chunks).filter(chunk -> chunk != null).count());
+
+                for (int chunkIndex = 0; chunkIndex < CHUNKS_PER_REGION; chunkIndex++)
+                {
+                    Chunk chunk = chunks[chunkIndex];
+                    if (chunk == null)
+                        continue;
+
+                    byte[] inflatedPayload = inflate(chunk);
+
+                    dataOutputStream.writeShort(chunkIndex);
+                    dataOutputStream.writeByte(chunk.compressionType());
+                    dataOutputStream.writeBoolean(inflatedPayload != null);
+
+                    byte[] payload = inflatedPayload != null ? inflatedPayload : chunk.payload();
+                    dataOutputStream.writeInt(payload.length);
+                    dataOutputStream.write(payload);
+                }
+            }
+
+            dataOutputStream.flush();
+        }
+    }
+
+    /**
+     * Rebuilds a region file out of its transcoded form.
+     *
+     * @param inputStream The stream of the transcoded region, which is closed once it's read
+     * @param destination Where to write the region file to, which is replaced if it already exists
+     * @throws IOException If reading the transcoded region fails, it's corrupt, or writing the region file fails
+     */
+    static void decode(InputStream inputStream, Path destination) throws IOException
+    {
+        try (DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(new ZstdInputStream(inputStream)));
+             FileChannel fileChannel = FileChannel.open(destination, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            byte[] magic = new byte[MAGIC.length];
+            dataInputStream.readFully(magic);
+
+            if (!Arrays.equals(magic, MAGIC))
+                throw new IOException("The region file wasn't transcoded by Worldback Machine!");
+
+            byte version = dataInputStream.readByte();
+            if (version != VERSION)
+                throw new IOException(String.format("The region file was transcoded with an unsupported version (%d)!", version));
+
+            byte layout = dataInputStream.readByte();
+
+            if (layout == RAW_LAYOUT)
+            {
+                ByteStreams.copy(dataInputStream, Channels.newOutputStream(fileChannel));
+                return;
+            }
+
+            if (layout != REGION_LAYOUT)
+                throw new IOException(String.format("The region file was transcoded with an unknown layout (%d)!", layout));
+
+            byte[] timestamps = new byte[SECTOR_SIZE];
+            dataInputStream.readFully(timestamps);
+
+            ByteBuffer locations = ByteBuffer.allocate(SECTOR_SIZE);
+            boolean[] isChunkPresent = new boolean[CHUNKS_PER_REGION];
+            int chunkCount = dataInputStream.readInt();
+            int sectorOffset = HEADER_SIZE / SECTOR_SIZE;
+
+            if (chunkCount < 0 || chunkCount > CHUNKS_PER_REGION)
+                throw new IOException("The transcoded region file is corrupt!");
+
+            for (int chunkNumber = 0; chunkNumber < chunkCount; chunkNumber++)
+            {
+                int chunkIndex = dataInputStream.readUnsignedShort();
+                int compressionType = dataInputStream.readUnsignedByte();
+                boolean isInflated = dataInputStream.readBoolean();
+                int payloadLength = dataInputStream.readInt();
+
+                if (chunkIndex >= CHUNKS_PER_REGION || isChunkPresent[chunkIndex] || payloadLength < 0)
+                    throw new IOException("The transcoded region file is corrupt!");
+
+                byte[] payload = new byte[payloadLength];
+                dataInputStream.readFully(payload);
+
+                if (isInflated)
+                    payload = deflate(payload, compressionType);
+
+                // Each chunk is stored as its length, which counts its compression type, then its compression type and its payload
+                ByteBuffer chunkBuffer = ByteBuffer.allocate(CHUNK_HEADER_SIZE + payload.length);
+                chunkBuffer.putInt(payload.length + 1);
+                chunkBuffer.put((byte) compressionType);
+                chunkBuffer.put(payload);
+                chunkBuffer.flip();
+
+                int sectorCount = (chunkBuffer.remaining() + SECTOR_SIZE - 1) / SECTOR_SIZE;
+                if (sectorCount > MAX_SECTORS_PER_CHUNK)
+                    throw new IOException(String.format("Chunk %d of the region file no longer fits into it!", chunkIndex));
+
+                BlockArchiveExtractor.writeFully(fileChannel, chunkBuffer.array(), (long) sectorOffset * SECTOR_SIZE);
+
+                locations.putInt(chunkIndex * Integer.BYTES, (sectorOffset << 8) | sectorCount);
+                isChunkPresent[chunkIndex] = true;
+                sectorOffset += sectorCount;
+            }
+
+            BlockArchiveExtractor.writeFully(fileChannel, locations.array(), 0L);
+            BlockArchiveExtractor.writeFully(fileChannel, timestamps, SECTOR_SIZE);
+
+            // The game expects region files to be made of whole sectors, so the last chunk is padded out
+            long fileSize = (long) sectorOffset * SECTOR_SIZE;
+            if (fileChannel.size() < fileSize)
+                BlockArchiveExtractor.writeFully(fileChannel, new byte[] { 0 }, fileSize - 1);
+        }
+        catch (EOFException exception)
+        {
+            throw new IOException("The transcoded region file is truncated!", exception);
+        }
+    }
+
+    /**
+     * Reads every chunk of a region file.
+     *
+     * @param fileChannel The region file
+     * @throws IOException If reading the region file fails
+     * @return The region's chunks by their index, with null for chunks that were never generated, or null if it isn't a valid region file
+     */
+    private static @Nullable Chunk @Nullable [] readChunks(FileChannel fileChannel) throws IOException
+    {
+        long fileSize = fileChannel.size();
+        if (fileSize < HEADER_SIZE)
+            return null;
+
+        ByteBuffer locations = ByteBuffer.wrap(readFully(fileChannel, 0L, SECTOR_SIZE));
+        Chunk[] chunks = new Chunk[CHUNKS_PER_REGION];
+
+        for (int chunkIndex = 0; chunkIndex < CHUNKS_PER_REGION; chunkIndex++)
+        {
+            int location = locations.getInt(chunkIndex * Integer.BYTES);
+            if (location == 0)
+                continue;
+
+            long chunkOffset = (long) (location >>> 8) * SECTOR_SIZE;
+            int sectorCount = location & 0xFF;
+
+            // Anything that doesn't add up is kept exactly as it is, rather than the game's own handling of it being guessed at
+            if (chunkOffset < HEADER_SIZE || sectorCount == 0 || chunkOffset + CHUNK_HEADER_SIZE > fileSize)
+                return null;
+
+            ByteBuffer chunkHeader = ByteBuffer.wrap(readFully(fileChannel, chunkOffset, CHUNK_HEADER_SIZE));
+            int chunkLength = chunkHeader.getInt();
+            int compressionType = chunkHeader.get() & 0xFF;
+
+            if (chunkLength < 1 || chunkLength + Integer.BYTES > (long) sectorCount * SECTOR_SIZE || chunkOffset + Integer.BYTES + chunkLength > fileSize)
+                return null;
+
+            chunks[chunkIndex] = new Chunk(compressionType, readFully(fileChannel, chunkOffset + CHUNK_HEADER_SIZE, chunkLength - 1));
+        }
+
+        return chunks;
+    }
+
+    private static byte @Nullable [] inflate(Chunk chunk)
+    {
+        // Chunks stored in their own files, or compressed in ways the game can be configured to use besides these, are kept as they are
+        if ((chunk.compressionType() & EXTERNAL_CHUNK_FLAG) != 0 || (chunk.compressionType() != GZIP_COMPRESSION && chunk.compressionType() != ZLIB_COMPRESSION))
+            return null;
+
+        try (InputStream inflaterInputStream = chunk.compressionType() == GZIP_COMPRESSION ? new GZIPInputStream(new ByteArrayInputStream(chunk.payload())) :
+                new InflaterInputStream(new ByteArrayInputStream(chunk.payload())))
+        {
+            byte[] inflatedPayload = ByteStreams.toByteArray(ByteStreams.limit(inflaterInputStream, MAX_INFLATED_CHUNK_SIZE + 1L));
+
+            return inflatedPayload.length <= MAX_INFLATED_CHUNK_SIZE ? inflatedPayload : null;
+        }
+        catch (IOException exception)
+        {
+            // A chunk that can't be inflated is corrupt, which is for the game to deal with once it's restored
+            return null;
+        }
+    }
+
+    private static byte[] deflate(byte[] inflatedPayload, int compressionType) throws IOException
+    {
+        ByteArrayOutputStream payloadOutputStream = new ByteArrayOutputStream(inflatedPayload.length / 4);
+
+        try (OutputStream deflaterOutputStream = compressionType == GZIP_COMPRESSION ? new GZIPOutputStream(payloadOutputStream) :
+                new DeflaterOutputStream(payloadOutputStream))
+        {
+            deflaterOutputStream.write(inflatedPayload);
+        }
+
+        return payloadOutputStream.toByteArray();
+    }
+
+    private static byte[] readFully(FileChannel fileChannel, long offset, int length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining())
+        {
+            if (fileChannel.read(buffer, offset + buffer.position()) == -1)
+                throw new EOFException("The region file is shorter than its header says!");
+        }
+
+        return buffer.array();
+    }
+
+    private record Chunk(int compressionType, byte[] payload)
+    {
+    }
+}
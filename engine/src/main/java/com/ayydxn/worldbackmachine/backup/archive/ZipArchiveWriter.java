@@ -0,0 +1,343 @@
+package com.ayydxn.worldbackmachine.backup.archive;
+
+import com.ayydxn.worldbackmachine.backup.io.PooledFileIO;
+import com.google.common.collect.Lists;
+import com.google.common.io.CountingOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a standard ZIP archive, which unlike {@link java.util.zip.ZipOutputStream} can also take entries whose data was already compressed.
+ * <p>
+ * Entries that were compressed ahead of time, such as ones kept by a {@link CompressedEntryCache}, are copied into the archive byte-for-byte
+ * with their sizes and checksum up front. Everything else is compressed as it's written, and followed by a data descriptor holding its sizes and checksum.
+ * Every entry carries the same timestamp and names are encoded as UTF-8, so the same files always produce the same archive.
+ * ZIP64 records are only written once an entry, offset or count no longer fits in the classic format, so archives of most worlds can be read by any tool.
+ * <p>
+ * An entry that fails partway through can't be taken back out of the stream, so once adding one has failed the writer refuses any more entries,
+ * and closing it no longer finishes the archive with a central directory.
+ *
+ * @author Ayydxn
+ */
+public class ZipArchiveWriter implements Closeable
+{
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    private static final int VERSION = 20;
+    private static final int ZIP64_VERSION = 45;
+
+    private static final int DATA_DESCRIPTOR_FLAG = 1 << 3;
+    private static final int UTF8_NAME_FLAG = 1 << 11;
+
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC_VALUE = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    // 2000-01-01 00:00:00 in MS-DOS format, no matter which time zone the archive is written in
+    private static final int DOS_TIME = 0;
+    private static final int DOS_DATE = ((2000 - 1980) << 9) | (1 << 5) | 1;
+
+    private final CountingOutputStream countingOutputStream;
+    private final PooledFileIO pooledFileIO;
+    private final List<WrittenEntry> writtenEntries = Lists.newArrayList();
+    private final ByteBuffer headerBuffer = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+
+    private boolean isClosed = false;
+    private boolean hasFailed = false;
+
+    public ZipArchiveWriter(OutputStream outputStream, PooledFileIO pooledFileIO)
+    {
+        this.countingOutputStream = new CountingOutputStream(new BufferedOutputStream(outputStream));
+        this.pooledFileIO = pooledFileIO;
+    }
+
+    /**
+     * Adds a file to the archive, compressing it as it's written.
+     *
+     * @param name             The path of the file within the archive, using forward slashes
+     * @param source           The file to add
+     * @param compressionLevel The DEFLATE level to compress the file at, or 0 to store it as it is
+     * @throws IOException If reading the file or writing the archive fails
+     * @return The number of bytes the file took up in the archive
+     */
+    public long addFile(String name, Path source, int compressionLevel) throws IOException
+    {
+        this.ensureOpen();
+
+        if (compressionLevel == Deflater.NO_COMPRESSION)
+        {
+            // Stored entries have to declare their size and checksum up front
+            CRC32 checksum = new CRC32();
+            long size = this.pooledFileIO.copy(source, new CheckedOutputStream(OutputStream.nullOutputStream(), checksum));
+
+            this.addRawEntry(name, ZipMethod.STORED, checksum.getValue(), size, size, source);
+
+            return size;
+        }
+
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        long localHeaderOffset = this.countingOutputStream.getCount();
+
+        CRC32 checksum = new CRC32();
+        Deflater deflater = new Deflater(compressionLevel, true);
+        boolean isWritten = false;
+
+        try
+        {
+            this.writeLocalHeader(nameBytes, ZipMethod.DEFLATED, DATA_DESCRIPTOR_FLAG, 0L, 0L, 0L);
+
+            DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(new FilterOutputStream(this.countingOutputStream)
+            {
+                @Override
+                public void write(byte[] buffer, int offset, int length) throws IOException
+                {
+                    this.out.write(buffer, offset, length);
+                }
+
+                @Override
+                public void close()
+                {
+                    // The archive's stream outlives each entry
+                }
+            }, deflater, 64 * 1024);
+
+            this.pooledFileIO.copy(source, new CheckedOutputStream(deflaterOutputStream, checksum));
+            deflaterOutputStream.finish();
+
+            long size = deflater.getBytesRead();
+            long compressedSize = deflater.getBytesWritten();
+
+            this.writeDataDescriptor(checksum.getValue(), size, compressedSize);
+            this.writtenEntries.add(new WrittenEntry(nameBytes, ZipMethod.DEFLATED, DATA_DESCRIPTOR_FLAG, checksum.getValue(), size, compressedSize,
+                    localHeaderOffset));
+
+            isWritten = true;
+
+            return compressedSize;
+        }
+        finally
+        {
+            deflater.end();
+
+            if (!isWritten)
+                this.hasFailed = true;
+        }
+    }
+
+    /**
+     * Adds an entry whose data is already in the form it's stored in, copying it into the archive as it is.
+     *
+     * @param name           The path of the file within the archive, using forward slashes
+     * @param method         How the data is stored
+     * @param crc32          The CRC-32 of the file's uncompressed contents
+     * @param size           The size of the file's uncompressed contents
+     * @param compressedSize The size of the stored data, which has to match the size of {@code storedData}
+     * @param storedData     The file holding the stored data, which for deflated entries is a raw DEFLATE stream with no header
+     * @throws IOException If reading the stored data or writing the archive fails
+     */
+    public void addRawEntry(String name, ZipMethod method, long crc32, long size, long compressedSize, Path storedData) throws IOException
+    {
+        this.ensureOpen();
+
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        long localHeaderOffset = this.countingOutputStream.getCount();
+
+        boolean isWritten = false;
+
+        try
+        {
+            this.writeLocalHeader(nameBytes, method, 0, crc32, size, compressedSize);
+
+            long copiedBytes = this.pooledFileIO.copy(storedData, this.countingOutputStream);
+            if (copiedBytes != compressedSize)
+                throw new IOException(String.format("The stored data of '%s' is %d bytes rather than %d!", name, copiedBytes, compressedSize));
+
+            this.writtenEntries.add(new WrittenEntry(nameBytes, method, 0, crc32, size, compressedSize, localHeaderOffset));
+
+            isWritten = true;
+        }
+        finally
+        {
+            if (!isWritten)
+                this.hasFailed = true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (this.isClosed)
+            return;
+
+        this.isClosed = true;
+
+        try (this.countingOutputStream)
+        {
+            // A directory would make the partial entry look like it belongs to a complete archive
+            if (this.hasFailed)
+                return;
+
+            long centralDirectoryOffset = this.countingOutputStream.getCount();
+
+            for (WrittenEntry writtenEntry : this.writtenEntries)
+                this.writeCentralHeader(writtenEntry);
+
+            long centralDirectorySize = this.countingOutputStream.getCount() - centralDirectoryOffset;
+            long entryCount = this.writtenEntries.size();
+
+            boolean isZip64 = entryCount >= ZIP64_MAGIC_COUNT || centralDirectorySize >= ZIP64_MAGIC_VALUE || centralDirectoryOffset >= ZIP64_MAGIC_VALUE;
+
+            if (isZip64)
+            {
+                long zip64EndOffset = this.countingOutputStream.getCount();
+
+                this.headerBuffer.clear();
+                this.headerBuffer.putInt(ZIP64_END_SIGNATURE).putLong(44L).putShort((short) ZIP64_VERSION).putShort((short) ZIP64_VERSION)
+                        .putInt(0).putInt(0).putLong(entryCount).putLong(entryCount).putLong(centralDirectorySize).putLong(centralDirectoryOffset);
+                this.flushHeaderBuffer();
+
+                this.headerBuffer.clear();
+                this.headerBuffer.putInt(ZIP64_LOCATOR_SIGNATURE).putInt(0).putLong(zip64EndOffset).putInt(1);
+                this.flushHeaderBuffer();
+            }
+
+            this.headerBuffer.clear();
+            this.headerBuffer.putInt(END_SIGNATURE).putShort((short) 0).putShort((short) 0)
+                    .putShort((short) Math.min(entryCount, ZIP64_MAGIC_COUNT)).putShort((short) Math.min(entryCount, ZIP64_MAGIC_COUNT))
+                    .putInt((int) Math.min(centralDirectorySize, ZIP64_MAGIC_VALUE)).putInt((int) Math.min(centralDirectoryOffset, ZIP64_MAGIC_VALUE))
+                    .putShort((short) 0);
+            this.flushHeaderBuffer();
+        }
+    }
+
+    private void writeLocalHeader(byte[] nameBytes, ZipMethod method, int flags, long crc32, long size, long compressedSize) throws IOException
+    {
+        // Local headers only need ZIP64 sizes when the sizes are known up front, as data descriptors grow on their own
+        boolean isZip64 = size >= ZIP64_MAGIC_VALUE || compressedSize >= ZIP64_MAGIC_VALUE;
+
+        this.headerBuffer.clear();
+        this.headerBuffer.putInt(LOCAL_HEADER_SIGNATURE).putShort((short) (isZip64 ? ZIP64_VERSION : VERSION)).putShort((short) (flags | UTF8_NAME_FLAG))
+                .putShort((short) method.getId()).putShort((short) DOS_TIME).putShort((short) DOS_DATE).putInt((int) crc32)
+                .putInt((int) (isZip64 ? ZIP64_MAGIC_VALUE : compressedSize)).putInt((int) (isZip64 ? ZIP64_MAGIC_VALUE : size))
+                .putShort((short) nameBytes.length).putShort((short) (isZip64 ? 20 : 0));
+        this.flushHeaderBuffer();
+
+        this.countingOutputStream.write(nameBytes);
+
+        if (isZip64)
+        {
+            this.headerBuffer.clear();
+            this.headerBuffer.putShort((short) ZIP64_EXTRA_ID).putShort((short) 16).putLong(size).putLong(compressedSize);
+            this.flushHeaderBuffer();
+        }
+    }
+
+    private void writeDataDescriptor(long crc32, long size, long compressedSize) throws IOException
+    {
+        this.headerBuffer.clear();
+        this.headerBuffer.putInt(DATA_DESCRIPTOR_SIGNATURE).putInt((int) crc32);
+
+        if (size >= ZIP64_MAGIC_VALUE || compressedSize >= ZIP64_MAGIC_VALUE)
+            this.headerBuffer.putLong(compressedSize).putLong(size);
+        else
+            this.headerBuffer.putInt((int) compressedSize).putInt((int) size);
+
+        this.flushHeaderBuffer();
+    }
+
+    private void writeCentralHeader(WrittenEntry writtenEntry) throws IOException
+    {
+        boolean hasZip64Size = writtenEntry.size() >= ZIP64_MAGIC_VALUE;
+        boolean hasZip64CompressedSize = writtenEntry.compressedSize() >= ZIP64_MAGIC_VALUE;
+        boolean hasZip64Offset = writtenEntry.localHeaderOffset() >= ZIP64_MAGIC_VALUE;
+
+        // The ZIP64 extra field only holds the values that didn't fit, in this order
+        int zip64FieldCount = (hasZip64Size ? 1 : 0) + (hasZip64CompressedSize ? 1 : 0) + (hasZip64Offset ? 1 : 0);
+        boolean isZip64 = zip64FieldCount > 0;
+
+        this.headerBuffer.clear();
+        this.headerBuffer.putInt(CENTRAL_HEADER_SIGNATURE).putShort((short) (isZip64 ? ZIP64_VERSION : VERSION))
+                .putShort((short) (isZip64 ? ZIP64_VERSION : VERSION)).putShort((short) (writtenEntry.flags() | UTF8_NAME_FLAG))
+                .putShort((short) writtenEntry.method().getId()).putShort((short) DOS_TIME).putShort((short) DOS_DATE).putInt((int) writtenEntry.crc32())
+                .putInt((int) Math.min(writtenEntry.compressedSize(), ZIP64_MAGIC_VALUE)).putInt((int) Math.min(writtenEntry.size(), ZIP64_MAGIC_VALUE))
+                .putShort((short) writtenEntry.nameBytes().length).putShort((short) (isZip64 ? 4 + zip64FieldCount * 8 : 0)).putShort((short) 0)
+                .putShort((short) 0).putShort((short) 0).putInt(0).putInt((int) Math.min(writtenEntry.localHeaderOffset(), ZIP64_MAGIC_VALUE));
+        this.flushHeaderBuffer();
+
+        this.countingOutputStream.write(writtenEntry.nameBytes());
+
+        if (isZip64)
+        {
+            this.headerBuffer.clear();
+            this.headerBuffer.putShort((short) ZIP64_EXTRA_ID).putShort((short) (zip64FieldCount * 8));
+
+            if (hasZip64Size)
+                this.headerBuffer.putLong(writtenEntry.size());
+
+            if (hasZip64CompressedSize)
+                this.headerBuffer.putLong(writtenEntry.compressedSize());
+
+            if (hasZip64Offset)
+                this.headerBuffer.putLong(writtenEntry.localHeaderOffset());
+
+            this.flushHeaderBuffer();
+        }
+    }
+
+    private void flushHeaderBuffer() throws IOException
+    {
+        this.countingOutputStream.write(this.headerBuffer.array(), 0, this.headerBuffer.position());
+    }
+
+    private void ensureOpen() throws IOException
+    {
+        if (this.isClosed)
+            throw new IOException("Tried to add a file to a closed archive!");
+
+        if (this.hasFailed)
+            throw new IOException("Tried to add a file to an archive that an earlier file failed to be added to!");
+    }
+
+    /**
+     * How an entry's data is stored in a ZIP archive.
+     */
+    public enum ZipMethod
+    {
+        STORED(0),
+        DEFLATED(8);
+
+        private final int id;
+
+        ZipMethod(int id)
+        {
+            this.id = id;
+        }
+
+        public int getId()
+        {
+            return this.id;
+        }
+    }
+
+    private record WrittenEntry(byte[] nameBytes, ZipMethod method, int flags, long crc32, long size, long compressedSize, long localHeaderOffset)
+    {
+    }
+}
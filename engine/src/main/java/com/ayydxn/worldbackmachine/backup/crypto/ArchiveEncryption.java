@@ -0,0 +1,95 @@
+package com.ayydxn.worldbackmachine.backup.crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client-side encryption of backup archives, so nothing stored with a cloud storage provider can be read without a key that stays on the player's machine.
+ * <p>
+ * Archives are encrypted with AES-256-GCM as a stage of the pipeline that builds them. Rather than encrypting the archive as a whole,
+ * it's split into {@value #DEFAULT_SEGMENT_SIZE}-byte segments which are each authenticated on their own. This means segments can be
+ * encrypted in parallel across every core, an archive can be decrypted as it streams in, and any part of it can be read and checked
+ * without downloading the rest, which is what remote browsing relies on.
+ *
+ * @author Ayydxn
+ * @see EncryptingOutputStream
+ * @see DecryptingInputStream
+ * @see EncryptedArchiveReader
+ */
+public class ArchiveEncryption
+{
+    /**
+     * The property recording the ID of the key a backup was encrypted with. Backups without it aren't encrypted.
+     */
+    public static final String KEY_ID_PROPERTY = "worldback-machine.key-id";
+
+    /**
+     * The property recording the MD5 digest of a backup's contents before it was encrypted.
+     * <p>
+     * Encrypting the same archive twice never produces the same bytes, so this is what tells whether an encrypted backup has changed.
+     */
+    public static final String CONTENT_MD5_PROPERTY = "worldback-machine.content-md5";
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+
+    private static final int ENCRYPTION_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int MAX_IN_FLIGHT_SEGMENTS = ENCRYPTION_THREADS * 2;
+
+    private static final AtomicInteger ENCRYPTION_THREAD_COUNT = new AtomicInteger();
+    private static final ExecutorService ENCRYPTION_EXECUTOR = Executors.newFixedThreadPool(ENCRYPTION_THREADS, runnable ->
+    {
+        Thread encryptionThread = new Thread(runnable, "WorldbackMachine-Encryption-" + ENCRYPTION_THREAD_COUNT.incrementAndGet());
+        encryptionThread.setDaemon(true);
+
+        return encryptionThread;
+    });
+
+    /**
+     * Wraps a stream so everything written to it is encrypted. The encrypted archive is only complete once the returned stream is closed.
+     *
+     * @param outputStream The stream the encrypted archive is written to
+     * @param backupKey    The key to encrypt the archive with
+     * @throws IOException If writing the archive's header fails
+     * @return The stream the archive's plaintext is written to
+     */
+    public static EncryptingOutputStream encrypt(OutputStream outputStream, BackupKey backupKey) throws IOException
+    {
+        return new EncryptingOutputStream(outputStream, backupKey, DEFAULT_SEGMENT_SIZE, ENCRYPTION_EXECUTOR, MAX_IN_FLIGHT_SEGMENTS);
+    }
+
+    /**
+     * Wraps the stream of an archive so it's decrypted as it's read, if it's encrypted. Plain archives, such as backups made before
+     * encryption was enabled, are passed through as they are.
+     *
+     * @param inputStream      The stream of the archive
+     * @param backupKeyManager The manager holding the key the archive may have been encrypted with
+     * @throws IOException If the archive is encrypted, but the key it was encrypted with isn't available
+     * @return A stream of the archive's plaintext
+     */
+    public static InputStream decryptIfEncrypted(InputStream inputStream, BackupKeyManager backupKeyManager) throws IOException
+    {
+        PushbackInputStream pushbackInputStream = new PushbackInputStream(inputStream, ArchiveHeader.MAGIC.length);
+
+        byte[] leadingBytes = pushbackInputStream.readNBytes(ArchiveHeader.MAGIC.length);
+        pushbackInputStream.unread(leadingBytes);
+
+        return ArchiveHeader.isEncryptedArchive(leadingBytes) ? new DecryptingInputStream(pushbackInputStream, backupKeyManager) : pushbackInputStream;
+    }
+
+    /**
+     * Checks whether a backup is encrypted using the properties stored alongside it.
+     *
+     * @param properties The properties stored alongside the backup
+     * @return True if the backup is encrypted, false otherwise
+     */
+    public static boolean isEncrypted(Map<String, String> properties)
+    {
+        return properties.containsKey(KEY_ID_PROPERTY);
+    }
+}
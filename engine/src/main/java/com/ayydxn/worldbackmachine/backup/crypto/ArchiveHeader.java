@@ -0,0 +1,141 @@
+package com.ayydxn.worldbackmachine.backup.crypto;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * The header at the start of every encrypted archive.
+ * <p>
+ * It's laid out as follows, with every number stored big-endian:
+ * <pre>
+ * magic          4 bytes   "WBME"
+ * version        1 byte
+ * key ID         8 bytes   The ID of the {@link BackupKey} the archive was encrypted with
+ * salt          16 bytes   Random bytes the archive's own key is derived from
+ * nonce prefix   7 bytes   Random bytes every segment's nonce starts with
+ * segment size   4 bytes   The number of plaintext bytes in every segment but the last
+ * </pre>
+ * The whole header is authenticated as part of every segment, so it can't be tampered with either.
+ *
+ * @param keyId       The ID of the key the archive was encrypted with
+ * @param salt        The salt the archive's key is derived from
+ * @param noncePrefix The prefix of every segment's nonce
+ * @param segmentSize The number of plaintext bytes in every segment but the last
+ *
+ * @author Ayydxn
+ */
+record ArchiveHeader(byte[] keyId, byte[] salt, byte[] noncePrefix, int segmentSize)
+{
+    static final byte[] MAGIC = { 'W', 'B', 'M', 'E' };
+    static final byte VERSION = 1;
+
+    static final int SALT_SIZE = 16;
+    static final int NONCE_PREFIX_SIZE = 7;
+    static final int NONCE_SIZE = 12;
+    static final int SIZE = MAGIC.length + 1 + BackupKey.ID_SIZE + SALT_SIZE + NONCE_PREFIX_SIZE + Integer.BYTES;
+
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    /**
+     * Creates the header of a new archive, with a fresh salt and nonce prefix.
+     *
+     * @param backupKey   The key the archive is encrypted with
+     * @param segmentSize The number of plaintext bytes in every segment but the last
+     * @return The new header
+     */
+    static ArchiveHeader create(BackupKey backupKey, int segmentSize)
+    {
+        byte[] salt = new byte[SALT_SIZE];
+        byte[] noncePrefix = new byte[NONCE_PREFIX_SIZE];
+
+        SECURE_RANDOM.nextBytes(salt);
+        SECURE_RANDOM.nextBytes(noncePrefix);
+
+        return new ArchiveHeader(backupKey.getIdBytes(), salt, noncePrefix, segmentSize);
+    }
+
+    /**
+     * Parses a header.
+     *
+     * @param headerBytes At least the first {@link #SIZE} bytes of an archive
+     * @throws IOException If the bytes aren't the header of an encrypted archive this version of the mod can read
+     * @return The parsed header
+     */
+    static ArchiveHeader parse(byte[] headerBytes) throws IOException
+    {
+        if (!isEncryptedArchive(headerBytes))
+            throw new IOException("The archive isn't encrypted by Worldback Machine!");
+
+        if (headerBytes.length < SIZE)
+            throw new IOException("The archive's encryption header is truncated!");
+
+        ByteBuffer headerBuffer = ByteBuffer.wrap(headerBytes, MAGIC.length, SIZE - MAGIC.length);
+
+        byte version = headerBuffer.get();
+        if (version != VERSION)
+            throw new IOException(String.format("The archive was encrypted with an unsupported format version (%d)!", version));
+
+        byte[] keyId = new byte[BackupKey.ID_SIZE];
+        byte[] salt = new byte[SALT_SIZE];
+        byte[] noncePrefix = new byte[NONCE_PREFIX_SIZE];
+
+        headerBuffer.get(keyId).get(salt).get(noncePrefix);
+
+        int segmentSize = headerBuffer.getInt();
+        if (segmentSize <= 0)
+            throw new IOException(String.format("The archive's encryption header has an invalid segment size (%d)!", segmentSize));
+
+        return new ArchiveHeader(keyId, salt, noncePrefix, segmentSize);
+    }
+
+    /**
+     * Checks whether the start of an archive is the header of an encrypted archive.
+     *
+     * @param leadingBytes The first bytes of the archive, of which at least the first 4 are needed
+     * @return True if the archive is encrypted, false if it's a plain archive
+     */
+    static boolean isEncryptedArchive(byte[] leadingBytes)
+    {
+        return leadingBytes.length >= MAGIC.length && Arrays.equals(leadingBytes, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+
+    byte[] toBytes()
+    {
+        return ByteBuffer.allocate(SIZE)
+                .put(MAGIC)
+                .put(VERSION)
+                .put(this.keyId)
+                .put(this.salt)
+                .put(this.noncePrefix)
+                .putInt(this.segmentSize)
+                .array();
+    }
+
+    /**
+     * Builds the nonce of a segment. Binding each segment's index and whether it's the last one into its nonce means segments
+     * can't be reordered, and the archive can't be truncated at a segment boundary, without decryption failing.
+     *
+     * @param segmentIndex  The index of the segment
+     * @param isLastSegment Whether the segment is the archive's last
+     * @return The segment's nonce
+     */
+    byte[] segmentNonce(long segmentIndex, boolean isLastSegment)
+    {
+        if (segmentIndex < 0 || segmentIndex > 0xFFFFFFFFL)
+            throw new IllegalArgumentException(String.format("Archives can't have more than 2^32 segments! (Segment: %d)", segmentIndex));
+
+        return ByteBuffer.allocate(NONCE_SIZE)
+                .put(this.noncePrefix)
+                .putInt((int) segmentIndex)
+                .put((byte) (isLastSegment ? 1 : 0))
+                .array();
+    }
+
+    String getKeyIdHex()
+    {
+        return HexFormat.of().formatHex(this.keyId);
+    }
+}
@@ -0,0 +1,89 @@
+package com.ayydxn.worldbackmachine.backup.crypto;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * A 256-bit key backups are encrypted with, which never leaves the player's machine.
+ * <p>
+ * Archives aren't encrypted with the key directly. Each one gets its own key, derived from this one and a random salt stored in the
+ * archive's header, so the nonces of two archives can never collide no matter how many are encrypted with the same backup key.
+ *
+ * @author Ayydxn
+ * @see BackupKeyManager
+ */
+public final class BackupKey
+{
+    public static final int KEY_SIZE = 32;
+    public static final int ID_SIZE = 8;
+
+    private static final byte[] ID_CONTEXT = "WorldbackMachine key ID".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ARCHIVE_KEY_CONTEXT = "WorldbackMachine archive key".getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[] keyMaterial;
+    private final byte[] id;
+
+    BackupKey(byte[] keyMaterial)
+    {
+        if (keyMaterial.length != KEY_SIZE)
+            throw new IllegalArgumentException(String.format("Backup keys must be %d bytes long, not %d!", KEY_SIZE, keyMaterial.length));
+
+        this.keyMaterial = keyMaterial.clone();
+        this.id = Arrays.copyOf(this.hmac(ID_CONTEXT, new byte[0]), ID_SIZE);
+    }
+
+    /**
+     * Gets the ID of the key, which is stored in the header of every archive encrypted with it so the right key can be found to decrypt it.
+     * <p>
+     * The ID is derived from the key, but reveals nothing about it.
+     *
+     * @return The hex-encoded ID of the key
+     */
+    public String getId()
+    {
+        return HexFormat.of().formatHex(this.id);
+    }
+
+    byte[] getIdBytes()
+    {
+        return this.id.clone();
+    }
+
+    byte[] getKeyMaterial()
+    {
+        return this.keyMaterial.clone();
+    }
+
+    /**
+     * Derives the key a single archive is encrypted with.
+     *
+     * @param salt The random salt stored in the archive's header
+     * @return The archive's key
+     */
+    SecretKey deriveArchiveKey(byte[] salt)
+    {
+        return new SecretKeySpec(this.hmac(ARCHIVE_KEY_CONTEXT, salt), "AES");
+    }
+
+    private byte[] hmac(byte[] context, byte[] data)
+    {
+        try
+        {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(this.keyMaterial, "HmacSHA256"));
+            mac.update(context);
+
+            return mac.doFinal(data);
+        }
+        catch (GeneralSecurityException exception)
+        {
+            // Every Java platform is required to support HMAC-SHA256
+            throw new IllegalStateException(exception);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.ayydxn.worldbackmachine.backup.crypto;
+
+import com.ayydxn.worldbackmachine.engine.WorldbackMachineEngine;
+import com.google.common.collect.Maps;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * Manages the keys backups are encrypted with, which are kept in a local directory and never uploaded.
+ * <p>
+ * The key new backups are encrypted with is stored in {@value #ACTIVE_KEY_FILE_NAME}, and is generated the first time a backup is encrypted.
+ * Any other {@value #KEY_FILE_EXTENSION} files in the directory are only used to decrypt backups, so a key that's been replaced can be
+ * kept around for as long as backups encrypted with it exist. Keys are stored as Base64 text so they're easy to copy somewhere safe.
+ *
+ * @author Ayydxn
+ */
+public class BackupKeyManager
+{
+    public static final String ACTIVE_KEY_FILE_NAME = "backup.key";
+    public static final String KEY_FILE_EXTENSION = ".key";
+
+    private final Path keysDirectory;
+    private final Map<String, BackupKey> keys = Maps.newConcurrentMap();
+
+    private volatile BackupKey activeKey;
+
+    public BackupKeyManager(Path keysDirectory)
+    {
+        this.keysDirectory = keysDirectory;
+    }
+
+    /**
+     * Gets the key new backups are encrypted with, generating one if there isn't one yet.
+     *
+     * @throws IOException If the key can't be read or generated
+     * @return The active key
+     */
+    public BackupKey getActiveKey() throws IOException
+    {
+        BackupKey currentKey = this.activeKey;
+        if (currentKey != null)
+            return currentKey;
+
+        synchronized (this)
+        {
+            if (this.activeKey != null)
+                return this.activeKey;
+
+            Path activeKeyFile = this.keysDirectory.resolve(ACTIVE_KEY_FILE_NAME);
+            BackupKey backupKey = Files.exists(activeKeyFile) ? this.readKey(activeKeyFile) : this.generateKey(activeKeyFile);
+
+            this.keys.put(backupKey.getId(), backupKey);
+            this.activeKey = backupKey;
+
+            return backupKey;
+        }
+    }
+
+    /**
+     * Gets the key with the given ID, which is recorded in every archive encrypted with it.
+     *
+     * @param keyId The hex-encoded ID of the key
+     * @throws IOException If no key in the keys directory has the given ID
+     * @return The key
+     */
+    public BackupKey getKey(String keyId) throws IOException
+    {
+        BackupKey backupKey = this.keys.get(keyId);
+        if (backupKey != null)
+            return backupKey;
+
+        // The key may have been copied into the directory since it was last read
+        this.loadKeys();
+
+        backupKey = this.keys.get(keyId);
+        if (backupKey == null)
+        {
+            throw new IOException(String.format("The backup was encrypted with key '%s', which isn't in '%s'! Copy the key file it was encrypted with there to restore it.",
+                    keyId, this.keysDirectory));
+        }
+
+        return backupKey;
+    }
+
+    private synchronized void loadKeys() throws IOException
+    {
+        if (!Files.isDirectory(this.keysDirectory))
+            return;
+
+        try (DirectoryStream<Path> keyFiles = Files.newDirectoryStream(this.keysDirectory, "*" + KEY_FILE_EXTENSION))
+        {
+            for (Path keyFile : keyFiles)
+            {
+                try
+                {
+                    BackupKey backupKey = this.readKey(keyFile);
+                    this.keys.putIfAbsent(backupKey.getId(), backupKey);
+                }
+                catch (IOException exception)
+                {
+                    WorldbackMachineEngine.LOGGER.warn("Ignoring invalid backup key file '{}': {}", keyFile.getFileName(), exception.getMessage());
+                }
+            }
+        }
+    }
+
+    private BackupKey readKey(Path keyFile) throws IOException
+    {
+        try
+        {
+            return new BackupKey(Base64.getDecoder().decode(Files.readString(keyFile, StandardCharsets.US_ASCII).strip()));
+        }
+        catch (IllegalArgumentException exception)
+        {
+            throw new IOException(String.format("'%s' isn't a valid backup key", keyFile), exception);
+        }
+    }
+
+    private BackupKey generateKey(Path keyFile) throws IOException
+    {
+        byte[] keyMaterial = new byte[BackupKey.KEY_SIZE];
+        new SecureRandom().nextBytes(keyMaterial);
+
+        BackupKey backupKey = new BackupKey(keyMaterial);
+
+        Files.createDirectories(this.keysDirectory);
+
+        // Write the key somewhere only we can read before it's moved into place, so it's never briefly readable by anyone else
+        Path temporaryKeyFile = Files.createTempFile(this.keysDirectory, "backup_", ".tmp");
+
+        try
+        {
+            PosixFileAttributeView posixFileAttributeView = Files.getFileAttributeView(temporaryKeyFile, PosixFileAttributeView.class);
+            if (posixFileAttributeView != null)
+                posixFileAttributeView.setPermissions(PosixFilePermissions.fromString("rw-------"));
+
+            Files.writeString(temporaryKeyFile, Base64.getEncoder().encodeToString(keyMaterial) + System.lineSeparator(), StandardCharsets.US_ASCII);
+
+            // Never replace a key that appeared in the meantime, since backups may already be encrypted with it
+            if (Files.exists(keyFile))
+                throw new FileAlreadyExistsException(keyFile.toString());
+
+            Files.move(temporaryKeyFile, keyFile, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(temporaryKeyFile);
+        }
+
+        WorldbackMachineEngine.LOGGER.warn("Generated backup encryption key '{}' at '{}'. Keep a copy of it somewhere safe, as backups encrypted with it can't be restored without it!",
+                backupKey.getId(), keyFile);
+
+        return backupKey;
+    }
+}
@@ -0,0 +1,106 @@
+package com.ayydxn.worldbackmachine.backup.crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link InputStream} which decrypts an encrypted archive as it's read, such as while it's being downloaded.
+ * <p>
+ * Segments are decrypted one at a time as they arrive, and each one is checked before any of its contents are returned,
+ * so nothing that was tampered with is ever handed to the reader. An archive that was cut short fails to decrypt instead of ending early.
+ *
+ * @author Ayydxn
+ * @see ArchiveEncryption
+ * @see EncryptingOutputStream
+ */
+public class DecryptingInputStream extends InputStream
+{
+    private final InputStream inputStream;
+    private final SegmentCipher segmentCipher;
+    private final int ciphertextSegmentSize;
+
+    // One byte more than a segment is read, which tells us whether the segment is the last one
+    private final byte[] ciphertext;
+    private int ciphertextLength = 0;
+
+    private byte[] plaintext = new byte[0];
+    private int plaintextPosition = 0;
+    private long nextSegmentIndex = 0L;
+    private boolean isLastSegmentRead = false;
+
+    DecryptingInputStream(InputStream inputStream, BackupKeyManager backupKeyManager) throws IOException
+    {
+        ArchiveHeader archiveHeader = ArchiveHeader.parse(inputStream.readNBytes(ArchiveHeader.SIZE));
+
+        this.inputStream = inputStream;
+        this.segmentCipher = new SegmentCipher(archiveHeader, backupKeyManager.getKey(archiveHeader.getKeyIdHex()));
+        this.ciphertextSegmentSize = archiveHeader.segmentSize() + SegmentCipher.TAG_SIZE;
+        this.ciphertext = new byte[this.ciphertextSegmentSize + 1];
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        byte[] singleByte = new byte[1];
+
+        return this.read(singleByte, 0, 1) == -1 ? -1 : singleByte[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException
+    {
+        if (length == 0)
+            return 0;
+
+        while (this.plaintextPosition == this.plaintext.length)
+        {
+            if (this.isLastSegmentRead)
+                return -1;
+
+            this.readNextSegment();
+        }
+
+        int readLength = Math.min(length, this.plaintext.length - this.plaintextPosition);
+
+        System.arraycopy(this.plaintext, this.plaintextPosition, buffer, offset, readLength);
+        this.plaintextPosition += readLength;
+
+        return readLength;
+    }
+
+    @Override
+    public int available()
+    {
+        return this.plaintext.length - this.plaintextPosition;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.inputStream.close();
+    }
+
+    private void readNextSegment() throws IOException
+    {
+        this.ciphertextLength += this.inputStream.readNBytes(this.ciphertext, this.ciphertextLength, this.ciphertext.length - this.ciphertextLength);
+
+        boolean isLastSegment = this.ciphertextLength <= this.ciphertextSegmentSize;
+        int segmentLength = isLastSegment ? this.ciphertextLength : this.ciphertextSegmentSize;
+
+        if (segmentLength < SegmentCipher.TAG_SIZE)
+            throw new IOException("The encrypted archive is truncated!");
+
+        this.plaintext = this.segmentCipher.decrypt(this.nextSegmentIndex++, isLastSegment, this.ciphertext, 0, segmentLength);
+        this.plaintextPosition = 0;
+
+        if (isLastSegment)
+        {
+            this.isLastSegmentRead = true;
+            return;
+        }
+
+        // Keep the byte of the next segment that was read ahead
+        this.ciphertext[0] = this.ciphertext[this.ciphertextSegmentSize];
+        this.ciphertextLength = 1;
+    }
+}
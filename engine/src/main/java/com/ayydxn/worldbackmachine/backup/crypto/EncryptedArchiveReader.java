@@ -0,0 +1,129 @@
+package com.ayydxn.worldbackmachine.backup.crypto;
+
+import java.io.IOException;
+
+/**
+ * Reads arbitrary ranges of an encrypted archive's plaintext, fetching and decrypting only the segments that cover them.
+ * <p>
+ * This is what lets an encrypted backup be browsed remotely: a read of the plaintext is translated into a read of the ciphertext
+ * of the segments it overlaps, each of which can be checked and decrypted on its own.
+ *
+ * @author Ayydxn
+ * @see ArchiveEncryption
+ */
+public class EncryptedArchiveReader
+{
+    private final CiphertextSource ciphertextSource;
+    private final SegmentCipher segmentCipher;
+    private final long ciphertextSize;
+    private final int segmentSize;
+    private final int ciphertextSegmentSize;
+    private final long segmentCount;
+    private final long plaintextSize;
+
+    private EncryptedArchiveReader(CiphertextSource ciphertextSource, SegmentCipher segmentCipher, long ciphertextSize) throws IOException
+    {
+        this.ciphertextSource = ciphertextSource;
+        this.segmentCipher = segmentCipher;
+        this.ciphertextSize = ciphertextSize;
+        this.segmentSize = segmentCipher.getArchiveHeader().segmentSize();
+        this.ciphertextSegmentSize = this.segmentSize + SegmentCipher.TAG_SIZE;
+
+        long segmentsSize = ciphertextSize - ArchiveHeader.SIZE;
+        long lastSegmentSize = segmentsSize % this.ciphertextSegmentSize;
+
+        // Every archive has at least one segment, and a partial last segment still has its tag
+        if (segmentsSize < SegmentCipher.TAG_SIZE || (lastSegmentSize > 0 && lastSegmentSize < SegmentCipher.TAG_SIZE))
+            throw new IOException(String.format("The encrypted archive has an invalid size (%d bytes)!", ciphertextSize));
+
+        this.segmentCount = (segmentsSize + this.ciphertextSegmentSize - 1) / this.ciphertextSegmentSize;
+        this.plaintextSize = segmentsSize - this.segmentCount * SegmentCipher.TAG_SIZE;
+    }
+
+    /**
+     * Opens an encrypted archive by reading its header.
+     *
+     * @param ciphertextSource The source of the archive's encrypted bytes
+     * @param ciphertextSize   The size of the encrypted archive in bytes
+     * @param backupKeyManager The manager holding the key the archive was encrypted with
+     * @throws IOException If the archive isn't encrypted, or the key it was encrypted with isn't available
+     * @return The opened archive
+     */
+    public static EncryptedArchiveReader open(CiphertextSource ciphertextSource, long ciphertextSize, BackupKeyManager backupKeyManager) throws IOException
+    {
+        ArchiveHeader archiveHeader = ArchiveHeader.parse(ciphertextSource.read(0L, (int) Math.min(ciphertextSize, ArchiveHeader.SIZE)));
+        BackupKey backupKey = backupKeyManager.getKey(archiveHeader.getKeyIdHex());
+
+        return new EncryptedArchiveReader(ciphertextSource, new SegmentCipher(archiveHeader, backupKey), ciphertextSize);
+    }
+
+    /**
+     * Reads part of the archive's plaintext.
+     *
+     * @param offset The offset of the first byte to read
+     * @param length The maximum number of bytes to read
+     * @throws IOException If fetching the ciphertext fails, or any of the segments covering the range are corrupt
+     * @return The bytes that were read, which is fewer than {@code length} only if the end of the archive was reached
+     */
+    public byte[] read(long offset, int length) throws IOException
+    {
+        if (offset < 0 || length < 0)
+            throw new IllegalArgumentException(String.format("Invalid range! (Offset: %d, Length: %d)", offset, length));
+
+        int boundedLength = (int) Math.max(0L, Math.min(length, this.plaintextSize - offset));
+        byte[] plaintext = new byte[boundedLength];
+
+        if (boundedLength == 0)
+            return plaintext;
+
+        long firstSegmentIndex = offset / this.segmentSize;
+        long lastSegmentIndex = (offset + boundedLength - 1) / this.segmentSize;
+
+        // Fetch every segment the range overlaps in one read, rather than one read per segment
+        long ciphertextOffset = ArchiveHeader.SIZE + firstSegmentIndex * this.ciphertextSegmentSize;
+        long ciphertextEnd = Math.min(ArchiveHeader.SIZE + (lastSegmentIndex + 1) * this.ciphertextSegmentSize, this.ciphertextSize);
+
+        byte[] ciphertext = this.ciphertextSource.read(ciphertextOffset, (int) (ciphertextEnd - ciphertextOffset));
+        if (ciphertext.length != ciphertextEnd - ciphertextOffset)
+            throw new IOException("The encrypted archive is shorter than its size says!");
+
+        int plaintextPosition = 0;
+
+        for (long segmentIndex = firstSegmentIndex; segmentIndex <= lastSegmentIndex; segmentIndex++)
+        {
+            int segmentOffset = (int) ((segmentIndex - firstSegmentIndex) * this.ciphertextSegmentSize);
+            int segmentLength = Math.min(this.ciphertextSegmentSize, ciphertext.length - segmentOffset);
+
+            byte[] segmentPlaintext = this.segmentCipher.decrypt(segmentIndex, segmentIndex == this.segmentCount - 1, ciphertext, segmentOffset, segmentLength);
+
+            // Only the first and last segments can be partially covered by the range
+            int segmentStart = segmentIndex == firstSegmentIndex ? (int) (offset - segmentIndex * this.segmentSize) : 0;
+            int copiedLength = Math.min(segmentPlaintext.length - segmentStart, boundedLength - plaintextPosition);
+
+            System.arraycopy(segmentPlaintext, segmentStart, plaintext, plaintextPosition, copiedLength);
+            plaintextPosition += copiedLength;
+        }
+
+        return plaintext;
+    }
+
+    /**
+     * Gets the size of the archive once it's decrypted.
+     *
+     * @return The size of the archive's plaintext in bytes
+     */
+    public long getPlaintextSize()
+    {
+        return this.plaintextSize;
+    }
+
+    /**
+     * A source of an encrypted archive's bytes, such as the {@link com.ayydxn.worldbackmachine.cloud.CloudStorageProvider#readRange(String, long, int)
+     * ranged reads} of the provider it's stored with.
+     */
+    @FunctionalInterface
+    public interface CiphertextSource
+    {
+        byte[] read(long offset, int length) throws IOException;
+    }
+}
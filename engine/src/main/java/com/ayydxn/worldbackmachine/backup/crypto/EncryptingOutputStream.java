@@ -0,0 +1,154 @@
+package com.ayydxn.worldbackmachine.backup.crypto;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * An {@link OutputStream} which encrypts everything written through it into an encrypted archive, using every core available.
+ * <p>
+ * What's written is split into fixed-size segments, which are each encrypted and authenticated on their own by a shared pool of threads.
+ * The encrypted segments are still written out in order, and at most {@code maxInFlightSegments} of them are held in memory at once,
+ * after which writing waits for the oldest one to finish. Because the stream sits directly in the pipeline that builds an archive,
+ * encrypting it doesn't take another pass over the archive on disk.
+ *
+ * @author Ayydxn
+ * @see ArchiveEncryption
+ * @see DecryptingInputStream
+ */
+public class EncryptingOutputStream extends OutputStream
+{
+    private final OutputStream outputStream;
+    private final SegmentCipher segmentCipher;
+    private final Executor encryptionExecutor;
+    private final int segmentSize;
+    private final int maxInFlightSegments;
+    private final Deque<Future<byte[]>> inFlightSegments = new ArrayDeque<>();
+
+    private byte[] segment;
+    private int segmentLength = 0;
+    private long nextSegmentIndex = 0L;
+    private boolean isClosed = false;
+
+    EncryptingOutputStream(OutputStream outputStream, BackupKey backupKey, int segmentSize, Executor encryptionExecutor, int maxInFlightSegments)
+            throws IOException
+    {
+        ArchiveHeader archiveHeader = ArchiveHeader.create(backupKey, segmentSize);
+
+        this.outputStream = outputStream;
+        this.segmentCipher = new SegmentCipher(archiveHeader, backupKey);
+        this.encryptionExecutor = encryptionExecutor;
+        this.segmentSize = segmentSize;
+        this.maxInFlightSegments = Math.max(1, maxInFlightSegments);
+        this.segment = new byte[segmentSize];
+
+        this.outputStream.write(archiveHeader.toBytes());
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        this.write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException
+    {
+        if (this.isClosed)
+            throw new IOException("Tried to write to a closed stream!");
+
+        while (length > 0)
+        {
+            // A full segment is only sent off once more data arrives, since the last segment has to be encrypted as such
+            if (this.segmentLength == this.segmentSize)
+                this.submitSegment(false);
+
+            int copiedLength = Math.min(length, this.segmentSize - this.segmentLength);
+
+            System.arraycopy(buffer, offset, this.segment, this.segmentLength, copiedLength);
+
+            this.segmentLength += copiedLength;
+            offset += copiedLength;
+            length -= copiedLength;
+        }
+    }
+
+    /**
+     * Writes out every segment that has been sent off for encryption. The segment still being filled can't be written until it's full.
+     *
+     * @throws IOException If encrypting or writing a segment fails
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        while (!this.inFlightSegments.isEmpty())
+            this.writeOldestSegment();
+
+        this.outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (this.isClosed)
+            return;
+
+        this.isClosed = true;
+
+        try
+        {
+            this.submitSegment(true);
+            this.flush();
+        }
+        finally
+        {
+            // Don't leave segments encrypting for a stream that failed
+            this.inFlightSegments.forEach(inFlightSegment -> inFlightSegment.cancel(false));
+            this.inFlightSegments.clear();
+
+            this.outputStream.close();
+        }
+    }
+
+    private void submitSegment(boolean isLastSegment) throws IOException
+    {
+        byte[] plaintext = this.segment;
+        int plaintextLength = this.segmentLength;
+        long segmentIndex = this.nextSegmentIndex++;
+
+        this.inFlightSegments.addLast(CompletableFuture.supplyAsync(() -> this.segmentCipher.encrypt(segmentIndex, isLastSegment, plaintext, plaintextLength),
+                this.encryptionExecutor));
+
+        this.segment = new byte[this.segmentSize];
+        this.segmentLength = 0;
+
+        while (this.inFlightSegments.size() > this.maxInFlightSegments)
+            this.writeOldestSegment();
+    }
+
+    private void writeOldestSegment() throws IOException
+    {
+        Future<byte[]> oldestSegment = this.inFlightSegments.removeFirst();
+
+        try
+        {
+            this.outputStream.write(oldestSegment.get());
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while encrypting an archive");
+        }
+        catch (ExecutionException exception)
+        {
+            throw new IOException("Failed to encrypt a segment of the archive", exception.getCause());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.ayydxn.worldbackmachine.backup.crypto;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Encrypts and decrypts the segments of a single archive with AES-256-GCM.
+ * <p>
+ * Each segment is authenticated on its own, so segments can be encrypted in any order on any thread, and a segment can be
+ * decrypted without touching any of the others. Instances are safe to share between threads.
+ *
+ * @author Ayydxn
+ */
+class SegmentCipher
+{
+    static final int TAG_SIZE = 16;
+
+    // Creating a cipher is fairly expensive, so every thread keeps its own and re-initializes it for each segment
+    private static final ThreadLocal<Cipher> THREAD_CIPHERS = ThreadLocal.withInitial(() ->
+    {
+        try
+        {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        }
+        catch (NoSuchAlgorithmException | NoSuchPaddingException exception)
+        {
+            // Every Java platform is required to support AES-GCM
+            throw new IllegalStateException(exception);
+        }
+    });
+
+    private final ArchiveHeader archiveHeader;
+    private final SecretKey archiveKey;
+    private final byte[] headerBytes;
+
+    SegmentCipher(ArchiveHeader archiveHeader, BackupKey backupKey)
+    {
+        this.archiveHeader = archiveHeader;
+        this.archiveKey = backupKey.deriveArchiveKey(archiveHeader.salt());
+        this.headerBytes = archiveHeader.toBytes();
+    }
+
+    /**
+     * Encrypts a segment.
+     *
+     * @param segmentIndex  The index of the segment
+     * @param isLastSegment Whether the segment is the archive's last
+     * @param plaintext     The segment's contents
+     * @param length        The number of bytes of {@code plaintext} in the segment
+     * @return The encrypted segment, followed by its authentication tag
+     */
+    byte[] encrypt(long segmentIndex, boolean isLastSegment, byte[] plaintext, int length)
+    {
+        try
+        {
+            Cipher cipher = this.initCipher(Cipher.ENCRYPT_MODE, segmentIndex, isLastSegment);
+
+            return cipher.doFinal(plaintext, 0, length);
+        }
+        catch (GeneralSecurityException exception)
+        {
+            // Encryption only fails if the cipher was misconfigured, which would be a bug
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * Decrypts a segment and checks it hasn't been tampered with.
+     *
+     * @param segmentIndex  The index of the segment
+     * @param isLastSegment Whether the segment is the archive's last
+     * @param ciphertext    A buffer holding the encrypted segment, followed by its authentication tag
+     * @param offset        The offset of the segment within {@code ciphertext}
+     * @param length        The length of the segment, including its tag
+     * @throws IOException If the segment is corrupt, was tampered with or isn't where it belongs in the archive
+     * @return The segment's contents
+     */
+    byte[] decrypt(long segmentIndex, boolean isLastSegment, byte[] ciphertext, int offset, int length) throws IOException
+    {
+        try
+        {
+            Cipher cipher = this.initCipher(Cipher.DECRYPT_MODE, segmentIndex, isLastSegment);
+
+            return cipher.doFinal(ciphertext, offset, length);
+        }
+        catch (AEADBadTagException exception)
+        {
+            throw new IOException(String.format("Segment %d of the archive is corrupt or has been tampered with!", segmentIndex), exception);
+        }
+        catch (GeneralSecurityException exception)
+        {
+            throw new IOException(String.format("Failed to decrypt segment %d of the archive", segmentIndex), exception);
+        }
+    }
+
+    ArchiveHeader getArchiveHeader()
+    {
+        return this.archiveHeader;
+    }
+
+    private Cipher initCipher(int mode, long segmentIndex, boolean isLastSegment) throws GeneralSecurityException
+    {
+        Cipher cipher = THREAD_CIPHERS.get();
+        cipher.init(mode, this.archiveKey, new GCMParameterSpec(TAG_SIZE * Byte.SIZE, this.archiveHeader.segmentNonce(segmentIndex, isLastSegment)));
+        cipher.updateAAD(this.headerBytes);
+
+        return cipher;
+    }
+}
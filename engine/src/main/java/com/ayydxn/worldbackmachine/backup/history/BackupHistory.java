@@ -0,0 +1,258 @@
+package com.ayydxn.worldbackmachine.backup.history;
+
+import com.ayydxn.worldbackmachine.backup.BackupTier;
+import com.ayydxn.worldbackmachine.engine.WorldbackMachineEngine;
+import com.google.common.collect.Lists;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * A local record of how every recent backup went, which outlives the game's logs.
+ * <p>
+ * The history is a ring of fixed-size binary records in a memory-mapped file. Appending a record only writes its own
+ * {@value #RECORD_SIZE} bytes and the header's record count, so it's cheap enough to do after every backup, and once the ring is full the oldest
+ * records are overwritten. Every record carries a checksum, so a record that was only half written when the game crashed is skipped when reading.
+ * <p>
+ * The file is laid out as follows, with every number stored big-endian:
+ * <pre>
+ * header    "WBMH", version (1 byte), padding (3 bytes), capacity (4 bytes), number of records ever appended (8 bytes), padding (12 bytes)
+ * records   capacity x {@value #RECORD_SIZE} bytes, with record n stored in slot n % capacity
+ * </pre>
+ * If the file can't be opened, the history is left empty and backups carry on without it.
+ *
+ * @author Ayydxn
+ */
+public class BackupHistory
+{
+    /**
+     * The number of records kept by default, which is 512 KiB of history.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    static final int RECORD_SIZE = 128;
+
+    private static final byte[] MAGIC = { 'W', 'B', 'M', 'H' };
+    private static final byte VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int RECORD_COUNT_OFFSET = 12;
+
+    // Offsets within a record, which ends with the CRC32C of everything before it
+    private static final int WORLD_NAME_OFFSET = 68;
+    private static final int MAX_WORLD_NAME_BYTES = 56;
+    private static final int CHECKSUM_OFFSET = WORLD_NAME_OFFSET + MAX_WORLD_NAME_BYTES;
+
+    private final Path historyPath;
+    private int capacity;
+
+    private MappedByteBuffer historyBuffer;
+    private boolean hasFailedToOpen;
+
+    public BackupHistory(Path historyPath)
+    {
+        this(historyPath, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a history stored in a file, which isn't opened until it's first used.
+     *
+     * @param historyPath The file the history is stored in
+     * @param capacity    The number of records to keep if the file doesn't exist yet. Existing files keep the capacity they were created with.
+     */
+    public BackupHistory(Path historyPath, int capacity)
+    {
+        this.historyPath = historyPath;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Appends a record to the history, overwriting the oldest record if the history is full.
+     *
+     * @param historyRecord The record to append
+     */
+    public synchronized void append(BackupHistoryRecord historyRecord)
+    {
+        MappedByteBuffer historyBuffer = this.getHistoryBuffer();
+        if (historyBuffer == null)
+            return;
+
+        long recordCount = historyBuffer.getLong(RECORD_COUNT_OFFSET);
+        int recordOffset = this.getRecordOffset(recordCount);
+
+        writeRecord(historyBuffer.slice(recordOffset, RECORD_SIZE), historyRecord);
+
+        // The count is only bumped once the record is in place, so a crash in between leaves the previous records as they were
+        historyBuffer.putLong(RECORD_COUNT_OFFSET, recordCount + 1L);
+
+        historyBuffer.force(recordOffset, RECORD_SIZE);
+        historyBuffer.force(0, HEADER_SIZE);
+    }
+
+    /**
+     * Reads every record still in the history.
+     *
+     * @return The records, from oldest to newest
+     */
+    public synchronized List<BackupHistoryRecord> readRecords()
+    {
+        MappedByteBuffer historyBuffer = this.getHistoryBuffer();
+        if (historyBuffer == null)
+            return List.of();
+
+        long recordCount = historyBuffer.getLong(RECORD_COUNT_OFFSET);
+        List<BackupHistoryRecord> historyRecords = Lists.newArrayListWithCapacity((int) Math.min(recordCount, this.capacity));
+
+        for (long recordIndex = Math.max(0L, recordCount - this.capacity); recordIndex < recordCount; recordIndex++)
+        {
+            BackupHistoryRecord historyRecord = readRecord(historyBuffer.slice(this.getRecordOffset(recordIndex), RECORD_SIZE));
+
+            if (historyRecord != null)
+                historyRecords.add(historyRecord);
+        }
+
+        return historyRecords;
+    }
+
+    private int getRecordOffset(long recordIndex)
+    {
+        return HEADER_SIZE + (int) (recordIndex % this.capacity) * RECORD_SIZE;
+    }
+
+    private @Nullable MappedByteBuffer getHistoryBuffer()
+    {
+        if (this.historyBuffer != null || this.hasFailedToOpen)
+            return this.historyBuffer;
+
+        try
+        {
+            this.historyBuffer = this.open();
+        }
+        catch (IOException | RuntimeException exception)
+        {
+            this.hasFailedToOpen = true;
+
+            WorldbackMachineEngine.LOGGER.error("Failed to open the backup history at '{}'! Backups won't be recorded", this.historyPath, exception);
+        }
+
+        return this.historyBuffer;
+    }
+
+    private MappedByteBuffer open() throws IOException
+    {
+        Files.createDirectories(this.historyPath.toAbsolutePath().getParent());
+
+        // The mapping stays valid after its channel is closed
+        try (FileChannel historyChannel = FileChannel.open(this.historyPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+            while (header.hasRemaining() && historyChannel.read(header, header.position()) > 0)
+            {
+                // Keep reading until the header is full or the file ends
+            }
+
+            boolean hasValidHeader = !header.hasRemaining() && Arrays.equals(header.array(), 0, MAGIC.length, MAGIC, 0, MAGIC.length) &&
+                    header.get(MAGIC.length) == VERSION && header.getInt(CAPACITY_OFFSET) > 0 &&
+                    historyChannel.size() >= HEADER_SIZE + (long) header.getInt(CAPACITY_OFFSET) * RECORD_SIZE;
+
+            if (hasValidHeader)
+            {
+                this.capacity = header.getInt(CAPACITY_OFFSET);
+
+                return historyChannel.map(FileChannel.MapMode.READ_WRITE, 0L, HEADER_SIZE + (long) this.capacity * RECORD_SIZE);
+            }
+
+            if (historyChannel.size() > 0L)
+                WorldbackMachineEngine.LOGGER.warn("The backup history at '{}' is corrupt or from a newer version. Starting a new one", this.historyPath);
+
+            historyChannel.truncate(0L);
+
+            MappedByteBuffer historyBuffer = historyChannel.map(FileChannel.MapMode.READ_WRITE, 0L, HEADER_SIZE + (long) this.capacity * RECORD_SIZE);
+            historyBuffer.put(0, MAGIC);
+            historyBuffer.put(MAGIC.length, VERSION);
+            historyBuffer.putInt(CAPACITY_OFFSET, this.capacity);
+            historyBuffer.putLong(RECORD_COUNT_OFFSET, 0L);
+            historyBuffer.force();
+
+            return historyBuffer;
+        }
+    }
+
+    private static void writeRecord(ByteBuffer recordBuffer, BackupHistoryRecord historyRecord)
+    {
+        recordBuffer.putLong(0, historyRecord.startedAt().toEpochMilli());
+        recordBuffer.putLong(8, historyRecord.totalMillis());
+        recordBuffer.putLong(16, historyRecord.sourceBytes());
+        recordBuffer.putLong(24, historyRecord.archiveBytes());
+        recordBuffer.putLong(32, historyRecord.uploadedBytes());
+        recordBuffer.putInt(40, historyRecord.serverThreadMillis());
+        recordBuffer.putInt(44, historyRecord.saveOffMillis());
+        recordBuffer.putInt(48, historyRecord.compressMillis());
+        recordBuffer.putInt(52, historyRecord.uploadMillis());
+        recordBuffer.putInt(56, historyRecord.finalizeMillis());
+        recordBuffer.putInt(60, historyRecord.fileCount());
+        recordBuffer.put(64, (byte) historyRecord.tier().ordinal());
+        recordBuffer.put(65, (byte) historyRecord.outcome().ordinal());
+
+        // Long world names are cut short, but never partway through a character
+        ByteBuffer worldNameBuffer = recordBuffer.slice(WORLD_NAME_OFFSET, MAX_WORLD_NAME_BYTES);
+        CharsetEncoder worldNameEncoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        worldNameEncoder.encode(CharBuffer.wrap(historyRecord.worldName()), worldNameBuffer, true);
+        recordBuffer.put(66, (byte) worldNameBuffer.position());
+
+        while (worldNameBuffer.hasRemaining())
+            worldNameBuffer.put((byte) 0);
+
+        recordBuffer.putInt(CHECKSUM_OFFSET, getChecksum(recordBuffer));
+    }
+
+    private static @Nullable BackupHistoryRecord readRecord(ByteBuffer recordBuffer)
+    {
+        int tierOrdinal = recordBuffer.get(64);
+        int outcomeOrdinal = recordBuffer.get(65);
+        int worldNameLength = recordBuffer.get(66) & 0xFF;
+
+        // Slots that were never written, or were torn by a crash, don't add up
+        if (recordBuffer.getInt(CHECKSUM_OFFSET) != getChecksum(recordBuffer) || recordBuffer.getLong(0) == 0L ||
+                tierOrdinal < 0 || tierOrdinal >= BackupTier.values().length || outcomeOrdinal < 0 ||
+                outcomeOrdinal >= BackupHistoryRecord.Outcome.values().length || worldNameLength > MAX_WORLD_NAME_BYTES)
+        {
+            return null;
+        }
+
+        byte[] worldNameBytes = new byte[worldNameLength];
+        recordBuffer.get(WORLD_NAME_OFFSET, worldNameBytes);
+
+        return new BackupHistoryRecord(Instant.ofEpochMilli(recordBuffer.getLong(0)), new String(worldNameBytes, StandardCharsets.UTF_8),
+                BackupTier.values()[tierOrdinal], BackupHistoryRecord.Outcome.values()[outcomeOrdinal], recordBuffer.getInt(60), recordBuffer.getLong(16),
+                recordBuffer.getLong(24), recordBuffer.getLong(32), recordBuffer.getLong(8), recordBuffer.getInt(40), recordBuffer.getInt(44),
+                recordBuffer.getInt(48), recordBuffer.getInt(52), recordBuffer.getInt(56));
+    }
+
+    private static int getChecksum(ByteBuffer recordBuffer)
+    {
+        CRC32C checksum = new CRC32C();
+        checksum.update(recordBuffer.slice(0, CHECKSUM_OFFSET));
+
+        return (int) checksum.getValue();
+    }
+}
@@ -0,0 +1,76 @@
+package com.ayydxn.worldbackmachine.backup.history;
+
+import com.ayydxn.worldbackmachine.backup.BackupTier;
+
+import java.time.Instant;
+
+/**
+ * How a single backup went, as recorded in the {@link BackupHistory backup history}.
+ *
+ * @param startedAt          When the backup started, which is when its snapshot was taken for backups of loaded worlds
+ * @param worldName          The name of the world that was backed up, which may be cut short if it's very long
+ * @param tier               The tier of the world's data that was backed up
+ * @param outcome            How the backup ended
+ * @param fileCount          The number of files that were archived
+ * @param sourceBytes        The total size of the files that were archived
+ * @param archiveBytes       The size of the archives that were written, including the shards of sharded backups
+ * @param uploadedBytes      The number of bytes that were actually uploaded
+ * @param totalMillis        How long the whole backup took, not counting the time it spent waiting in the upload queue
+ * @param serverThreadMillis How long the server thread was held up saving or capturing the world, which is the backup's impact on ticks
+ * @param saveOffMillis      How long saving was disabled while the world was copied
+ * @param compressMillis     How long writing the archives took
+ * @param uploadMillis       How long uploading and verifying the archives took
+ * @param finalizeMillis     How long keeping the previous backup as a snapshot and pruning old snapshots took
+ *
+ * @author Ayydxn
+ */
+public record BackupHistoryRecord(Instant startedAt, String worldName, BackupTier tier, Outcome outcome, int fileCount, long sourceBytes, long archiveBytes,
+                                  long uploadedBytes, long totalMillis, int serverThreadMillis, int saveOffMillis, int compressMillis, int uploadMillis,
+                                  int finalizeMillis)
+{
+    /**
+     * Returns how large the archives were compared to the files they hold.
+     *
+     * @return The size of the archives divided by the size of the files, or 1 if no files were archived
+     */
+    public double getCompressionRatio()
+    {
+        return this.sourceBytes > 0L ? (double) this.archiveBytes / this.sourceBytes : 1.0;
+    }
+
+    /**
+     * Returns how quickly the world was backed up, measured by the size of its files over how long the backup took.
+     *
+     * @return The backup's throughput in bytes per second
+     */
+    public double getThroughputBytesPerSecond()
+    {
+        return this.sourceBytes * 1000.0 / Math.max(1L, this.totalMillis);
+    }
+
+    public boolean hasSucceeded()
+    {
+        return this.outcome != Outcome.FAILED;
+    }
+
+    /**
+     * How a backup ended.
+     */
+    public enum Outcome
+    {
+        /**
+         * The backup was uploaded.
+         */
+        UPLOADED,
+
+        /**
+         * The backup was identical to the one already stored, so nothing was uploaded.
+         */
+        UNCHANGED,
+
+        /**
+         * The backup failed, and is retried if it was queued.
+         */
+        FAILED
+    }
+}
@@ -0,0 +1,143 @@
+package com.ayydxn.worldbackmachine.backup.history;
+
+import org.jspecify.annotations.Nullable;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Summarizes the {@link BackupHistory backup history} over a window of time, such as the last 7 days.
+ * <p>
+ * Durations, throughput and compression are only taken from backups that succeeded, so a failure doesn't skew how long backups usually take.
+ *
+ * @param backupCount              The number of backups in the window, including failed ones
+ * @param failedCount              The number of backups in the window that failed
+ * @param unchangedCount           The number of backups in the window that weren't uploaded because nothing had changed
+ * @param p50TotalMillis           The median time a backup took
+ * @param p90TotalMillis           The 90th percentile of the time a backup took
+ * @param p99TotalMillis           The 99th percentile of the time a backup took
+ * @param medianThroughput         The median throughput of a backup, in bytes per second
+ * @param medianCompressionRatio   The median size of a backup's archives compared to the files they hold
+ * @param medianSourceBytes        The median size of the files that were backed up
+ * @param p50ServerThreadMillis    The median time the server thread was held up by a backup
+ * @param maxServerThreadMillis    The longest the server thread was held up by a backup
+ * @param p99SaveOffMillis         The 99th percentile of the time saving was disabled by a backup
+ *
+ * @author Ayydxn
+ */
+public record BackupHistoryStats(int backupCount, int failedCount, int unchangedCount, long p50TotalMillis, long p90TotalMillis, long p99TotalMillis,
+                                 double medianThroughput, double medianCompressionRatio, double medianSourceBytes, long p50ServerThreadMillis,
+                                 long maxServerThreadMillis, long p99SaveOffMillis)
+{
+    private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+
+    /**
+     * Summarizes the records that started within a window of time.
+     *
+     * @param historyRecords The records to summarize
+     * @param windowStart    The start of the window, inclusive
+     * @param windowEnd      The end of the window, exclusive
+     * @return The summary, or null if no backup started within the window
+     */
+    public static @Nullable BackupHistoryStats summarize(List<BackupHistoryRecord> historyRecords, Instant windowStart, Instant windowEnd)
+    {
+        List<BackupHistoryRecord> windowRecords = historyRecords.stream()
+                .filter(historyRecord -> !historyRecord.startedAt().isBefore(windowStart) && historyRecord.startedAt().isBefore(windowEnd))
+                .toList();
+
+        if (windowRecords.isEmpty())
+            return null;
+
+        List<BackupHistoryRecord> succeededRecords = windowRecords.stream()
+                .filter(BackupHistoryRecord::hasSucceeded)
+                .toList();
+
+        int failedCount = windowRecords.size() - succeededRecords.size();
+        int unchangedCount = (int) succeededRecords.stream()
+                .filter(historyRecord -> historyRecord.outcome() == BackupHistoryRecord.Outcome.UNCHANGED)
+                .count();
+
+        double[] totalMillis = sorted(succeededRecords, BackupHistoryRecord::totalMillis);
+        double[] serverThreadMillis = sorted(succeededRecords, BackupHistoryRecord::serverThreadMillis);
+
+        return new BackupHistoryStats(windowRecords.size(), failedCount, unchangedCount, (long) percentile(totalMillis, 0.5),
+                (long) percentile(totalMillis, 0.9), (long) percentile(totalMillis, 0.99),
+                percentile(sorted(succeededRecords, BackupHistoryRecord::getThroughputBytesPerSecond), 0.5),
+                percentile(sorted(succeededRecords, BackupHistoryRecord::getCompressionRatio), 0.5),
+                percentile(sorted(succeededRecords, BackupHistoryRecord::sourceBytes), 0.5),
+                (long) percentile(serverThreadMillis, 0.5), (long) percentile(serverThreadMillis, 1.0),
+                (long) percentile(sorted(succeededRecords, BackupHistoryRecord::saveOffMillis), 0.99));
+    }
+
+    /**
+     * Summarizes the records from a window of time leading up to now.
+     *
+     * @param historyRecords The records to summarize
+     * @param window         How far back the window reaches
+     * @return The summary, or null if no backup started within the window
+     */
+    public static @Nullable BackupHistoryStats summarize(List<BackupHistoryRecord> historyRecords, Duration window)
+    {
+        Instant now = Instant.now();
+
+        return summarize(historyRecords, now.minus(window), now.plusMillis(1L));
+    }
+
+    /**
+     * Describes how much a median changed from one window to the next, such as {@code +12%}.
+     *
+     * @param previousValue The median of the earlier window
+     * @param currentValue  The median of the later window
+     * @return The change as a signed percentage, or {@code n/a} if the earlier median was 0
+     */
+    public static String describeChange(double previousValue, double currentValue)
+    {
+        if (previousValue <= 0.0)
+            return "n/a";
+
+        return String.format("%+.0f%%", (currentValue - previousValue) * 100.0 / previousValue);
+    }
+
+    public String describe()
+    {
+        if (this.backupCount == this.failedCount)
+            return String.format("%d backups, all of which failed", this.backupCount);
+
+        return String.format("%d backups (%d failed, %d unchanged), took %.1f s / %.1f s / %.1f s (p50 / p90 / p99), %.1f MB/s, %.0f%% of %.1f MB, " +
+                        "server thread %d ms (max %d ms), saving off %d ms (p99)", this.backupCount, this.failedCount, this.unchangedCount,
+                this.p50TotalMillis / 1000.0, this.p90TotalMillis / 1000.0, this.p99TotalMillis / 1000.0, this.medianThroughput / BYTES_PER_MEGABYTE,
+                this.medianCompressionRatio * 100.0, this.medianSourceBytes / BYTES_PER_MEGABYTE, this.p50ServerThreadMillis, this.maxServerThreadMillis,
+                this.p99SaveOffMillis);
+    }
+
+    private static double[] sorted(List<BackupHistoryRecord> historyRecords, ToDoubleFunction<BackupHistoryRecord> valueFunction)
+    {
+        double[] values = historyRecords.stream()
+                .mapToDouble(valueFunction)
+                .toArray();
+
+        Arrays.sort(values);
+
+        return values;
+    }
+
+    /**
+     * Picks a percentile of a sorted set of values using the nearest-rank method.
+     *
+     * @param sortedValues The values, in ascending order
+     * @param percentile   The percentile to pick, from 0 to 1
+     * @return The value at the percentile, or 0 if there are no values
+     */
+    private static double percentile(double[] sortedValues, double percentile)
+    {
+        if (sortedValues.length == 0)
+            return 0.0;
+
+        int rank = (int) Math.ceil(percentile * sortedValues.length);
+
+        return sortedValues[Math.clamp(rank - 1, 0, sortedValues.length - 1)];
+    }
+}
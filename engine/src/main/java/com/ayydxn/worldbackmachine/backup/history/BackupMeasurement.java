@@ -0,0 +1,96 @@
+package com.ayydxn.worldbackmachine.backup.history;
+
+import com.ayydxn.worldbackmachine.backup.BackupTier;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures each phase of a backup as it runs, so it can be added to the {@link BackupHistory backup history} once it's done.
+ * <p>
+ * The shards of sharded backups are written and uploaded in parallel, so every measurement can be added to from any thread.
+ * The time spent on each phase is then summed over every shard, and can add up to more than the backup took.
+ *
+ * @author Ayydxn
+ */
+public class BackupMeasurement
+{
+    private final long startTimeNanos;
+
+    private final LongAdder compressNanos = new LongAdder();
+    private final LongAdder uploadNanos = new LongAdder();
+    private final LongAdder finalizeNanos = new LongAdder();
+    private final LongAdder fileCount = new LongAdder();
+    private final LongAdder sourceBytes = new LongAdder();
+    private final LongAdder archiveBytes = new LongAdder();
+
+    public BackupMeasurement()
+    {
+        this.startTimeNanos = System.nanoTime();
+    }
+
+    /**
+     * Records that an archive was written.
+     *
+     * @param elapsedNanos How long writing the archive took
+     * @param fileCount    The number of files in the archive
+     * @param sourceBytes  The total size of the files in the archive
+     * @param archiveBytes The size of the archive
+     */
+    public void recordCompressed(long elapsedNanos, int fileCount, long sourceBytes, long archiveBytes)
+    {
+        this.compressNanos.add(elapsedNanos);
+        this.fileCount.add(fileCount);
+        this.sourceBytes.add(sourceBytes);
+        this.archiveBytes.add(archiveBytes);
+    }
+
+    /**
+     * Records that an archive was uploaded and verified.
+     *
+     * @param elapsedNanos How long uploading and verifying the archive took
+     */
+    public void recordUploaded(long elapsedNanos)
+    {
+        this.uploadNanos.add(elapsedNanos);
+    }
+
+    /**
+     * Records that the backup replaced the previous one, which was kept as a snapshot, and old snapshots were pruned.
+     *
+     * @param elapsedNanos How long rotating and pruning snapshots took
+     */
+    public void recordFinalized(long elapsedNanos)
+    {
+        this.finalizeNanos.add(elapsedNanos);
+    }
+
+    /**
+     * Turns what was measured into a record of the backup.
+     *
+     * @param startedAt          When the backup started
+     * @param worldName          The name of the world that was backed up
+     * @param tier               The tier of the world's data that was backed up
+     * @param outcome            How the backup ended
+     * @param uploadedBytes      The number of bytes that were actually uploaded
+     * @param serverThreadMillis How long the server thread was held up saving or capturing the world before the backup was queued
+     * @param saveOffMillis      How long saving was disabled while the world was copied before the backup was queued
+     * @return The record of the backup
+     */
+    public BackupHistoryRecord toRecord(Instant startedAt, String worldName, BackupTier tier, BackupHistoryRecord.Outcome outcome, long uploadedBytes,
+                                        long serverThreadMillis, long saveOffMillis)
+    {
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.startTimeNanos);
+
+        return new BackupHistoryRecord(startedAt, worldName, tier, outcome, this.fileCount.intValue(), this.sourceBytes.sum(), this.archiveBytes.sum(),
+                uploadedBytes, serverThreadMillis + saveOffMillis + elapsedMillis, toIntMillis(serverThreadMillis), toIntMillis(saveOffMillis),
+                toIntMillis(TimeUnit.NANOSECONDS.toMillis(this.compressNanos.sum())), toIntMillis(TimeUnit.NANOSECONDS.toMillis(this.uploadNanos.sum())),
+                toIntMillis(TimeUnit.NANOSECONDS.toMillis(this.finalizeNanos.sum())));
+    }
+
+    private static int toIntMillis(long millis)
+    {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0L, millis));
+    }
+}
@@ -0,0 +1,147 @@
+package com.ayydxn.worldbackmachine.backup.io;
+
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of reusable, fixed-size {@link ByteBuffer}s.
+ * <p>
+ * Buffers are allocated lazily and handed back to the pool once they're no longer needed, so a steady stream of I/O
+ * doesn't allocate anything after the first few operations. The pool enforces a hard memory budget: once every buffer it is allowed
+ * to allocate is in use, callers wait until one is released instead of allocating more.
+ *
+ * <h2>Usage Example:</h2>
+ * <pre>{@code
+ * try (BufferPool.Lease lease = bufferPool.acquire()) {
+ *     ByteBuffer buffer = lease.buffer();
+ *     channel.read(buffer);
+ * }
+ * }</pre>
+ *
+ * @author Ayydxn
+ */
+public class BufferPool
+{
+    private final int bufferSize;
+    private final int maxBuffers;
+    private final boolean isDirect;
+    private final Semaphore availableBuffers;
+    private final Queue<ByteBuffer> freeBuffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger allocatedBuffers = new AtomicInteger();
+
+    /**
+     * @param bufferSize         The size of each buffer in bytes
+     * @param memoryBudgetBytes  The maximum number of bytes the pool's buffers may take up in total. At least one buffer is always allowed.
+     * @param isDirect           Whether to allocate direct buffers, which avoid an extra copy when used with channels, or heap buffers backed by arrays
+     */
+    public BufferPool(int bufferSize, long memoryBudgetBytes, boolean isDirect)
+    {
+        if (bufferSize <= 0)
+            throw new IllegalArgumentException(String.format("A buffer's size must be positive! (%d)", bufferSize));
+
+        this.bufferSize = bufferSize;
+        this.maxBuffers = (int) Math.max(1L, Math.min(Integer.MAX_VALUE, memoryBudgetBytes / bufferSize));
+        this.isDirect = isDirect;
+        this.availableBuffers = new Semaphore(this.maxBuffers, true);
+    }
+
+    /**
+     * Takes a buffer from the pool, waiting for one to be released if the pool's memory budget is exhausted.
+     * <p>
+     * The returned buffer is cleared, and is returned to the pool when the lease is closed.
+     *
+     * @throws InterruptedIOException If the thread is interrupted while waiting for a buffer
+     * @return A lease of a buffer from the pool
+     */
+    public Lease acquire() throws InterruptedIOException
+    {
+        try
+        {
+            this.availableBuffers.acquire();
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while waiting for a buffer from the pool");
+        }
+
+        ByteBuffer buffer = this.freeBuffers.poll();
+        if (buffer == null)
+        {
+            buffer = this.isDirect ? ByteBuffer.allocateDirect(this.bufferSize) : ByteBuffer.allocate(this.bufferSize);
+            this.allocatedBuffers.incrementAndGet();
+        }
+
+        return new Lease(buffer.clear());
+    }
+
+    public int getBufferSize()
+    {
+        return this.bufferSize;
+    }
+
+    /**
+     * Returns the maximum number of buffers the pool may allocate, as determined by its memory budget.
+     *
+     * @return The maximum number of buffers
+     */
+    public int getMaxBuffers()
+    {
+        return this.maxBuffers;
+    }
+
+    /**
+     * Returns how many buffers the pool has allocated so far. This stops growing once the pool has warmed up.
+     *
+     * @return The number of allocated buffers
+     */
+    public int getAllocatedBuffers()
+    {
+        return this.allocatedBuffers.get();
+    }
+
+    public boolean isDirect()
+    {
+        return this.isDirect;
+    }
+
+    /**
+     * A buffer borrowed from a {@link BufferPool}, which is returned to it once closed.
+     * <p>
+     * The buffer must not be used after the lease has been closed.
+     */
+    public final class Lease implements AutoCloseable
+    {
+        private ByteBuffer buffer;
+
+        private Lease(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        public ByteBuffer buffer()
+        {
+            if (this.buffer == null)
+                throw new IllegalStateException("Tried to use a buffer after returning it to its pool!");
+
+            return this.buffer;
+        }
+
+        @Override
+        public void close()
+        {
+            if (this.buffer == null)
+                return;
+
+            BufferPool.this.freeBuffers.offer(this.buffer);
+            BufferPool.this.availableBuffers.release();
+
+            this.buffer = null;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.ayydxn.worldbackmachine.backup.policy;
+
+/**
+ * How a file's contents are stored in a backup.
+ *
+ * @author Ayydxn
+ */
+public enum BackupCodec
+{
+    /**
+     * Stored as-is, for files which are already compressed and wouldn't get any smaller.
+     */
+    STORE,
+
+    /**
+     * Compressed with DEFLATE, at the level chosen by the file's rule.
+     */
+    DEFLATE,
+
+    /**
+     * Region files transcoded so their chunks are compressed together as one zstd stream, at the level chosen by the file's rule.
+     * Only block backups can transcode files. ZIP backups, which any archive tool has to be able to open, DEFLATE them at the fastest level instead,
+     * whatever level the rule chose.
+     */
+    REGION
+}
@@ -0,0 +1,317 @@
+package com.ayydxn.worldbackmachine.backup.policy;
+
+import com.ayydxn.worldbackmachine.engine.WorldbackMachineEngine;
+import com.google.common.collect.ImmutableList;
+import org.jspecify.annotations.Nullable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.zip.Deflater;
+
+/**
+ * A compiled set of {@link BackupPathRule}s, which decides whether each file in a world is backed up and how.
+ * <p>
+ * Rules are compiled once into a handful of combined regular expressions, so resolving a file's settings costs a few regex matches
+ * no matter how many rules there are. This keeps them cheap even when walking worlds with millions of files.
+ * <p>
+ * A file is excluded if any exclusion rule matches it. Otherwise, each of its settings comes from the first rule that matches it and
+ * sets that setting, with a world's own rules checked before the global ones. The policy also keeps track of how many files and bytes
+ * every rule matched, so its effect can be {@link #logReport(String) reported} after a backup.
+ *
+ * @author Ayydxn
+ * @see BackupPathRule
+ */
+public class BackupPathPolicy
+{
+    private static final BackupCodec DEFAULT_CODEC = BackupCodec.DEFLATE;
+    private static final int DEFAULT_COMPRESSION_LEVEL = 6;
+    private static final boolean DEFAULT_DEDUP = true;
+
+    private final List<BackupPathRule> rules;
+    private final CompiledRules excludeRules;
+    private final CompiledRules compressionRules;
+    private final CompiledRules dedupRules;
+    private final CompiledRules verifyRules;
+    private final RuleStatistics[] ruleStatistics;
+
+    public BackupPathPolicy(List<BackupPathRule> rules)
+    {
+        this.rules = ImmutableList.copyOf(rules);
+        this.excludeRules = this.compile(rule -> rule.exclude);
+        this.compressionRules = this.compile(rule -> !rule.exclude && (rule.codec != null || rule.compressionLevel != null));
+        this.dedupRules = this.compile(rule -> !rule.exclude && rule.dedup != null);
+        this.verifyRules = this.compile(rule -> !rule.exclude && rule.verify != null);
+        this.ruleStatistics = new RuleStatistics[this.rules.size()];
+
+        for (int i = 0; i < this.ruleStatistics.length; i++)
+            this.ruleStatistics[i] = new RuleStatistics();
+    }
+
+    /**
+     * Creates the policy for a world, with the world's own rules taking priority over the global ones.
+     *
+     * @param globalRules The rules which apply to every world
+     * @param worldRules  The rules of each world, keyed by the world's name
+     * @param worldName   The name of the world
+     * @return The world's policy
+     */
+    public static BackupPathPolicy forWorld(List<BackupPathRule> globalRules, Map<String, List<BackupPathRule>> worldRules, String worldName)
+    {
+        return new BackupPathPolicy(ImmutableList.<BackupPathRule>builder()
+                .addAll(worldRules.getOrDefault(worldName, List.of()))
+                .addAll(globalRules)
+                .build());
+    }
+
+    /**
+     * Checks whether a file is excluded from backups.
+     *
+     * @param relativePath The file's path relative to the world's directory, using {@code /} as the separator
+     * @return The index of the rule which excludes the file, or -1 if it isn't excluded
+     */
+    public int getExcludingRule(String relativePath)
+    {
+        return this.excludeRules.findFirstMatch(relativePath);
+    }
+
+    /**
+     * Resolves the settings to back up a file with.
+     *
+     * @param relativePath The file's path relative to the world's directory, using {@code /} as the separator
+     * @return The file's settings
+     */
+    public PathSettings getSettings(String relativePath)
+    {
+        int compressionRuleIndex = this.compressionRules.findFirstMatch(relativePath);
+        BackupPathRule compressionRule = compressionRuleIndex != -1 ? this.rules.get(compressionRuleIndex) : null;
+
+        BackupCodec codec = compressionRule != null && compressionRule.codec != null ? compressionRule.codec : DEFAULT_CODEC;
+        int compressionLevel = compressionRule != null && compressionRule.compressionLevel != null ?
+                Math.clamp(compressionRule.compressionLevel, Deflater.NO_COMPRESSION, Deflater.BEST_COMPRESSION) : DEFAULT_COMPRESSION_LEVEL;
+
+        int dedupRuleIndex = this.dedupRules.findFirstMatch(relativePath);
+        int verifyRuleIndex = this.verifyRules.findFirstMatch(relativePath);
+
+        return new PathSettings(codec, compressionLevel, dedupRuleIndex != -1 ? this.rules.get(dedupRuleIndex).dedup : DEFAULT_DEDUP,
+                verifyRuleIndex != -1 && this.rules.get(verifyRuleIndex).verify, compressionRuleIndex);
+    }
+
+    /**
+     * Records that a rule excluded a file from a backup.
+     *
+     * @param ruleIndex The index of the rule which excluded the file
+     * @param sizeBytes The size of the file in bytes
+     */
+    public void recordExcluded(int ruleIndex, long sizeBytes)
+    {
+        RuleStatistics statistics = this.ruleStatistics[ruleIndex];
+        statistics.matchedFiles.increment();
+        statistics.matchedBytes.add(sizeBytes);
+    }
+
+    /**
+     * Records that a file was stored in a backup according to its settings.
+     *
+     * @param pathSettings The settings the file was stored with
+     * @param sizeBytes    The size of the file in bytes
+     * @param storedBytes  How many bytes the file took up in the backup
+     */
+    public void recordStored(PathSettings pathSettings, long sizeBytes, long storedBytes)
+    {
+        if (pathSettings.ruleIndex() == -1)
+            return;
+
+        RuleStatistics statistics = this.ruleStatistics[pathSettings.ruleIndex()];
+        statistics.matchedFiles.increment();
+        statistics.matchedBytes.add(sizeBytes);
+        statistics.storedBytes.add(storedBytes);
+    }
+
+    /**
+     * Logs how many files and bytes each rule matched since the policy was created, skipping rules which matched nothing.
+     *
+     * @param worldName The name of the world the policy was used for
+     */
+    public void logReport(String worldName)
+    {
+        for (int i = 0; i < this.rules.size(); i++)
+        {
+            BackupPathRule rule = this.rules.get(i);
+            RuleStatistics statistics = this.ruleStatistics[i];
+
+            long matchedFiles = statistics.matchedFiles.sum();
+            if (matchedFiles == 0L)
+                continue;
+
+            long matchedBytes = statistics.matchedBytes.sum();
+
+            if (rule.exclude)
+            {
+                WorldbackMachineEngine.LOGGER.info("Backup rule '{}' excluded {} files of world '{}', saving {} KB", rule, matchedFiles, worldName,
+                        matchedBytes / 1024L);
+            }
+            else
+            {
+                WorldbackMachineEngine.LOGGER.info("Backup rule '{}' stored {} files of world '{}' ({} KB) in {} KB", rule, matchedFiles, worldName,
+                        matchedBytes / 1024L, statistics.storedBytes.sum() / 1024L);
+            }
+        }
+    }
+
+    public List<BackupPathRule> getRules()
+    {
+        return this.rules;
+    }
+
+    private CompiledRules compile(Predicate<BackupPathRule> ruleFilter)
+    {
+        StringBuilder combinedRegex = new StringBuilder();
+        int[] ruleIndices = new int[this.rules.size()];
+        int groupCount = 0;
+
+        for (int i = 0; i < this.rules.size(); i++)
+        {
+            BackupPathRule rule = this.rules.get(i);
+            if (!ruleFilter.test(rule) || rule.pattern == null || rule.pattern.isBlank())
+                continue;
+
+            String ruleRegex;
+
+            try
+            {
+                ruleRegex = globToRegex(rule.pattern.trim());
+                Pattern.compile(ruleRegex);
+            }
+            catch (PatternSyntaxException exception)
+            {
+                WorldbackMachineEngine.LOGGER.warn("Ignoring backup rule with invalid pattern '{}'", rule.pattern);
+                continue;
+            }
+
+            if (groupCount > 0)
+                combinedRegex.append('|');
+
+            // Every rule gets its own group, so the rule that matched can be found from which group captured
+            combinedRegex.append('(').append(ruleRegex).append(')');
+            ruleIndices[groupCount++] = i;
+        }
+
+        return new CompiledRules(groupCount > 0 ? Pattern.compile(combinedRegex.toString()) : null, ruleIndices);
+    }
+
+    /**
+     * Converts a glob pattern, in the syntax described by {@link BackupPathRule}, into an equivalent regular expression without any capturing groups of its own.
+     *
+     * @param glob The glob pattern to convert
+     * @throws PatternSyntaxException If the pattern has an unclosed character class or group
+     * @return The regular expression matching the same paths as the pattern
+     */
+    public static String globToRegex(String glob)
+    {
+        StringBuilder regex = new StringBuilder();
+        int braceDepth = 0;
+
+        for (int i = 0; i < glob.length(); i++)
+        {
+            char character = glob.charAt(i);
+
+            switch (character)
+            {
+                case '*' ->
+                {
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*')
+                    {
+                        i++;
+
+                        if (i + 1 < glob.length() && glob.charAt(i + 1) == '/')
+                        {
+                            i++;
+                            regex.append("(?:.*/)?");
+                        }
+                        else
+                        {
+                            regex.append(".*");
+                        }
+                    }
+                    else
+                    {
+                        regex.append("[^/]*");
+                    }
+                }
+                case '?' -> regex.append("[^/]");
+                case '[' ->
+                {
+                    int closingIndex = glob.indexOf(']', i + 1);
+                    if (closingIndex == -1)
+                        throw new PatternSyntaxException("Unclosed character class", glob, i);
+
+                    String characterClass = glob.substring(i + 1, closingIndex);
+                    if (characterClass.startsWith("!"))
+                        characterClass = "^" + characterClass.substring(1);
+
+                    regex.append('[').append(characterClass.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                    i = closingIndex;
+                }
+                case '{' ->
+                {
+                    regex.append("(?:");
+                    braceDepth++;
+                }
+                case '}' ->
+                {
+                    if (braceDepth == 0)
+                        throw new PatternSyntaxException("Unopened group", glob, i);
+
+                    regex.append(')');
+                    braceDepth--;
+                }
+                case ',' -> regex.append(braceDepth > 0 ? "|" : ",");
+                default ->
+                {
+                    if ("\\.^$|()+".indexOf(character) != -1)
+                        regex.append('\\');
+
+                    regex.append(character);
+                }
+            }
+        }
+
+        if (braceDepth > 0)
+            throw new PatternSyntaxException("Unclosed group", glob, glob.length());
+
+        return regex.toString();
+    }
+
+    private record CompiledRules(@Nullable Pattern combinedPattern, int[] ruleIndices)
+    {
+        int findFirstMatch(String relativePath)
+        {
+            if (this.combinedPattern == null)
+                return -1;
+
+            Matcher matcher = this.combinedPattern.matcher(relativePath);
+            if (!matcher.matches())
+                return -1;
+
+            for (int group = 1; group <= matcher.groupCount(); group++)
+            {
+                if (matcher.start(group) != -1)
+                    return this.ruleIndices[group - 1];
+            }
+
+            return -1;
+        }
+    }
+
+    private static class RuleStatistics
+    {
+        private final LongAdder matchedFiles = new LongAdder();
+        private final LongAdder matchedBytes = new LongAdder();
+        private final LongAdder storedBytes = new LongAdder();
+    }
+}
@@ -0,0 +1,84 @@
+package com.ayydxn.worldbackmachine.backup.policy;
+
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A rule which decides whether files in a world are backed up, and how.
+ * <p>
+ * Rules match files by a glob pattern against their path relative to the world's directory, always using {@code /} as the separator:
+ * <ul>
+ *     <li>{@code *} matches any number of characters within a single directory</li>
+ *     <li>{@code **} matches any number of characters across directories, and {@code **}{@code /} also matches no directory at all</li>
+ *     <li>{@code ?} matches a single character, {@code [abc]} one of a set of characters and {@code {a,b}} one of several alternatives</li>
+ * </ul>
+ * Every setting left as null falls back to the next matching rule, and then to the defaults.
+ * <p>
+ * Rules are stored in the mod's settings file, so all of their fields are plain values.
+ *
+ * @author Ayydxn
+ * @see BackupPathPolicy
+ */
+public class BackupPathRule
+{
+    public String pattern = "";
+
+    /**
+     * If matching files are left out of backups entirely. Exclusions always win over the settings of other rules.
+     */
+    public boolean exclude = false;
+
+    public @Nullable BackupCodec codec = null;
+
+    /**
+     * The compression level to use, from 0 (fastest) to 9 (smallest). Files {@link BackupCodec#REGION transcoded} as region files use it as their zstd level,
+     * and ignore it in ZIP backups.
+     */
+    public @Nullable Integer compressionLevel = null;
+
+    /**
+     * If the compressed bytes of matching files are reused by the next backup when their contents haven't changed, rather than compressed again.
+     * Files are deduped unless a rule turns it off.
+     *
+     * @see com.ayydxn.worldbackmachine.backup.archive.CompressedEntryCache
+     */
+    public @Nullable Boolean dedup = null;
+
+    /**
+     * If matching files are read back after being copied into a snapshot and copied again if they changed while being copied.
+     */
+    public @Nullable Boolean verify = null;
+
+    public static BackupPathRule exclude(String pattern)
+    {
+        BackupPathRule backupPathRule = new BackupPathRule();
+        backupPathRule.pattern = pattern;
+        backupPathRule.exclude = true;
+
+        return backupPathRule;
+    }
+
+    public static BackupPathRule compress(String pattern, BackupCodec codec, int compressionLevel)
+    {
+        BackupPathRule backupPathRule = new BackupPathRule();
+        backupPathRule.pattern = pattern;
+        backupPathRule.codec = codec;
+        backupPathRule.compressionLevel = compressionLevel;
+
+        return backupPathRule;
+    }
+
+    public static BackupPathRule verify(String pattern)
+    {
+        BackupPathRule backupPathRule = new BackupPathRule();
+        backupPathRule.pattern = pattern;
+        backupPathRule.verify = true;
+
+        return backupPathRule;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.pattern;
+    }
+}
@@ -0,0 +1,16 @@
+package com.ayydxn.worldbackmachine.backup.policy;
+
+/**
+ * The settings a {@link BackupPathPolicy} resolved for a single file.
+ *
+ * @param codec            How the file is stored in the backup
+ * @param compressionLevel The DEFLATE compression level to use, from 0 to 9
+ * @param dedup            If the file's compressed bytes are reused by the next backup when its contents haven't changed
+ * @param verify           If the file is read back after being copied into a snapshot
+ * @param ruleIndex        The index of the rule the codec and compression level came from, or -1 if they're the defaults
+ *
+ * @author Ayydxn
+ */
+public record PathSettings(BackupCodec codec, int compressionLevel, boolean dedup, boolean verify, int ruleIndex)
+{
+}
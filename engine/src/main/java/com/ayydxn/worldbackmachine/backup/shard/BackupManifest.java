@@ -0,0 +1,145 @@
+package com.ayydxn.worldbackmachine.backup.shard;
+
+import com.ayydxn.worldbackmachine.backup.BackupTier;
+import com.ayydxn.worldbackmachine.backup.archive.BackupArchiveFormat;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ties together the shards of a sharded backup.
+ * <p>
+ * Rather than a single archive, a sharded backup is stored as several independent archives called shards, which are uploaded and downloaded
+ * over as many connections at once. The manifest is stored under the backup's usual name in place of the archive, so snapshots of sharded backups
+ * are rotated and pruned like any other. Each shard is stored under a name derived from its contents, so consecutive backups share the shards
+ * which haven't changed between them, and snapshots only cost as much as what changed.
+ * <p>
+ * A manifest records everything needed to restore its backup: which archive format its shards use, and which files of which
+ * {@link ShardPlanner#getScope(String) scope} each shard holds. It never records when the backup was created, so an unchanged world
+ * always produces the same manifest.
+ *
+ * @param version       The version of the manifest's format
+ * @param worldName     The name of the world the backup is of
+ * @param tier          The tier the backup is of
+ * @param archiveFormat The format of the backup's shards
+ * @param shards        The backup's shards
+ *
+ * @author Ayydxn
+ */
+public record BackupManifest(int version, String worldName, BackupTier tier, BackupArchiveFormat archiveFormat, List<Shard> shards)
+{
+    public static final int CURRENT_VERSION = 1;
+
+    /**
+     * The property storing how a backup is laid out. Backups without it are a single archive.
+     */
+    public static final String LAYOUT_PROPERTY = "worldback-machine.layout";
+
+    /**
+     * The value of {@link #LAYOUT_PROPERTY} marking a backup as a manifest of shards.
+     */
+    public static final String SHARDED_LAYOUT = "sharded";
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+
+    /**
+     * Reads a manifest.
+     *
+     * @param inputStream The stream of the manifest, which isn't closed
+     * @throws IOException If reading the manifest fails, or it isn't a valid manifest
+     * @return The manifest
+     */
+    public static BackupManifest read(InputStream inputStream) throws IOException
+    {
+        Reader manifestReader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+        BackupManifest backupManifest;
+
+        try
+        {
+            backupManifest = GSON.fromJson(manifestReader, BackupManifest.class);
+        }
+        catch (JsonParseException exception)
+        {
+            throw new IOException("The backup's manifest is corrupt!", exception);
+        }
+
+        if (backupManifest == null || backupManifest.shards() == null || backupManifest.archiveFormat() == null)
+            throw new IOException("The backup's manifest is empty!");
+
+        if (backupManifest.version() > CURRENT_VERSION)
+            throw new IOException(String.format("The backup's manifest uses an unsupported format version (%d)!", backupManifest.version()));
+
+        return backupManifest;
+    }
+
+    /**
+     * Checks whether a backup is a manifest of shards, rather than a single archive.
+     *
+     * @param properties The properties stored alongside the backup
+     * @return True if the backup is sharded, false otherwise
+     */
+    public static boolean isSharded(Map<String, String> properties)
+    {
+        return SHARDED_LAYOUT.equals(properties.get(LAYOUT_PROPERTY));
+    }
+
+    /**
+     * Writes the manifest as JSON.
+     *
+     * @return The manifest's bytes
+     */
+    public byte[] toBytes()
+    {
+        return GSON.toJson(this).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the shards holding any of a set of scopes, such as every shard of a single dimension.
+     *
+     * @param scopes The scopes to find the shards of
+     * @return The shards holding the scopes
+     */
+    public List<Shard> getShardsInScopes(Set<String> scopes)
+    {
+        return this.shards.stream()
+                .filter(shard -> scopes.contains(shard.scope()))
+                .toList();
+    }
+
+    /**
+     * Returns the shards holding any of a set of files.
+     *
+     * @param filePaths The paths of the files relative to the world's directory, using forward slashes
+     * @return The shards holding the files
+     */
+    public List<Shard> getShardsHolding(Collection<String> filePaths)
+    {
+        return this.shards.stream()
+                .filter(shard -> shard.files().stream().anyMatch(filePaths::contains))
+                .toList();
+    }
+
+    /**
+     * A single archive of a sharded backup.
+     *
+     * @param id         The ID of the shard within the backup, such as {@code nether-region.0}
+     * @param scope      The {@link ShardPlanner#getScope(String) scope} all of the shard's files belong to
+     * @param objectName The name the shard is stored under
+     * @param contentMd5 The MD5 digest of the shard's archive before it was encrypted
+     * @param size       The size of the shard as it's stored, in bytes
+     * @param files      The paths of the shard's files relative to the world's directory, using forward slashes
+     */
+    public record Shard(String id, String scope, String objectName, String contentMd5, long size, List<String> files)
+    {
+    }
+}
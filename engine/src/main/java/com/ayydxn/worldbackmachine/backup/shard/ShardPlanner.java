@@ -0,0 +1,157 @@
+package com.ayydxn.worldbackmachine.backup.shard;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Splits the files of a world into the shards of a {@link BackupManifest sharded backup}.
+ * <p>
+ * The region, entity and point of interest files of every dimension form their own shards, as do the data of the world's players and
+ * everything else about the world, such as its {@code level.dat}. A dimension can then be restored by fetching only its own shards, and a shard
+ * whose files haven't changed since the last backup doesn't have to be uploaded again. Shards are split further once their files add up to
+ * more than the size cap, so even a single large dimension is uploaded over several connections.
+ * <p>
+ * Files are assigned to shards in the order they're given, which must be the same order they're written to archives in,
+ * so an unchanged world is always split the same way.
+ *
+ * @author Ayydxn
+ */
+public final class ShardPlanner
+{
+    /**
+     * The default size cap of a shard, measured by the size of its files before they're compressed.
+     */
+    public static final long DEFAULT_MAX_SHARD_BYTES = 256L * 1024L * 1024L;
+
+    /**
+     * The scope of the shards holding the data, advancements and statistics of a world's players.
+     */
+    public static final String PLAYERS_SCOPE = "players";
+
+    /**
+     * The scope of the shards holding everything that doesn't belong to a single dimension or to the players, such as the world's {@code level.dat}.
+     */
+    public static final String LEVEL_SCOPE = "level";
+
+    private static final Set<String> DIMENSION_DATA_CLASSES = Set.of("region", "entities", "poi");
+    private static final Set<String> PLAYER_DIRECTORIES = Set.of("playerdata", "advancements", "stats");
+
+    private static final String OVERWORLD_SCOPE = "overworld";
+    private static final String NETHER_SCOPE = "nether";
+    private static final String END_SCOPE = "end";
+
+    private ShardPlanner()
+    {
+    }
+
+    /**
+     * Splits a world's files into shards.
+     *
+     * @param worldPath     The directory containing the world's files
+     * @param worldFiles    The files to split, in the order they're written to archives in
+     * @param maxShardBytes The size cap of a shard. A single file larger than this still gets a shard of its own
+     * @return The shards, each holding its files in the order they were given
+     */
+    public static List<PlannedShard> plan(Path worldPath, List<Path> worldFiles, long maxShardBytes)
+    {
+        // Class of a shard (e.g. nether-region) -> The parts that class is split into
+        Map<String, List<PlannedShard>> shardClasses = Maps.newLinkedHashMap();
+
+        for (Path worldFile : worldFiles)
+        {
+            String entryName = worldPath.relativize(worldFile).toString().replace(File.separatorChar, '/');
+            String scope = getScope(entryName);
+            String shardClass = getShardClass(entryName, scope);
+            long fileSize = worldFile.toFile().length();
+
+            List<PlannedShard> shardParts = shardClasses.computeIfAbsent(shardClass, ignored -> Lists.newArrayList());
+            PlannedShard currentPart = shardParts.isEmpty() ? null : shardParts.getLast();
+
+            if (currentPart == null || (!currentPart.files().isEmpty() && currentPart.sizeBytes() + fileSize > maxShardBytes))
+            {
+                currentPart = new PlannedShard(shardClass + "." + shardParts.size(), scope, Lists.newArrayList(), 0L);
+                shardParts.add(currentPart);
+            }
+
+            currentPart.files().add(worldFile);
+            shardParts.set(shardParts.size() - 1, new PlannedShard(currentPart.id(), scope, currentPart.files(), currentPart.sizeBytes() + fileSize));
+        }
+
+        return shardClasses.values().stream()
+                .flatMap(List::stream)
+                .toList();
+    }
+
+    /**
+     * Returns the scope a file of a world belongs to, which is either the dimension it's part of, {@value #PLAYERS_SCOPE} or {@value #LEVEL_SCOPE}.
+     * <p>
+     * The vanilla dimensions are called {@code overworld}, {@code nether} and {@code end}, while any other dimension is named after its ID,
+     * such as {@code mymod_mining} for {@code mymod:mining}.
+     *
+     * @param entryName The path of the file relative to the world's directory, using forward slashes
+     * @return The file's scope
+     */
+    public static String getScope(String entryName)
+    {
+        String[] pathSegments = entryName.split("/");
+
+        if (pathSegments.length > 1 && PLAYER_DIRECTORIES.contains(pathSegments[0]))
+            return PLAYERS_SCOPE;
+
+        String dimensionDirectory = getDimensionDirectory(pathSegments);
+        if (dimensionDirectory == null)
+            return LEVEL_SCOPE;
+
+        return switch (dimensionDirectory)
+        {
+            case "", "dimensions/minecraft/overworld" -> OVERWORLD_SCOPE;
+            case "DIM-1", "dimensions/minecraft/the_nether" -> NETHER_SCOPE;
+            case "DIM1", "dimensions/minecraft/the_end" -> END_SCOPE;
+            default -> dimensionDirectory.startsWith("dimensions/") ?
+                    dimensionDirectory.substring("dimensions/".length()).replace('/', '_') : dimensionDirectory.replace('/', '_');
+        };
+    }
+
+    private static String getShardClass(String entryName, String scope)
+    {
+        if (scope.equals(PLAYERS_SCOPE) || scope.equals(LEVEL_SCOPE))
+            return scope;
+
+        String[] pathSegments = entryName.split("/");
+
+        return scope + "-" + pathSegments[pathSegments.length - 2];
+    }
+
+    /**
+     * Finds the directory of the dimension a file belongs to, which is the directory holding the {@code region}, {@code entities}
+     * or {@code poi} directory the file is in.
+     *
+     * @param pathSegments The segments of the file's path relative to the world's directory
+     * @return The dimension's directory relative to the world's directory, which is empty for the overworld, or null if the file doesn't belong to one
+     */
+    private static String getDimensionDirectory(String[] pathSegments)
+    {
+        if (pathSegments.length < 2 || !DIMENSION_DATA_CLASSES.contains(pathSegments[pathSegments.length - 2]))
+            return null;
+
+        return String.join("/", List.of(pathSegments).subList(0, pathSegments.length - 2));
+    }
+
+    /**
+     * A shard a world's files have been assigned to.
+     *
+     * @param id        The ID of the shard within the backup, such as {@code nether-region.0}
+     * @param scope     The {@link #getScope(String) scope} all of the shard's files belong to
+     * @param files     The shard's files, in the order they're written to its archive in
+     * @param sizeBytes The total size of the shard's files in bytes
+     */
+    public record PlannedShard(String id, String scope, List<Path> files, long sizeBytes)
+    {
+    }
+}
@@ -0,0 +1,26 @@
+package com.ayydxn.worldbackmachine.cloud;
+
+import org.jspecify.annotations.Nullable;
+
+import java.util.Map;
+
+/**
+ * A snapshot of the metadata a cloud storage provider holds for a single stored file.
+ * <p>
+ * This is what allows backups to be inspected and verified without having to download them again.
+ *
+ * @param name        The name of the file in the mod's backup folder
+ * @param size        The size of the file in bytes, or -1 if the provider didn't report it
+ * @param md5Checksum The hex-encoded MD5 checksum computed by the provider, or null if it doesn't compute one
+ * @param properties  Any custom key-value properties stored alongside the file (It may be empty, but it will never be null)
+ *
+ * @author Ayydxn
+ * @see CloudStorageProvider#getFileMetadata(String)
+ */
+public record CloudFileMetadata(String name, long size, @Nullable String md5Checksum, Map<String, String> properties)
+{
+    public CloudFileMetadata
+    {
+        properties = properties == null ? Map.of() : Map.copyOf(properties);
+    }
+}
@@ -0,0 +1,58 @@
+package com.ayydxn.worldbackmachine.cloud;
+
+import java.io.File;
+
+/**
+ * Something a {@link CloudStorageProvider} can do better than the least common denominator every provider has to support.
+ * <p>
+ * Providers declare their capabilities through {@link CloudStorageProvider#getCapabilities()}, and {@link com.ayydxn.worldbackmachine.engine.BackupEngine}
+ * picks the fastest way of transferring backups for each provider based on them. A provider should only declare a capability
+ * if it overrides the methods the capability describes. Otherwise, the slower default implementations are used regardless.
+ *
+ * @author Ayydxn
+ */
+public enum CloudStorageCapability
+{
+    /**
+     * {@link CloudStorageProvider#openDownloadStream(String)} streams files as they download, rather than downloading them to disk first.
+     * Backups are read ahead on a separate thread and extracted as they download.
+     */
+    STREAMING_DOWNLOADS,
+
+    /**
+     * {@link CloudStorageProvider#readRange(String, long, int)} reads part of a file without downloading the rest of it,
+     * which is needed to browse backups and restore individual files from them.
+     */
+    RANGE_READS,
+
+    /**
+     * {@link CloudStorageProvider#copyFile(String, String)} copies files on the provider's end, without transferring them.
+     * Backups being replaced are kept as snapshots by copying them.
+     */
+    SERVER_SIDE_COPY,
+
+    /**
+     * {@link CloudStorageProvider#renameFile(String, String)} only updates a file's metadata, without transferring it.
+     * Without {@link #SERVER_SIDE_COPY}, backups being replaced are kept as snapshots by renaming them.
+     */
+    METADATA_RENAME,
+
+    /**
+     * The provider computes the MD5 checksum of every file it stores and reports it in its {@link CloudFileMetadata metadata},
+     * so uploads can be verified against what the provider actually received.
+     */
+    CHECKSUMS,
+
+    /**
+     * {@link CloudStorageProvider#uploadFile(File, String, java.util.Map)} stores custom properties alongside files.
+     * The format of a backup, and whether it's sharded, is only recorded in its properties, so backups uploaded to providers without them
+     * are always unsharded ZIP archives.
+     */
+    CUSTOM_PROPERTIES,
+
+    /**
+     * Several uploads and downloads can run at the same time. Bulk backups only upload one world at a time to providers without it,
+     * and sharded backups only transfer one shard at a time.
+     */
+    PARALLEL_STREAMS
+}
@@ -0,0 +1,279 @@
+package com.ayydxn.worldbackmachine.cloud;
+
+import org.jetbrains.annotations.NotNull;
+import org.jspecify.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Base definition of a cloud storage provider.
+ * <p>
+ * This interface defines the functionality that any cloud storage provider must implement
+ * in order to fully integrate with the mod and be usable. This includes things such as authentication,
+ * file uploading/downloading and other general file management operations.
+ * <p>
+ * Only the least common denominator has to be implemented. Providers which can do better, such as by copying files on their end,
+ * override the relevant default methods and declare so through their {@link #getCapabilities() capabilities}.
+ *
+ * @author Ayydxn
+ */
+public interface CloudStorageProvider
+{
+    /**
+     * Authenticates with the cloud storage provider's API.
+     * <p>
+     * Typically, this will the initiate a OAuth2 (or some other) authentication flow that involves signing in via a browser,
+     * starting a local server or prompting the user for credentials.
+     * <p>
+     * To avoid blocking Minecraft's main game thread, it is recommended this is called on a separate thread.
+     *
+     * @throws IOException If error occurred during the authentication process.
+     * @return True if authentication with the API was successful, false otherwise.
+     */
+    boolean authenticate() throws IOException;
+
+    /**
+     * Uploads a {@link File} to cloud storage.
+     * <p>
+     * Uploads a file to cloud storage with the given name 0into the mod's backup folder. If a file of the same name already exists, it will be overwritten.
+     *
+     * @param file The local file that will be uploaded
+     * @param name The name to upload the file under
+     * @throws IOException If the upload fails, or we are not authenticated with the provider's API.
+     */
+    void uploadFile(File file, String name) throws IOException;
+
+    /**
+     * Uploads a {@link File} to cloud storage along with a set of custom properties.
+     * <p>
+     * Providers which can store custom metadata alongside files (such as Google Drive's {@code appProperties}) should override this
+     * and return the metadata reported by the provider in the upload response, so that callers can verify the upload without another request.
+     * <p>
+     * By default, the properties are discarded, the file is uploaded using {@link #uploadFile(File, String)} and {@link #getFileMetadata(String)} is queried afterward.
+     *
+     * @param file       The local file that will be uploaded
+     * @param name       The name to upload the file under
+     * @param properties The custom properties to store alongside the file
+     * @throws IOException If the upload fails, or we are not authenticated with the provider's API.
+     * @return The metadata of the uploaded file, or null if the provider cannot describe it
+     */
+    @Nullable
+    default CloudFileMetadata uploadFile(File file, String name, Map<String, String> properties) throws IOException
+    {
+        this.uploadFile(file, name);
+
+        return this.getFileMetadata(name);
+    }
+
+    /**
+     * Downloads a file from cloud storage.
+     * <p>
+     * Downloads a file of the specified name from cloud storage and saves it to the given destination path.
+     *
+     * @param name The name of the file to download
+     * @param destinationPath The local folder in which to save the file
+     * @throws IOException If the download fails, the file doesn't exist, or we aren't authenticated with the provider's API.
+     */
+    void downloadFile(String name, File destinationPath) throws IOException;
+
+    /**
+     * Opens a stream of a file's contents as it is being downloaded from cloud storage.
+     * <p>
+     * This lets callers process a file (such as extracting a backup) while it is still downloading, instead of waiting for the entire file
+     * to be written to disk first. Providers which can stream downloads should override this.
+     * By default, the file is {@link #downloadFile(String, File) downloaded} to a temporary file, which is deleted once the returned stream is closed.
+     *
+     * @param name The name of the file to download
+     * @throws IOException If the download fails, the file doesn't exist, or we aren't authenticated with the provider's API.
+     * @return A stream of the file's contents, which the caller is responsible for closing
+     */
+    default InputStream openDownloadStream(String name) throws IOException
+    {
+        File temporaryFile = File.createTempFile("worldback_machine_download_", ".tmp");
+
+        try
+        {
+            this.downloadFile(name, temporaryFile);
+
+            return new FilterInputStream(new FileInputStream(temporaryFile))
+            {
+                @Override
+                public void close() throws IOException
+                {
+                    super.close();
+
+                    Files.deleteIfExists(temporaryFile.toPath());
+                }
+            };
+        }
+        catch (IOException | RuntimeException exception)
+        {
+            Files.deleteIfExists(temporaryFile.toPath());
+
+            throw exception;
+        }
+    }
+
+    /**
+     * Reads a range of bytes from a file stored in cloud storage, without downloading the rest of it.
+     * <p>
+     * This is what allows individual files to be restored from a backup without downloading the entire archive.
+     * Providers which support ranged reads (such as HTTP {@code Range} requests) should override this.
+     * By default, ranged reads aren't supported.
+     *
+     * @param name   The name of the file to read from
+     * @param offset The offset of the first byte to read
+     * @param length The number of bytes to read
+     * @throws IOException If the read fails, the file doesn't exist, or we aren't authenticated with the provider's API.
+     * @throws UnsupportedOperationException If the provider doesn't support ranged reads
+     * @return The bytes that were read. This is only shorter than the requested length if the end of the file was reached.
+     */
+    default byte[] readRange(String name, long offset, int length) throws IOException
+    {
+        throw new UnsupportedOperationException(String.format("'%s' doesn't support ranged reads!", this.getProviderName()));
+    }
+
+    /**
+     * Deletes a file from cloud storage.
+     *
+     * @param name The name of the file to delete
+     * @throws IOException If deleting the file fails, or we aren't authenticated with the provider's API.
+     */
+    void deleteFile(String name) throws IOException;
+
+    /**
+     * Deletes several files from cloud storage. Files that don't exist are ignored.
+     * <p>
+     * Providers which can delete several files in a single request should override this. By default, each file is {@link #deleteFile(String) deleted} on its own.
+     *
+     * @param names The names of the files to delete
+     * @throws IOException If deleting any of the files fails, or we aren't authenticated with the provider's API.
+     */
+    default void deleteFiles(Collection<String> names) throws IOException
+    {
+        for (String name : names)
+            this.deleteFile(name);
+    }
+
+    /**
+     * Copies a file stored in cloud storage to a new name, along with its properties.
+     * <p>
+     * Providers which can copy files on their end (such as Google Drive's {@code files.copy}) should override this, so that no data has to be transferred.
+     * By default, the file is downloaded to a temporary file and uploaded again under the new name.
+     *
+     * @param sourceName      The name of the file to copy
+     * @param destinationName The name to copy the file to. If a file of this name already exists, it will be overwritten.
+     * @throws IOException If copying the file fails, the source file doesn't exist, or we aren't authenticated with the provider's API.
+     */
+    default void copyFile(String sourceName, String destinationName) throws IOException
+    {
+        CloudFileMetadata sourceMetadata = this.getFileMetadata(sourceName);
+        File temporaryFile = File.createTempFile("worldback_machine_copy_", ".tmp");
+
+        try
+        {
+            this.downloadFile(sourceName, temporaryFile);
+            this.uploadFile(temporaryFile, destinationName, sourceMetadata != null ? sourceMetadata.properties() : Map.of());
+        }
+        finally
+        {
+            if (!temporaryFile.delete())
+                temporaryFile.deleteOnExit();
+        }
+    }
+
+    /**
+     * Renames a file stored in cloud storage.
+     * <p>
+     * Providers which can rename files by only updating their metadata should override this.
+     * By default, the file is {@link #copyFile(String, String) copied} to the new name and the original is deleted.
+     *
+     * @param sourceName      The name of the file to rename
+     * @param destinationName The file's new name. If a file of this name already exists, it will be overwritten.
+     * @throws IOException If renaming the file fails, the source file doesn't exist, or we aren't authenticated with the provider's API.
+     */
+    default void renameFile(String sourceName, String destinationName) throws IOException
+    {
+        this.copyFile(sourceName, destinationName);
+        this.deleteFile(sourceName);
+    }
+
+    /**
+     * Returns a list of all the names of the files stored in the mod's backup folder.
+     *
+     * @throws IOException If retrieving the list fails (for whatever reason), or we aren't authenticated with the provider's API.
+     * @return A list of the names of the files (It may be empty, but it will never be null)
+     */
+    @NotNull
+    List<String> listFiles() throws IOException;
+
+    /**
+     * Returns the metadata the provider holds for a file, without downloading any of its contents.
+     * <p>
+     * By default, this returns null as not every provider is able to describe its files.
+     *
+     * @param name The name of the file to describe
+     * @throws IOException If the request fails, or we aren't authenticated with the provider's API.
+     * @return The file's metadata, or null if the file doesn't exist or the provider doesn't support metadata lookups
+     */
+    @Nullable
+    default CloudFileMetadata getFileMetadata(String name) throws IOException
+    {
+        return null;
+    }
+
+    /**
+     * Returns what the provider can do beyond what every provider has to support, which decides how backups are transferred to and from it.
+     * <p>
+     * By default, a provider has no capabilities.
+     *
+     * @return The provider's capabilities
+     */
+    default Set<CloudStorageCapability> getCapabilities()
+    {
+        return EnumSet.noneOf(CloudStorageCapability.class);
+    }
+
+    /**
+     * Returns whether the provider has a {@link #getCapabilities() capability}.
+     *
+     * @param capability The capability to check for
+     * @return True if the provider has the capability, false otherwise
+     */
+    default boolean hasCapability(CloudStorageCapability capability)
+    {
+        return this.getCapabilities().contains(capability);
+    }
+
+    /**
+     * Signs out of the cloud provider and clears any stored credentials from it.
+     * <p>
+     * This will clear any cached tokens, credentials, or authentication state.
+     * After calling this method, {@link #isAuthenticated()} should return false.
+     */
+    void signOut();
+
+    /**
+     * Returns whether you are currently authenticated with the cloud storage provider's API.
+     *
+     * @return Ture if you are authenticated, false otherwise.
+     */
+    boolean isAuthenticated();
+
+    /**
+     * Get the human-readable name of this cloud provider.
+     *
+     * @return The cloud provider's name (e.g., "Google Drive" or "OneDrive")
+     */
+    String getProviderName();
+}
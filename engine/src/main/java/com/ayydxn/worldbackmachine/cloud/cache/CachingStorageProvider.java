@@ -0,0 +1,581 @@
+package com.ayydxn.worldbackmachine.cloud.cache;
+
+import com.ayydxn.worldbackmachine.backup.BackupChecksums;
+import com.ayydxn.worldbackmachine.cloud.CloudFileMetadata;
+import com.ayydxn.worldbackmachine.cloud.CloudStorageCapability;
+import com.ayydxn.worldbackmachine.cloud.CloudStorageProvider;
+import com.ayydxn.worldbackmachine.engine.WorldbackMachineEngine;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import org.jetbrains.annotations.NotNull;
+import org.jspecify.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link CloudStorageProvider} which keeps recent backups in a {@link LocalBackupCache} in front of another provider.
+ * <p>
+ * Every uploaded backup is also stored in the cache, so restoring a recent backup reads it from the local disk instead of downloading it.
+ * Cached copies are only used if their checksum still matches the one the provider reports, so backups replaced elsewhere are never restored stale.
+ * <p>
+ * Optionally, uploads can complete as soon as the backup is in the cache, with the transfer to the provider trickling along in the background.
+ * Background uploads are recorded next to the cache until they've reached the provider, so failed ones are retried and any which haven't finished
+ * by the time the game exits are resumed the next time it starts. Anything that depends on a pending upload, such as copying or deleting the file,
+ * uploads it first and fails if that does, so a backup is never treated as stored before it actually is.
+ *
+ * @author Ayydxn
+ */
+public class CachingStorageProvider implements CloudStorageProvider
+{
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final String PENDING_UPLOADS_FILE_NAME = "pending-uploads.json";
+
+    // Failed background uploads are retried after 30 seconds, doubling every attempt up to 30 minutes
+    private static final long INITIAL_RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30L);
+    private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(30L);
+
+    private final CloudStorageProvider delegate;
+    private final LocalBackupCache localBackupCache;
+    private final boolean uploadInBackground;
+    private final ScheduledExecutorService backgroundUploadExecutor;
+    private final Path pendingUploadsPath;
+
+    // Name of the file -> Its upload which hasn't reached the provider yet
+    private final Map<String, PendingUpload> pendingUploads = Maps.newConcurrentMap();
+
+    // Names of files whose cached copy was last confirmed to match what the provider stores
+    private final Set<String> validatedNames = Sets.newConcurrentHashSet();
+
+    public CachingStorageProvider(CloudStorageProvider delegate, LocalBackupCache localBackupCache, boolean uploadInBackground)
+    {
+        this.delegate = delegate;
+        this.localBackupCache = localBackupCache;
+        this.uploadInBackground = uploadInBackground;
+        this.backgroundUploadExecutor = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread uploadThread = new Thread(runnable, "WorldbackMachine-CacheUploader");
+            uploadThread.setDaemon(true);
+
+            return uploadThread;
+        });
+        this.pendingUploadsPath = localBackupCache.getCacheDirectory().resolve(PENDING_UPLOADS_FILE_NAME);
+
+        this.resumePendingUploads();
+    }
+
+    @Override
+    public boolean authenticate() throws IOException
+    {
+        return this.delegate.authenticate();
+    }
+
+    @Override
+    public void uploadFile(File file, String name) throws IOException
+    {
+        this.uploadFile(file, name, Map.of());
+    }
+
+    @Override
+    public CloudFileMetadata uploadFile(File file, String name, Map<String, String> properties) throws IOException
+    {
+        // The file is about to be replaced, so whatever was still waiting to be uploaded under its name never has to be
+        this.cancelPendingUpload(name);
+        this.validatedNames.remove(name);
+
+        String sha256 = properties.get(BackupChecksums.SHA256_PROPERTY);
+        String md5 = properties.get(BackupChecksums.MD5_PROPERTY);
+
+        // Only backups with known checksums can be stored, since the cache is addressed by them
+        if (sha256 == null || md5 == null)
+        {
+            this.localBackupCache.remove(name);
+
+            return this.delegate.uploadFile(file, name, properties);
+        }
+
+        if (!this.uploadInBackground)
+        {
+            CloudFileMetadata uploadedMetadata = this.delegate.uploadFile(file, name, properties);
+            this.storeInCache(name, file, sha256, md5);
+
+            return uploadedMetadata;
+        }
+
+        this.localBackupCache.pin(name);
+
+        Path cachedPath = this.localBackupCache.store(name, file, sha256, md5);
+        CloudFileMetadata cachedMetadata = new CloudFileMetadata(name, Files.size(cachedPath), md5, properties);
+
+        PendingUpload pendingUpload = new PendingUpload(cachedPath, cachedMetadata, sha256);
+        this.pendingUploads.put(name, pendingUpload);
+        this.savePendingUploads();
+
+        this.scheduleUploadAttempt(pendingUpload, 0L);
+
+        return cachedMetadata;
+    }
+
+    @Override
+    public void downloadFile(String name, File destinationPath) throws IOException
+    {
+        Path cachedPath = this.lookupCurrent(name);
+
+        if (cachedPath != null)
+            Files.copy(cachedPath, destinationPath.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        else
+            this.delegate.downloadFile(name, destinationPath);
+    }
+
+    @Override
+    public InputStream openDownloadStream(String name) throws IOException
+    {
+        Path cachedPath = this.lookupCurrent(name);
+
+        return cachedPath != null ? new FileInputStream(cachedPath.toFile()) : this.delegate.openDownloadStream(name);
+    }
+
+    @Override
+    public byte[] readRange(String name, long offset, int length) throws IOException
+    {
+        // Ranged reads come in bursts of many small reads, so only use cached copies which have already been checked against the provider
+        Path cachedPath = this.validatedNames.contains(name) ? this.localBackupCache.lookup(name, null) : null;
+        if (cachedPath == null)
+            return this.delegate.readRange(name, offset, length);
+
+        try (RandomAccessFile cachedFile = new RandomAccessFile(cachedPath.toFile(), "r"))
+        {
+            int boundedLength = (int) Math.max(0L, Math.min(length, cachedFile.length() - offset));
+            byte[] buffer = new byte[boundedLength];
+
+            cachedFile.seek(offset);
+            cachedFile.readFully(buffer);
+
+            return buffer;
+        }
+    }
+
+    @Override
+    public void deleteFile(String name) throws IOException
+    {
+        this.awaitPendingUpload(name);
+
+        this.delegate.deleteFile(name);
+        this.localBackupCache.remove(name);
+        this.validatedNames.remove(name);
+    }
+
+    @Override
+    public void deleteFiles(Collection<String> names) throws IOException
+    {
+        for (String name : names)
+            this.awaitPendingUpload(name);
+
+        this.delegate.deleteFiles(names);
+
+        for (String name : names)
+        {
+            this.localBackupCache.remove(name);
+            this.validatedNames.remove(name);
+        }
+    }
+
+    @Override
+    public void copyFile(String sourceName, String destinationName) throws IOException
+    {
+        this.awaitPendingUpload(sourceName);
+        this.awaitPendingUpload(destinationName);
+
+        this.delegate.copyFile(sourceName, destinationName);
+        this.localBackupCache.alias(sourceName, destinationName);
+        this.validatedNames.remove(destinationName);
+    }
+
+    @Override
+    public void renameFile(String sourceName, String destinationName) throws IOException
+    {
+        this.awaitPendingUpload(sourceName);
+        this.awaitPendingUpload(destinationName);
+
+        this.delegate.renameFile(sourceName, destinationName);
+        this.localBackupCache.alias(sourceName, destinationName);
+        this.localBackupCache.remove(sourceName);
+        this.validatedNames.remove(sourceName);
+        this.validatedNames.remove(destinationName);
+    }
+
+    @Override
+    public Set<CloudStorageCapability> getCapabilities()
+    {
+        return this.delegate.getCapabilities();
+    }
+
+    @Override
+    public @NotNull List<String> listFiles() throws IOException
+    {
+        List<String> fileNames = Lists.newArrayList(this.delegate.listFiles());
+
+        for (String pendingName : this.pendingUploads.keySet())
+        {
+            if (!fileNames.contains(pendingName))
+                fileNames.add(pendingName);
+        }
+
+        return fileNames;
+    }
+
+    @Override
+    public CloudFileMetadata getFileMetadata(String name) throws IOException
+    {
+        PendingUpload pendingUpload = this.pendingUploads.get(name);
+        if (pendingUpload != null)
+            return pendingUpload.metadata;
+
+        CloudFileMetadata remoteMetadata = this.delegate.getFileMetadata(name);
+        LocalBackupCache.CacheEntry cacheEntry = this.localBackupCache.getEntry(name);
+
+        if (remoteMetadata != null && cacheEntry != null && cacheEntry.md5().equalsIgnoreCase(this.getRemoteMd5(remoteMetadata)))
+            this.validatedNames.add(name);
+        else
+            this.validatedNames.remove(name);
+
+        return remoteMetadata;
+    }
+
+    @Override
+    public void signOut()
+    {
+        this.delegate.signOut();
+    }
+
+    @Override
+    public boolean isAuthenticated()
+    {
+        return this.delegate.isAuthenticated();
+    }
+
+    @Override
+    public String getProviderName()
+    {
+        return this.delegate.getProviderName();
+    }
+
+    /**
+     * Returns the provider whose backups are being cached.
+     *
+     * @return The cached provider
+     */
+    public CloudStorageProvider getDelegate()
+    {
+        return this.delegate;
+    }
+
+    /**
+     * Returns the local cache backups are stored in, which also tracks how often restores were served from it.
+     *
+     * @return The local backup cache
+     */
+    public LocalBackupCache getLocalBackupCache()
+    {
+        return this.localBackupCache;
+    }
+
+    /**
+     * Uploads a file that's waiting to be uploaded in the background right away, waiting for any attempt that's already in progress.
+     *
+     * @param name The name of the file
+     * @throws IOException If the file has to be uploaded, and uploading it fails
+     */
+    private void awaitPendingUpload(String name) throws IOException
+    {
+        PendingUpload pendingUpload = this.pendingUploads.get(name);
+        if (pendingUpload != null)
+            this.upload(pendingUpload);
+    }
+
+    private void cancelPendingUpload(String name)
+    {
+        PendingUpload pendingUpload = this.pendingUploads.remove(name);
+        if (pendingUpload == null)
+            return;
+
+        pendingUpload.cancel();
+
+        this.localBackupCache.unpin(name);
+        this.savePendingUploads();
+    }
+
+    private void scheduleUploadAttempt(PendingUpload pendingUpload, long delayMillis)
+    {
+        pendingUpload.scheduleAttempt(this.backgroundUploadExecutor.schedule(() -> this.attemptUpload(pendingUpload), delayMillis, TimeUnit.MILLISECONDS));
+    }
+
+    private void attemptUpload(PendingUpload pendingUpload)
+    {
+        String name = pendingUpload.metadata.name();
+
+        try
+        {
+            if (this.upload(pendingUpload))
+                WorldbackMachineEngine.LOGGER.info("Finished uploading '{}' to '{}' in the background", name, this.delegate.getProviderName());
+        }
+        catch (Exception exception)
+        {
+            int failedAttempts = pendingUpload.recordFailedAttempt();
+            long retryDelayMillis = Math.min(MAX_RETRY_DELAY_MILLIS, INITIAL_RETRY_DELAY_MILLIS << Math.min(failedAttempts - 1, 16));
+
+            WorldbackMachineEngine.LOGGER.warn("Failed to upload '{}' to '{}' in the background (Attempt {}). It's still available in the local cache, " +
+                    "and will be retried in {} seconds: {}", name, this.delegate.getProviderName(), failedAttempts,
+                    TimeUnit.MILLISECONDS.toSeconds(retryDelayMillis), exception.getMessage());
+
+            this.scheduleUploadAttempt(pendingUpload, retryDelayMillis);
+        }
+    }
+
+    /**
+     * Uploads a pending file from the cache, and stops tracking it once it has reached the provider.
+     *
+     * @param pendingUpload The upload to finish
+     * @throws IOException If uploading the file fails, or the provider stored something other than what was uploaded
+     * @return True if this call uploaded the file, or false if it had already been uploaded or was replaced
+     */
+    private boolean upload(PendingUpload pendingUpload) throws IOException
+    {
+        if (!pendingUpload.upload(this.delegate))
+            return false;
+
+        String name = pendingUpload.metadata.name();
+
+        if (this.pendingUploads.remove(name, pendingUpload))
+        {
+            this.localBackupCache.unpin(name);
+            this.savePendingUploads();
+        }
+
+        return true;
+    }
+
+    /**
+     * Queues every background upload that hadn't reached the provider when the game last exited, as long as its cached copy still exists.
+     */
+    private void resumePendingUploads()
+    {
+        Map<String, PendingUploadRecord> pendingUploadRecords = this.loadPendingUploads();
+        if (pendingUploadRecords.isEmpty())
+            return;
+
+        for (Map.Entry<String, PendingUploadRecord> pendingUploadRecord : pendingUploadRecords.entrySet())
+        {
+            String name = pendingUploadRecord.getKey();
+            PendingUploadRecord uploadRecord = pendingUploadRecord.getValue();
+            Path cachedPath = this.localBackupCache.lookup(name, uploadRecord.md5());
+
+            if (cachedPath == null)
+            {
+                WorldbackMachineEngine.LOGGER.error("The cached copy of '{}' is gone, so its background upload to '{}' can't be resumed!", name,
+                        this.delegate.getProviderName());
+
+                continue;
+            }
+
+            try
+            {
+                CloudFileMetadata cachedMetadata = new CloudFileMetadata(name, Files.size(cachedPath), uploadRecord.md5(), uploadRecord.properties());
+
+                this.localBackupCache.pin(name);
+                this.pendingUploads.put(name, new PendingUpload(cachedPath, cachedMetadata, uploadRecord.sha256()));
+            }
+            catch (IOException exception)
+            {
+                WorldbackMachineEngine.LOGGER.error("Failed to resume the background upload of '{}' to '{}'!", name, this.delegate.getProviderName(), exception);
+            }
+        }
+
+        WorldbackMachineEngine.LOGGER.info("Resuming {} background {} to '{}' which didn't finish", this.pendingUploads.size(),
+                this.pendingUploads.size() == 1 ? "upload" : "uploads", this.delegate.getProviderName());
+
+        this.savePendingUploads();
+        this.pendingUploads.values().forEach(pendingUpload -> this.scheduleUploadAttempt(pendingUpload, 0L));
+    }
+
+    private Map<String, PendingUploadRecord> loadPendingUploads()
+    {
+        if (Files.notExists(this.pendingUploadsPath))
+            return Maps.newHashMap();
+
+        try (Reader pendingUploadsReader = Files.newBufferedReader(this.pendingUploadsPath))
+        {
+            Map<String, PendingUploadRecord> pendingUploadRecords = GSON.fromJson(pendingUploadsReader,
+                    new TypeToken<Map<String, PendingUploadRecord>>() {}.getType());
+
+            return pendingUploadRecords != null ? pendingUploadRecords : Maps.newHashMap();
+        }
+        catch (IOException | JsonParseException exception)
+        {
+            WorldbackMachineEngine.LOGGER.error("Failed to read the background uploads to '{}' which didn't finish!", this.delegate.getProviderName(),
+                    exception);
+
+            return Maps.newHashMap();
+        }
+    }
+
+    private synchronized void savePendingUploads()
+    {
+        Map<String, PendingUploadRecord> pendingUploadRecords = Maps.newTreeMap();
+        this.pendingUploads.forEach((name, pendingUpload) -> pendingUploadRecords.put(name, new PendingUploadRecord(pendingUpload.sha256,
+                pendingUpload.metadata.md5Checksum(), pendingUpload.metadata.properties())));
+
+        Path temporaryPendingUploadsPath = this.pendingUploadsPath.resolveSibling(PENDING_UPLOADS_FILE_NAME + ".tmp");
+
+        try
+        {
+            try (Writer pendingUploadsWriter = Files.newBufferedWriter(temporaryPendingUploadsPath))
+            {
+                GSON.toJson(pendingUploadRecords, pendingUploadsWriter);
+            }
+
+            Files.move(temporaryPendingUploadsPath, this.pendingUploadsPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException exception)
+        {
+            // The uploads still happen, they just won't be resumed if the game exits before they do
+            WorldbackMachineEngine.LOGGER.error("Failed to record the background uploads to '{}'!", this.delegate.getProviderName(), exception);
+        }
+    }
+
+    private void storeInCache(String name, File file, String sha256, String md5)
+    {
+        try
+        {
+            this.localBackupCache.store(name, file, sha256, md5);
+        }
+        catch (IOException exception)
+        {
+            WorldbackMachineEngine.LOGGER.warn("Failed to store '{}' in the local backup cache: {}", name, exception.getMessage());
+        }
+    }
+
+    /**
+     * Looks up a cached copy of a backup which matches what the provider currently stores, counting it as a use.
+     */
+    private Path lookupCurrent(String name) throws IOException
+    {
+        if (this.pendingUploads.containsKey(name))
+            return this.localBackupCache.lookup(name, null);
+
+        CloudFileMetadata remoteMetadata = this.delegate.getFileMetadata(name);
+        String remoteMd5 = remoteMetadata != null ? this.getRemoteMd5(remoteMetadata) : null;
+
+        // Without any checksum to compare against, a cached copy could be stale
+        Path cachedPath = remoteMd5 != null ? this.localBackupCache.lookup(name, remoteMd5) : null;
+
+        if (cachedPath != null)
+            this.validatedNames.add(name);
+        else
+            this.validatedNames.remove(name);
+
+        return cachedPath;
+    }
+
+    private String getRemoteMd5(CloudFileMetadata remoteMetadata)
+    {
+        return remoteMetadata.md5Checksum() != null ? remoteMetadata.md5Checksum() : remoteMetadata.properties().get(BackupChecksums.MD5_PROPERTY);
+    }
+
+    /**
+     * A background upload, as it's recorded so it can be resumed.
+     *
+     * @param sha256     The hex-encoded SHA-256 digest of the file's contents
+     * @param md5        The hex-encoded MD5 digest of the file's contents
+     * @param properties The properties to upload the file with
+     */
+    private record PendingUploadRecord(String sha256, String md5, Map<String, String> properties)
+    {
+    }
+
+    private static class PendingUpload
+    {
+        private final Path cachedPath;
+        private final CloudFileMetadata metadata;
+        private final String sha256;
+        private @Nullable ScheduledFuture<?> scheduledAttempt;
+        private int failedAttempts = 0;
+        private boolean isFinished = false;
+
+        private PendingUpload(Path cachedPath, CloudFileMetadata metadata, String sha256)
+        {
+            this.cachedPath = cachedPath;
+            this.metadata = metadata;
+            this.sha256 = sha256;
+        }
+
+        // Only one attempt runs at a time, so anything waiting on the upload picks up where the last attempt left off
+        private synchronized boolean upload(CloudStorageProvider delegate) throws IOException
+        {
+            if (this.isFinished)
+                return false;
+
+            CloudFileMetadata uploadedMetadata = delegate.uploadFile(this.cachedPath.toFile(), this.metadata.name(), this.metadata.properties());
+
+            if (uploadedMetadata != null && uploadedMetadata.md5Checksum() != null && !uploadedMetadata.md5Checksum().equalsIgnoreCase(this.metadata.md5Checksum()))
+            {
+                throw new IOException(String.format("The upload of '%s' is corrupt! (Expected MD5 %s, but '%s' has MD5 %s)", this.metadata.name(),
+                        this.metadata.md5Checksum(), delegate.getProviderName(), uploadedMetadata.md5Checksum()));
+            }
+
+            this.finish();
+
+            return true;
+        }
+
+        private synchronized void scheduleAttempt(ScheduledFuture<?> scheduledAttempt)
+        {
+            if (this.isFinished)
+            {
+                scheduledAttempt.cancel(false);
+                return;
+            }
+
+            this.scheduledAttempt = scheduledAttempt;
+        }
+
+        private synchronized int recordFailedAttempt()
+        {
+            return ++this.failedAttempts;
+        }
+
+        private synchronized void cancel()
+        {
+            this.finish();
+        }
+
+        private void finish()
+        {
+            this.isFinished = true;
+
+            if (this.scheduledAttempt != null)
+                this.scheduledAttempt.cancel(false);
+        }
+    }
+}
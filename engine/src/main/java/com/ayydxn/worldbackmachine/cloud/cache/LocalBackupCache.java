@@ -0,0 +1,324 @@
+package com.ayydxn.worldbackmachine.cloud.cache;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import org.jspecify.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size-bounded, content-addressed cache of backups on the local disk.
+ * <p>
+ * Backups are stored by the SHA-256 digest of their contents, so the same backup stored under several names (such as a world's most recent backup
+ * and the snapshot made from it) only takes up space once. An index maps each backup name to its contents and tracks when it was last used,
+ * and the least recently used names are evicted once the cache holds more than its maximum number of backups or bytes.
+ *
+ * @author Ayydxn
+ * @see CachingStorageProvider
+ */
+public class LocalBackupCache
+{
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final String INDEX_FILE_NAME = "index.json";
+    private static final String BLOB_EXTENSION = ".blob";
+
+    private final Path cacheDirectory;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    // Name of the backup -> What it's cached as
+    private final Map<String, CacheEntry> cacheEntries;
+
+    // Names of backups which cannot be evicted, such as ones that haven't been uploaded yet
+    private final Set<String> pinnedNames = Sets.newHashSet();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public LocalBackupCache(Path cacheDirectory, int maxEntries, long maxBytes) throws IOException
+    {
+        this.cacheDirectory = cacheDirectory;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+
+        Files.createDirectories(cacheDirectory);
+
+        this.cacheEntries = this.loadIndex();
+    }
+
+    /**
+     * Stores a backup in the cache under the given name.
+     *
+     * @param name   The name of the backup
+     * @param file   The backup's contents
+     * @param sha256 The hex-encoded SHA-256 digest of the backup's contents
+     * @param md5    The hex-encoded MD5 digest of the backup's contents
+     * @throws IOException If copying the backup into the cache fails
+     * @return The path of the cached copy, which remains valid until the name is evicted or removed
+     */
+    public synchronized Path store(String name, File file, String sha256, String md5) throws IOException
+    {
+        Path blobPath = this.getBlobPath(sha256);
+
+        if (Files.notExists(blobPath))
+        {
+            Path temporaryBlobPath = Files.createTempFile(this.cacheDirectory, sha256, ".tmp");
+
+            Files.copy(file.toPath(), temporaryBlobPath, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temporaryBlobPath, blobPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        this.cacheEntries.put(name, new CacheEntry(sha256, md5, Files.size(blobPath), System.currentTimeMillis()));
+        this.evict();
+        this.saveIndex();
+
+        return blobPath;
+    }
+
+    /**
+     * Looks up the cached copy of a backup.
+     * <p>
+     * If an expected MD5 digest is given, the cached copy is only returned if its contents match it, as the backup may have been replaced since it was cached.
+     *
+     * @param name        The name of the backup
+     * @param expectedMd5 The hex-encoded MD5 digest the backup is expected to have, or null to accept whichever copy is cached
+     * @return The path of the cached copy, or null if the backup isn't cached or is outdated
+     */
+    @Nullable
+    public synchronized Path lookup(String name, @Nullable String expectedMd5)
+    {
+        CacheEntry cacheEntry = this.cacheEntries.get(name);
+        Path blobPath = cacheEntry != null ? this.getBlobPath(cacheEntry.sha256()) : null;
+
+        if (cacheEntry == null || Files.notExists(blobPath) || (expectedMd5 != null && !expectedMd5.equalsIgnoreCase(cacheEntry.md5())))
+        {
+            this.missCount.incrementAndGet();
+
+            return null;
+        }
+
+        this.hitCount.incrementAndGet();
+        this.cacheEntries.put(name, cacheEntry.withLastAccessMillis(System.currentTimeMillis()));
+        this.trySaveIndex();
+
+        return blobPath;
+    }
+
+    /**
+     * Makes another name refer to the same cached contents as an existing one, such as when a backup is copied on the provider's end.
+     *
+     * @param sourceName      The name of the cached backup
+     * @param destinationName The name which should refer to the same contents
+     */
+    public synchronized void alias(String sourceName, String destinationName)
+    {
+        CacheEntry cacheEntry = this.cacheEntries.get(sourceName);
+        if (cacheEntry == null)
+            return;
+
+        this.cacheEntries.put(destinationName, cacheEntry.withLastAccessMillis(System.currentTimeMillis()));
+        this.evict();
+        this.trySaveIndex();
+    }
+
+    /**
+     * Removes a name from the cache, deleting its contents if no other name refers to them.
+     *
+     * @param name The name of the backup
+     */
+    public synchronized void remove(String name)
+    {
+        if (this.cacheEntries.remove(name) != null)
+        {
+            this.deleteUnreferencedBlobs();
+            this.trySaveIndex();
+        }
+    }
+
+    /**
+     * Prevents a name from being evicted until it is {@link #unpin(String) unpinned}.
+     *
+     * @param name The name of the backup
+     */
+    public synchronized void pin(String name)
+    {
+        this.pinnedNames.add(name);
+    }
+
+    /**
+     * Allows a previously {@link #pin(String) pinned} name to be evicted again.
+     *
+     * @param name The name of the backup
+     */
+    public synchronized void unpin(String name)
+    {
+        if (this.pinnedNames.remove(name))
+        {
+            this.evict();
+            this.trySaveIndex();
+        }
+    }
+
+    /**
+     * Returns the cache entry of a backup without counting it as a use.
+     *
+     * @param name The name of the backup
+     * @return The backup's cache entry, or null if it isn't cached
+     */
+    @Nullable
+    public synchronized CacheEntry getEntry(String name)
+    {
+        return this.cacheEntries.get(name);
+    }
+
+    /**
+     * Returns the directory the cache is stored in.
+     *
+     * @return The cache's directory
+     */
+    public Path getCacheDirectory()
+    {
+        return this.cacheDirectory;
+    }
+
+    public long getHitCount()
+    {
+        return this.hitCount.get();
+    }
+
+    public long getMissCount()
+    {
+        return this.missCount.get();
+    }
+
+    /**
+     * Returns the number of bytes currently taken up by cached backups.
+     *
+     * @return The size of the cache in bytes
+     */
+    public synchronized long getSizeBytes()
+    {
+        return this.cacheEntries.values().stream()
+                .map(CacheEntry::sha256)
+                .distinct()
+                .mapToLong(sha256 -> this.getBlobPath(sha256).toFile().length())
+                .sum();
+    }
+
+    private void evict()
+    {
+        List<String> evictionOrder = this.cacheEntries.entrySet().stream()
+                .filter(entry -> !this.pinnedNames.contains(entry.getKey()))
+                .sorted(Comparator.comparingLong(entry -> entry.getValue().lastAccessMillis()))
+                .map(Map.Entry::getKey)
+                .toList();
+
+        for (String name : evictionOrder)
+        {
+            if (this.cacheEntries.size() <= this.maxEntries && this.getSizeBytes() <= this.maxBytes)
+                break;
+
+            this.cacheEntries.remove(name);
+        }
+
+        this.deleteUnreferencedBlobs();
+    }
+
+    private void deleteUnreferencedBlobs()
+    {
+        Set<String> referencedDigests = Sets.newHashSet();
+        this.cacheEntries.values().forEach(cacheEntry -> referencedDigests.add(cacheEntry.sha256()));
+
+        File[] blobFiles = this.cacheDirectory.toFile().listFiles((directory, fileName) -> fileName.endsWith(BLOB_EXTENSION));
+        if (blobFiles == null)
+            return;
+
+        for (File blobFile : blobFiles)
+        {
+            String sha256 = blobFile.getName().substring(0, blobFile.getName().length() - BLOB_EXTENSION.length());
+
+            if (!referencedDigests.contains(sha256))
+                blobFile.delete();
+        }
+    }
+
+    private Path getBlobPath(String sha256)
+    {
+        return this.cacheDirectory.resolve(sha256 + BLOB_EXTENSION);
+    }
+
+    private Map<String, CacheEntry> loadIndex() throws IOException
+    {
+        Path indexPath = this.cacheDirectory.resolve(INDEX_FILE_NAME);
+        if (Files.notExists(indexPath))
+            return Maps.newHashMap();
+
+        try (Reader indexReader = Files.newBufferedReader(indexPath))
+        {
+            Map<String, CacheEntry> loadedEntries = GSON.fromJson(indexReader, new TypeToken<Map<String, CacheEntry>>() {}.getType());
+
+            return loadedEntries != null ? Maps.newHashMap(loadedEntries) : Maps.newHashMap();
+        }
+        catch (JsonParseException exception)
+        {
+            // A corrupt index only costs us what was cached, so start over rather than failing
+            return Maps.newHashMap();
+        }
+    }
+
+    private void saveIndex() throws IOException
+    {
+        Path temporaryIndexPath = this.cacheDirectory.resolve(INDEX_FILE_NAME + ".tmp");
+
+        try (Writer indexWriter = Files.newBufferedWriter(temporaryIndexPath))
+        {
+            GSON.toJson(this.cacheEntries, indexWriter);
+        }
+
+        Files.move(temporaryIndexPath, this.cacheDirectory.resolve(INDEX_FILE_NAME), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void trySaveIndex()
+    {
+        try
+        {
+            this.saveIndex();
+        }
+        catch (IOException ignored)
+        {
+            // The index is rewritten on the next change, and a stale one only affects which names are evicted first
+        }
+    }
+
+    /**
+     * What a backup is cached as.
+     *
+     * @param sha256           The hex-encoded SHA-256 digest of the backup's contents, which is also what they're stored under
+     * @param md5              The hex-encoded MD5 digest of the backup's contents
+     * @param size             The size of the backup in bytes
+     * @param lastAccessMillis When the backup was last stored or used
+     */
+    public record CacheEntry(String sha256, String md5, long size, long lastAccessMillis)
+    {
+        CacheEntry withLastAccessMillis(long lastAccessMillis)
+        {
+            return new CacheEntry(this.sha256, this.md5, this.size, lastAccessMillis);
+        }
+    }
+}
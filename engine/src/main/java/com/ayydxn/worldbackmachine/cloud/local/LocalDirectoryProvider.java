@@ -0,0 +1,350 @@
+package com.ayydxn.worldbackmachine.cloud.local;
+
+import com.ayydxn.worldbackmachine.cloud.CloudFileMetadata;
+import com.ayydxn.worldbackmachine.cloud.CloudStorageCapability;
+import com.ayydxn.worldbackmachine.cloud.CloudStorageProvider;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import org.jetbrains.annotations.NotNull;
+import org.jspecify.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * A storage provider which keeps backups in a directory on the local disk, such as a second drive or a network share.
+ * <p>
+ * Each backup is stored as a file of the same name, and its metadata is kept in a JSON file of the same name in a hidden {@code .metadata} directory.
+ * The metadata records the backup's properties and its MD5 digest, which is computed as the backup is stored and computed again whenever
+ * the backup's size or modification time no longer match the recorded ones, so a backup that was changed behind the provider's back shows up
+ * as corrupt when it's verified.
+ * <p>
+ * This is the provider the {@link com.ayydxn.worldbackmachine.engine.cli.WorldbackMachineCli command line tool} stores backups with.
+ * There's nothing to authenticate with, so it's always authenticated.
+ *
+ * @author Ayydxn
+ */
+public class LocalDirectoryProvider implements CloudStorageProvider
+{
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final Set<CloudStorageCapability> CAPABILITIES = Collections.unmodifiableSet(EnumSet.of(CloudStorageCapability.STREAMING_DOWNLOADS,
+            CloudStorageCapability.RANGE_READS, CloudStorageCapability.SERVER_SIDE_COPY, CloudStorageCapability.METADATA_RENAME,
+            CloudStorageCapability.CHECKSUMS, CloudStorageCapability.CUSTOM_PROPERTIES, CloudStorageCapability.PARALLEL_STREAMS));
+
+    private static final String METADATA_DIRECTORY_NAME = ".metadata";
+    private static final String METADATA_EXTENSION = ".json";
+    private static final String TEMPORARY_FILE_PREFIX = ".upload-";
+
+    private final Path storageDirectory;
+    private final Path metadataDirectory;
+
+    public LocalDirectoryProvider(Path storageDirectory) throws IOException
+    {
+        this.storageDirectory = storageDirectory.toAbsolutePath().normalize();
+        this.metadataDirectory = this.storageDirectory.resolve(METADATA_DIRECTORY_NAME);
+
+        Files.createDirectories(this.metadataDirectory);
+    }
+
+    @Override
+    public boolean authenticate()
+    {
+        return true;
+    }
+
+    @Override
+    public void uploadFile(File file, String name) throws IOException
+    {
+        this.uploadFile(file, name, Map.of());
+    }
+
+    @Override
+    public CloudFileMetadata uploadFile(File file, String name, Map<String, String> properties) throws IOException
+    {
+        Path filePath = this.resolveFile(name);
+        Path temporaryFilePath = Files.createTempFile(this.storageDirectory, TEMPORARY_FILE_PREFIX, ".tmp");
+
+        try
+        {
+            MessageDigest md5Digest = createMd5Digest();
+
+            // The digest is computed from what was actually written, the same way a remote provider computes it from what it received
+            try (InputStream digestInputStream = new DigestInputStream(Files.newInputStream(file.toPath()), md5Digest))
+            {
+                Files.copy(digestInputStream, temporaryFilePath, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            Files.move(temporaryFilePath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            StoredMetadata storedMetadata = new StoredMetadata(Files.size(filePath), Files.getLastModifiedTime(filePath).toMillis(),
+                    HexFormat.of().formatHex(md5Digest.digest()), properties);
+
+            this.writeMetadata(name, storedMetadata);
+
+            return storedMetadata.toFileMetadata(name);
+        }
+        finally
+        {
+            Files.deleteIfExists(temporaryFilePath);
+        }
+    }
+
+    @Override
+    public void downloadFile(String name, File destinationPath) throws IOException
+    {
+        Files.copy(this.resolveExistingFile(name), destinationPath.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public InputStream openDownloadStream(String name) throws IOException
+    {
+        return Files.newInputStream(this.resolveExistingFile(name));
+    }
+
+    @Override
+    public byte[] readRange(String name, long offset, int length) throws IOException
+    {
+        try (FileChannel fileChannel = FileChannel.open(this.resolveExistingFile(name), StandardOpenOption.READ))
+        {
+            ByteBuffer rangeBuffer = ByteBuffer.allocate((int) Math.max(0L, Math.min(length, fileChannel.size() - offset)));
+
+            while (rangeBuffer.hasRemaining())
+            {
+                if (fileChannel.read(rangeBuffer, offset + rangeBuffer.position()) < 0)
+                    break;
+            }
+
+            return rangeBuffer.position() == rangeBuffer.capacity() ? rangeBuffer.array() : Arrays.copyOf(rangeBuffer.array(), rangeBuffer.position());
+        }
+    }
+
+    @Override
+    public void deleteFile(String name) throws IOException
+    {
+        Files.deleteIfExists(this.resolveFile(name));
+        Files.deleteIfExists(this.resolveMetadataFile(name));
+    }
+
+    @Override
+    public void copyFile(String sourceName, String destinationName) throws IOException
+    {
+        Path sourcePath = this.resolveExistingFile(sourceName);
+        Path destinationPath = this.resolveFile(destinationName);
+        CloudFileMetadata sourceMetadata = Objects.requireNonNull(this.getFileMetadata(sourceName));
+
+        Files.copy(sourcePath, destinationPath, StandardCopyOption.REPLACE_EXISTING);
+
+        // The copy has a modification time of its own, so its metadata is recorded against it rather than copied as-is
+        this.writeMetadata(destinationName, new StoredMetadata(Files.size(destinationPath), Files.getLastModifiedTime(destinationPath).toMillis(),
+                sourceMetadata.md5Checksum(), sourceMetadata.properties()));
+    }
+
+    @Override
+    public void renameFile(String sourceName, String destinationName) throws IOException
+    {
+        Files.move(this.resolveExistingFile(sourceName), this.resolveFile(destinationName), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        Path sourceMetadataPath = this.resolveMetadataFile(sourceName);
+        if (Files.exists(sourceMetadataPath))
+            Files.move(sourceMetadataPath, this.resolveMetadataFile(destinationName), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        else
+            Files.deleteIfExists(this.resolveMetadataFile(destinationName));
+    }
+
+    @Override
+    public @NotNull List<String> listFiles() throws IOException
+    {
+        try (Stream<Path> storedFiles = Files.list(this.storageDirectory))
+        {
+            return storedFiles.filter(Files::isRegularFile)
+                    .map(path -> path.getFileName().toString())
+                    .filter(fileName -> !fileName.startsWith("."))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    @Override
+    public @Nullable CloudFileMetadata getFileMetadata(String name) throws IOException
+    {
+        Path filePath = this.resolveFile(name);
+        if (!Files.isRegularFile(filePath))
+            return null;
+
+        long size = Files.size(filePath);
+        long lastModifiedMillis = Files.getLastModifiedTime(filePath).toMillis();
+
+        StoredMetadata storedMetadata = this.readMetadata(name);
+        if (storedMetadata != null && storedMetadata.size() == size && storedMetadata.lastModifiedMillis() == lastModifiedMillis)
+            return storedMetadata.toFileMetadata(name);
+
+        // The file was changed since its digest was recorded, so the digest has to describe what's there now
+        StoredMetadata refreshedMetadata = new StoredMetadata(size, lastModifiedMillis, this.computeMd5(filePath),
+                storedMetadata != null ? storedMetadata.properties() : Map.of());
+
+        this.writeMetadata(name, refreshedMetadata);
+
+        return refreshedMetadata.toFileMetadata(name);
+    }
+
+    @Override
+    public Set<CloudStorageCapability> getCapabilities()
+    {
+        return CAPABILITIES;
+    }
+
+    @Override
+    public void signOut()
+    {
+    }
+
+    @Override
+    public boolean isAuthenticated()
+    {
+        return true;
+    }
+
+    @Override
+    public String getProviderName()
+    {
+        return "Local Folder";
+    }
+
+    /**
+     * Gets the directory backups are stored in.
+     *
+     * @return The storage directory
+     */
+    public Path getStorageDirectory()
+    {
+        return this.storageDirectory;
+    }
+
+    private Path resolveFile(String name) throws IOException
+    {
+        Path filePath = this.storageDirectory.resolve(name).normalize();
+
+        // Names are always a single file directly in the storage directory, never a path into or out of it
+        if (name.isEmpty() || name.startsWith(".") || !this.storageDirectory.equals(filePath.getParent()))
+            throw new IOException(String.format("'%s' isn't a valid name for a stored file!", name));
+
+        return filePath;
+    }
+
+    private Path resolveExistingFile(String name) throws IOException
+    {
+        Path filePath = this.resolveFile(name);
+        if (!Files.isRegularFile(filePath))
+            throw new NoSuchFileException(filePath.toString(), null, String.format("Tried to read the file '%s' which doesn't exist!", name));
+
+        return filePath;
+    }
+
+    private Path resolveMetadataFile(String name)
+    {
+        return this.metadataDirectory.resolve(name + METADATA_EXTENSION);
+    }
+
+    private @Nullable StoredMetadata readMetadata(String name) throws IOException
+    {
+        Path metadataPath = this.resolveMetadataFile(name);
+        if (Files.notExists(metadataPath))
+            return null;
+
+        try (Reader metadataReader = Files.newBufferedReader(metadataPath))
+        {
+            StoredMetadata storedMetadata = GSON.fromJson(metadataReader, StoredMetadata.class);
+
+            return storedMetadata != null && storedMetadata.md5() != null ? storedMetadata : null;
+        }
+        catch (JsonParseException exception)
+        {
+            // The digest can always be computed again, and properties that can't be read are no worse off than missing ones
+            return null;
+        }
+    }
+
+    private void writeMetadata(String name, StoredMetadata storedMetadata) throws IOException
+    {
+        Path temporaryMetadataPath = Files.createTempFile(this.metadataDirectory, TEMPORARY_FILE_PREFIX, ".tmp");
+
+        try
+        {
+            try (Writer metadataWriter = Files.newBufferedWriter(temporaryMetadataPath))
+            {
+                GSON.toJson(storedMetadata, metadataWriter);
+            }
+
+            Files.move(temporaryMetadataPath, this.resolveMetadataFile(name), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(temporaryMetadataPath);
+        }
+    }
+
+    private String computeMd5(Path filePath) throws IOException
+    {
+        MessageDigest md5Digest = createMd5Digest();
+
+        try (InputStream digestInputStream = new DigestInputStream(Files.newInputStream(filePath), md5Digest))
+        {
+            digestInputStream.transferTo(OutputStream.nullOutputStream());
+        }
+
+        return HexFormat.of().formatHex(md5Digest.digest());
+    }
+
+    private static MessageDigest createMd5Digest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException exception)
+        {
+            // Every Java platform is required to support MD5
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * What's recorded about a stored file in its metadata file.
+     *
+     * @param size               The size of the file when its digest was computed
+     * @param lastModifiedMillis The modification time of the file when its digest was computed
+     * @param md5                The hex-encoded MD5 digest of the file
+     * @param properties         The custom properties stored alongside the file
+     */
+    private record StoredMetadata(long size, long lastModifiedMillis, String md5, @Nullable Map<String, String> properties)
+    {
+        CloudFileMetadata toFileMetadata(String name)
+        {
+            return new CloudFileMetadata(name, this.size, this.md5, this.properties);
+        }
+    }
+}
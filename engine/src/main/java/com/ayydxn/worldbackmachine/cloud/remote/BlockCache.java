@@ -0,0 +1,97 @@
+package com.ayydxn.worldbackmachine.cloud.remote;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least-recently-used cache of fixed-size blocks of a remote file.
+ * <p>
+ * Reads against a remote archive tend to hit the same areas repeatedly (such as its central directory), so keeping
+ * recently used blocks around avoids requesting them from the cloud storage provider again.
+ *
+ * @author Ayydxn
+ */
+class BlockCache
+{
+    private final int blockSize;
+    private final LinkedHashMap<Long, byte[]> blocks;
+
+    private long hitCount = 0L;
+    private long missCount = 0L;
+
+    BlockCache(int blockSize, int maxBlocks)
+    {
+        this.blockSize = blockSize;
+        this.blocks = new LinkedHashMap<>(16, 0.75F, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest)
+            {
+                return this.size() > maxBlocks;
+            }
+        };
+    }
+
+    /**
+     * Returns a block from the cache, loading it if it isn't cached.
+     * <p>
+     * The loader is invoked outside the cache's lock, so a slow request for one block doesn't hold up reads of other blocks.
+     *
+     * @param blockIndex  The index of the block
+     * @param blockLoader Loads the block if it isn't cached
+     * @throws IOException If loading the block fails
+     * @return The contents of the block
+     */
+    byte[] getBlock(long blockIndex, BlockLoader blockLoader) throws IOException
+    {
+        synchronized (this.blocks)
+        {
+            byte[] block = this.blocks.get(blockIndex);
+            if (block != null)
+            {
+                this.hitCount++;
+
+                return block;
+            }
+
+            this.missCount++;
+        }
+
+        byte[] block = blockLoader.load(blockIndex * this.blockSize, this.blockSize);
+
+        synchronized (this.blocks)
+        {
+            this.blocks.put(blockIndex, block);
+        }
+
+        return block;
+    }
+
+    int getBlockSize()
+    {
+        return this.blockSize;
+    }
+
+    long getHitCount()
+    {
+        synchronized (this.blocks)
+        {
+            return this.hitCount;
+        }
+    }
+
+    long getMissCount()
+    {
+        synchronized (this.blocks)
+        {
+            return this.missCount;
+        }
+    }
+
+    @FunctionalInterface
+    interface BlockLoader
+    {
+        byte[] load(long offset, int length) throws IOException;
+    }
+}
@@ -0,0 +1,118 @@
+package com.ayydxn.worldbackmachine.cloud.remote;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A read-only {@link SeekableByteChannel} over a file stored with a cloud storage provider.
+ * <p>
+ * Reads are served in whole blocks from the file system's {@link BlockCache}, which fetches missing blocks using ranged reads.
+ *
+ * @author Ayydxn
+ */
+class RemoteArchiveChannel implements SeekableByteChannel
+{
+    private final RemoteArchiveFileSystem fileSystem;
+
+    private long position = 0L;
+    private boolean isOpen = true;
+
+    RemoteArchiveChannel(RemoteArchiveFileSystem fileSystem)
+    {
+        this.fileSystem = fileSystem;
+    }
+
+    @Override
+    public int read(ByteBuffer destination) throws IOException
+    {
+        this.ensureOpen();
+
+        long archiveSize = this.fileSystem.getArchiveSize();
+        if (this.position >= archiveSize)
+            return -1;
+
+        int bytesRead = 0;
+        BlockCache blockCache = this.fileSystem.getBlockCache();
+        int blockSize = blockCache.getBlockSize();
+
+        while (destination.hasRemaining() && this.position < archiveSize)
+        {
+            long blockIndex = this.position / blockSize;
+            int blockOffset = (int) (this.position % blockSize);
+
+            byte[] block = blockCache.getBlock(blockIndex, this.fileSystem::readRange);
+            if (blockOffset >= block.length)
+                break;
+
+            int length = Math.min(destination.remaining(), block.length - blockOffset);
+            destination.put(block, blockOffset, length);
+
+            this.position += length;
+            bytesRead += length;
+        }
+
+        return bytesRead;
+    }
+
+    @Override
+    public int write(ByteBuffer source)
+    {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException
+    {
+        this.ensureOpen();
+
+        return this.position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException
+    {
+        this.ensureOpen();
+
+        if (newPosition < 0L)
+            throw new IllegalArgumentException(String.format("A channel's position cannot be negative! (%d)", newPosition));
+
+        this.position = newPosition;
+
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException
+    {
+        this.ensureOpen();
+
+        return this.fileSystem.getArchiveSize();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size)
+    {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return this.isOpen;
+    }
+
+    @Override
+    public void close()
+    {
+        this.isOpen = false;
+    }
+
+    private void ensureOpen() throws ClosedChannelException
+    {
+        if (!this.isOpen)
+            throw new ClosedChannelException();
+    }
+}
@@ -0,0 +1,223 @@
+package com.ayydxn.worldbackmachine.cloud.remote;
+
+import com.ayydxn.worldbackmachine.backup.crypto.EncryptedArchiveReader;
+import com.ayydxn.worldbackmachine.backup.policy.BackupPathPolicy;
+import com.ayydxn.worldbackmachine.cloud.CloudStorageProvider;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.ClosedFileSystemException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * A read-only {@link FileSystem} exposing a single archive stored with a cloud storage provider.
+ * <p>
+ * The file system contains nothing but its root directory and the archive itself, which can be opened as a seekable channel.
+ * Its contents are fetched on demand using {@link CloudStorageProvider#readRange(String, long, int) ranged reads} and kept in a {@link BlockCache}.
+ *
+ * @author Ayydxn
+ * @see RemoteArchiveFileSystemProvider
+ */
+public class RemoteArchiveFileSystem extends FileSystem
+{
+    private final RemoteArchiveFileSystemProvider fileSystemProvider;
+    private final CloudStorageProvider cloudStorageProvider;
+    private final String archiveName;
+    private final long archiveSize;
+    private final BlockCache blockCache;
+    private final @Nullable EncryptedArchiveReader encryptedArchiveReader;
+    private final String id;
+
+    private volatile boolean isOpen = true;
+
+    RemoteArchiveFileSystem(RemoteArchiveFileSystemProvider fileSystemProvider, CloudStorageProvider cloudStorageProvider, String archiveName,
+                            long archiveSize, int blockSize, int maxCachedBlocks, @Nullable EncryptedArchiveReader encryptedArchiveReader)
+    {
+        this.fileSystemProvider = fileSystemProvider;
+        this.cloudStorageProvider = cloudStorageProvider;
+        this.archiveName = archiveName;
+        this.archiveSize = archiveSize;
+        this.blockCache = new BlockCache(blockSize, maxCachedBlocks);
+        this.encryptedArchiveReader = encryptedArchiveReader;
+        this.id = UUID.randomUUID().toString();
+    }
+
+    /**
+     * Returns the path of the remote archive within this file system.
+     *
+     * @return The path of the remote archive
+     */
+    public Path getArchivePath()
+    {
+        return new RemoteArchivePath(this, "/" + this.archiveName);
+    }
+
+    /**
+     * Returns the number of reads that were served from the block cache.
+     *
+     * @return The number of cache hits
+     */
+    public long getCacheHitCount()
+    {
+        return this.blockCache.getHitCount();
+    }
+
+    /**
+     * Returns the number of reads that had to request a block from the cloud storage provider.
+     *
+     * @return The number of cache misses
+     */
+    public long getCacheMissCount()
+    {
+        return this.blockCache.getMissCount();
+    }
+
+    @Override
+    public FileSystemProvider provider()
+    {
+        return this.fileSystemProvider;
+    }
+
+    @Override
+    public void close()
+    {
+        if (this.isOpen)
+        {
+            this.isOpen = false;
+            this.fileSystemProvider.removeFileSystem(this);
+        }
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return this.isOpen;
+    }
+
+    @Override
+    public boolean isReadOnly()
+    {
+        return true;
+    }
+
+    @Override
+    public String getSeparator()
+    {
+        return "/";
+    }
+
+    @Override
+    public Iterable<Path> getRootDirectories()
+    {
+        return Collections.singletonList(new RemoteArchivePath(this, "/"));
+    }
+
+    @Override
+    public Iterable<FileStore> getFileStores()
+    {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Set<String> supportedFileAttributeViews()
+    {
+        return Set.of("basic");
+    }
+
+    @Override
+    public Path getPath(String first, String... more)
+    {
+        String path = more.length == 0 ? first : first + "/" + String.join("/", more);
+
+        return new RemoteArchivePath(this, path);
+    }
+
+    @Override
+    public PathMatcher getPathMatcher(String syntaxAndPattern)
+    {
+        int separatorIndex = syntaxAndPattern.indexOf(':');
+        if (separatorIndex <= 0)
+            throw new IllegalArgumentException(String.format("'%s' doesn't name the syntax of its pattern!", syntaxAndPattern));
+
+        String syntax = syntaxAndPattern.substring(0, separatorIndex);
+        String patternString = syntaxAndPattern.substring(separatorIndex + 1);
+
+        // Globs use the same syntax as backup rules, whose paths are separated by forward slashes just like this file system's
+        Pattern pattern;
+        if (syntax.equalsIgnoreCase("glob"))
+            pattern = Pattern.compile(BackupPathPolicy.globToRegex(patternString));
+        else if (syntax.equalsIgnoreCase("regex"))
+            pattern = Pattern.compile(patternString);
+        else
+            throw new UnsupportedOperationException(String.format("Remote archive file systems don't support '%s' path matchers!", syntax));
+
+        return path -> pattern.matcher(path.toString()).matches();
+    }
+
+    @Override
+    public UserPrincipalLookupService getUserPrincipalLookupService()
+    {
+        throw new UnsupportedOperationException("Remote archive file systems don't have users!");
+    }
+
+    @Override
+    public WatchService newWatchService()
+    {
+        throw new UnsupportedOperationException("Remote archives cannot be watched!");
+    }
+
+    String getID()
+    {
+        return this.id;
+    }
+
+    long getArchiveSize()
+    {
+        return this.archiveSize;
+    }
+
+    BlockCache getBlockCache()
+    {
+        return this.blockCache;
+    }
+
+    boolean isArchivePath(Path path)
+    {
+        return path.toAbsolutePath().normalize().equals(this.getArchivePath());
+    }
+
+    boolean isRootPath(Path path)
+    {
+        return path.toAbsolutePath().normalize().getNameCount() == 0;
+    }
+
+    List<Path> listRoot()
+    {
+        return Collections.singletonList(this.getArchivePath());
+    }
+
+    byte[] readRange(long offset, int length) throws IOException
+    {
+        if (!this.isOpen)
+            throw new ClosedFileSystemException();
+
+        int boundedLength = (int) Math.min(length, this.archiveSize - offset);
+
+        // Offsets into encrypted archives refer to their plaintext, which the reader maps to the segments covering it
+        if (this.encryptedArchiveReader != null)
+            return this.encryptedArchiveReader.read(offset, boundedLength);
+
+        return this.cloudStorageProvider.readRange(this.archiveName, offset, boundedLength);
+    }
+}
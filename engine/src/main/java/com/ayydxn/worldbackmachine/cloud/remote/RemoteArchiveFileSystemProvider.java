@@ -0,0 +1,402 @@
+package com.ayydxn.worldbackmachine.cloud.remote;
+
+import com.ayydxn.worldbackmachine.backup.crypto.ArchiveEncryption;
+import com.ayydxn.worldbackmachine.backup.crypto.BackupKeyManager;
+import com.ayydxn.worldbackmachine.backup.crypto.EncryptedArchiveReader;
+import com.ayydxn.worldbackmachine.cloud.CloudFileMetadata;
+import com.ayydxn.worldbackmachine.cloud.CloudStorageProvider;
+import com.google.common.collect.Maps;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AccessMode;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.ReadOnlyFileSystemException;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A read-only {@link FileSystemProvider} for archives stored with a cloud storage provider.
+ * <p>
+ * Each {@link RemoteArchiveFileSystem} exposes a single remote archive as a seekable file, whose contents are fetched on demand
+ * using ranged reads. This is enough for other file system providers, such as the JDK's ZIP file system, to be layered on top of it
+ * and read individual entries out of a backup without downloading the entire archive.
+ * <p>
+ * Archives that are {@link ArchiveEncryption encrypted} are exposed decrypted, with only the segments covering each read being fetched and decrypted.
+ *
+ * @author Ayydxn
+ * @see RemoteBackupArchive
+ */
+public class RemoteArchiveFileSystemProvider extends FileSystemProvider
+{
+    public static final String SCHEME = "worldback-remote";
+    public static final RemoteArchiveFileSystemProvider INSTANCE = new RemoteArchiveFileSystemProvider();
+
+    public static final String CLOUD_STORAGE_PROVIDER_ENV = "cloudStorageProvider";
+    public static final String BLOCK_SIZE_ENV = "blockSize";
+    public static final String MAX_CACHED_BLOCKS_ENV = "maxCachedBlocks";
+    public static final String BACKUP_KEY_MANAGER_ENV = "backupKeyManager";
+
+    private static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    private static final int DEFAULT_MAX_CACHED_BLOCKS = 64;
+
+    // ID of the file system -> The file system
+    private final Map<String, RemoteArchiveFileSystem> fileSystems = Maps.newConcurrentMap();
+
+    /**
+     * Opens a file system over an archive stored with a cloud storage provider, using the default block size and cache size.
+     *
+     * @param cloudStorageProvider The cloud storage provider the archive is stored with. It must support ranged reads.
+     * @param archiveName          The name of the archive
+     * @throws IOException If the archive doesn't exist, or its metadata cannot be retrieved
+     * @return The opened file system
+     */
+    public RemoteArchiveFileSystem newFileSystem(CloudStorageProvider cloudStorageProvider, String archiveName) throws IOException
+    {
+        return this.newFileSystem(cloudStorageProvider, archiveName, null);
+    }
+
+    /**
+     * Opens a file system over an archive stored with a cloud storage provider, which may be encrypted, using the default block size and cache size.
+     *
+     * @param cloudStorageProvider The cloud storage provider the archive is stored with. It must support ranged reads.
+     * @param archiveName          The name of the archive
+     * @param backupKeyManager     The manager holding the key the archive was encrypted with, which is only needed if the archive is encrypted
+     * @throws IOException If the archive doesn't exist, its metadata cannot be retrieved or it cannot be decrypted
+     * @return The opened file system
+     */
+    public RemoteArchiveFileSystem newFileSystem(CloudStorageProvider cloudStorageProvider, String archiveName, @Nullable BackupKeyManager backupKeyManager)
+            throws IOException
+    {
+        return this.newFileSystem(cloudStorageProvider, archiveName, DEFAULT_BLOCK_SIZE, DEFAULT_MAX_CACHED_BLOCKS, backupKeyManager);
+    }
+
+    /**
+     * Opens a file system over an archive stored with a cloud storage provider.
+     *
+     * @param cloudStorageProvider The cloud storage provider the archive is stored with. It must support ranged reads.
+     * @param archiveName          The name of the archive
+     * @param blockSize            The size of each block fetched from the provider in bytes
+     * @param maxCachedBlocks      The maximum number of blocks kept in the file system's cache
+     * @throws IOException If the archive doesn't exist, or its metadata cannot be retrieved
+     * @return The opened file system
+     */
+    public RemoteArchiveFileSystem newFileSystem(CloudStorageProvider cloudStorageProvider, String archiveName, int blockSize, int maxCachedBlocks)
+            throws IOException
+    {
+        return this.newFileSystem(cloudStorageProvider, archiveName, blockSize, maxCachedBlocks, null);
+    }
+
+    /**
+     * Opens a file system over an archive stored with a cloud storage provider.
+     *
+     * @param cloudStorageProvider The cloud storage provider the archive is stored with. It must support ranged reads.
+     * @param archiveName          The name of the archive
+     * @param blockSize            The size of each block fetched from the provider in bytes
+     * @param maxCachedBlocks      The maximum number of blocks kept in the file system's cache
+     * @param backupKeyManager     The manager holding the key the archive was encrypted with, which is only needed if the archive is encrypted
+     * @throws IOException If the archive doesn't exist, its metadata cannot be retrieved or it cannot be decrypted
+     * @return The opened file system
+     */
+    public RemoteArchiveFileSystem newFileSystem(CloudStorageProvider cloudStorageProvider, String archiveName, int blockSize, int maxCachedBlocks,
+                                                 @Nullable BackupKeyManager backupKeyManager) throws IOException
+    {
+        if (blockSize <= 0 || maxCachedBlocks <= 0)
+            throw new IllegalArgumentException(String.format("Invalid block cache configuration! (Block Size: %d, Max Blocks: %d)", blockSize, maxCachedBlocks));
+
+        CloudFileMetadata archiveMetadata = cloudStorageProvider.getFileMetadata(archiveName);
+        if (archiveMetadata == null || archiveMetadata.size() < 0)
+            throw new NoSuchFileException(archiveName, null, String.format("'%s' cannot describe it", cloudStorageProvider.getProviderName()));
+
+        EncryptedArchiveReader encryptedArchiveReader = null;
+
+        if (ArchiveEncryption.isEncrypted(archiveMetadata.properties()))
+        {
+            if (backupKeyManager == null)
+                throw new IOException(String.format("'%s' is encrypted, but no backup keys were given to decrypt it with!", archiveName));
+
+            encryptedArchiveReader = EncryptedArchiveReader.open((offset, length) -> cloudStorageProvider.readRange(archiveName, offset, length),
+                    archiveMetadata.size(), backupKeyManager);
+        }
+
+        long archiveSize = encryptedArchiveReader != null ? encryptedArchiveReader.getPlaintextSize() : archiveMetadata.size();
+        RemoteArchiveFileSystem fileSystem = new RemoteArchiveFileSystem(this, cloudStorageProvider, archiveName, archiveSize, blockSize, maxCachedBlocks,
+                encryptedArchiveReader);
+
+        this.fileSystems.put(fileSystem.getID(), fileSystem);
+
+        return fileSystem;
+    }
+
+    @Override
+    public String getScheme()
+    {
+        return SCHEME;
+    }
+
+    @Override
+    public FileSystem newFileSystem(URI uri, Map<String, ?> env) throws IOException
+    {
+        if (!(env.get(CLOUD_STORAGE_PROVIDER_ENV) instanceof CloudStorageProvider cloudStorageProvider))
+            throw new IllegalArgumentException(String.format("Remote archive file systems require a '%s' in their environment!", CLOUD_STORAGE_PROVIDER_ENV));
+
+        String archiveName = uri.getPath().startsWith("/") ? uri.getPath().substring(1) : uri.getPath();
+        int blockSize = env.get(BLOCK_SIZE_ENV) instanceof Integer value ? value : DEFAULT_BLOCK_SIZE;
+        int maxCachedBlocks = env.get(MAX_CACHED_BLOCKS_ENV) instanceof Integer value ? value : DEFAULT_MAX_CACHED_BLOCKS;
+
+        BackupKeyManager backupKeyManager = env.get(BACKUP_KEY_MANAGER_ENV) instanceof BackupKeyManager value ? value : null;
+
+        return this.newFileSystem(cloudStorageProvider, archiveName, blockSize, maxCachedBlocks, backupKeyManager);
+    }
+
+    @Override
+    public FileSystem getFileSystem(URI uri)
+    {
+        RemoteArchiveFileSystem fileSystem = uri.getAuthority() != null ? this.fileSystems.get(uri.getAuthority()) : null;
+        if (fileSystem == null)
+            throw new FileSystemNotFoundException(uri.toString());
+
+        return fileSystem;
+    }
+
+    @Override
+    public Path getPath(URI uri)
+    {
+        return this.getFileSystem(uri).getPath(uri.getPath());
+    }
+
+    @Override
+    public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attributes) throws IOException
+    {
+        RemoteArchiveFileSystem fileSystem = this.getFileSystem(path);
+
+        for (OpenOption option : options)
+        {
+            if (option == StandardOpenOption.WRITE || option == StandardOpenOption.APPEND || option == StandardOpenOption.CREATE ||
+                    option == StandardOpenOption.CREATE_NEW || option == StandardOpenOption.TRUNCATE_EXISTING || option == StandardOpenOption.DELETE_ON_CLOSE)
+            {
+                throw new ReadOnlyFileSystemException();
+            }
+        }
+
+        if (!fileSystem.isArchivePath(path))
+            throw new NoSuchFileException(path.toString());
+
+        return new RemoteArchiveChannel(fileSystem);
+    }
+
+    @Override
+    public DirectoryStream<Path> newDirectoryStream(Path directory, DirectoryStream.Filter<? super Path> filter) throws IOException
+    {
+        RemoteArchiveFileSystem fileSystem = this.getFileSystem(directory);
+        if (!fileSystem.isRootPath(directory))
+            throw new NoSuchFileException(directory.toString());
+
+        List<Path> entries = fileSystem.listRoot().stream()
+                .filter(path ->
+                {
+                    try
+                    {
+                        return filter.accept(path);
+                    }
+                    catch (IOException exception)
+                    {
+                        return false;
+                    }
+                })
+                .toList();
+
+        return new DirectoryStream<>()
+        {
+            @Override
+            public Iterator<Path> iterator()
+            {
+                return entries.iterator();
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+    }
+
+    @Override
+    public void createDirectory(Path directory, FileAttribute<?>... attributes)
+    {
+        throw new ReadOnlyFileSystemException();
+    }
+
+    @Override
+    public void delete(Path path)
+    {
+        throw new ReadOnlyFileSystemException();
+    }
+
+    @Override
+    public void copy(Path source, Path target, CopyOption... options)
+    {
+        throw new ReadOnlyFileSystemException();
+    }
+
+    @Override
+    public void move(Path source, Path target, CopyOption... options)
+    {
+        throw new ReadOnlyFileSystemException();
+    }
+
+    @Override
+    public boolean isSameFile(Path path, Path otherPath)
+    {
+        return path.toAbsolutePath().normalize().equals(otherPath.toAbsolutePath().normalize());
+    }
+
+    @Override
+    public boolean isHidden(Path path)
+    {
+        return false;
+    }
+
+    @Override
+    public FileStore getFileStore(Path path)
+    {
+        throw new UnsupportedOperationException("Remote archive file systems don't have file stores!");
+    }
+
+    @Override
+    public void checkAccess(Path path, AccessMode... modes) throws IOException
+    {
+        RemoteArchiveFileSystem fileSystem = this.getFileSystem(path);
+        if (!fileSystem.isRootPath(path) && !fileSystem.isArchivePath(path))
+            throw new NoSuchFileException(path.toString());
+
+        for (AccessMode accessMode : modes)
+        {
+            if (accessMode != AccessMode.READ)
+                throw new AccessDeniedException(path.toString(), null, "Remote archive file systems are read-only");
+        }
+    }
+
+    @Override
+    public <V extends FileAttributeView> V getFileAttributeView(Path path, Class<V> type, LinkOption... options)
+    {
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> type, LinkOption... options) throws IOException
+    {
+        if (type != BasicFileAttributes.class)
+            throw new UnsupportedOperationException(String.format("Remote archive file systems don't support '%s'", type.getSimpleName()));
+
+        RemoteArchiveFileSystem fileSystem = this.getFileSystem(path);
+        boolean isArchive = fileSystem.isArchivePath(path);
+
+        if (!isArchive && !fileSystem.isRootPath(path))
+            throw new NoSuchFileException(path.toString());
+
+        return (A) new RemoteArchiveAttributes(isArchive, isArchive ? fileSystem.getArchiveSize() : 0L);
+    }
+
+    @Override
+    public Map<String, Object> readAttributes(Path path, String attributes, LinkOption... options) throws IOException
+    {
+        BasicFileAttributes fileAttributes = this.readAttributes(path, BasicFileAttributes.class, options);
+
+        return Map.of("size", fileAttributes.size(),
+                "isRegularFile", fileAttributes.isRegularFile(),
+                "isDirectory", fileAttributes.isDirectory(),
+                "isSymbolicLink", false,
+                "isOther", false,
+                "lastModifiedTime", fileAttributes.lastModifiedTime(),
+                "lastAccessTime", fileAttributes.lastAccessTime(),
+                "creationTime", fileAttributes.creationTime());
+    }
+
+    @Override
+    public void setAttribute(Path path, String attribute, Object value, LinkOption... options)
+    {
+        throw new ReadOnlyFileSystemException();
+    }
+
+    void removeFileSystem(RemoteArchiveFileSystem fileSystem)
+    {
+        this.fileSystems.remove(fileSystem.getID());
+    }
+
+    private RemoteArchiveFileSystem getFileSystem(Path path)
+    {
+        if (!(path.getFileSystem() instanceof RemoteArchiveFileSystem fileSystem))
+            throw new ProviderMismatchException();
+
+        return fileSystem;
+    }
+
+    private record RemoteArchiveAttributes(boolean isRegularFile, long size) implements BasicFileAttributes
+    {
+        private static final FileTime EPOCH = FileTime.fromMillis(0L);
+
+        @Override
+        public FileTime lastModifiedTime()
+        {
+            return EPOCH;
+        }
+
+        @Override
+        public FileTime lastAccessTime()
+        {
+            return EPOCH;
+        }
+
+        @Override
+        public FileTime creationTime()
+        {
+            return EPOCH;
+        }
+
+        @Override
+        public boolean isDirectory()
+        {
+            return !this.isRegularFile;
+        }
+
+        @Override
+        public boolean isSymbolicLink()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean isOther()
+        {
+            return false;
+        }
+
+        @Override
+        public Object fileKey()
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.ayydxn.worldbackmachine.cloud.remote;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystem;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A {@link Path} within a {@link RemoteArchiveFileSystem}.
+ * <p>
+ * Paths use forward slashes as separators. The only paths that exist are the root directory and the remote archive directly beneath it.
+ *
+ * @author Ayydxn
+ */
+class RemoteArchivePath implements Path
+{
+    private final RemoteArchiveFileSystem fileSystem;
+    private final String path;
+
+    RemoteArchivePath(RemoteArchiveFileSystem fileSystem, String path)
+    {
+        this.fileSystem = fileSystem;
+        this.path = normalizeSeparators(path);
+    }
+
+    @Override
+    public FileSystem getFileSystem()
+    {
+        return this.fileSystem;
+    }
+
+    @Override
+    public boolean isAbsolute()
+    {
+        return this.path.startsWith("/");
+    }
+
+    @Override
+    public Path getRoot()
+    {
+        return this.isAbsolute() ? new RemoteArchivePath(this.fileSystem, "/") : null;
+    }
+
+    @Override
+    public Path getFileName()
+    {
+        List<String> names = this.getNames();
+
+        return names.isEmpty() ? null : new RemoteArchivePath(this.fileSystem, names.getLast());
+    }
+
+    @Override
+    public Path getParent()
+    {
+        List<String> names = this.getNames();
+        if (names.isEmpty() || (names.size() == 1 && !this.isAbsolute()))
+            return null;
+
+        return this.fromNames(names.subList(0, names.size() - 1), this.isAbsolute());
+    }
+
+    @Override
+    public int getNameCount()
+    {
+        return this.getNames().size();
+    }
+
+    @Override
+    public Path getName(int index)
+    {
+        List<String> names = this.getNames();
+        if (index < 0 || index >= names.size())
+            throw new IllegalArgumentException(String.format("Invalid name index %d for path '%s'", index, this.path));
+
+        return new RemoteArchivePath(this.fileSystem, names.get(index));
+    }
+
+    @Override
+    public Path subpath(int beginIndex, int endIndex)
+    {
+        List<String> names = this.getNames();
+        if (beginIndex < 0 || endIndex > names.size() || beginIndex >= endIndex)
+            throw new IllegalArgumentException(String.format("Invalid subpath [%d, %d) for path '%s'", beginIndex, endIndex, this.path));
+
+        return this.fromNames(names.subList(beginIndex, endIndex), false);
+    }
+
+    @Override
+    public boolean startsWith(Path other)
+    {
+        RemoteArchivePath otherPath = this.checkPath(other);
+        List<String> names = this.getNames();
+        List<String> otherNames = otherPath.getNames();
+
+        return this.isAbsolute() == otherPath.isAbsolute() && otherNames.size() <= names.size() &&
+                names.subList(0, otherNames.size()).equals(otherNames);
+    }
+
+    @Override
+    public boolean endsWith(Path other)
+    {
+        RemoteArchivePath otherPath = this.checkPath(other);
+        if (otherPath.isAbsolute())
+            return this.equals(otherPath);
+
+        List<String> names = this.getNames();
+        List<String> otherNames = otherPath.getNames();
+
+        return otherNames.size() <= names.size() && names.subList(names.size() - otherNames.size(), names.size()).equals(otherNames);
+    }
+
+    @Override
+    public Path normalize()
+    {
+        List<String> normalizedNames = new ArrayList<>();
+
+        for (String name : this.getNames())
+        {
+            if (name.equals("."))
+                continue;
+
+            if (name.equals("..") && !normalizedNames.isEmpty() && !normalizedNames.getLast().equals(".."))
+                normalizedNames.removeLast();
+            else if (!name.equals("..") || !this.isAbsolute())
+                normalizedNames.add(name);
+        }
+
+        return this.fromNames(normalizedNames, this.isAbsolute());
+    }
+
+    @Override
+    public Path resolve(Path other)
+    {
+        RemoteArchivePath otherPath = this.checkPath(other);
+        if (otherPath.isAbsolute())
+            return otherPath;
+
+        if (otherPath.path.isEmpty())
+            return this;
+
+        return new RemoteArchivePath(this.fileSystem, this.path.endsWith("/") ? this.path + otherPath.path : this.path + "/" + otherPath.path);
+    }
+
+    @Override
+    public Path relativize(Path other)
+    {
+        RemoteArchivePath otherPath = this.checkPath(other);
+        if (!otherPath.startsWith(this))
+            throw new IllegalArgumentException(String.format("'%s' cannot be relativized against '%s'", otherPath, this));
+
+        List<String> otherNames = otherPath.getNames();
+
+        return this.fromNames(otherNames.subList(this.getNameCount(), otherNames.size()), false);
+    }
+
+    @Override
+    public URI toUri()
+    {
+        try
+        {
+            return new URI(RemoteArchiveFileSystemProvider.SCHEME, this.fileSystem.getID(), this.toAbsolutePath().toString(), null);
+        }
+        catch (URISyntaxException exception)
+        {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    @Override
+    public Path toAbsolutePath()
+    {
+        return this.isAbsolute() ? this : new RemoteArchivePath(this.fileSystem, "/" + this.path);
+    }
+
+    @Override
+    public Path toRealPath(LinkOption ... options)
+    {
+        return this.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public WatchKey register(WatchService watcher, WatchEvent.Kind<?> [] events, WatchEvent.Modifier ... modifiers)
+    {
+        throw new UnsupportedOperationException("Remote archives cannot be watched!");
+    }
+
+    @Override
+    public int compareTo(Path other)
+    {
+        return this.path.compareTo(this.checkPath(other).path);
+    }
+
+    @Override
+    public boolean equals(Object other)
+    {
+        return other instanceof RemoteArchivePath otherPath && otherPath.fileSystem == this.fileSystem && otherPath.path.equals(this.path);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return System.identityHashCode(this.fileSystem) * 31 + this.path.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.path;
+    }
+
+    private List<String> getNames()
+    {
+        return Arrays.stream(this.path.split("/"))
+                .filter(name -> !name.isEmpty())
+                .toList();
+    }
+
+    private RemoteArchivePath fromNames(List<String> names, boolean isAbsolute)
+    {
+        return new RemoteArchivePath(this.fileSystem, (isAbsolute ? "/" : "") + String.join("/", names));
+    }
+
+    private RemoteArchivePath checkPath(Path path)
+    {
+        if (!(path instanceof RemoteArchivePath remoteArchivePath))
+            throw new ProviderMismatchException();
+
+        return remoteArchivePath;
+    }
+
+    private static String normalizeSeparators(String path)
+    {
+        String normalizedPath = path.replace('\\', '/').replaceAll("/{2,}", "/");
+
+        return normalizedPath.length() > 1 && normalizedPath.endsWith("/") ? normalizedPath.substring(0, normalizedPath.length() - 1) : normalizedPath;
+    }
+}
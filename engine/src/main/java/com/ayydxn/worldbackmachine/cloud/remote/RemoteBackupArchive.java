@@ -0,0 +1,194 @@
+package com.ayydxn.worldbackmachine.cloud.remote;
+
+import com.ayydxn.worldbackmachine.backup.archive.BlockArchive;
+import com.ayydxn.worldbackmachine.backup.archive.BlockArchiveReader;
+import com.ayydxn.worldbackmachine.backup.crypto.BackupKeyManager;
+import com.ayydxn.worldbackmachine.cloud.CloudStorageProvider;
+import org.jspecify.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * A backup archive stored with a cloud storage provider, which can be browsed and partially restored without downloading it.
+ * <p>
+ * This layers the JDK's ZIP file system over a {@link RemoteArchiveFileSystem}, so only the archive's central directory and
+ * the entries that are actually read are ever fetched from the provider. {@link BlockArchive Block archives} are read through their
+ * own index instead, which likewise only fetches the blocks of the files that are extracted.
+ *
+ * <h2>Usage Example:</h2>
+ * <pre>{@code
+ * try (RemoteBackupArchive archive = RemoteBackupArchive.open(provider, "My World.zip")) {
+ *     archive.extract(List.of("playerdata/<uuid>.dat"), worldPath);
+ * }
+ * }</pre>
+ *
+ * @author Ayydxn
+ */
+public class RemoteBackupArchive implements Closeable
+{
+    private final RemoteArchiveFileSystem remoteFileSystem;
+    private final @Nullable FileSystem zipFileSystem;
+    private final @Nullable BlockArchiveReader blockArchiveReader;
+
+    private RemoteBackupArchive(RemoteArchiveFileSystem remoteFileSystem, @Nullable FileSystem zipFileSystem, @Nullable BlockArchiveReader blockArchiveReader)
+    {
+        this.remoteFileSystem = remoteFileSystem;
+        this.zipFileSystem = zipFileSystem;
+        this.blockArchiveReader = blockArchiveReader;
+    }
+
+    /**
+     * Opens a backup archive stored with a cloud storage provider.
+     *
+     * @param cloudStorageProvider The cloud storage provider the archive is stored with. It must support ranged reads.
+     * @param archiveName          The name of the archive
+     * @throws IOException If the archive doesn't exist, or it isn't a valid ZIP or block archive
+     * @return The opened archive
+     */
+    public static RemoteBackupArchive open(CloudStorageProvider cloudStorageProvider, String archiveName) throws IOException
+    {
+        return open(cloudStorageProvider, archiveName, null);
+    }
+
+    /**
+     * Opens a backup archive stored with a cloud storage provider, which may be encrypted.
+     *
+     * @param cloudStorageProvider The cloud storage provider the archive is stored with. It must support ranged reads.
+     * @param archiveName          The name of the archive
+     * @param backupKeyManager     The manager holding the key the archive was encrypted with, which is only needed if the archive is encrypted
+     * @throws IOException If the archive doesn't exist, it cannot be decrypted or it isn't a valid ZIP or block archive
+     * @return The opened archive
+     */
+    public static RemoteBackupArchive open(CloudStorageProvider cloudStorageProvider, String archiveName, @Nullable BackupKeyManager backupKeyManager)
+            throws IOException
+    {
+        RemoteArchiveFileSystem remoteFileSystem = RemoteArchiveFileSystemProvider.INSTANCE.newFileSystem(cloudStorageProvider, archiveName, backupKeyManager);
+
+        try
+        {
+            long archiveSize = remoteFileSystem.getArchiveSize();
+
+            // Block archives end with their trailer's magic, where a ZIP ends with its end of central directory record
+            if (archiveSize >= Integer.BYTES && BlockArchive.hasTrailer(remoteFileSystem.readRange(archiveSize - Integer.BYTES, Integer.BYTES)))
+                return new RemoteBackupArchive(remoteFileSystem, null, BlockArchive.open(remoteFileSystem::readRange, archiveSize));
+
+            FileSystem zipFileSystem = FileSystems.newFileSystem(remoteFileSystem.getArchivePath(), Map.of());
+
+            return new RemoteBackupArchive(remoteFileSystem, zipFileSystem, null);
+        }
+        catch (IOException | RuntimeException exception)
+        {
+            remoteFileSystem.close();
+
+            throw exception;
+        }
+    }
+
+    /**
+     * Returns the root directory of the archive's contents, which can be browsed using the regular {@link Files} APIs.
+     * <p>
+     * Only ZIP archives can be browsed this way. Block archives can still be listed and extracted from.
+     *
+     * @throws UnsupportedOperationException If the archive is a block archive
+     * @return The archive's root directory
+     */
+    public Path getRoot()
+    {
+        if (this.zipFileSystem == null)
+            throw new UnsupportedOperationException("Block archives can't be browsed as a file system!");
+
+        return this.zipFileSystem.getPath("/");
+    }
+
+    /**
+     * Lists the paths of every file within the archive, relative to the world's directory.
+     *
+     * @throws IOException If reading the archive's central directory fails
+     * @return The paths of every file in the archive
+     */
+    public List<String> listFiles() throws IOException
+    {
+        if (this.blockArchiveReader != null)
+            return this.blockArchiveReader.listFiles();
+
+        Path root = this.getRoot();
+
+        try (Stream<Path> archivePathStream = Files.walk(root))
+        {
+            return archivePathStream.filter(Files::isRegularFile)
+                    .map(path -> root.relativize(path).toString())
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Extracts individual files from the archive into a world directory, replacing them if they already exist.
+     *
+     * @param filePaths  The paths of the files to extract, relative to the world's directory
+     * @param targetPath The world directory to extract the files to
+     * @throws IOException If a file doesn't exist in the archive, or extracting it fails
+     */
+    public void extract(Collection<String> filePaths, Path targetPath) throws IOException
+    {
+        Path normalizedTargetPath = targetPath.toAbsolutePath().normalize();
+
+        for (String filePath : filePaths)
+        {
+            Path destinationPath = normalizedTargetPath.resolve(filePath).normalize();
+            if (!destinationPath.startsWith(normalizedTargetPath))
+                throw new IOException(String.format("Refusing to extract '%s' outside of '%s'!", filePath, targetPath));
+
+            Files.createDirectories(destinationPath.getParent());
+
+            if (this.blockArchiveReader != null)
+                this.blockArchiveReader.extract(filePath, destinationPath);
+            else
+                Files.copy(this.getRoot().resolve(filePath), destinationPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Returns the number of reads of the archive that were served from the local block cache.
+     *
+     * @return The number of cache hits
+     */
+    public long getCacheHitCount()
+    {
+        return this.remoteFileSystem.getCacheHitCount();
+    }
+
+    /**
+     * Returns the number of reads of the archive that had to request data from the cloud storage provider.
+     *
+     * @return The number of cache misses
+     */
+    public long getCacheMissCount()
+    {
+        return this.remoteFileSystem.getCacheMissCount();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            if (this.zipFileSystem != null)
+                this.zipFileSystem.close();
+        }
+        finally
+        {
+            this.remoteFileSystem.close();
+        }
+    }
+}
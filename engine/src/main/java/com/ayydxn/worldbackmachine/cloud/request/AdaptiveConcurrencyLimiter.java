@@ -0,0 +1,162 @@
+package com.ayydxn.worldbackmachine.cloud.request;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Limits how many requests are made to a cloud storage provider at once, adjusting the limit to what the provider can handle.
+ * <p>
+ * The limit follows an additive-increase/multiplicative-decrease (AIMD) scheme: it grows by roughly one request for every round of
+ * successful requests made while the limit is in use and latency stays healthy, and is halved whenever the provider throttles a request.
+ * This pushes throughput up to what the provider allows while backing off as soon as its quotas are hit.
+ * <p>
+ * Latency is healthy while its short-term average stays close to its long-term average. Transfers whose duration depends on
+ * how much data they move rather than on the provider's load should be recorded through {@link #onSuccess()}, so they don't skew it.
+ *
+ * @author Ayydxn
+ * @see RequestExecutor
+ */
+public class AdaptiveConcurrencyLimiter
+{
+    // Latency is considered healthy while its short-term average stays within 2x of its long-term average
+    private static final double HEALTHY_LATENCY_RATIO = 2.0;
+    private static final double SHORT_TERM_SMOOTHING_FACTOR = 0.2;
+    private static final double LONG_TERM_SMOOTHING_FACTOR = 0.02;
+    private static final double UNHEALTHY_LATENCY_DECREASE_FACTOR = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    private double limit;
+    private int inFlightRequests;
+    private double shortTermLatencyNanos;
+    private double longTermLatencyNanos;
+    private long lastDecreaseTimeNanos;
+
+    /**
+     * @param initialLimit The number of requests allowed in parallel to begin with
+     * @param minLimit     The lowest the limit can be decreased to
+     * @param maxLimit     The highest the limit can be increased to
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit)
+    {
+        if (minLimit < 1 || maxLimit < minLimit)
+            throw new IllegalArgumentException(String.format("Invalid concurrency limits! (Min: %d, Max: %d)", minLimit, maxLimit));
+
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.clamp(initialLimit, minLimit, maxLimit);
+        this.lastDecreaseTimeNanos = System.nanoTime();
+    }
+
+    /**
+     * Waits until another request is allowed to be made. Every call must be followed by exactly one call to
+     * {@link #onSuccess(long)}, {@link #onSuccess()}, {@link #onThrottled()} or {@link #onFailure()} once the request finishes.
+     *
+     * @throws InterruptedIOException If the thread is interrupted while waiting
+     */
+    public synchronized void acquire() throws InterruptedIOException
+    {
+        try
+        {
+            while (this.inFlightRequests >= (int) this.limit)
+                this.wait();
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while waiting to make a request");
+        }
+
+        this.inFlightRequests++;
+    }
+
+    /**
+     * Records that a request succeeded.
+     *
+     * @param latencyNanos How long the request took in nanoseconds
+     */
+    public synchronized void onSuccess(long latencyNanos)
+    {
+        if (this.longTermLatencyNanos == 0.0)
+        {
+            this.shortTermLatencyNanos = latencyNanos;
+            this.longTermLatencyNanos = latencyNanos;
+        }
+        else
+        {
+            this.shortTermLatencyNanos += (latencyNanos - this.shortTermLatencyNanos) * SHORT_TERM_SMOOTHING_FACTOR;
+            this.longTermLatencyNanos += (latencyNanos - this.longTermLatencyNanos) * LONG_TERM_SMOOTHING_FACTOR;
+        }
+
+        this.onSuccess();
+    }
+
+    /**
+     * Records that a request succeeded, without taking how long it took into account.
+     */
+    public synchronized void onSuccess()
+    {
+        boolean wasLimited = this.inFlightRequests >= (int) this.limit;
+
+        this.inFlightRequests--;
+
+        if (this.shortTermLatencyNanos > this.longTermLatencyNanos * HEALTHY_LATENCY_RATIO)
+        {
+            // The provider is slowing down, so ease off before it starts throttling
+            this.limit = Math.max(this.minLimit, this.limit * UNHEALTHY_LATENCY_DECREASE_FACTOR);
+        }
+        else if (wasLimited)
+        {
+            // Only grow the limit while it's actually what's holding requests back
+            this.limit = Math.min(this.maxLimit, this.limit + 1.0 / this.limit);
+        }
+
+        this.notifyAll();
+    }
+
+    /**
+     * Records that a request was throttled by the provider, halving the limit.
+     * <p>
+     * Requests which were already in flight when the limit was halved are likely to be throttled too,
+     * so the limit is decreased at most once per round trip.
+     */
+    public synchronized void onThrottled()
+    {
+        this.inFlightRequests--;
+
+        long currentTimeNanos = System.nanoTime();
+        if (currentTimeNanos - this.lastDecreaseTimeNanos >= (long) this.shortTermLatencyNanos)
+        {
+            this.limit = Math.max(this.minLimit, this.limit / 2.0);
+            this.lastDecreaseTimeNanos = currentTimeNanos;
+        }
+
+        this.notifyAll();
+    }
+
+    /**
+     * Records that a request failed for a reason unrelated to the provider's load, which leaves the limit unchanged.
+     */
+    public synchronized void onFailure()
+    {
+        this.inFlightRequests--;
+
+        this.notifyAll();
+    }
+
+    /**
+     * Returns how many requests are currently allowed in parallel.
+     *
+     * @return The current limit
+     */
+    public synchronized int getLimit()
+    {
+        return (int) this.limit;
+    }
+
+    public synchronized int getInFlightRequests()
+    {
+        return this.inFlightRequests;
+    }
+}
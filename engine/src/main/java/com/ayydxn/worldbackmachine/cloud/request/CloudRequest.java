@@ -0,0 +1,19 @@
+package com.ayydxn.worldbackmachine.cloud.request;
+
+import java.io.IOException;
+
+/**
+ * A single request made to a cloud storage provider's API, which can be executed again if it fails.
+ * <p>
+ * A request must build everything it sends each time it is executed, so that retrying it doesn't reuse a half-consumed stream.
+ *
+ * @param <T> The type of the request's result
+ *
+ * @author Ayydxn
+ * @see RequestExecutor
+ */
+@FunctionalInterface
+public interface CloudRequest<T>
+{
+    T execute() throws IOException;
+}
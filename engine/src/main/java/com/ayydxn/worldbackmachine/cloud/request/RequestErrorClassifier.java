@@ -0,0 +1,24 @@
+package com.ayydxn.worldbackmachine.cloud.request;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+
+/**
+ * Decides which errors returned by a cloud storage provider's API are worth retrying.
+ * <p>
+ * Every provider reports throttling and temporary outages differently, so each provides its own classifier to its {@link RequestExecutor}.
+ *
+ * @author Ayydxn
+ */
+@FunctionalInterface
+public interface RequestErrorClassifier
+{
+    /**
+     * Classifies an error thrown by a request.
+     *
+     * @param exception The error the request failed with
+     * @return How to retry the request, or null if it cannot succeed by being retried
+     */
+    @Nullable RetryDecision classify(IOException exception);
+}
@@ -0,0 +1,170 @@
+package com.ayydxn.worldbackmachine.cloud.request;
+
+import com.ayydxn.worldbackmachine.engine.WorldbackMachineEngine;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes requests to a cloud storage provider's API, retrying them when they fail and limiting how many are made at once.
+ * <p>
+ * Requests the provider's {@link RequestErrorClassifier} considers retryable are retried with exponential backoff and full jitter,
+ * waiting at least as long as the provider asked for through a {@code Retry-After} header. How many requests may be in flight at once
+ * is decided by an {@link AdaptiveConcurrencyLimiter}, which is cut back whenever the provider throttles a request.
+ * <p>
+ * Providers should route every API call through a single executor, so they all share its limit.
+ *
+ * <h2>Usage Example:</h2>
+ * <pre>{@code
+ * File file = this.requestExecutor.execute("Get file", () -> this.driveClientService.files().get(fileID).execute());
+ * }</pre>
+ *
+ * @author Ayydxn
+ */
+public class RequestExecutor
+{
+    private static final int DEFAULT_MAX_ATTEMPTS = 8;
+    private static final long BASE_RETRY_DELAY_MILLIS = 1000L;
+    private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(64L);
+
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final RequestErrorClassifier errorClassifier;
+    private final int maxAttempts;
+
+    public RequestExecutor(AdaptiveConcurrencyLimiter concurrencyLimiter, RequestErrorClassifier errorClassifier)
+    {
+        this(concurrencyLimiter, errorClassifier, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    public RequestExecutor(AdaptiveConcurrencyLimiter concurrencyLimiter, RequestErrorClassifier errorClassifier, int maxAttempts)
+    {
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.errorClassifier = errorClassifier;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Executes a request, retrying it until it succeeds, fails with an error that isn't retryable, or runs out of attempts.
+     *
+     * @param description A short description of the request for logging
+     * @param request     The request to execute
+     * @param <T>         The type of the request's result
+     * @throws IOException If the request fails and cannot be retried
+     * @return The request's result
+     */
+    public <T> T execute(String description, CloudRequest<T> request) throws IOException
+    {
+        return this.execute(description, request, true);
+    }
+
+    /**
+     * Executes a request which transfers a file's contents, the same way as {@link #execute(String, CloudRequest)}.
+     * <p>
+     * How long a transfer takes depends on the size of the file rather than how loaded the provider is,
+     * so its latency isn't used to adjust how many requests are made at once.
+     *
+     * @param description A short description of the request for logging
+     * @param request     The request to execute
+     * @param <T>         The type of the request's result
+     * @throws IOException If the request fails and cannot be retried
+     * @return The request's result
+     */
+    public <T> T executeTransfer(String description, CloudRequest<T> request) throws IOException
+    {
+        return this.execute(description, request, false);
+    }
+
+    private <T> T execute(String description, CloudRequest<T> request, boolean isLatencyTracked) throws IOException
+    {
+        for (int attempt = 1; ; attempt++)
+        {
+            this.concurrencyLimiter.acquire();
+
+            long startTimeNanos = System.nanoTime();
+            boolean isReleased = false;
+
+            try
+            {
+                T result = request.execute();
+
+                if (isLatencyTracked)
+                {
+                    this.concurrencyLimiter.onSuccess(System.nanoTime() - startTimeNanos);
+                }
+                else
+                {
+                    this.concurrencyLimiter.onSuccess();
+                }
+
+                isReleased = true;
+
+                return result;
+            }
+            catch (IOException exception)
+            {
+                // A socket timing out is a network failure like any other, rather than the thread being interrupted
+                boolean isInterrupted = exception instanceof InterruptedIOException && !(exception instanceof SocketTimeoutException);
+                RetryDecision retryDecision = isInterrupted ? null : this.errorClassifier.classify(exception);
+
+                if (retryDecision != null && retryDecision.isThrottled())
+                {
+                    this.concurrencyLimiter.onThrottled();
+                }
+                else
+                {
+                    this.concurrencyLimiter.onFailure();
+                }
+
+                isReleased = true;
+
+                if (retryDecision == null || attempt >= this.maxAttempts)
+                    throw exception;
+
+                long retryDelayMillis = this.getRetryDelayMillis(attempt, retryDecision.retryAfter());
+
+                WorldbackMachineEngine.LOGGER.warn("{} failed{} (Attempt {}/{}). Retrying in {} ms: {}", description,
+                        retryDecision.isThrottled() ? " due to throttling" : "", attempt, this.maxAttempts, retryDelayMillis, exception.getMessage());
+
+                this.sleep(retryDelayMillis);
+            }
+            finally
+            {
+                if (!isReleased)
+                    this.concurrencyLimiter.onFailure();
+            }
+        }
+    }
+
+    public AdaptiveConcurrencyLimiter getConcurrencyLimiter()
+    {
+        return this.concurrencyLimiter;
+    }
+
+    private long getRetryDelayMillis(int attempt, @Nullable Duration retryAfter)
+    {
+        // Full jitter keeps clients that were throttled together from all retrying at the same moment
+        long backoffCeilingMillis = Math.min(MAX_RETRY_DELAY_MILLIS, BASE_RETRY_DELAY_MILLIS << Math.min(attempt - 1, 16));
+        long backoffMillis = ThreadLocalRandom.current().nextLong(backoffCeilingMillis + 1L);
+
+        return retryAfter != null ? Math.max(retryAfter.toMillis(), backoffMillis) : backoffMillis;
+    }
+
+    private void sleep(long millis) throws InterruptedIOException
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while waiting to retry a request");
+        }
+    }
+}
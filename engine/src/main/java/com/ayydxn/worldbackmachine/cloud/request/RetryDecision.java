@@ -0,0 +1,28 @@
+package com.ayydxn.worldbackmachine.cloud.request;
+
+import org.jspecify.annotations.Nullable;
+
+import java.time.Duration;
+
+/**
+ * Describes how a failed request should be retried.
+ *
+ * @param isThrottled Whether the request failed because the provider is limiting how many requests it accepts,
+ *                    in which case fewer requests are made in parallel from then on
+ * @param retryAfter  How long the provider asked to wait before retrying, if it did
+ *
+ * @author Ayydxn
+ * @see RequestErrorClassifier
+ */
+public record RetryDecision(boolean isThrottled, @Nullable Duration retryAfter)
+{
+    public static RetryDecision throttled(@Nullable Duration retryAfter)
+    {
+        return new RetryDecision(true, retryAfter);
+    }
+
+    public static RetryDecision transientFailure(@Nullable Duration retryAfter)
+    {
+        return new RetryDecision(false, retryAfter);
+    }
+}
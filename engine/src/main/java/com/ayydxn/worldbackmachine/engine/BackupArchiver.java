@@ -0,0 +1,154 @@
+package com.ayydxn.worldbackmachine.engine;
+
+import com.ayydxn.worldbackmachine.backup.BackupChecksums;
+import com.ayydxn.worldbackmachine.backup.ChecksummingOutputStream;
+import com.ayydxn.worldbackmachine.backup.archive.BackupArchiveFormat;
+import com.ayydxn.worldbackmachine.backup.archive.BlockArchive;
+import com.ayydxn.worldbackmachine.backup.archive.CompressedEntryCache;
+import com.ayydxn.worldbackmachine.backup.crypto.ArchiveEncryption;
+import com.ayydxn.worldbackmachine.backup.crypto.BackupKey;
+import com.ayydxn.worldbackmachine.backup.io.PooledFileIO;
+import com.ayydxn.worldbackmachine.backup.policy.BackupPathPolicy;
+import org.jspecify.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Writes the files that are uploaded as backups, archiving, encrypting and checksumming them in a single pass.
+ *
+ * @author Ayydxn
+ */
+class BackupArchiver
+{
+    private final ZipBackupWriter zipBackupWriter;
+    private final BlockBackupWriter blockBackupWriter;
+
+    BackupArchiver(PooledFileIO pooledFileIO, boolean isSolidPackingEnabled)
+    {
+        this.zipBackupWriter = new ZipBackupWriter(pooledFileIO);
+        this.blockBackupWriter = new BlockBackupWriter(isSolidPackingEnabled);
+    }
+
+    /**
+     * Gets the path of a world's file within its archives.
+     *
+     * @param worldPath The path to the world directory
+     * @param path      The file within the world directory
+     * @return The file's path relative to the world directory, using forward slashes
+     */
+    static String getEntryName(Path worldPath, Path path)
+    {
+        // ZIP entries always use forward slashes, regardless of the platform the backup was created on
+        return worldPath.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Deletes a temporary file an archive or manifest was written to, once it's been uploaded or the backup failed.
+     *
+     * @param temporaryFile The file to delete
+     */
+    static void deleteTemporaryFile(File temporaryFile)
+    {
+        // This runs while the backup's own error is being thrown, which a failure to clean up mustn't replace
+        try
+        {
+            Files.deleteIfExists(temporaryFile.toPath());
+        }
+        catch (IOException exception)
+        {
+            WorldbackMachineEngine.LOGGER.warn("Failed to delete temporary file '{}'", temporaryFile, exception);
+        }
+    }
+
+    /**
+     * Creates a compressed backup of a world.
+     * <p>
+     * The archive maintains the relative directory structure of the world.
+     * <p>
+     * The archive is built deterministically: entries are written in sorted order and with a fixed timestamp,
+     * so a world that hasn't changed always produces byte-for-byte the same archive.
+     * Its checksums are computed as it is written, so it never has to be read back to verify it.
+     * <p>
+     * Each file is stored with the codec and compression level its {@link BackupPathPolicy backup rules} give it.
+     * <p>
+     * If a key is given, the archive is {@link ArchiveEncryption encrypted} as it's written rather than in a separate pass afterward.
+     * <p>
+     * The archive is either a {@link ZipBackupWriter ZIP} or a {@link BlockArchive block archive}, whose large files are compressed on every core at once.
+     * <p>
+     * A file that can't be read fails the whole backup, as skipping it would store a backup that silently lacks it, and a ZIP would be left
+     * with a partial entry that streaming readers can't get past.
+     *
+     * @param worldPath        The path to the world directory
+     * @param worldFiles       The files to write to the archive, in order
+     * @param backupFile       The file to write the compressed world to
+     * @param backupPathPolicy The rules deciding how each file is stored
+     * @param archiveFormat    The format of the archive
+     * @param backupKey        The key to encrypt the archive with, or null to leave it unencrypted
+     * @param entryCache       The cache of compressed files to build a ZIP from, or null to compress every file
+     * @throws IOException If reading any of the files, compression or encryption fails
+     * @return The checksums of the written archive
+     */
+    CreatedBackup createWorldBackup(Path worldPath, List<Path> worldFiles, File backupFile, BackupPathPolicy backupPathPolicy,
+                                    BackupArchiveFormat archiveFormat, @Nullable BackupKey backupKey, @Nullable CompressedEntryCache entryCache)
+            throws IOException
+    {
+        return this.writeBackupFile(backupFile, archiveFormat, backupKey, archiveOutputStream ->
+        {
+            if (archiveFormat == BackupArchiveFormat.BLOCK)
+                this.blockBackupWriter.write(worldPath, worldFiles, archiveOutputStream, backupPathPolicy);
+            else
+                this.zipBackupWriter.write(worldPath, worldFiles, archiveOutputStream, backupPathPolicy, entryCache);
+        });
+    }
+
+    /**
+     * Writes a file to be uploaded, encrypting it and computing its checksums as it's written.
+     *
+     * @param backupFile    The file to write
+     * @param archiveFormat The format of the archive being written, or of the shards a manifest refers to
+     * @param backupKey     The key to encrypt the file with, or null to leave it unencrypted
+     * @param backupWriter  Writes the file's contents, and closes the stream once it's done
+     * @throws IOException If writing or encrypting the file fails
+     * @return The checksums of the written file
+     */
+    CreatedBackup writeBackupFile(File backupFile, BackupArchiveFormat archiveFormat, @Nullable BackupKey backupKey, BackupWriter backupWriter)
+            throws IOException
+    {
+        // The stored checksums cover the encrypted bytes so uploads can still be verified, while the content checksums tell whether the world changed
+        ChecksummingOutputStream checksummingOutputStream = new ChecksummingOutputStream(new FileOutputStream(backupFile));
+
+        // The writer closes the stream once it's done, but one that fails partway through may not have, and the file can't be deleted while it's open
+        try (checksummingOutputStream)
+        {
+            ChecksummingOutputStream contentChecksummingOutputStream = backupKey != null ?
+                    new ChecksummingOutputStream(ArchiveEncryption.encrypt(checksummingOutputStream, backupKey)) : checksummingOutputStream;
+
+            backupWriter.write(contentChecksummingOutputStream);
+
+            if (backupKey == null)
+            {
+                BackupChecksums backupChecksums = checksummingOutputStream.getChecksums();
+
+                return new CreatedBackup(backupChecksums, backupChecksums.md5(), archiveFormat, null);
+            }
+
+            return new CreatedBackup(checksummingOutputStream.getChecksums(), contentChecksummingOutputStream.getChecksums().md5(), archiveFormat,
+                    backupKey.getId());
+        }
+    }
+
+    /**
+     * Writes the contents of a file that's about to be uploaded.
+     */
+    @FunctionalInterface
+    interface BackupWriter
+    {
+        void write(OutputStream outputStream) throws IOException;
+    }
+}
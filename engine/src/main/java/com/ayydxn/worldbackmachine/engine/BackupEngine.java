@@ -0,0 +1,685 @@
+package com.ayydxn.worldbackmachine.engine;
+
+import com.ayydxn.worldbackmachine.backup.BackupChecksums;
+import com.ayydxn.worldbackmachine.backup.BackupNames;
+import com.ayydxn.worldbackmachine.backup.BackupTier;
+import com.ayydxn.worldbackmachine.backup.BackupVerificationResult;
+import com.ayydxn.worldbackmachine.backup.archive.BackupArchiveFormat;
+import com.ayydxn.worldbackmachine.backup.archive.CompressedEntryCache;
+import com.ayydxn.worldbackmachine.backup.crypto.BackupKey;
+import com.ayydxn.worldbackmachine.backup.crypto.BackupKeyManager;
+import com.ayydxn.worldbackmachine.backup.history.BackupMeasurement;
+import com.ayydxn.worldbackmachine.backup.io.PooledFileIO;
+import com.ayydxn.worldbackmachine.backup.policy.BackupPathPolicy;
+import com.ayydxn.worldbackmachine.backup.shard.BackupManifest;
+import com.ayydxn.worldbackmachine.backup.shard.ShardPlanner;
+import com.ayydxn.worldbackmachine.cloud.CloudFileMetadata;
+import com.ayydxn.worldbackmachine.cloud.CloudStorageCapability;
+import com.ayydxn.worldbackmachine.cloud.CloudStorageProvider;
+import com.ayydxn.worldbackmachine.cloud.remote.RemoteBackupArchive;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.jspecify.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Creates, restores, verifies and prunes world backups stored with a {@link CloudStorageProvider}.
+ * <p>
+ * The engine knows nothing about Minecraft. It works on plain world directories, so the mod and the
+ * {@link com.ayydxn.worldbackmachine.engine.cli.WorldbackMachineCli command line tool} share it, and a backup made by either one can be
+ * restored by the other. Whoever creates the engine is responsible for authenticating the provider beforehand.
+ * <p>
+ * Engines are cheap to create and hold no state of their own between calls, so a new one can be created whenever the provider or
+ * the {@link BackupEngineSettings settings} change.
+ *
+ * @author Ayydxn
+ * @see BackupEngineSettings
+ */
+public class BackupEngine
+{
+    private static final String SESSION_LOCK_FILE_NAME = "session.lock";
+
+    private final CloudStorageProvider storageProvider;
+    private final PooledFileIO pooledFileIO;
+    private final BackupKeyManager backupKeyManager;
+    private final BackupEngineSettings settings;
+    private final BackupArchiver backupArchiver;
+    private final ShardedBackupUploader shardedBackupUploader;
+    private final BackupRestorer backupRestorer;
+
+    /**
+     * Creates an engine that stores backups with the given provider.
+     *
+     * @param storageProvider       The provider backups are stored with, which must already be authenticated
+     * @param backupKeyManager      The keys backups are encrypted and decrypted with
+     * @param pooledFileIO          The pooled buffers files are copied into and out of archives with
+     * @param shardTransferExecutor The executor shards are transferred on, for providers with {@link CloudStorageCapability#PARALLEL_STREAMS parallel streams}
+     * @param settings              How backups are written
+     */
+    public BackupEngine(CloudStorageProvider storageProvider, BackupKeyManager backupKeyManager, PooledFileIO pooledFileIO, Executor shardTransferExecutor,
+                        BackupEngineSettings settings)
+    {
+        ShardTransfers shardTransfers = new ShardTransfers(storageProvider, shardTransferExecutor);
+
+        this.storageProvider = storageProvider;
+        this.pooledFileIO = pooledFileIO;
+        this.backupKeyManager = backupKeyManager;
+        this.settings = settings;
+        this.backupArchiver = new BackupArchiver(pooledFileIO, settings.isSolidPackingEnabled());
+        this.shardedBackupUploader = new ShardedBackupUploader(storageProvider, this.backupArchiver, shardTransfers);
+        this.backupRestorer = new BackupRestorer(storageProvider, backupKeyManager, pooledFileIO, shardTransfers);
+    }
+
+    /**
+     * Archives a world's files and uploads them to the storage provider as the world's most recent backup.
+     * <p>
+     * The files must not change while this runs, so they either have to be a snapshot or belong to a world that isn't loaded.
+     * <p>
+     * If {@link BackupEngineSettings#isShardedBackupsEnabled() sharded backups} are enabled, backups of the full world are
+     * {@link #uploadShardedWorldFiles split into shards} instead.
+     *
+     * @param worldName         The name of the world
+     * @param tier              The tier of the world's data the files belong to
+     * @param worldPath         The directory containing the world's files
+     * @param createdAt         When the backup was taken, as an ISO-8601 instant
+     * @param backupPathPolicy  The rules deciding which files are backed up and how
+     * @param backupMeasurement Measures each phase of the backup
+     * @throws IOException If archiving or uploading the files fails
+     * @return The number of bytes uploaded, which is 0 if the backup was identical to the stored one and wasn't uploaded
+     */
+    public long backupWorld(String worldName, BackupTier tier, Path worldPath, String createdAt, BackupPathPolicy backupPathPolicy,
+                            BackupMeasurement backupMeasurement) throws IOException
+    {
+        // Restoring a backup relies on its properties to tell its format and whether it's sharded, so providers without them only get plain ZIPs
+        boolean hasCustomProperties = this.storageProvider.hasCapability(CloudStorageCapability.CUSTOM_PROPERTIES);
+        if (!hasCustomProperties && (this.settings.archiveFormat() != BackupArchiveFormat.ZIP || this.settings.isShardedBackupsEnabled()))
+        {
+            WorldbackMachineEngine.LOGGER.warn("'{}' can't store properties alongside files, so world '{}' is backed up as a single ZIP archive",
+                    this.storageProvider.getProviderName(), worldName);
+        }
+
+        BackupArchiveFormat archiveFormat = hasCustomProperties ? this.settings.archiveFormat() : BackupArchiveFormat.ZIP;
+        BackupKey backupKey = this.settings.isEncryptionEnabled() ? this.backupKeyManager.getActiveKey() : null;
+        List<Path> worldFiles = this.listWorldFiles(worldPath, backupPathPolicy);
+        CompressedEntryCache entryCache = this.openEntryCache(worldName, tier);
+
+        // The lightweight tiers are small enough that splitting them up would only add requests
+        if (hasCustomProperties && this.settings.isShardedBackupsEnabled() && tier.isFullWorld())
+        {
+            return this.uploadShardedWorldFiles(worldName, tier, worldPath, worldFiles, createdAt, backupPathPolicy, archiveFormat, backupKey,
+                    entryCache, backupMeasurement);
+        }
+
+        // Create temporary zip file
+        File temporaryWorldZip = File.createTempFile(worldName.toLowerCase().replace(" ", "_") + "_backup_", ".zip");
+
+        try
+        {
+            long compressStartTime = System.nanoTime();
+            CreatedBackup createdBackup = this.backupArchiver.createWorldBackup(worldPath, worldFiles, temporaryWorldZip, backupPathPolicy, archiveFormat,
+                    backupKey, entryCache);
+
+            backupMeasurement.recordCompressed(System.nanoTime() - compressStartTime, worldFiles.size(),
+                    worldFiles.stream().mapToLong(path -> path.toFile().length()).sum(), createdBackup.checksums().size());
+
+            backupPathPolicy.logReport(worldName);
+            this.saveEntryCache(worldName, entryCache);
+
+            return this.replaceLatestBackup(worldName, tier, temporaryWorldZip, createdBackup, Map.of(), createdAt, backupMeasurement);
+        }
+        finally
+        {
+            // Clean up
+            BackupArchiver.deleteTemporaryFile(temporaryWorldZip);
+        }
+    }
+
+    /**
+     * Downloads a backup of a tier of a world and extracts it to the given directory.
+     * <p>
+     * Single archives are extracted as they download. Sharded backups have each of their shards downloaded and extracted,
+     * several at once for providers with {@link CloudStorageCapability#PARALLEL_STREAMS parallel streams}.
+     *
+     * @param worldName    The name of the world to restore
+     * @param tier         The tier of the backup to restore
+     * @param snapshotTime The time of the {@link #listWorldSnapshots(String, BackupTier) snapshot} to restore, or null to restore the most recent backup
+     * @param targetPath   The directory to extract the world to
+     * @throws IOException If the backup doesn't exist, or downloading or extracting it fails
+     */
+    public void restoreWorld(String worldName, BackupTier tier, @Nullable Instant snapshotTime, Path targetPath) throws IOException
+    {
+        WorldbackMachineEngine.LOGGER.info("Downloading world '{}'...", worldName);
+
+        String backupName = snapshotTime != null ? BackupNames.snapshot(worldName, tier, snapshotTime) : BackupNames.latest(worldName, tier);
+        this.backupRestorer.restoreBackup(backupName, targetPath);
+
+        WorldbackMachineEngine.LOGGER.info("Successfully downloaded backup of world '{}'!", worldName);
+    }
+
+    /**
+     * Restores a single scope of a world, such as one of its dimensions, leaving the rest of the world as it is.
+     * <p>
+     * Sharded backups only have the shards holding the scope downloaded. Other backups are {@link #openRemoteBackup(String, BackupTier, Instant) opened remotely}
+     * instead, so only the scope's files are fetched from them.
+     *
+     * @param worldName    The name of the world to restore
+     * @param snapshotTime The time of the {@link #listWorldSnapshots(String, BackupTier) snapshot} to restore from, or null to restore from the most recent backup
+     * @param scope        The scope to restore, as named by {@link ShardPlanner#getScope(String)}
+     * @param targetPath   The world directory to restore the scope's files to
+     * @throws IOException If reading the backup or extracting any of the scope's files fails
+     */
+    public void restoreWorldScope(String worldName, @Nullable Instant snapshotTime, String scope, Path targetPath) throws IOException
+    {
+        WorldbackMachineEngine.LOGGER.info("Restoring the {} of world '{}'...", scope, worldName);
+
+        this.backupRestorer.restoreScope(worldName, snapshotTime, scope, targetPath);
+
+        WorldbackMachineEngine.LOGGER.info("Successfully restored the {} of world '{}'!", scope, worldName);
+    }
+
+    /**
+     * Opens a backup of a tier of a world, so it can be browsed without downloading it.
+     * <p>
+     * Only the parts of the archive that are actually read are fetched, using the provider's
+     * {@link CloudStorageProvider#readRange(String, long, int) ranged reads}. The returned archive must be closed once it's no longer needed.
+     *
+     * @param worldName    The name of the world to open
+     * @param tier         The tier of the backup to open
+     * @param snapshotTime The time of the {@link #listWorldSnapshots(String, BackupTier) snapshot} to open, or null to open the most recent backup
+     * @throws IOException If the provider can't read parts of files, the backup is sharded or it can't be opened
+     * @return The opened backup archive
+     */
+    public RemoteBackupArchive openRemoteBackup(String worldName, BackupTier tier, @Nullable Instant snapshotTime) throws IOException
+    {
+        return this.backupRestorer.openRemoteBackup(worldName, tier, snapshotTime);
+    }
+
+    /**
+     * Restores individual files of a world from a backup of one of its tiers, such as a single player's data or region file.
+     * <p>
+     * Unlike {@link #restoreWorld(String, BackupTier, Instant, Path)}, this only fetches the requested files rather than the entire backup.
+     *
+     * @param worldName    The name of the world to restore files from
+     * @param tier         The tier of the backup to restore from
+     * @param snapshotTime The time of the {@link #listWorldSnapshots(String, BackupTier) snapshot} to restore from, or null to restore from the most recent backup
+     * @param filePaths    The paths of the files to restore, relative to the world's directory (e.g. {@code playerdata/<uuid>.dat})
+     * @param targetPath   The world directory to restore the files to
+     * @throws IOException If the provider can't read parts of files, or reading the backup or extracting any of the files fails
+     */
+    public void restoreWorldFiles(String worldName, BackupTier tier, @Nullable Instant snapshotTime, Collection<String> filePaths, Path targetPath)
+            throws IOException
+    {
+        this.backupRestorer.restoreFiles(worldName, tier, snapshotTime, filePaths, targetPath);
+    }
+
+    /**
+     * Lists the worlds with a backup stored with the provider.
+     * <p>
+     * Snapshots of previous backups and backups of lightweight tiers aren't included.
+     *
+     * @throws IOException If listing the stored files fails
+     * @return The names of the worlds
+     */
+    public List<String> listWorlds() throws IOException
+    {
+        // Filter for the most recent backup of each world and remove the extension
+        return this.storageProvider.listFiles().stream()
+                .map(BackupNames::parse)
+                .filter(parsedName -> parsedName != null && parsedName.tier().isFullWorld() && !parsedName.isSnapshot())
+                .map(BackupNames.ParsedName::worldName)
+                .toList();
+    }
+
+    /**
+     * Lists the snapshots of previous backups of a tier of a world that are stored with the provider.
+     *
+     * @param worldName The name of the world
+     * @param tier      The tier of the snapshots
+     * @throws IOException If listing the stored files fails
+     * @return The times each of the tier's snapshots were created, from newest to oldest
+     */
+    public List<Instant> listWorldSnapshots(String worldName, BackupTier tier) throws IOException
+    {
+        return this.storageProvider.listFiles().stream()
+                .map(BackupNames::parse)
+                .filter(parsedName -> parsedName != null && parsedName.isSnapshot() && parsedName.tier() == tier && parsedName.worldName().equals(worldName))
+                .map(BackupNames.ParsedName::snapshotTime)
+                .sorted(Comparator.reverseOrder())
+                .toList();
+    }
+
+    /**
+     * Verifies every backup stored with the provider.
+     * <p>
+     * Each backup's current checksum and size, as reported by the provider, are compared against those recorded when it was created.
+     * This only uses metadata requests, so nothing has to be downloaded again.
+     *
+     * @return The verification result of each backup, which stops at the first backup that couldn't be checked if there is one
+     */
+    public List<BackupVerificationResult> verifyBackups()
+    {
+        List<BackupVerificationResult> verificationResults = Lists.newArrayList();
+
+        try
+        {
+            for (String fileName : this.storageProvider.listFiles())
+            {
+                if (BackupNames.parse(fileName) == null && !BackupNames.isShard(fileName))
+                    continue;
+
+                BackupVerificationResult verificationResult = this.verifyBackup(fileName);
+                verificationResults.add(verificationResult);
+
+                if (verificationResult.status() == BackupVerificationResult.Status.CORRUPT)
+                    WorldbackMachineEngine.LOGGER.error("Backup '{}' is corrupt! {}", fileName, verificationResult.message());
+            }
+        }
+        catch (Exception exception)
+        {
+            WorldbackMachineEngine.LOGGER.error(exception);
+        }
+
+        long intactBackups = verificationResults.stream()
+                .filter(verificationResult -> verificationResult.status() == BackupVerificationResult.Status.INTACT)
+                .count();
+
+        WorldbackMachineEngine.LOGGER.info("Verified {} backups, {} of which are intact", verificationResults.size(), intactBackups);
+
+        return verificationResults;
+    }
+
+    /**
+     * Gets the provider backups are stored with.
+     *
+     * @return The storage provider
+     */
+    public CloudStorageProvider getStorageProvider()
+    {
+        return this.storageProvider;
+    }
+
+    /**
+     * Uploads a world's files as a sharded backup.
+     * <p>
+     * The files are split into shards which are {@link ShardedBackupUploader uploaded on their own}, skipping the ones already stored.
+     * Once every shard is stored, the {@link BackupManifest manifest} tying them together replaces the world's most recent backup.
+     *
+     * @param worldName         The name of the world
+     * @param tier              The tier of the world's data the files belong to
+     * @param worldPath         The directory containing the world's files
+     * @param worldFiles        The files to back up, in the order they're written to archives in
+     * @param createdAt         When the backup was taken, as an ISO-8601 instant
+     * @param backupPathPolicy  The rules deciding how each file is stored
+     * @param archiveFormat     The format of the shards' archives
+     * @param backupKey         The key to encrypt the shards and manifest with, or null to leave them unencrypted
+     * @param entryCache        The cache of compressed files to build the shards' archives from, or null to compress every file
+     * @param backupMeasurement Measures each phase of the backup
+     * @throws IOException If compressing or uploading any of the shards fails
+     * @return The number of bytes uploaded, which is 0 if the backup was identical to the stored one and nothing was uploaded
+     */
+    private long uploadShardedWorldFiles(String worldName, BackupTier tier, Path worldPath, List<Path> worldFiles, String createdAt,
+                                         BackupPathPolicy backupPathPolicy, BackupArchiveFormat archiveFormat, @Nullable BackupKey backupKey,
+                                         @Nullable CompressedEntryCache entryCache, BackupMeasurement backupMeasurement) throws IOException
+    {
+        LongAdder uploadedShardBytes = new LongAdder();
+        List<BackupManifest.Shard> shards = this.shardedBackupUploader.uploadShards(worldName, tier, worldPath, worldFiles, backupPathPolicy, archiveFormat,
+                backupKey, entryCache, uploadedShardBytes, backupMeasurement);
+
+        backupPathPolicy.logReport(worldName);
+        this.saveEntryCache(worldName, entryCache);
+
+        WorldbackMachineEngine.LOGGER.info("Stored the {} shards of world '{}' ({} MB uploaded, shards that were already stored were skipped)", shards.size(),
+                worldName, uploadedShardBytes.sum() / (1024L * 1024L));
+
+        BackupManifest backupManifest = new BackupManifest(BackupManifest.CURRENT_VERSION, worldName, tier, archiveFormat, shards);
+        File temporaryManifestFile = File.createTempFile(worldName.toLowerCase().replace(" ", "_") + "_manifest_", ".json");
+
+        try
+        {
+            long compressStartTime = System.nanoTime();
+            CreatedBackup createdManifest = this.backupArchiver.writeBackupFile(temporaryManifestFile, archiveFormat, backupKey, manifestOutputStream ->
+            {
+                try (manifestOutputStream)
+                {
+                    manifestOutputStream.write(backupManifest.toBytes());
+                }
+            });
+
+            backupMeasurement.recordCompressed(System.nanoTime() - compressStartTime, 0, 0L, createdManifest.checksums().size());
+
+            long uploadedManifestBytes = this.replaceLatestBackup(worldName, tier, temporaryManifestFile, createdManifest,
+                    Map.of(BackupManifest.LAYOUT_PROPERTY, BackupManifest.SHARDED_LAYOUT), createdAt, backupMeasurement);
+
+            return uploadedManifestBytes + uploadedShardBytes.sum();
+        }
+        finally
+        {
+            BackupArchiver.deleteTemporaryFile(temporaryManifestFile);
+        }
+    }
+
+    /**
+     * Uploads a backup as the most recent backup of a tier of a world, keeping the backup it replaces as a snapshot.
+     *
+     * @param worldName         The name of the world
+     * @param tier              The tier of the backup
+     * @param backupFile        The backup to upload
+     * @param createdBackup     The backup as it was written
+     * @param extraProperties   Properties to store alongside the backup on top of the ones describing how it was written
+     * @param createdAt         When the backup was taken, as an ISO-8601 instant
+     * @param backupMeasurement Measures each phase of the backup
+     * @throws IOException If uploading the backup fails
+     * @return The number of bytes uploaded, which is 0 if the backup was identical to the stored one and wasn't uploaded
+     */
+    private long replaceLatestBackup(String worldName, BackupTier tier, File backupFile, CreatedBackup createdBackup, Map<String, String> extraProperties,
+                                     String createdAt, BackupMeasurement backupMeasurement) throws IOException
+    {
+        BackupChecksums backupChecksums = createdBackup.checksums();
+
+        String latestBackupName = BackupNames.latest(worldName, tier);
+        CloudFileMetadata latestBackupMetadata = this.storageProvider.getFileMetadata(latestBackupName);
+
+        // Archives are built deterministically, so an unchanged world produces the exact same bytes as the copy already stored
+        if (createdBackup.isUnchangedRemotely(latestBackupMetadata))
+        {
+            WorldbackMachineEngine.LOGGER.info("The {} tier of world '{}' hasn't changed since its last backup. Skipping upload", tier.name().toLowerCase(),
+                    worldName);
+            return 0L;
+        }
+
+        // Keep the backup we're about to replace as a snapshot
+        long rotateStartTime = System.nanoTime();
+        String renamedSnapshotName = latestBackupMetadata != null ? this.rotateLatestBackup(worldName, tier, latestBackupMetadata) : null;
+
+        backupMeasurement.recordFinalized(System.nanoTime() - rotateStartTime);
+
+        Map<String, String> backupProperties = Maps.newHashMap(createdBackup.toProperties());
+        backupProperties.putAll(extraProperties);
+        backupProperties.put(BackupNames.CREATED_AT_PROPERTY, createdAt);
+
+        // Upload to cloud and make sure what the provider received is what we wrote
+        CloudFileMetadata uploadedFileMetadata;
+        long uploadStartTime = System.nanoTime();
+
+        try
+        {
+            uploadedFileMetadata = this.storageProvider.uploadFile(backupFile, latestBackupName, backupProperties);
+        }
+        catch (IOException | RuntimeException exception)
+        {
+            // The previous backup was moved out of the way rather than copied, so put it back as the most recent backup
+            if (renamedSnapshotName != null)
+                this.storageProvider.renameFile(renamedSnapshotName, latestBackupName);
+
+            throw exception;
+        }
+
+        createdBackup.verifyUpload(this.storageProvider, latestBackupName, uploadedFileMetadata);
+
+        backupMeasurement.recordUploaded(System.nanoTime() - uploadStartTime);
+
+        long pruneStartTime = System.nanoTime();
+
+        this.pruneSnapshots(worldName, tier);
+
+        try
+        {
+            this.deleteUnreferencedShards(worldName, tier);
+        }
+        catch (IOException exception)
+        {
+            // The backup itself is already stored, leftover shards only take up space until the next backup cleans them up
+            WorldbackMachineEngine.LOGGER.warn("Failed to clean up unused shards of world '{}'", worldName, exception);
+        }
+
+        backupMeasurement.recordFinalized(System.nanoTime() - pruneStartTime);
+
+        WorldbackMachineEngine.LOGGER.info("World backup completed successfully");
+
+        return backupChecksums.size();
+    }
+
+    /**
+     * Lists the files of a world that are backed up, in the order they're written to archives in.
+     *
+     * @param worldPath        The path to the world directory
+     * @param backupPathPolicy The rules deciding which files are left out
+     * @throws IOException If walking the world directory fails
+     * @return The world's files, sorted by their path within the archive
+     */
+    private List<Path> listWorldFiles(Path worldPath, BackupPathPolicy backupPathPolicy) throws IOException
+    {
+        try (Stream<Path> worldPathStream = Files.walk(worldPath))
+        {
+            return worldPathStream.filter(path -> !Files.isDirectory(path) && !path.getFileName().toString().equals(SESSION_LOCK_FILE_NAME))
+                    .filter(path -> this.isIncluded(worldPath, path, backupPathPolicy))
+                    .sorted(Comparator.comparing(path -> BackupArchiver.getEntryName(worldPath, path)))
+                    .toList();
+        }
+    }
+
+    /**
+     * Opens the {@link CompressedEntryCache cache of compressed files} a tier of a world's ZIPs are built from.
+     *
+     * @param worldName The name of the world
+     * @param tier      The tier of the world's data
+     * @return The cache, or null if the cache is disabled, backups aren't ZIPs or the cache can't be opened
+     */
+    private @Nullable CompressedEntryCache openEntryCache(String worldName, BackupTier tier)
+    {
+        // Block archives compress their files in blocks that span file boundaries, so there's nothing per file to cache
+        if (this.settings.entryCacheDirectory() == null || this.settings.archiveFormat() != BackupArchiveFormat.ZIP)
+            return null;
+
+        Path cacheDirectory = this.settings.entryCacheDirectory().resolve(String.format("%s-%s", worldName.replaceAll("[^A-Za-z0-9._-]", "_"),
+                tier.name().toLowerCase()));
+
+        try
+        {
+            return new CompressedEntryCache(cacheDirectory, this.pooledFileIO);
+        }
+        catch (IOException exception)
+        {
+            WorldbackMachineEngine.LOGGER.warn("Failed to open the compressed entry cache of world '{}'. Every file will be compressed", worldName, exception);
+
+            return null;
+        }
+    }
+
+    private void saveEntryCache(String worldName, @Nullable CompressedEntryCache entryCache)
+    {
+        if (entryCache == null)
+            return;
+
+        try
+        {
+            entryCache.save();
+
+            WorldbackMachineEngine.LOGGER.info("Reused the compressed bytes of {} files of world '{}' and compressed {} that changed", entryCache.getHitCount(),
+                    worldName, entryCache.getMissCount());
+        }
+        catch (IOException exception)
+        {
+            // The archive is already written, a cache that wasn't saved only means more files are compressed next time
+            WorldbackMachineEngine.LOGGER.warn("Failed to save the compressed entry cache of world '{}'", worldName, exception);
+        }
+    }
+
+    private boolean isIncluded(Path worldPath, Path path, BackupPathPolicy backupPathPolicy)
+    {
+        // Snapshots never contain excluded files, but worlds which are backed up directly from their save still do
+        int excludingRule = backupPathPolicy.getExcludingRule(BackupArchiver.getEntryName(worldPath, path));
+        if (excludingRule == -1)
+            return true;
+
+        backupPathPolicy.recordExcluded(excludingRule, path.toFile().length());
+
+        return false;
+    }
+
+    /**
+     * Keeps a world's most recent backup as a snapshot before a new backup replaces it.
+     * <p>
+     * Providers with {@link CloudStorageCapability#SERVER_SIDE_COPY server-side copies} create the snapshot with a copy on their end,
+     * and the most recent backup stays in place until the new one replaces it. Providers which can only
+     * {@link CloudStorageCapability#METADATA_RENAME rename} files have the most recent backup renamed instead, which still doesn't transfer it.
+     * Otherwise, the backup is copied by downloading and uploading it again.
+     *
+     * @param worldName            The name of the world
+     * @param tier                 The tier of the backup
+     * @param latestBackupMetadata The metadata of the world's most recent backup
+     * @throws IOException If copying the backup fails
+     * @return The name of the snapshot if the most recent backup was renamed to it, or null if it's still in place
+     */
+    private @Nullable String rotateLatestBackup(String worldName, BackupTier tier, CloudFileMetadata latestBackupMetadata) throws IOException
+    {
+        if (this.settings.maxBackupSnapshots() <= 0)
+            return null;
+
+        Instant snapshotTime = Instant.now();
+        String createdAt = latestBackupMetadata.properties().get(BackupNames.CREATED_AT_PROPERTY);
+
+        try
+        {
+            if (createdAt != null)
+                snapshotTime = Instant.parse(createdAt);
+        }
+        catch (DateTimeParseException exception)
+        {
+            WorldbackMachineEngine.LOGGER.warn("Backup '{}' has an invalid creation time '{}'", latestBackupMetadata.name(), createdAt);
+        }
+
+        String snapshotName = BackupNames.snapshot(worldName, tier, snapshotTime);
+        boolean renameLatestBackup = !this.storageProvider.hasCapability(CloudStorageCapability.SERVER_SIDE_COPY) &&
+                this.storageProvider.hasCapability(CloudStorageCapability.METADATA_RENAME);
+
+        if (renameLatestBackup)
+        {
+            this.storageProvider.renameFile(latestBackupMetadata.name(), snapshotName);
+        }
+        else
+        {
+            this.storageProvider.copyFile(latestBackupMetadata.name(), snapshotName);
+        }
+
+        WorldbackMachineEngine.LOGGER.info("Kept the previous backup of world '{}' as snapshot '{}'", worldName, snapshotName);
+
+        return renameLatestBackup ? snapshotName : null;
+    }
+
+    /**
+     * Deletes a tier's oldest snapshots until at most {@link BackupEngineSettings#maxBackupSnapshots()} of them remain.
+     *
+     * @param worldName The name of the world
+     * @param tier      The tier of the snapshots
+     * @throws IOException If listing or deleting the snapshots fails
+     */
+    public void pruneSnapshots(String worldName, BackupTier tier) throws IOException
+    {
+        int maxBackupSnapshots = Math.max(0, this.settings.maxBackupSnapshots());
+        List<Instant> snapshotTimes = this.listWorldSnapshots(worldName, tier);
+
+        List<String> expiredSnapshotNames = snapshotTimes.subList(Math.min(maxBackupSnapshots, snapshotTimes.size()), snapshotTimes.size()).stream()
+                .map(snapshotTime -> BackupNames.snapshot(worldName, tier, snapshotTime))
+                .toList();
+
+        if (expiredSnapshotNames.isEmpty())
+            return;
+
+        // Providers with batch deletes remove every expired snapshot in a single request
+        this.storageProvider.deleteFiles(expiredSnapshotNames);
+
+        for (String snapshotName : expiredSnapshotNames)
+            WorldbackMachineEngine.LOGGER.info("Deleted old snapshot '{}'", snapshotName);
+    }
+
+    /**
+     * Deletes the shards of a tier of a world which aren't referred to by the manifest of any of its stored backups anymore,
+     * such as after the snapshots referring to them were pruned.
+     *
+     * @param worldName The name of the world
+     * @param tier      The tier of the shards
+     * @throws IOException If listing the stored files, reading any of the manifests or deleting the shards fails
+     */
+    public void deleteUnreferencedShards(String worldName, BackupTier tier) throws IOException
+    {
+        List<String> storedFileNames = this.storageProvider.listFiles();
+        List<String> shardNames = storedFileNames.stream()
+                .filter(fileName -> BackupNames.isShardOf(fileName, worldName, tier))
+                .toList();
+
+        if (shardNames.isEmpty())
+            return;
+
+        // A manifest that can't be read makes this throw, so shards are never deleted unless every backup referring to them is known
+        Set<String> referencedShardNames = Sets.newHashSet();
+
+        for (String fileName : storedFileNames)
+        {
+            BackupNames.ParsedName parsedName = BackupNames.parse(fileName);
+            if (parsedName == null || parsedName.tier() != tier || !parsedName.worldName().equals(worldName))
+                continue;
+
+            BackupManifest backupManifest = this.backupRestorer.readManifestIfSharded(fileName);
+            if (backupManifest == null)
+                continue;
+
+            for (BackupManifest.Shard shard : backupManifest.shards())
+                referencedShardNames.add(shard.objectName());
+        }
+
+        List<String> unreferencedShardNames = shardNames.stream()
+                .filter(shardName -> !referencedShardNames.contains(shardName))
+                .toList();
+
+        if (unreferencedShardNames.isEmpty())
+            return;
+
+        this.storageProvider.deleteFiles(unreferencedShardNames);
+
+        WorldbackMachineEngine.LOGGER.info("Deleted {} shards of world '{}' that no backup refers to anymore", unreferencedShardNames.size(), worldName);
+    }
+
+    private BackupVerificationResult verifyBackup(String fileName) throws IOException
+    {
+        CloudFileMetadata fileMetadata = this.storageProvider.getFileMetadata(fileName);
+        if (fileMetadata == null || fileMetadata.md5Checksum() == null)
+        {
+            return new BackupVerificationResult(fileName, BackupVerificationResult.Status.UNVERIFIABLE,
+                    String.format("'%s' doesn't report checksums for it", this.storageProvider.getProviderName()));
+        }
+
+        BackupChecksums recordedChecksums = BackupChecksums.fromProperties(fileMetadata.properties());
+        if (recordedChecksums == null)
+            return new BackupVerificationResult(fileName, BackupVerificationResult.Status.UNVERIFIABLE, "No checksums were recorded when it was created");
+
+        if (!recordedChecksums.md5().equalsIgnoreCase(fileMetadata.md5Checksum()))
+        {
+            return new BackupVerificationResult(fileName, BackupVerificationResult.Status.CORRUPT,
+                    String.format("Expected MD5 %s, but it has MD5 %s", recordedChecksums.md5(), fileMetadata.md5Checksum()));
+        }
+
+        if (fileMetadata.size() >= 0 && fileMetadata.size() != recordedChecksums.size())
+        {
+            return new BackupVerificationResult(fileName, BackupVerificationResult.Status.CORRUPT,
+                    String.format("Expected %d bytes, but it has %d bytes", recordedChecksums.size(), fileMetadata.size()));
+        }
+
+        return new BackupVerificationResult(fileName, BackupVerificationResult.Status.INTACT, "Its checksum and size match");
+    }
+}
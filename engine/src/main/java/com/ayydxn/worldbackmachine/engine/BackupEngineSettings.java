@@ -0,0 +1,28 @@
+package com.ayydxn.worldbackmachine.engine;
+
+import com.ayydxn.worldbackmachine.backup.archive.BackupArchiveFormat;
+import org.jspecify.annotations.Nullable;
+
+import java.nio.file.Path;
+
+/**
+ * How a {@link BackupEngine} writes backups.
+ * <p>
+ * The mod builds these from its options, while the {@link com.ayydxn.worldbackmachine.engine.cli.WorldbackMachineCli command line tool}
+ * builds them from its arguments.
+ *
+ * @param archiveFormat           The format new archives are written in
+ * @param isEncryptionEnabled     Whether new backups are encrypted with the active backup key
+ * @param isShardedBackupsEnabled Whether backups of the full world are split into shards
+ * @param isSolidPackingEnabled   Whether small files are packed together into solid blocks compressed with a dictionary trained on them,
+ *                                which only block archives can do
+ * @param entryCacheDirectory     The directory the {@link com.ayydxn.worldbackmachine.backup.archive.CompressedEntryCache caches of compressed files}
+ *                                ZIPs are built from are kept in, or null to compress every file
+ * @param maxBackupSnapshots      How many snapshots of previous backups are kept for each tier of a world
+ *
+ * @author Ayydxn
+ */
+public record BackupEngineSettings(BackupArchiveFormat archiveFormat, boolean isEncryptionEnabled, boolean isShardedBackupsEnabled,
+                                   boolean isSolidPackingEnabled, @Nullable Path entryCacheDirectory, int maxBackupSnapshots)
+{
+}
@@ -0,0 +1,352 @@
+package com.ayydxn.worldbackmachine.engine;
+
+import com.ayydxn.worldbackmachine.backup.BackupNames;
+import com.ayydxn.worldbackmachine.backup.BackupTier;
+import com.ayydxn.worldbackmachine.backup.ReadAheadInputStream;
+import com.ayydxn.worldbackmachine.backup.archive.BackupArchiveFormat;
+import com.ayydxn.worldbackmachine.backup.archive.BlockArchive;
+import com.ayydxn.worldbackmachine.backup.crypto.ArchiveEncryption;
+import com.ayydxn.worldbackmachine.backup.crypto.BackupKeyManager;
+import com.ayydxn.worldbackmachine.backup.io.PooledFileIO;
+import com.ayydxn.worldbackmachine.backup.shard.BackupManifest;
+import com.ayydxn.worldbackmachine.backup.shard.ShardPlanner;
+import com.ayydxn.worldbackmachine.cloud.CloudFileMetadata;
+import com.ayydxn.worldbackmachine.cloud.CloudStorageCapability;
+import com.ayydxn.worldbackmachine.cloud.CloudStorageProvider;
+import com.ayydxn.worldbackmachine.cloud.remote.RemoteBackupArchive;
+import com.google.common.collect.Sets;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Downloads and extracts backups, either in full or only some of their files.
+ * <p>
+ * Single archives are extracted as they download, and only the parts of them that are needed are fetched when restoring individual files.
+ * Sharded backups only have the shards holding the files being restored downloaded.
+ *
+ * @author Ayydxn
+ * @see BackupEngine#restoreWorld(String, BackupTier, Instant, Path)
+ */
+class BackupRestorer
+{
+    // Restores buffer at most 16 chunks of 256 KiB (4 MiB) between the download and the extraction
+    private static final int DOWNLOAD_CHUNK_SIZE = 256 * 1024;
+    private static final int MAX_BUFFERED_DOWNLOAD_CHUNKS = 16;
+
+    private final CloudStorageProvider storageProvider;
+    private final BackupKeyManager backupKeyManager;
+    private final PooledFileIO pooledFileIO;
+    private final ShardTransfers shardTransfers;
+
+    BackupRestorer(CloudStorageProvider storageProvider, BackupKeyManager backupKeyManager, PooledFileIO pooledFileIO, ShardTransfers shardTransfers)
+    {
+        this.storageProvider = storageProvider;
+        this.backupKeyManager = backupKeyManager;
+        this.pooledFileIO = pooledFileIO;
+        this.shardTransfers = shardTransfers;
+    }
+
+    /**
+     * Downloads a backup and extracts it to the given directory.
+     *
+     * @param backupName The name of the backup to restore
+     * @param targetPath The directory to extract the world to
+     * @throws IOException If the backup doesn't exist, or downloading or extracting it fails
+     */
+    void restoreBackup(String backupName, Path targetPath) throws IOException
+    {
+        CloudFileMetadata backupMetadata = this.storageProvider.getFileMetadata(backupName);
+        BackupArchiveFormat archiveFormat = backupMetadata != null ? BackupArchiveFormat.fromProperties(backupMetadata.properties()) : BackupArchiveFormat.ZIP;
+
+        if (backupMetadata != null && BackupManifest.isSharded(backupMetadata.properties()))
+        {
+            BackupManifest backupManifest = this.readManifest(backupName);
+
+            this.downloadShards(backupManifest.shards(), targetPath, backupManifest.archiveFormat());
+        }
+        else
+        {
+            this.downloadArchive(backupName, targetPath, archiveFormat);
+        }
+    }
+
+    /**
+     * Restores the files of a single scope of a world from one of its backups, leaving the rest of the world as it is.
+     *
+     * @param worldName    The name of the world to restore
+     * @param snapshotTime The time of the snapshot to restore from, or null to restore from the most recent backup
+     * @param scope        The scope to restore, as named by {@link ShardPlanner#getScope(String)}
+     * @param targetPath   The world directory to restore the scope's files to
+     * @throws IOException If reading the backup or extracting any of the scope's files fails
+     */
+    void restoreScope(String worldName, @Nullable Instant snapshotTime, String scope, Path targetPath) throws IOException
+    {
+        String backupName = snapshotTime != null ? BackupNames.snapshot(worldName, snapshotTime) : BackupNames.latest(worldName);
+        BackupManifest backupManifest = this.readManifestIfSharded(backupName);
+
+        if (backupManifest != null)
+        {
+            List<BackupManifest.Shard> scopeShards = backupManifest.getShardsInScopes(Set.of(scope));
+            if (scopeShards.isEmpty())
+            {
+                WorldbackMachineEngine.LOGGER.warn("The backup of world '{}' doesn't have any files of the {}", worldName, scope);
+                return;
+            }
+
+            this.downloadShards(scopeShards, targetPath, backupManifest.archiveFormat());
+        }
+        else
+        {
+            try (RemoteBackupArchive remoteBackupArchive = this.openRemoteBackup(worldName, BackupTier.FULL, snapshotTime))
+            {
+                List<String> scopeFilePaths = remoteBackupArchive.listFiles().stream()
+                        .filter(filePath -> ShardPlanner.getScope(filePath).equals(scope))
+                        .toList();
+
+                remoteBackupArchive.extract(scopeFilePaths, targetPath);
+            }
+        }
+    }
+
+    /**
+     * Opens a backup so it can be browsed without downloading it, using the provider's {@link CloudStorageProvider#readRange(String, long, int) ranged reads}.
+     *
+     * @param worldName    The name of the world to open
+     * @param tier         The tier of the backup to open
+     * @param snapshotTime The time of the snapshot to open, or null to open the most recent backup
+     * @throws IOException If the provider can't read parts of files, the backup is sharded or it can't be opened
+     * @return The opened backup archive, which must be closed once it's no longer needed
+     */
+    RemoteBackupArchive openRemoteBackup(String worldName, BackupTier tier, @Nullable Instant snapshotTime) throws IOException
+    {
+        if (!this.storageProvider.hasCapability(CloudStorageCapability.RANGE_READS))
+        {
+            throw new IOException(String.format("Failed to open backup of world '%s'! '%s' can't read parts of files, so the backup has to be downloaded instead",
+                    worldName, this.storageProvider.getProviderName()));
+        }
+
+        String backupName = snapshotTime != null ? BackupNames.snapshot(worldName, tier, snapshotTime) : BackupNames.latest(worldName, tier);
+
+        CloudFileMetadata backupMetadata = this.storageProvider.getFileMetadata(backupName);
+        if (backupMetadata != null && BackupManifest.isSharded(backupMetadata.properties()))
+        {
+            throw new IOException(String.format("Failed to open backup of world '%s'! It's split into shards, so its files have to be restored instead",
+                    worldName));
+        }
+
+        return RemoteBackupArchive.open(this.storageProvider, backupName, this.backupKeyManager);
+    }
+
+    /**
+     * Restores individual files of a world from one of its backups, only fetching the requested files rather than the entire backup.
+     *
+     * @param worldName    The name of the world to restore files from
+     * @param tier         The tier of the backup to restore from
+     * @param snapshotTime The time of the snapshot to restore from, or null to restore from the most recent backup
+     * @param filePaths    The paths of the files to restore, relative to the world's directory
+     * @param targetPath   The world directory to restore the files to
+     * @throws IOException If the provider can't read parts of files, or reading the backup or extracting any of the files fails
+     */
+    void restoreFiles(String worldName, BackupTier tier, @Nullable Instant snapshotTime, Collection<String> filePaths, Path targetPath) throws IOException
+    {
+        String backupName = snapshotTime != null ? BackupNames.snapshot(worldName, tier, snapshotTime) : BackupNames.latest(worldName, tier);
+        BackupManifest backupManifest = this.readManifestIfSharded(backupName);
+
+        if (backupManifest != null)
+        {
+            this.restoreShardedFiles(worldName, backupManifest, filePaths, targetPath);
+            return;
+        }
+
+        try (RemoteBackupArchive remoteBackupArchive = this.openRemoteBackup(worldName, tier, snapshotTime))
+        {
+            WorldbackMachineEngine.LOGGER.info("Restoring {} files of world '{}'...", filePaths.size(), worldName);
+
+            remoteBackupArchive.extract(filePaths, targetPath);
+
+            WorldbackMachineEngine.LOGGER.info("Successfully restored {} files of world '{}'! ({} blocks fetched, {} served from cache)", filePaths.size(),
+                    worldName, remoteBackupArchive.getCacheMissCount(), remoteBackupArchive.getCacheHitCount());
+        }
+    }
+
+    /**
+     * Reads the manifest of a backup, if it's a sharded backup.
+     *
+     * @param backupName The name of the backup
+     * @throws IOException If reading the backup's metadata or manifest fails
+     * @return The backup's manifest, or null if the backup doesn't exist or is a single archive
+     */
+    @Nullable BackupManifest readManifestIfSharded(String backupName) throws IOException
+    {
+        CloudFileMetadata backupMetadata = this.storageProvider.getFileMetadata(backupName);
+        if (backupMetadata == null || !BackupManifest.isSharded(backupMetadata.properties()))
+            return null;
+
+        return this.readManifest(backupName);
+    }
+
+    private BackupManifest readManifest(String backupName) throws IOException
+    {
+        try (InputStream downloadInputStream = this.storageProvider.openDownloadStream(backupName);
+             InputStream manifestInputStream = ArchiveEncryption.decryptIfEncrypted(downloadInputStream, this.backupKeyManager))
+        {
+            return BackupManifest.read(manifestInputStream);
+        }
+    }
+
+    /**
+     * Downloads a backup that's a single archive and extracts it as it downloads.
+     *
+     * @param backupName    The name of the backup
+     * @param targetPath    The directory to extract the backup to
+     * @param archiveFormat The format of the backup
+     * @throws IOException If downloading or extracting the backup fails
+     */
+    private void downloadArchive(String backupName, Path targetPath, BackupArchiveFormat archiveFormat) throws IOException
+    {
+        // Extract the backup as it downloads, with the download reading ahead of the extraction on its own thread
+        // Providers which can't stream downloads have already downloaded the backup to disk, so there's nothing to read ahead of
+        // Each stream is closed on its own, so the download is still closed if wrapping it fails, such as when the backup's key is missing
+        try (InputStream downloadInputStream = this.storageProvider.openDownloadStream(backupName);
+             InputStream readAheadInputStream = this.storageProvider.hasCapability(CloudStorageCapability.STREAMING_DOWNLOADS) ?
+                     new ReadAheadInputStream(downloadInputStream, DOWNLOAD_CHUNK_SIZE, MAX_BUFFERED_DOWNLOAD_CHUNKS, "WorldbackMachine-DownloadReader") :
+                     downloadInputStream;
+             // Encrypted backups are decrypted as they're extracted, so they never exist on disk in the clear
+             InputStream backupInputStream = ArchiveEncryption.decryptIfEncrypted(readAheadInputStream, this.backupKeyManager))
+        {
+            this.extractWorldBackup(backupInputStream, targetPath, archiveFormat);
+        }
+    }
+
+    /**
+     * Downloads shards of a sharded backup and extracts them, several at once for providers with
+     * {@link CloudStorageCapability#PARALLEL_STREAMS parallel streams}.
+     *
+     * @param shards        The shards to download
+     * @param targetPath    The directory to extract the shards to
+     * @param archiveFormat The format of the shards
+     * @throws IOException If downloading or extracting any of the shards fails
+     */
+    private void downloadShards(List<BackupManifest.Shard> shards, Path targetPath, BackupArchiveFormat archiveFormat) throws IOException
+    {
+        List<CompletableFuture<Void>> shardDownloads = shards.stream()
+                .map(shard -> CompletableFuture.runAsync(() ->
+                {
+                    try
+                    {
+                        this.downloadArchive(shard.objectName(), targetPath, archiveFormat);
+                    }
+                    catch (IOException exception)
+                    {
+                        throw new UncheckedIOException(exception);
+                    }
+                }, this.shardTransfers.getExecutor()))
+                .toList();
+
+        this.shardTransfers.await(shardDownloads);
+
+        WorldbackMachineEngine.LOGGER.info("Downloaded {} shards ({} MB)", shards.size(), shards.stream().mapToLong(BackupManifest.Shard::size).sum() / (1024L * 1024L));
+    }
+
+    /**
+     * Restores individual files of a world from a sharded backup, opening only the shards holding them.
+     *
+     * @param worldName      The name of the world
+     * @param backupManifest The manifest of the backup
+     * @param filePaths      The paths of the files to restore, relative to the world's directory
+     * @param targetPath     The world directory to restore the files to
+     * @throws IOException If the storage provider can't read parts of files, or opening or extracting any of the shards fails
+     */
+    private void restoreShardedFiles(String worldName, BackupManifest backupManifest, Collection<String> filePaths, Path targetPath) throws IOException
+    {
+        if (!this.storageProvider.hasCapability(CloudStorageCapability.RANGE_READS))
+        {
+            throw new IOException(String.format("Failed to restore files of world '%s'! '%s' can't read parts of files, so the backup has to be downloaded instead",
+                    worldName, this.storageProvider.getProviderName()));
+        }
+
+        WorldbackMachineEngine.LOGGER.info("Restoring {} files of world '{}'...", filePaths.size(), worldName);
+
+        Set<String> requestedFilePaths = Sets.newHashSet(filePaths);
+        List<BackupManifest.Shard> holdingShards = backupManifest.getShardsHolding(requestedFilePaths);
+
+        List<CompletableFuture<Void>> shardRestores = holdingShards.stream()
+                .map(shard -> CompletableFuture.runAsync(() ->
+                {
+                    try (RemoteBackupArchive shardArchive = RemoteBackupArchive.open(this.storageProvider, shard.objectName(), this.backupKeyManager))
+                    {
+                        shardArchive.extract(shard.files().stream().filter(requestedFilePaths::contains).toList(), targetPath);
+                    }
+                    catch (IOException exception)
+                    {
+                        throw new UncheckedIOException(exception);
+                    }
+                }, this.shardTransfers.getExecutor()))
+                .toList();
+
+        this.shardTransfers.await(shardRestores);
+
+        WorldbackMachineEngine.LOGGER.info("Successfully restored {} files of world '{}' from {} of its {} shards!", filePaths.size(), worldName,
+                holdingShards.size(), backupManifest.shards().size());
+    }
+
+    /**
+     * Extracts a world backup to a target directory.
+     * <p>
+     * Extracts all files from the backup while preserving the directory
+     * structure. Creates any necessary parent directories.
+     * The backup is read sequentially, so it can be extracted while it is still being downloaded.
+     *
+     * @param archiveInputStream the stream of the backup to extract
+     * @param targetPath         the directory where files should be extracted
+     * @param archiveFormat      the format of the backup, as recorded alongside it
+     * @throws IOException if extraction fails, or an entry would be extracted outside the target directory
+     */
+    private void extractWorldBackup(InputStream archiveInputStream, Path targetPath, BackupArchiveFormat archiveFormat) throws IOException
+    {
+        // Block archives decompress the blocks of large files on every core, rather than one file at a time
+        if (archiveFormat == BackupArchiveFormat.BLOCK)
+        {
+            BlockArchive.extract(archiveInputStream, targetPath);
+            return;
+        }
+
+        Path normalizedTargetPath = targetPath.toAbsolutePath().normalize();
+        Files.createDirectories(normalizedTargetPath);
+
+        try (ZipInputStream worldZipInputStream = new ZipInputStream(archiveInputStream))
+        {
+            ZipEntry entry;
+            while ((entry = worldZipInputStream.getNextEntry()) != null)
+            {
+                Path filePath = normalizedTargetPath.resolve(entry.getName()).normalize();
+                if (!filePath.startsWith(normalizedTargetPath))
+                    throw new IOException(String.format("Refusing to extract '%s' outside of '%s'!", entry.getName(), targetPath));
+
+                if (entry.isDirectory())
+                {
+                    Files.createDirectories(filePath);
+                }
+                else
+                {
+                    Files.createDirectories(filePath.getParent());
+                    this.pooledFileIO.copy(worldZipInputStream, filePath);
+                }
+
+                worldZipInputStream.closeEntry();
+            }
+        }
+    }
+}
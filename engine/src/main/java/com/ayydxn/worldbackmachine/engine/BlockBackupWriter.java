@@ -0,0 +1,114 @@
+package com.ayydxn.worldbackmachine.engine;
+
+import com.ayydxn.worldbackmachine.backup.archive.BlockArchive;
+import com.ayydxn.worldbackmachine.backup.archive.BlockArchiveEntry;
+import com.ayydxn.worldbackmachine.backup.archive.BlockArchiveWriter;
+import com.ayydxn.worldbackmachine.backup.policy.BackupCodec;
+import com.ayydxn.worldbackmachine.backup.policy.BackupPathPolicy;
+import com.ayydxn.worldbackmachine.backup.policy.PathSettings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a world's files to a {@link BlockArchive block archive}, whose large files are compressed on every core at once.
+ * <p>
+ * Region files are {@link com.ayydxn.worldbackmachine.backup.archive.RegionFileCodec transcoded} if their rules say so, and small files can be
+ * packed together into solid blocks compressed with a dictionary trained on them.
+ *
+ * @author Ayydxn
+ */
+class BlockBackupWriter
+{
+    // Player data, stats and advancements are rarely more than a few kilobytes, while region files are far larger than this
+    private static final int MAX_SOLID_FILE_SIZE = 64 * 1024;
+
+    private final boolean isSolidPackingEnabled;
+
+    BlockBackupWriter(boolean isSolidPackingEnabled)
+    {
+        this.isSolidPackingEnabled = isSolidPackingEnabled;
+    }
+
+    /**
+     * Writes the given files to a block archive, closing the stream once it's done.
+     *
+     * @param worldPath           The path to the world directory
+     * @param worldFiles          The files to write to the archive, in order
+     * @param archiveOutputStream The stream to write the archive to
+     * @param backupPathPolicy    The rules deciding how each file is stored
+     * @throws IOException If reading any of the files or writing the archive fails
+     */
+    void write(Path worldPath, List<Path> worldFiles, OutputStream archiveOutputStream, BackupPathPolicy backupPathPolicy) throws IOException
+    {
+        List<Path> solidFiles = Lists.newArrayList();
+        Map<String, Long> regionFileSizes = Maps.newHashMap();
+        BlockArchiveWriter blockArchiveWriter = BlockArchive.newWriter(archiveOutputStream);
+
+        try (blockArchiveWriter)
+        {
+            for (Path path : worldFiles)
+            {
+                String entryName = BackupArchiver.getEntryName(worldPath, path);
+                PathSettings pathSettings = backupPathPolicy.getSettings(entryName);
+
+                if (pathSettings.codec() == BackupCodec.STORE)
+                {
+                    blockArchiveWriter.addFile(entryName, path, 0);
+                }
+                else if (pathSettings.codec() == BackupCodec.REGION)
+                {
+                    // A transcoded file's entry records its size once transcoded, so how much it shrank is measured against the original
+                    regionFileSizes.put(entryName, Files.size(path));
+                    blockArchiveWriter.addRegionFile(entryName, path, pathSettings.compressionLevel());
+                }
+                else if (this.isSolidPackingEnabled && Files.size(path) <= MAX_SOLID_FILE_SIZE)
+                {
+                    // Small files are packed once the dictionary they're compressed with has been trained on all of them
+                    solidFiles.add(path);
+                }
+                else
+                {
+                    blockArchiveWriter.addFile(entryName, path, pathSettings.compressionLevel());
+                }
+            }
+
+            if (!solidFiles.isEmpty())
+                this.addSolidFiles(worldPath, solidFiles, blockArchiveWriter, backupPathPolicy);
+        }
+
+        // Blocks are compressed in the background, so how much each file shrank is only known once the writer has been closed
+        for (BlockArchiveEntry archiveEntry : blockArchiveWriter.getEntries())
+        {
+            long fileSize = regionFileSizes.getOrDefault(archiveEntry.name(), archiveEntry.size());
+            backupPathPolicy.recordStored(backupPathPolicy.getSettings(archiveEntry.name()), fileSize, archiveEntry.storedSize());
+        }
+    }
+
+    private void addSolidFiles(Path worldPath, List<Path> solidFiles, BlockArchiveWriter blockArchiveWriter, BackupPathPolicy backupPathPolicy)
+            throws IOException
+    {
+        try
+        {
+            blockArchiveWriter.trainDictionary(solidFiles);
+        }
+        catch (IOException exception)
+        {
+            // The files can still be packed without a dictionary, they just won't compress as well
+            WorldbackMachineEngine.LOGGER.warn("Failed to train a dictionary for the small files of '{}'", worldPath, exception);
+        }
+
+        for (Path path : solidFiles)
+        {
+            String entryName = BackupArchiver.getEntryName(worldPath, path);
+
+            blockArchiveWriter.addSolidFile(entryName, path, backupPathPolicy.getSettings(entryName).compressionLevel());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.ayydxn.worldbackmachine.engine;
+
+import com.ayydxn.worldbackmachine.backup.BackupChecksums;
+import com.ayydxn.worldbackmachine.backup.archive.BackupArchiveFormat;
+import com.ayydxn.worldbackmachine.backup.crypto.ArchiveEncryption;
+import com.ayydxn.worldbackmachine.cloud.CloudFileMetadata;
+import com.ayydxn.worldbackmachine.cloud.CloudStorageCapability;
+import com.ayydxn.worldbackmachine.cloud.CloudStorageProvider;
+import com.google.common.collect.Maps;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An archive or manifest written by a {@link BackupArchiver}, which is compared against what's stored with the provider before and after it's uploaded.
+ *
+ * @param checksums     The checksums of the archive as it's stored, which are what the provider reports for it
+ * @param contentMd5    The MD5 digest of the archive before it was encrypted, which is the same as the stored MD5 if it wasn't
+ * @param archiveFormat The format of the archive, or of the shards a manifest refers to
+ * @param keyId         The ID of the key the archive was encrypted with, or null if it wasn't encrypted
+ * @author Ayydxn
+ */
+record CreatedBackup(BackupChecksums checksums, String contentMd5, BackupArchiveFormat archiveFormat, @Nullable String keyId)
+{
+    /**
+     * Gets the properties describing how the backup was written, which are stored alongside it.
+     *
+     * @return The backup's properties
+     */
+    Map<String, String> toProperties()
+    {
+        Map<String, String> properties = Maps.newHashMap(this.checksums.toProperties());
+        properties.put(BackupArchiveFormat.FORMAT_PROPERTY, this.archiveFormat.getPropertyValue());
+
+        if (this.keyId != null)
+        {
+            properties.put(ArchiveEncryption.KEY_ID_PROPERTY, this.keyId);
+            properties.put(ArchiveEncryption.CONTENT_MD5_PROPERTY, this.contentMd5);
+        }
+
+        return properties;
+    }
+
+    /**
+     * Checks whether the backup's contents are identical to the copy of it already stored with the storage provider.
+     *
+     * @param remoteFileMetadata The metadata of the stored copy, if there is one
+     * @return True if the stored copy has the same checksum and size, and is encrypted with the same key, false otherwise
+     */
+    boolean isUnchangedRemotely(@Nullable CloudFileMetadata remoteFileMetadata)
+    {
+        if (remoteFileMetadata == null)
+            return false;
+
+        // Turning encryption on or off, or switching keys, has to replace the stored copy even if the world is unchanged
+        if (!Objects.equals(remoteFileMetadata.properties().get(ArchiveEncryption.KEY_ID_PROPERTY), this.keyId))
+            return false;
+
+        // Encrypting the same archive twice never gives the same bytes, so only the checksum of what was encrypted can be compared
+        if (this.keyId != null)
+            return this.contentMd5.equalsIgnoreCase(remoteFileMetadata.properties().get(ArchiveEncryption.CONTENT_MD5_PROPERTY));
+
+        // Prefer the checksum the provider computed itself, but fall back to the one we recorded if it doesn't compute any
+        String remoteMd5Checksum = remoteFileMetadata.md5Checksum() != null ? remoteFileMetadata.md5Checksum() :
+                remoteFileMetadata.properties().get(BackupChecksums.MD5_PROPERTY);
+
+        return this.checksums.md5().equalsIgnoreCase(remoteMd5Checksum) &&
+                (remoteFileMetadata.size() < 0 || remoteFileMetadata.size() == this.checksums.size());
+    }
+
+    /**
+     * Compares the metadata a provider reported for the uploaded backup against the checksums computed while creating it.
+     *
+     * @param storageProvider  The provider the backup was uploaded to
+     * @param name             The name the backup was uploaded under
+     * @param uploadedMetadata The metadata reported by the provider, if any
+     * @throws IOException If the provider reports a different checksum or size than what was uploaded
+     */
+    void verifyUpload(CloudStorageProvider storageProvider, String name, @Nullable CloudFileMetadata uploadedMetadata) throws IOException
+    {
+        if (uploadedMetadata == null || uploadedMetadata.md5Checksum() == null)
+        {
+            // Providers without checksums are known not to report them, so there's nothing to warn about
+            if (storageProvider.hasCapability(CloudStorageCapability.CHECKSUMS))
+            {
+                WorldbackMachineEngine.LOGGER.warn("'{}' didn't report checksums for '{}'. Its integrity can't be verified",
+                        storageProvider.getProviderName(), name);
+            }
+
+            return;
+        }
+
+        boolean checksumMatches = uploadedMetadata.md5Checksum().equalsIgnoreCase(this.checksums.md5());
+        boolean sizeMatches = uploadedMetadata.size() < 0 || uploadedMetadata.size() == this.checksums.size();
+
+        if (!checksumMatches || !sizeMatches)
+        {
+            throw new IOException(String.format("The upload of '%s' is corrupt! (Expected MD5 %s and %d bytes, but '%s' has MD5 %s and %d bytes)",
+                    name, this.checksums.md5(), this.checksums.size(), storageProvider.getProviderName(),
+                    uploadedMetadata.md5Checksum(), uploadedMetadata.size()));
+        }
+    }
+}
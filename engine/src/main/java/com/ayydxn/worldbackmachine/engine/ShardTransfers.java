@@ -0,0 +1,73 @@
+package com.ayydxn.worldbackmachine.engine;
+
+import com.ayydxn.worldbackmachine.cloud.CloudStorageCapability;
+import com.ayydxn.worldbackmachine.cloud.CloudStorageProvider;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the uploads, downloads and restores of a sharded backup's shards, several at once for providers with
+ * {@link CloudStorageCapability#PARALLEL_STREAMS parallel streams}.
+ *
+ * @author Ayydxn
+ */
+class ShardTransfers
+{
+    private final CloudStorageProvider storageProvider;
+    private final Executor shardTransferExecutor;
+
+    ShardTransfers(CloudStorageProvider storageProvider, Executor shardTransferExecutor)
+    {
+        this.storageProvider = storageProvider;
+        this.shardTransferExecutor = shardTransferExecutor;
+    }
+
+    /**
+     * Returns the executor shards are transferred on, which runs them on the calling thread one at a time for providers without
+     * {@link CloudStorageCapability#PARALLEL_STREAMS parallel streams}.
+     *
+     * @return The executor to transfer shards on
+     */
+    Executor getExecutor()
+    {
+        return this.storageProvider.hasCapability(CloudStorageCapability.PARALLEL_STREAMS) ? this.shardTransferExecutor : Runnable::run;
+    }
+
+    /**
+     * Waits for every transfer of a sharded backup to finish, even if some of them fail, so none of them are still running afterward.
+     *
+     * @param shardTransfers The transfers to wait for
+     * @throws IOException If any of the transfers failed, or waiting for them was interrupted
+     * @return The result of each transfer, in order
+     */
+    <T> List<T> await(List<CompletableFuture<T>> shardTransfers) throws IOException
+    {
+        try
+        {
+            CompletableFuture.allOf(shardTransfers.toArray(CompletableFuture[]::new)).get();
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while transferring shards");
+        }
+        catch (ExecutionException exception)
+        {
+            if (exception.getCause() instanceof UncheckedIOException uncheckedIOException)
+                throw uncheckedIOException.getCause();
+
+            throw new IOException("Failed to transfer a shard", exception.getCause());
+        }
+
+        return shardTransfers.stream()
+                .map(CompletableFuture::join)
+                .toList();
+    }
+}
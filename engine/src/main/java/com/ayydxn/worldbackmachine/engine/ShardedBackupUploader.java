@@ -0,0 +1,151 @@
+package com.ayydxn.worldbackmachine.engine;
+
+import com.ayydxn.worldbackmachine.backup.BackupNames;
+import com.ayydxn.worldbackmachine.backup.BackupTier;
+import com.ayydxn.worldbackmachine.backup.archive.BackupArchiveFormat;
+import com.ayydxn.worldbackmachine.backup.archive.CompressedEntryCache;
+import com.ayydxn.worldbackmachine.backup.crypto.BackupKey;
+import com.ayydxn.worldbackmachine.backup.history.BackupMeasurement;
+import com.ayydxn.worldbackmachine.backup.policy.BackupPathPolicy;
+import com.ayydxn.worldbackmachine.backup.shard.BackupManifest;
+import com.ayydxn.worldbackmachine.backup.shard.ShardPlanner;
+import com.ayydxn.worldbackmachine.cloud.CloudFileMetadata;
+import com.ayydxn.worldbackmachine.cloud.CloudStorageCapability;
+import com.ayydxn.worldbackmachine.cloud.CloudStorageProvider;
+import org.jspecify.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Splits a world's files into shards and uploads each of them on its own.
+ * <p>
+ * The files are {@link ShardPlanner split} into shards of each dimension's regions, entities and points of interest, the players' data and the
+ * level's data, each of which is archived and uploaded on its own. Providers with {@link CloudStorageCapability#PARALLEL_STREAMS parallel streams}
+ * have several shards uploaded at once. Shards are named after their contents, so a shard that's already stored isn't uploaded again.
+ *
+ * @author Ayydxn
+ */
+class ShardedBackupUploader
+{
+    private final CloudStorageProvider storageProvider;
+    private final BackupArchiver backupArchiver;
+    private final ShardTransfers shardTransfers;
+
+    ShardedBackupUploader(CloudStorageProvider storageProvider, BackupArchiver backupArchiver, ShardTransfers shardTransfers)
+    {
+        this.storageProvider = storageProvider;
+        this.backupArchiver = backupArchiver;
+        this.shardTransfers = shardTransfers;
+    }
+
+    /**
+     * Archives and uploads every shard of a world's files, skipping the ones that are already stored.
+     *
+     * @param worldName          The name of the world
+     * @param tier               The tier of the world's data the files belong to
+     * @param worldPath          The directory containing the world's files
+     * @param worldFiles         The files to back up, in the order they're written to archives in
+     * @param backupPathPolicy   The rules deciding how each file is stored
+     * @param archiveFormat      The format of the shards' archives
+     * @param backupKey          The key to encrypt the shards with, or null to leave them unencrypted
+     * @param entryCache         The cache of compressed files to build the shards' archives from, or null to compress every file
+     * @param uploadedShardBytes Counts the number of bytes uploaded for the shards
+     * @param backupMeasurement  Measures each phase of the backup
+     * @throws IOException If compressing or uploading any of the shards fails
+     * @return Each shard's entry in the backup's manifest
+     */
+    List<BackupManifest.Shard> uploadShards(String worldName, BackupTier tier, Path worldPath, List<Path> worldFiles, BackupPathPolicy backupPathPolicy,
+                                            BackupArchiveFormat archiveFormat, @Nullable BackupKey backupKey, @Nullable CompressedEntryCache entryCache,
+                                            LongAdder uploadedShardBytes, BackupMeasurement backupMeasurement) throws IOException
+    {
+        List<ShardPlanner.PlannedShard> plannedShards = ShardPlanner.plan(worldPath, worldFiles, ShardPlanner.DEFAULT_MAX_SHARD_BYTES);
+
+        // Shards with the same contents share a name, so each name is only ever uploaded once
+        Set<String> claimedObjectNames = ConcurrentHashMap.newKeySet();
+
+        List<CompletableFuture<BackupManifest.Shard>> shardUploads = plannedShards.stream()
+                .map(plannedShard -> CompletableFuture.supplyAsync(() ->
+                {
+                    try
+                    {
+                        return this.uploadShard(worldName, tier, worldPath, plannedShard, backupPathPolicy, archiveFormat, backupKey, entryCache,
+                                claimedObjectNames, uploadedShardBytes, backupMeasurement);
+                    }
+                    catch (IOException exception)
+                    {
+                        throw new UncheckedIOException(exception);
+                    }
+                }, this.shardTransfers.getExecutor()))
+                .toList();
+
+        return this.shardTransfers.await(shardUploads);
+    }
+
+    /**
+     * Archives a single shard of a sharded backup and uploads it, unless an identical copy of it is already stored.
+     *
+     * @param worldName          The name of the world
+     * @param tier               The tier of the world's data the shard belongs to
+     * @param worldPath          The directory containing the world's files
+     * @param plannedShard       The shard to upload
+     * @param backupPathPolicy   The rules deciding how each file is stored
+     * @param archiveFormat      The format of the shard's archive
+     * @param backupKey          The key to encrypt the shard with, or null to leave it unencrypted
+     * @param entryCache         The cache of compressed files to build the shard's archive from, or null to compress every file
+     * @param claimedObjectNames The names of the shards of this backup which have already been uploaded, or are being uploaded
+     * @param uploadedShardBytes The number of bytes uploaded for this backup so far
+     * @param backupMeasurement  Measures each phase of the backup
+     * @throws IOException If compressing or uploading the shard fails
+     * @return The shard's entry in the backup's manifest
+     */
+    private BackupManifest.Shard uploadShard(String worldName, BackupTier tier, Path worldPath, ShardPlanner.PlannedShard plannedShard,
+                                             BackupPathPolicy backupPathPolicy, BackupArchiveFormat archiveFormat, @Nullable BackupKey backupKey,
+                                             @Nullable CompressedEntryCache entryCache, Set<String> claimedObjectNames, LongAdder uploadedShardBytes, BackupMeasurement backupMeasurement)
+            throws IOException
+    {
+        File temporaryShardFile = File.createTempFile(worldName.toLowerCase().replace(" ", "_") + "_shard_", ".zip");
+
+        try
+        {
+            long compressStartTime = System.nanoTime();
+            CreatedBackup createdShard = this.backupArchiver.createWorldBackup(worldPath, plannedShard.files(), temporaryShardFile, backupPathPolicy,
+                    archiveFormat, backupKey, entryCache);
+
+            backupMeasurement.recordCompressed(System.nanoTime() - compressStartTime, plannedShard.files().size(), plannedShard.sizeBytes(),
+                    createdShard.checksums().size());
+
+            String objectName = BackupNames.shard(worldName, tier, createdShard.contentMd5());
+
+            // A stored shard with the same name has the same contents, but still has to be replaced if it was encrypted with a different key
+            if (claimedObjectNames.add(objectName) && !createdShard.isUnchangedRemotely(this.storageProvider.getFileMetadata(objectName)))
+            {
+                long uploadStartTime = System.nanoTime();
+
+                CloudFileMetadata uploadedShardMetadata = this.storageProvider.uploadFile(temporaryShardFile, objectName, createdShard.toProperties());
+                createdShard.verifyUpload(this.storageProvider, objectName, uploadedShardMetadata);
+
+                backupMeasurement.recordUploaded(System.nanoTime() - uploadStartTime);
+                uploadedShardBytes.add(createdShard.checksums().size());
+            }
+
+            List<String> entryNames = plannedShard.files().stream()
+                    .map(path -> BackupArchiver.getEntryName(worldPath, path))
+                    .toList();
+
+            return new BackupManifest.Shard(plannedShard.id(), plannedShard.scope(), objectName, createdShard.contentMd5(), createdShard.checksums().size(),
+                    entryNames);
+        }
+        finally
+        {
+            BackupArchiver.deleteTemporaryFile(temporaryShardFile);
+        }
+    }
+}
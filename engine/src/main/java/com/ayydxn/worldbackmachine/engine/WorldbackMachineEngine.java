@@ -0,0 +1,25 @@
+package com.ayydxn.worldbackmachine.engine;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Shared state of the headless backup engine.
+ * <p>
+ * The engine holds everything that reads and writes Worldback Machine's on-disk formats (archives, codecs, manifests, keys and
+ * the storage provider API) without depending on Minecraft, so the mod and the {@link com.ayydxn.worldbackmachine.engine.cli.WorldbackMachineCli command line tool}
+ * produce and restore exactly the same backups.
+ *
+ * @author Ayydxn
+ */
+public final class WorldbackMachineEngine
+{
+    /**
+     * The logger used by the engine. It shares its name with the mod's logger, so the engine's messages show up next to the mod's in-game.
+     */
+    public static final Logger LOGGER = LogManager.getLogger("Worldback Machine");
+
+    private WorldbackMachineEngine()
+    {
+    }
+}
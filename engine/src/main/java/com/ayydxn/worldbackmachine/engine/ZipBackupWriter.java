@@ -0,0 +1,109 @@
+package com.ayydxn.worldbackmachine.engine;
+
+import com.ayydxn.worldbackmachine.backup.archive.CompressedEntryCache;
+import com.ayydxn.worldbackmachine.backup.archive.ZipArchiveWriter;
+import com.ayydxn.worldbackmachine.backup.io.PooledFileIO;
+import com.ayydxn.worldbackmachine.backup.policy.BackupCodec;
+import com.ayydxn.worldbackmachine.backup.policy.BackupPathPolicy;
+import com.ayydxn.worldbackmachine.backup.policy.PathSettings;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a world's files to a ZIP archive.
+ * <p>
+ * Files whose rules dedupe them are copied from a {@link CompressedEntryCache cache} of their compressed bytes, so only files that changed
+ * since the last backup are compressed again.
+ *
+ * @author Ayydxn
+ */
+class ZipBackupWriter
+{
+    // A region rule's level is a zstd level. Its chunks are already compressed, so DEFLATE at any level above the fastest barely shrinks them further
+    private static final int REGION_COMPRESSION_LEVEL = Deflater.BEST_SPEED;
+
+    private final PooledFileIO pooledFileIO;
+
+    ZipBackupWriter(PooledFileIO pooledFileIO)
+    {
+        this.pooledFileIO = pooledFileIO;
+    }
+
+    /**
+     * Writes the given files to a ZIP archive, closing the stream once it's done.
+     *
+     * @param worldPath           The path to the world directory
+     * @param worldFiles          The files to write to the archive, in order
+     * @param archiveOutputStream The stream to write the archive to
+     * @param backupPathPolicy    The rules deciding how each file is stored
+     * @param entryCache          The cache of compressed files to copy from, or null to compress every file
+     * @throws IOException If reading any of the files or writing the archive fails
+     */
+    void write(Path worldPath, List<Path> worldFiles, OutputStream archiveOutputStream, BackupPathPolicy backupPathPolicy,
+               @Nullable CompressedEntryCache entryCache) throws IOException
+    {
+        try (ZipArchiveWriter zipArchiveWriter = new ZipArchiveWriter(archiveOutputStream, this.pooledFileIO))
+        {
+            for (Path path : worldFiles)
+            {
+                String zipEntryName = BackupArchiver.getEntryName(worldPath, path);
+                PathSettings pathSettings = backupPathPolicy.getSettings(zipEntryName);
+                int compressionLevel = switch (pathSettings.codec())
+                {
+                    case STORE -> Deflater.NO_COMPRESSION;
+                    case REGION -> REGION_COMPRESSION_LEVEL;
+                    case DEFLATE -> pathSettings.compressionLevel();
+                };
+
+                CompressedEntryCache.CompressedEntry compressedEntry = this.getCompressedEntry(entryCache, zipEntryName, path, pathSettings,
+                        compressionLevel);
+
+                if (compressedEntry != null)
+                {
+                    CompressedEntryCache.CachedEntry cachedEntry = compressedEntry.cachedEntry();
+
+                    zipArchiveWriter.addRawEntry(zipEntryName, ZipArchiveWriter.ZipMethod.DEFLATED, cachedEntry.crc32(), cachedEntry.size(),
+                            cachedEntry.compressedSize(), compressedEntry.blobPath());
+
+                    backupPathPolicy.recordStored(pathSettings, cachedEntry.size(), cachedEntry.compressedSize());
+                }
+                else
+                {
+                    long fileSize = Files.size(path);
+                    long storedSize = zipArchiveWriter.addFile(zipEntryName, path, compressionLevel);
+
+                    backupPathPolicy.recordStored(pathSettings, fileSize, storedSize);
+                }
+            }
+        }
+    }
+
+    private CompressedEntryCache.@Nullable CompressedEntry getCompressedEntry(@Nullable CompressedEntryCache entryCache, String zipEntryName, Path path,
+                                                                              PathSettings pathSettings, int compressionLevel)
+    {
+        // Stored files have nothing to save by being cached, and small ones are quicker to compress than to look up
+        if (entryCache == null || !pathSettings.dedup() || compressionLevel == Deflater.NO_COMPRESSION ||
+                path.toFile().length() < CompressedEntryCache.MIN_CACHED_FILE_SIZE)
+        {
+            return null;
+        }
+
+        try
+        {
+            return entryCache.getOrCompress(zipEntryName, path, compressionLevel);
+        }
+        catch (IOException exception)
+        {
+            // Nothing has been written for the file yet, so it can still be compressed straight into the archive
+            WorldbackMachineEngine.LOGGER.warn("Failed to cache the compressed bytes of '{}'. Compressing it directly", zipEntryName, exception);
+
+            return null;
+        }
+    }
+}
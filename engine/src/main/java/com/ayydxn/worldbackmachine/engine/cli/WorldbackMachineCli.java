@@ -0,0 +1,411 @@
+package com.ayydxn.worldbackmachine.engine.cli;
+
+import com.ayydxn.worldbackmachine.backup.BackupTier;
+import com.ayydxn.worldbackmachine.backup.BackupVerificationResult;
+import com.ayydxn.worldbackmachine.backup.archive.BackupArchiveFormat;
+import com.ayydxn.worldbackmachine.backup.crypto.BackupKeyManager;
+import com.ayydxn.worldbackmachine.backup.history.BackupMeasurement;
+import com.ayydxn.worldbackmachine.backup.io.BufferPool;
+import com.ayydxn.worldbackmachine.backup.io.PooledFileIO;
+import com.ayydxn.worldbackmachine.backup.policy.BackupCodec;
+import com.ayydxn.worldbackmachine.backup.policy.BackupPathPolicy;
+import com.ayydxn.worldbackmachine.backup.policy.BackupPathRule;
+import com.ayydxn.worldbackmachine.cloud.local.LocalDirectoryProvider;
+import com.ayydxn.worldbackmachine.engine.BackupEngine;
+import com.ayydxn.worldbackmachine.engine.BackupEngineSettings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A command line tool which backs up, restores, verifies and prunes worlds without running the game.
+ * <p>
+ * It uses the same {@link BackupEngine engine} as the mod and stores backups in a directory through a {@link LocalDirectoryProvider},
+ * so scripts, such as a dedicated server's cron job, produce backups in exactly the same format as the mod does.
+ * Run it without any arguments to see how it's used.
+ *
+ * @author Ayydxn
+ */
+public final class WorldbackMachineCli
+{
+    // The CLI copies files into and out of archives through at most 32 buffers of 128 KiB (4 MiB)
+    private static final int IO_BUFFER_SIZE = 128 * 1024;
+    private static final long IO_MEMORY_BUDGET_BYTES = 4L * 1024L * 1024L;
+
+    private static final int SHARD_TRANSFER_THREADS = 4;
+    private static final int DEFAULT_MAX_BACKUP_SNAPSHOTS = 5;
+
+    private static final int EXIT_SUCCESS = 0;
+    private static final int EXIT_FAILURE = 1;
+    private static final int EXIT_USAGE = 2;
+
+    // Options which are followed by a value, rather than being flags on their own
+    private static final Set<String> VALUE_OPTIONS = Set.of("--to", "--from", "--name", "--tier", "--format", "--keys", "--keep", "--entry-cache",
+            "--exclude", "--snapshot");
+
+    private static final String USAGE = """
+            Usage: worldback-machine <command> [options]
+
+            Commands:
+              backup <world directory> --to <backup directory>
+                  [--name <world name>] [--tier full|players] [--format zip|block] [--sharded] [--solid]
+                  [--encrypt] [--keys <keys directory>] [--keep <snapshots>] [--entry-cache <directory>]
+                  [--exclude <pattern>]...
+              restore <world name> --from <backup directory> --to <world directory>
+                  [--tier full|players] [--snapshot <ISO-8601 instant>] [--keys <keys directory>]
+              list --from <backup directory> [<world name>] [--tier full|players]
+              verify --from <backup directory>
+              prune <world name> --from <backup directory> --keep <snapshots>
+                  [--tier full|players] [--keys <keys directory>]
+            """;
+
+    private WorldbackMachineCli()
+    {
+    }
+
+    public static void main(String[] args)
+    {
+        // Without a configuration of its own, Log4j only prints errors, which would hide the engine's progress
+        if (System.getProperty("org.apache.logging.log4j.level") == null)
+            System.setProperty("org.apache.logging.log4j.level", "INFO");
+
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Runs a command of the tool.
+     *
+     * @param args The command and its arguments
+     * @param out  Where the command's output is printed to
+     * @param err  Where usage errors are printed to
+     * @return The tool's exit code, which is 0 if the command succeeded
+     */
+    public static int run(String[] args, PrintStream out, PrintStream err)
+    {
+        CommandLine commandLine;
+
+        try
+        {
+            commandLine = CommandLine.parse(args);
+        }
+        catch (IllegalArgumentException exception)
+        {
+            err.println(exception.getMessage());
+            err.print(USAGE);
+
+            return EXIT_USAGE;
+        }
+
+        if (commandLine.command() == null)
+        {
+            out.print(USAGE);
+
+            return EXIT_SUCCESS;
+        }
+
+        AtomicInteger shardTransferThreadCount = new AtomicInteger();
+        ExecutorService shardTransferExecutor = Executors.newFixedThreadPool(SHARD_TRANSFER_THREADS, runnable ->
+        {
+            Thread shardTransferThread = new Thread(runnable, "WorldbackMachine-ShardTransfer-" + shardTransferThreadCount.incrementAndGet());
+            shardTransferThread.setDaemon(true);
+
+            return shardTransferThread;
+        });
+
+        try
+        {
+            return switch (commandLine.command())
+            {
+                case "backup" -> backup(commandLine, shardTransferExecutor, out);
+                case "restore" -> restore(commandLine, shardTransferExecutor, out);
+                case "list" -> list(commandLine, shardTransferExecutor, out);
+                case "verify" -> verify(commandLine, shardTransferExecutor, out);
+                case "prune" -> prune(commandLine, shardTransferExecutor, out);
+                default -> throw new IllegalArgumentException(String.format("Unknown command '%s'", commandLine.command()));
+            };
+        }
+        catch (IllegalArgumentException exception)
+        {
+            err.println(exception.getMessage());
+            err.print(USAGE);
+
+            return EXIT_USAGE;
+        }
+        catch (IOException exception)
+        {
+            err.println("Error: " + exception.getMessage());
+
+            return EXIT_FAILURE;
+        }
+        finally
+        {
+            shardTransferExecutor.shutdownNow();
+        }
+    }
+
+    private static int backup(CommandLine commandLine, ExecutorService shardTransferExecutor, PrintStream out) throws IOException
+    {
+        Path worldPath = Path.of(commandLine.requirePositional(0, "world directory")).toAbsolutePath().normalize();
+        if (!Files.isDirectory(worldPath))
+            throw new IOException(String.format("'%s' isn't a directory!", worldPath));
+
+        String worldName = commandLine.getOption("--name", worldPath.getFileName().toString());
+        BackupTier tier = commandLine.getTier();
+        String entryCacheDirectory = commandLine.getOption("--entry-cache", null);
+
+        BackupEngineSettings engineSettings = new BackupEngineSettings(commandLine.getArchiveFormat(), commandLine.hasFlag("--encrypt"),
+                commandLine.hasFlag("--sharded"), commandLine.hasFlag("--solid"), entryCacheDirectory != null ? Path.of(entryCacheDirectory) : null,
+                commandLine.getIntOption("--keep", DEFAULT_MAX_BACKUP_SNAPSHOTS));
+
+        List<BackupPathRule> backupPathRules = Lists.newArrayList();
+        commandLine.getOptions("--exclude").forEach(pattern -> backupPathRules.add(BackupPathRule.exclude(pattern)));
+
+        // Like the mod's own defaults, region files are transcoded whenever the backup is a block archive
+        backupPathRules.add(BackupPathRule.compress("**/*.mca", BackupCodec.REGION, 3));
+
+        BackupPathPolicy backupPathPolicy = BackupPathPolicy.forWorld(backupPathRules, Map.of(), worldName);
+        BackupEngine backupEngine = createBackupEngine(commandLine, "--to", shardTransferExecutor, engineSettings);
+
+        long uploadedBytes = backupEngine.backupWorld(worldName, tier, worldPath, Instant.now().toString(), backupPathPolicy, new BackupMeasurement());
+
+        out.printf("Backed up the %s tier of world '%s' (%d KB stored)%n", tier.name().toLowerCase(Locale.ROOT), worldName, uploadedBytes / 1024L);
+
+        return EXIT_SUCCESS;
+    }
+
+    private static int restore(CommandLine commandLine, ExecutorService shardTransferExecutor, PrintStream out) throws IOException
+    {
+        String worldName = commandLine.requirePositional(0, "world name");
+        Path targetPath = Path.of(commandLine.requireOption("--to"));
+        String snapshot = commandLine.getOption("--snapshot", null);
+
+        Instant snapshotTime;
+
+        try
+        {
+            snapshotTime = snapshot != null ? Instant.parse(snapshot) : null;
+        }
+        catch (DateTimeParseException exception)
+        {
+            throw new IllegalArgumentException(String.format("'%s' isn't an ISO-8601 instant, such as 2026-01-01T12:00:00Z", snapshot));
+        }
+
+        BackupEngine backupEngine = createBackupEngine(commandLine, "--from", shardTransferExecutor, createReadOnlySettings());
+        backupEngine.restoreWorld(worldName, commandLine.getTier(), snapshotTime, targetPath);
+
+        out.printf("Restored world '%s' to '%s'%n", worldName, targetPath.toAbsolutePath());
+
+        return EXIT_SUCCESS;
+    }
+
+    private static int list(CommandLine commandLine, ExecutorService shardTransferExecutor, PrintStream out) throws IOException
+    {
+        BackupEngine backupEngine = createBackupEngine(commandLine, "--from", shardTransferExecutor, createReadOnlySettings());
+
+        if (commandLine.positionals().isEmpty())
+        {
+            for (String worldName : backupEngine.listWorlds())
+                out.println(worldName);
+        }
+        else
+        {
+            for (Instant snapshotTime : backupEngine.listWorldSnapshots(commandLine.requirePositional(0, "world name"), commandLine.getTier()))
+                out.println(snapshotTime);
+        }
+
+        return EXIT_SUCCESS;
+    }
+
+    private static int verify(CommandLine commandLine, ExecutorService shardTransferExecutor, PrintStream out) throws IOException
+    {
+        BackupEngine backupEngine = createBackupEngine(commandLine, "--from", shardTransferExecutor, createReadOnlySettings());
+        List<BackupVerificationResult> verificationResults = backupEngine.verifyBackups();
+
+        for (BackupVerificationResult verificationResult : verificationResults)
+            out.printf("%-12s %s: %s%n", verificationResult.status(), verificationResult.name(), verificationResult.message());
+
+        // Scripts rely on the exit code to tell whether anything needs their attention
+        boolean hasCorruptBackups = verificationResults.stream()
+                .anyMatch(verificationResult -> verificationResult.status() == BackupVerificationResult.Status.CORRUPT);
+
+        return hasCorruptBackups ? EXIT_FAILURE : EXIT_SUCCESS;
+    }
+
+    private static int prune(CommandLine commandLine, ExecutorService shardTransferExecutor, PrintStream out) throws IOException
+    {
+        String worldName = commandLine.requirePositional(0, "world name");
+        BackupTier tier = commandLine.getTier();
+        int maxBackupSnapshots = commandLine.getIntOption("--keep", -1);
+
+        if (maxBackupSnapshots < 0)
+            throw new IllegalArgumentException("prune requires --keep <snapshots>");
+
+        BackupEngineSettings engineSettings = new BackupEngineSettings(BackupArchiveFormat.ZIP, false, false, false, null, maxBackupSnapshots);
+        BackupEngine backupEngine = createBackupEngine(commandLine, "--from", shardTransferExecutor, engineSettings);
+
+        int snapshotCount = backupEngine.listWorldSnapshots(worldName, tier).size();
+
+        backupEngine.pruneSnapshots(worldName, tier);
+        backupEngine.deleteUnreferencedShards(worldName, tier);
+
+        out.printf("Deleted %d snapshots of world '%s'%n", Math.max(0, snapshotCount - maxBackupSnapshots), worldName);
+
+        return EXIT_SUCCESS;
+    }
+
+    private static BackupEngine createBackupEngine(CommandLine commandLine, String storageOption, ExecutorService shardTransferExecutor,
+                                                   BackupEngineSettings engineSettings) throws IOException
+    {
+        LocalDirectoryProvider storageProvider = new LocalDirectoryProvider(Path.of(commandLine.requireOption(storageOption)));
+        BackupKeyManager backupKeyManager = new BackupKeyManager(Path.of(commandLine.getOption("--keys", getDefaultKeysDirectory().toString())));
+        PooledFileIO pooledFileIO = new PooledFileIO(new BufferPool(IO_BUFFER_SIZE, IO_MEMORY_BUDGET_BYTES, false));
+
+        return new BackupEngine(storageProvider, backupKeyManager, pooledFileIO, shardTransferExecutor, engineSettings);
+    }
+
+    private static BackupEngineSettings createReadOnlySettings()
+    {
+        // Restoring, listing and verifying never write a backup, so how one would be written doesn't matter
+        return new BackupEngineSettings(BackupArchiveFormat.ZIP, false, false, false, null, DEFAULT_MAX_BACKUP_SNAPSHOTS);
+    }
+
+    private static Path getDefaultKeysDirectory()
+    {
+        return Path.of(System.getProperty("user.home"), ".worldback-machine", "keys");
+    }
+
+    /**
+     * The parsed arguments of the tool.
+     *
+     * @param command     The command to run, or null if none was given
+     * @param positionals The arguments which aren't options, in order
+     * @param options     The values of each option that was given, in order, with flags having no values
+     */
+    private record CommandLine(@Nullable String command, List<String> positionals, Map<String, List<String>> options)
+    {
+        static CommandLine parse(String[] args)
+        {
+            String command = null;
+            List<String> positionals = Lists.newArrayList();
+            Map<String, List<String>> options = Maps.newHashMap();
+
+            for (int i = 0; i < args.length; i++)
+            {
+                String argument = args[i];
+
+                if (argument.startsWith("--"))
+                {
+                    List<String> optionValues = options.computeIfAbsent(argument, ignored -> Lists.newArrayList());
+
+                    if (VALUE_OPTIONS.contains(argument))
+                    {
+                        if (i + 1 >= args.length)
+                            throw new IllegalArgumentException(String.format("%s requires a value", argument));
+
+                        optionValues.add(args[++i]);
+                    }
+                }
+                else if (command == null)
+                {
+                    command = argument;
+                }
+                else
+                {
+                    positionals.add(argument);
+                }
+            }
+
+            return new CommandLine(command, positionals, options);
+        }
+
+        String requirePositional(int index, String description)
+        {
+            if (index >= this.positionals.size())
+                throw new IllegalArgumentException(String.format("%s requires a %s", this.command, description));
+
+            return this.positionals.get(index);
+        }
+
+        String requireOption(String option)
+        {
+            String value = this.getOption(option, null);
+            if (value == null)
+                throw new IllegalArgumentException(String.format("%s requires %s", this.command, option));
+
+            return value;
+        }
+
+        @Nullable String getOption(String option, @Nullable String defaultValue)
+        {
+            List<String> values = this.options.get(option);
+
+            return values != null && !values.isEmpty() ? values.getLast() : defaultValue;
+        }
+
+        List<String> getOptions(String option)
+        {
+            return this.options.getOrDefault(option, List.of());
+        }
+
+        int getIntOption(String option, int defaultValue)
+        {
+            String value = this.getOption(option, null);
+
+            try
+            {
+                return value != null ? Integer.parseInt(value) : defaultValue;
+            }
+            catch (NumberFormatException exception)
+            {
+                throw new IllegalArgumentException(String.format("%s requires a number, but was given '%s'", option, value));
+            }
+        }
+
+        boolean hasFlag(String flag)
+        {
+            return this.options.containsKey(flag);
+        }
+
+        BackupTier getTier()
+        {
+            String tier = this.getOption("--tier", BackupTier.FULL.name());
+
+            try
+            {
+                return BackupTier.valueOf(tier.toUpperCase(Locale.ROOT));
+            }
+            catch (IllegalArgumentException exception)
+            {
+                throw new IllegalArgumentException(String.format("Unknown tier '%s'", tier));
+            }
+        }
+
+        BackupArchiveFormat getArchiveFormat()
+        {
+            String archiveFormat = this.getOption("--format", BackupArchiveFormat.ZIP.name());
+
+            try
+            {
+                return BackupArchiveFormat.valueOf(archiveFormat.toUpperCase(Locale.ROOT));
+            }
+            catch (IllegalArgumentException exception)
+            {
+                throw new IllegalArgumentException(String.format("Unknown archive format '%s'", archiveFormat));
+            }
+        }
+    }
+}
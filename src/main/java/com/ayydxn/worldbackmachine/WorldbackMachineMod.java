@@ -3,10 +3,12 @@ package com.ayydxn.worldbackmachine;
 import com.ayydxn.worldbackmachine.api.WorldbackMachineApi;
 import com.ayydxn.worldbackmachine.cloud.AutomaticBackupScheduler;
 import com.ayydxn.worldbackmachine.cloud.CloudStorageManager;
+import com.ayydxn.worldbackmachine.command.WorldbackMachineCommands;
 import com.ayydxn.worldbackmachine.event.ServerLifecycleEventHandler;
 import com.ayydxn.worldbackmachine.options.WorldbackMachineGameOptions;
 import com.google.common.collect.Maps;
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
 import net.fabricmc.loader.api.FabricLoader;
 import net.fabricmc.loader.api.entrypoint.EntrypointContainer;
@@ -15,6 +17,7 @@ import org.apache.logging.log4j.core.Logger;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The main mod class for Worldback Machine.
@@ -39,6 +42,8 @@ public class WorldbackMachineMod implements ModInitializer
     {
         INSTANCE = this;
 
+        long startTimeNanos = System.nanoTime();
+
         String modVersion = FabricLoader.getInstance().getModContainer(WorldbackMachineMod.MOD_ID).orElseThrow()
                 .getMetadata().getVersion().getFriendlyString();
 
@@ -55,13 +60,11 @@ public class WorldbackMachineMod implements ModInitializer
         WorldbackMachineGameOptions.HANDLER.load();
 
         // Lock the register and prevent further registration of storage providers
-        // and select the storage provider to use based on the config
+        // and select the storage provider to use based on the config.
+        // The provider isn't created or authenticated until it's first used, or the server has started and it's warmed up in the background
         this.cloudStorageManager.lockRegistry();
         this.cloudStorageManager.selectStorageProvider();
 
-        // Attempt to automatically authenticate with the selected cloud storage provider's API
-        this.cloudStorageManager.attemptAutoAuthentication();
-
         // Initialize the automatic backup scheduler
         this.automaticBackupScheduler = new AutomaticBackupScheduler(this.cloudStorageManager);
 
@@ -70,6 +73,11 @@ public class WorldbackMachineMod implements ModInitializer
 
         ServerLifecycleEvents.SERVER_STARTED.register(serverLifecycleEventHandler);
         ServerLifecycleEvents.SERVER_STOPPING.register(serverLifecycleEventHandler);
+
+        CommandRegistrationCallback.EVENT.register(WorldbackMachineCommands::register);
+
+        LOGGER.info("Initialized Worldback Machine in {} ms. Setting up the cloud storage provider was deferred until it's needed",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTimeNanos));
     }
 
     private void registerCustomCloudStorageProviders()
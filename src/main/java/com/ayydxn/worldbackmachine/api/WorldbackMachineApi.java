@@ -16,7 +16,12 @@ import com.ayydxn.worldbackmachine.cloud.CloudStorageProviderRegistry;
  *
  *     @Override
  *     public void registerCloudStorageProviders(CloudStorageProviderRegistry registry) {
- *         registry.register("mycloud", new MyCloudStorageProvider(), "example");
+ *         // Factories aren't called until the provider is first used, which keeps its classes from loading while the game starts
+ *         registry.register("mycloud", "My Cloud", MyCloudStorageProvider::new, "example");
+ *
+ *         // Declaring a provider's capabilities lets Worldback Machine use its fast paths, such as copying backups on the provider's end
+ *         registry.register("fastcloud", "Fast Cloud", EnumSet.of(CloudStorageCapability.SERVER_SIDE_COPY, CloudStorageCapability.RANGE_READS),
+ *                 FastCloudStorageProvider::new, "example");
  *         registry.register("anothercloud", new AnotherProvider(), "example");
  *     }
  * }
@@ -0,0 +1,65 @@
+package com.ayydxn.worldbackmachine.backup;
+
+import org.jspecify.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A backup waiting in the {@link BackupJobJournal upload queue} to be uploaded to cloud storage.
+ * <p>
+ * Jobs are stored on disk as JSON, so every field is a plain value.
+ *
+ * @param id                 A unique identifier for the job, also used as the name of its journal file
+ * @param worldName          The name of the world the backup is of
+ * @param tier               The tier of the world's data the backup contains. Jobs queued before tiers existed don't have one.
+ * @param stagingPath        The directory containing the {@link WorldSnapshot snapshot} of the world to upload
+ * @param createdAt          When the snapshot was taken, in ISO-8601 format
+ * @param attempts           How many times uploading the backup has failed so far
+ * @param serverThreadMillis How long the server thread was held up taking the snapshot, in milliseconds. Jobs queued before this was recorded have 0.
+ * @param saveOffMillis      How long saving was disabled while taking the snapshot, in milliseconds. Jobs queued before this was recorded have 0.
+ *
+ * @author Ayydxn
+ */
+public record BackupJob(String id, String worldName, @Nullable BackupTier tier, String stagingPath, String createdAt, int attempts,
+                        long serverThreadMillis, long saveOffMillis)
+{
+    /**
+     * Creates a new job for uploading a snapshot of a world.
+     *
+     * @param worldSnapshot The snapshot to upload
+     * @return The created job
+     */
+    public static BackupJob of(WorldSnapshot worldSnapshot)
+    {
+        return new BackupJob(UUID.randomUUID().toString(), worldSnapshot.worldName(), worldSnapshot.tier(), worldSnapshot.stagingPath().toString(),
+                worldSnapshot.createdAt().toString(), 0, worldSnapshot.serverThreadMillis(), worldSnapshot.saveOffMillis());
+    }
+
+    public BackupTier getTier()
+    {
+        return this.tier != null ? this.tier : BackupTier.FULL;
+    }
+
+    public Path getStagingPath()
+    {
+        return Path.of(this.stagingPath);
+    }
+
+    public Instant getCreatedAt()
+    {
+        return Instant.parse(this.createdAt);
+    }
+
+    /**
+     * Returns a copy of this job which has failed one more time.
+     *
+     * @return A copy of this job with its attempts incremented
+     */
+    public BackupJob withFailedAttempt()
+    {
+        return new BackupJob(this.id, this.worldName, this.tier, this.stagingPath, this.createdAt, this.attempts + 1, this.serverThreadMillis,
+                this.saveOffMillis);
+    }
+}
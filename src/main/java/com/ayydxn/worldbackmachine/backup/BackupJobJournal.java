@@ -0,0 +1,133 @@
+package com.ayydxn.worldbackmachine.backup;
+
+import com.ayydxn.worldbackmachine.WorldbackMachineMod;
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A crash-safe journal of the backups which are waiting to be uploaded.
+ * <p>
+ * Every job is stored as its own JSON file, which is written to a temporary file, flushed to disk and then atomically moved into place,
+ * so a job is either fully recorded or not recorded at all, however abruptly the process is killed.
+ * A job's file is only deleted once its backup has been uploaded, so anything left in the journal on the next start is resumed.
+ *
+ * @author Ayydxn
+ * @see BackupJob
+ */
+public class BackupJobJournal
+{
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final String JOB_EXTENSION = ".json";
+
+    private final Path journalDirectory;
+
+    public BackupJobJournal(Path journalDirectory)
+    {
+        this.journalDirectory = journalDirectory;
+    }
+
+    /**
+     * Records a job in the journal, replacing any previous version of it.
+     *
+     * @param backupJob The job to record
+     * @throws IOException If writing the job's file fails
+     */
+    public synchronized void write(BackupJob backupJob) throws IOException
+    {
+        Files.createDirectories(this.journalDirectory);
+
+        Path jobPath = this.getJobPath(backupJob.id());
+        Path temporaryJobPath = Files.createTempFile(this.journalDirectory, backupJob.id(), ".tmp");
+
+        try (FileChannel fileChannel = FileChannel.open(temporaryJobPath, StandardOpenOption.WRITE))
+        {
+            ByteBuffer jobBytes = StandardCharsets.UTF_8.encode(GSON.toJson(backupJob));
+
+            while (jobBytes.hasRemaining())
+                fileChannel.write(jobBytes);
+
+            fileChannel.force(true);
+        }
+
+        Files.move(temporaryJobPath, jobPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Removes a job from the journal once it has completed.
+     *
+     * @param backupJob The job to remove
+     * @throws IOException If deleting the job's file fails
+     */
+    public synchronized void remove(BackupJob backupJob) throws IOException
+    {
+        Files.deleteIfExists(this.getJobPath(backupJob.id()));
+    }
+
+    /**
+     * Reads every job in the journal, oldest first.
+     * <p>
+     * Files which cannot be read are skipped, and temporary files left behind by interrupted writes are deleted.
+     *
+     * @return The jobs in the journal
+     */
+    public synchronized List<BackupJob> readPendingJobs()
+    {
+        List<BackupJob> backupJobs = Lists.newArrayList();
+
+        if (Files.notExists(this.journalDirectory))
+            return backupJobs;
+
+        try (Stream<Path> journalStream = Files.list(this.journalDirectory))
+        {
+            for (Path jobPath : journalStream.toList())
+            {
+                // Leftovers of writes which were interrupted before they could be moved into place
+                if (!jobPath.getFileName().toString().endsWith(JOB_EXTENSION))
+                {
+                    Files.deleteIfExists(jobPath);
+                    continue;
+                }
+
+                try (Reader jobReader = Files.newBufferedReader(jobPath))
+                {
+                    BackupJob backupJob = GSON.fromJson(jobReader, BackupJob.class);
+
+                    if (backupJob != null)
+                        backupJobs.add(backupJob);
+                }
+                catch (IOException | JsonParseException exception)
+                {
+                    WorldbackMachineMod.LOGGER.warn("Skipping unreadable backup job '{}'", jobPath, exception);
+                }
+            }
+        }
+        catch (IOException exception)
+        {
+            WorldbackMachineMod.LOGGER.error("Failed to read the backup job journal!", exception);
+        }
+
+        backupJobs.sort(Comparator.comparing(BackupJob::getCreatedAt));
+
+        return backupJobs;
+    }
+
+    private Path getJobPath(String id)
+    {
+        return this.journalDirectory.resolve(id + JOB_EXTENSION);
+    }
+}
@@ -0,0 +1,30 @@
+package com.ayydxn.worldbackmachine.backup;
+
+/**
+ * How a {@link WorldSnapshotter} brings the world on disk up to date before copying it.
+ *
+ * @author Ayydxn
+ */
+public enum SnapshotMode
+{
+    /**
+     * Every world is saved and its chunk storage flushed to disk before it's copied, like {@code /save-all flush}.
+     * The server thread waits for every dirty chunk to be written, which can be a noticeable lag spike on busy servers.
+     * <p>
+     * This is the only mode whose backups have all of the world's data as of when they were taken, which is why it's the default,
+     * and why the backup taken as the server stops always uses it.
+     */
+    FLUSH,
+
+    /**
+     * Loaded chunks with unsaved changes are captured straight from memory and merged into the copy of the world's region files,
+     * so nothing is saved at all. The server thread only spends as long as it takes to capture those chunks, rather than to write them.
+     * <p>
+     * Only chunks' blocks, block entities and heightmaps are captured. Everything else is backed up as it was when the server last saved,
+     * which it does every few minutes on its own. That's the entities in {@code entities/}, the points of interest in {@code poi/},
+     * {@code level.dat} and the saved data in {@code data/}, such as maps, raids and scoreboards. Those can be a few minutes older than the
+     * terrain they belong to, so for example an item dropped since the last save is missing, and an entity that moved between chunks may be
+     * missing or doubled.
+     */
+    MEMORY
+}
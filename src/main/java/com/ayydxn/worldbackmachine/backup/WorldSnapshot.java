@@ -0,0 +1,26 @@
+package com.ayydxn.worldbackmachine.backup;
+
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * A consistent copy of a world's directory, taken while the server had saving disabled.
+ * <p>
+ * Backups are compressed and uploaded from a snapshot rather than the live world, so the server is free to keep writing
+ * to its region files while that happens.
+ *
+ * @param worldName    The name of the world the snapshot was taken of
+ * @param tier         The tier of the world's data the snapshot contains
+ * @param stagingPath  The directory the world was copied to
+ * @param createdAt    When the snapshot was taken
+ * @param fileCount    The number of files that were copied
+ * @param sizeBytes    The total size of the copied files in bytes
+ * @param saveOffMillis How long saving was disabled on the server while the snapshot was taken, in milliseconds
+ * @param serverThreadMillis How long the server thread was held up saving or capturing the world before it was copied, in milliseconds
+ *
+ * @author Ayydxn
+ */
+public record WorldSnapshot(String worldName, BackupTier tier, Path stagingPath, Instant createdAt, int fileCount, long sizeBytes, long saveOffMillis,
+                            long serverThreadMillis)
+{
+}
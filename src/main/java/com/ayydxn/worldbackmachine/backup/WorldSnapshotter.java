@@ -0,0 +1,396 @@
+package com.ayydxn.worldbackmachine.backup;
+
+import com.ayydxn.worldbackmachine.WorldbackMachineMod;
+import com.ayydxn.worldbackmachine.backup.capture.LoadedChunkCapture;
+import com.ayydxn.worldbackmachine.backup.policy.BackupPathPolicy;
+import com.ayydxn.worldbackmachine.utils.WorldbackMachineConstants;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Util;
+import net.minecraft.util.WorldSavePath;
+import org.apache.commons.io.FileUtils;
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Takes consistent {@link WorldSnapshot snapshots} of a running server's world.
+ * <p>
+ * Taking a snapshot happens in two phases:
+ * <ol>
+ *     <li>On the server thread, every world is saved and its chunk storage flushed to disk, then saving is disabled (like {@code /save-off}).</li>
+ *     <li>The world directory is copied into a staging directory by a pool of copier threads while the server keeps ticking.
+ *     Once the copy finishes, saving is restored to how it was before.</li>
+ * </ol>
+ * In {@link SnapshotMode#MEMORY memory mode}, nothing is saved in the first phase. The loaded chunks with unsaved changes are
+ * {@link LoadedChunkCapture captured} instead, and merged into the copies of their region files once those have been copied.
+ * The rest of the world's data is copied as the server last saved it.
+ * Files are copied rather than hard-linked, as the server rewrites region files in place and a hard link would see those writes.
+ * <p>
+ * Snapshots of the {@link BackupTier#PLAYERS players tier} skip all of this and only save the players' data before copying it,
+ * as the server replaces those files atomically and they're small enough to copy in an instant.
+ * <p>
+ * The time saving spends disabled is measured for every snapshot and only covers the copy, so it scales with the
+ * world's size on disk rather than how long compressing and uploading it takes.
+ *
+ * @author Ayydxn
+ */
+public class WorldSnapshotter
+{
+    // The server holds a lock on this file for as long as the world is open, so it can't (and needn't) be copied
+    private static final String SESSION_LOCK_FILE_NAME = "session.lock";
+
+    private static final int MAX_VERIFIED_COPY_ATTEMPTS = 3;
+
+    private final ExecutorService copierExecutor;
+
+    public WorldSnapshotter()
+    {
+        int copierThreads = Math.clamp(Runtime.getRuntime().availableProcessors() / 2, 1, 4);
+        AtomicInteger copierThreadCount = new AtomicInteger();
+
+        this.copierExecutor = Executors.newFixedThreadPool(copierThreads, runnable ->
+        {
+            Thread copierThread = new Thread(runnable, "WorldbackMachine-SnapshotCopier-" + copierThreadCount.incrementAndGet());
+            copierThread.setDaemon(true);
+
+            return copierThread;
+        });
+    }
+
+    /**
+     * Takes a snapshot of the server's world.
+     * <p>
+     * This must be called on the server thread. It returns once the world has been flushed and saving has been disabled,
+     * with the copy into the staging directory continuing in the background.
+     *
+     * Files excluded by the world's {@link BackupPathPolicy} are left out of the snapshot entirely,
+     * and files the policy asks to verify are read back once copied.
+     *
+     * @param server           The server whose world to take a snapshot of
+     * @param worldName        The name of the world
+     * @param tier             The tier of the world's data to take a snapshot of
+     * @param backupPathPolicy The policy deciding which files are copied
+     * @param snapshotMode     How the world on disk is brought up to date before it's copied, which only matters for tiers of the full world
+     * @throws IOException If the staging directory couldn't be created
+     * @return A future which completes with the snapshot once the world has been copied
+     */
+    public CompletableFuture<WorldSnapshot> takeSnapshot(MinecraftServer server, String worldName, BackupTier tier, BackupPathPolicy backupPathPolicy,
+                                                         SnapshotMode snapshotMode) throws IOException
+    {
+        Path worldPath = server.getSavePath(WorldSavePath.ROOT).toAbsolutePath().normalize();
+        Instant createdAt = Instant.now();
+        Path stagingPath = Files.createDirectories(WorldbackMachineConstants.STAGING_DIRECTORY)
+                .resolve(String.format("%s-%s-%d", worldName.replaceAll("[^A-Za-z0-9._-]", "_"), tier.name().toLowerCase(), createdAt.toEpochMilli()))
+                .toAbsolutePath()
+                .normalize();
+
+        long flushStartTime = System.nanoTime();
+        Map<ServerWorld, Boolean> previousSavingDisabled = Maps.newHashMap();
+        LoadedChunkCapture loadedChunkCapture = null;
+
+        if (tier.isFullWorld())
+        {
+            if (snapshotMode == SnapshotMode.MEMORY)
+            {
+                server.getPlayerManager().saveAllPlayerData();
+
+                loadedChunkCapture = LoadedChunkCapture.capture(server, worldPath);
+            }
+            else
+            {
+                // Write everything the server has in memory out to disk, waiting for its chunk storage to finish
+                server.saveAll(true, true, true);
+            }
+
+            for (ServerWorld world : server.getWorlds())
+            {
+                previousSavingDisabled.put(world, world.savingDisabled);
+                world.savingDisabled = true;
+            }
+        }
+        else
+        {
+            server.getPlayerManager().saveAllPlayerData();
+        }
+
+        long saveOffStartTime = System.nanoTime();
+
+        if (loadedChunkCapture != null)
+        {
+            WorldbackMachineMod.LOGGER.info("Captured {} unsaved chunks of world '{}' in {} ms. Copying it for its backup...",
+                    loadedChunkCapture.getCapturedChunkCount(), worldName, (saveOffStartTime - flushStartTime) / 1_000_000L);
+        }
+        else
+        {
+            WorldbackMachineMod.LOGGER.info("Flushed the {} tier of world '{}' to disk in {} ms. Copying it for its backup...", tier.name().toLowerCase(),
+                    worldName, (saveOffStartTime - flushStartTime) / 1_000_000L);
+        }
+
+        LoadedChunkCapture capturedChunks = loadedChunkCapture;
+        CompletableFuture<Void> pendingWrites = capturedChunks != null ? capturedChunks.getPendingWrites() : CompletableFuture.completedFuture(null);
+
+        return pendingWrites.thenApplyAsync(ignored -> this.listWorldFiles(worldPath, tier, backupPathPolicy), Util.getIoWorkerExecutor())
+                .thenCompose(worldFiles -> this.copyWorldFiles(worldPath, stagingPath, worldFiles, backupPathPolicy))
+                .thenCompose(copyResult -> this.mergeCapturedChunks(stagingPath, capturedChunks, backupPathPolicy, copyResult))
+                .handle((copyResult, throwable) ->
+                {
+                    this.restoreSaving(server, previousSavingDisabled);
+
+                    long saveOffMillis = tier.isFullWorld() ? (System.nanoTime() - saveOffStartTime) / 1_000_000L : 0L;
+
+                    if (throwable != null)
+                    {
+                        this.deleteSnapshot(stagingPath);
+
+                        throw new IllegalStateException(String.format("Failed to take a snapshot of world '%s'! (Saving was disabled for %d ms)",
+                                worldName, saveOffMillis), throwable);
+                    }
+
+                    WorldSnapshot worldSnapshot = new WorldSnapshot(worldName, tier, stagingPath, createdAt, copyResult.fileCount(),
+                            copyResult.sizeBytes(), saveOffMillis, (saveOffStartTime - flushStartTime) / 1_000_000L);
+
+                    WorldbackMachineMod.LOGGER.info("Took a snapshot of world '{}' ({} files, {} MB). Saving was disabled for {} ms", worldName,
+                            worldSnapshot.fileCount(), worldSnapshot.sizeBytes() / (1024L * 1024L), saveOffMillis);
+
+                    backupPathPolicy.logReport(worldName);
+
+                    return worldSnapshot;
+                });
+    }
+
+    /**
+     * Deletes a snapshot's staging directory once it's no longer needed.
+     *
+     * @param stagingPath The staging directory to delete
+     */
+    public void deleteSnapshot(Path stagingPath)
+    {
+        try
+        {
+            FileUtils.deleteDirectory(stagingPath.toFile());
+        }
+        catch (IOException exception)
+        {
+            WorldbackMachineMod.LOGGER.warn("Failed to delete snapshot staging directory '{}'", stagingPath, exception);
+        }
+    }
+
+    /**
+     * Deletes every snapshot in the staging directory that isn't in use, such as ones whose copy was interrupted by a crash.
+     *
+     * @param snapshotsInUse The staging directories of snapshots which must be kept
+     */
+    public void deleteUnusedSnapshots(Set<Path> snapshotsInUse)
+    {
+        if (Files.notExists(WorldbackMachineConstants.STAGING_DIRECTORY))
+            return;
+
+        try (Stream<Path> stagingStream = Files.list(WorldbackMachineConstants.STAGING_DIRECTORY))
+        {
+            stagingStream.filter(stagingPath -> !snapshotsInUse.contains(stagingPath.toAbsolutePath().normalize()))
+                    .forEach(stagingPath ->
+                    {
+                        WorldbackMachineMod.LOGGER.info("Deleting unused snapshot '{}'", stagingPath.getFileName());
+
+                        this.deleteSnapshot(stagingPath);
+                    });
+        }
+        catch (IOException exception)
+        {
+            WorldbackMachineMod.LOGGER.warn("Failed to clean up the snapshot staging directory", exception);
+        }
+    }
+
+    private List<Path> listWorldFiles(Path worldPath, BackupTier tier, BackupPathPolicy backupPathPolicy)
+    {
+        List<Path> worldFiles = Lists.newArrayList();
+
+        try
+        {
+            // Only walk the parts of the world that belong to the tier, so lightweight tiers never touch the region directories
+            for (String rootPath : tier.getRootPaths())
+            {
+                Path tierRootPath = worldPath.resolve(rootPath);
+                if (Files.notExists(tierRootPath))
+                    continue;
+
+                this.walkWorldFiles(worldPath, tierRootPath, backupPathPolicy, worldFiles);
+            }
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException(exception);
+        }
+
+        return worldFiles;
+    }
+
+    private void walkWorldFiles(Path worldPath, Path rootPath, BackupPathPolicy backupPathPolicy, List<Path> worldFiles) throws IOException
+    {
+        Files.walkFileTree(rootPath, new SimpleFileVisitor<>()
+        {
+            @Override
+            public @NonNull FileVisitResult visitFile(@NonNull Path file, @NonNull BasicFileAttributes attributes)
+            {
+                if (!attributes.isRegularFile() || file.getFileName().toString().equals(SESSION_LOCK_FILE_NAME))
+                    return FileVisitResult.CONTINUE;
+
+                int excludingRule = backupPathPolicy.getExcludingRule(getRelativePath(worldPath, file));
+
+                if (excludingRule != -1)
+                {
+                    backupPathPolicy.recordExcluded(excludingRule, attributes.size());
+                }
+                else
+                {
+                    worldFiles.add(file);
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private CompletableFuture<CopyResult> copyWorldFiles(Path worldPath, Path stagingPath, List<Path> worldFiles, BackupPathPolicy backupPathPolicy)
+    {
+        List<CompletableFuture<Long>> fileCopies = worldFiles.stream()
+                .map(worldFile -> CompletableFuture.supplyAsync(() ->
+                {
+                    String relativePath = getRelativePath(worldPath, worldFile);
+
+                    return this.copyWorldFile(worldFile, stagingPath.resolve(relativePath), backupPathPolicy.getSettings(relativePath).verify());
+                }, this.copierExecutor))
+                .toList();
+
+        return CompletableFuture.allOf(fileCopies.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> new CopyResult(worldFiles.size(), fileCopies.stream()
+                        .mapToLong(CompletableFuture::join)
+                        .sum()));
+    }
+
+    private CompletableFuture<CopyResult> mergeCapturedChunks(Path stagingPath, @Nullable LoadedChunkCapture loadedChunkCapture,
+                                                              BackupPathPolicy backupPathPolicy, CopyResult copyResult)
+    {
+        if (loadedChunkCapture == null)
+            return CompletableFuture.completedFuture(copyResult);
+
+        List<CompletableFuture<CopyResult>> regionMerges = loadedChunkCapture.getRegionPaths().stream()
+                .filter(regionPath -> backupPathPolicy.getExcludingRule(regionPath) == -1)
+                .map(regionPath -> CompletableFuture.supplyAsync(() ->
+                {
+                    try
+                    {
+                        Path stagedRegionPath = stagingPath.resolve(regionPath);
+                        boolean wasCopied = Files.exists(stagedRegionPath);
+                        long copiedSize = wasCopied ? Files.size(stagedRegionPath) : 0L;
+
+                        Files.createDirectories(stagedRegionPath.getParent());
+                        loadedChunkCapture.mergeInto(regionPath, stagedRegionPath);
+
+                        // Regions whose chunks have never been saved before only exist in the snapshot
+                        return new CopyResult(wasCopied ? 0 : 1, Files.size(stagedRegionPath) - copiedSize);
+                    }
+                    catch (IOException exception)
+                    {
+                        throw new UncheckedIOException(exception);
+                    }
+                }, this.copierExecutor))
+                .toList();
+
+        return CompletableFuture.allOf(regionMerges.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> regionMerges.stream()
+                        .map(CompletableFuture::join)
+                        .reduce(copyResult, (result, mergeResult) -> new CopyResult(result.fileCount() + mergeResult.fileCount(),
+                                result.sizeBytes() + mergeResult.sizeBytes())));
+    }
+
+    private long copyWorldFile(Path source, Path destination, boolean verify)
+    {
+        try
+        {
+            Files.createDirectories(destination.getParent());
+
+            for (int attempt = 1; ; attempt++)
+            {
+                // The modification time is kept so the compressed entry cache can tell the file hasn't changed without reading it
+                Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+
+                // A mismatch means the file was written to while it was being copied, so copy it again
+                if (!verify || attempt >= MAX_VERIFIED_COPY_ATTEMPTS || this.getChecksum(source) == this.getChecksum(destination))
+                    break;
+
+                WorldbackMachineMod.LOGGER.warn("'{}' changed while it was being copied into a snapshot. Copying it again...", source.getFileName());
+            }
+
+            return Files.size(destination);
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    private long getChecksum(Path path) throws IOException
+    {
+        CRC32C checksum = new CRC32C();
+
+        try (InputStream inputStream = Files.newInputStream(path))
+        {
+            byte[] buffer = new byte[64 * 1024];
+            int bytesRead;
+
+            while ((bytesRead = inputStream.read(buffer)) != -1)
+                checksum.update(buffer, 0, bytesRead);
+        }
+
+        return checksum.getValue();
+    }
+
+    private static String getRelativePath(Path worldPath, Path path)
+    {
+        // Backup rules always use forward slashes, regardless of the platform
+        return worldPath.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    private void restoreSaving(MinecraftServer server, Map<ServerWorld, Boolean> previousSavingDisabled)
+    {
+        Runnable restoreSavingTask = () -> previousSavingDisabled.forEach((world, savingDisabled) -> world.savingDisabled = savingDisabled);
+
+        // While the server is shutting down its thread may be waiting on this snapshot, so it can't be handed the task
+        if (server.isRunning())
+        {
+            server.execute(restoreSavingTask);
+        }
+        else
+        {
+            restoreSavingTask.run();
+        }
+    }
+
+    private record CopyResult(int fileCount, long sizeBytes)
+    {
+    }
+}
@@ -0,0 +1,98 @@
+package com.ayydxn.worldbackmachine.backup.bulk;
+
+import com.ayydxn.worldbackmachine.WorldbackMachineMod;
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+/**
+ * Remembers the {@link WorldFingerprint fingerprint} each local world had when it was last backed up, so bulk backups can skip
+ * worlds which haven't changed since.
+ * <p>
+ * Fingerprints are recorded per cloud storage provider, as a world backed up to one provider still has to be backed up to another.
+ * The index is written to a temporary file and atomically moved into place, so it's never left half-written.
+ *
+ * @author Ayydxn
+ */
+public class BulkBackupIndex
+{
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private final Path indexPath;
+
+    // "<provider>/<world directory>" -> Fingerprint hash
+    private final Map<String, String> fingerprintHashes;
+
+    public BulkBackupIndex(Path indexPath)
+    {
+        this.indexPath = indexPath;
+        this.fingerprintHashes = this.read();
+    }
+
+    /**
+     * Checks whether a world has changed since it was last backed up to a provider.
+     *
+     * @param providerName The name of the cloud storage provider
+     * @param localWorld   The world to check
+     * @return True if the world has never been backed up to the provider or its fingerprint differs, false otherwise
+     */
+    public synchronized boolean hasChanged(String providerName, LocalWorld localWorld)
+    {
+        return !localWorld.fingerprint().hash().equals(this.fingerprintHashes.get(this.getKey(providerName, localWorld)));
+    }
+
+    /**
+     * Records that a world has been backed up to a provider, and saves the index.
+     *
+     * @param providerName The name of the cloud storage provider
+     * @param localWorld   The world which was backed up
+     * @throws IOException If saving the index fails
+     */
+    public synchronized void recordBackedUp(String providerName, LocalWorld localWorld) throws IOException
+    {
+        this.fingerprintHashes.put(this.getKey(providerName, localWorld), localWorld.fingerprint().hash());
+
+        Files.createDirectories(this.indexPath.getParent());
+
+        Path temporaryIndexPath = Files.createTempFile(this.indexPath.getParent(), this.indexPath.getFileName().toString(), ".tmp");
+        Files.writeString(temporaryIndexPath, GSON.toJson(this.fingerprintHashes));
+        Files.move(temporaryIndexPath, this.indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Map<String, String> read()
+    {
+        Map<String, String> fingerprintHashes = Maps.newHashMap();
+
+        if (Files.notExists(this.indexPath))
+            return fingerprintHashes;
+
+        try (Reader indexReader = Files.newBufferedReader(this.indexPath))
+        {
+            @Nullable Map<String, String> storedFingerprintHashes = GSON.fromJson(indexReader, new TypeToken<Map<String, String>>() {}.getType());
+
+            if (storedFingerprintHashes != null)
+                fingerprintHashes.putAll(storedFingerprintHashes);
+        }
+        catch (IOException | JsonParseException exception)
+        {
+            WorldbackMachineMod.LOGGER.warn("Failed to read the bulk backup index. Every world will be treated as changed: {}", exception.getMessage());
+        }
+
+        return fingerprintHashes;
+    }
+
+    private String getKey(String providerName, LocalWorld localWorld)
+    {
+        return providerName + "/" + localWorld.directoryName();
+    }
+}
@@ -0,0 +1,125 @@
+package com.ayydxn.worldbackmachine.backup.bulk;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the combined progress of a bulk backup across every world it backs up.
+ * <p>
+ * Worlds are backed up in parallel, so every counter can be updated from any thread.
+ *
+ * @author Ayydxn
+ */
+public class BulkBackupProgress
+{
+    private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+
+    private final int totalWorlds;
+    private final long startTimeNanos;
+
+    private final AtomicInteger backedUpWorlds = new AtomicInteger();
+    private final AtomicInteger skippedWorlds = new AtomicInteger();
+    private final AtomicInteger failedWorlds = new AtomicInteger();
+    private final AtomicLong readBytes = new AtomicLong();
+    private final AtomicLong uploadedBytes = new AtomicLong();
+
+    public BulkBackupProgress(int totalWorlds)
+    {
+        this.totalWorlds = totalWorlds;
+        this.startTimeNanos = System.nanoTime();
+    }
+
+    /**
+     * Records that a world was backed up.
+     *
+     * @param worldSizeBytes  The combined size of the world's files that were read
+     * @param uploadedBytes   The size of the archive that was uploaded, or 0 if the archive was identical to the one already stored
+     */
+    public void recordBackedUp(long worldSizeBytes, long uploadedBytes)
+    {
+        this.readBytes.addAndGet(worldSizeBytes);
+        this.uploadedBytes.addAndGet(uploadedBytes);
+        this.backedUpWorlds.incrementAndGet();
+    }
+
+    /**
+     * Records that a world was skipped because it was in use or hadn't changed.
+     */
+    public void recordSkipped()
+    {
+        this.skippedWorlds.incrementAndGet();
+    }
+
+    /**
+     * Records that backing up a world failed.
+     */
+    public void recordFailed()
+    {
+        this.failedWorlds.incrementAndGet();
+    }
+
+    public int getTotalWorlds()
+    {
+        return this.totalWorlds;
+    }
+
+    public int getCompletedWorlds()
+    {
+        return this.backedUpWorlds.get() + this.skippedWorlds.get() + this.failedWorlds.get();
+    }
+
+    public int getBackedUpWorlds()
+    {
+        return this.backedUpWorlds.get();
+    }
+
+    public int getSkippedWorlds()
+    {
+        return this.skippedWorlds.get();
+    }
+
+    public int getFailedWorlds()
+    {
+        return this.failedWorlds.get();
+    }
+
+    public long getReadBytes()
+    {
+        return this.readBytes.get();
+    }
+
+    public long getUploadedBytes()
+    {
+        return this.uploadedBytes.get();
+    }
+
+    public long getElapsedMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.startTimeNanos);
+    }
+
+    /**
+     * Gets how quickly world data has been backed up so far, measured by how much of it has been read.
+     *
+     * @return The throughput in megabytes per second
+     */
+    public double getThroughputMegabytesPerSecond()
+    {
+        long elapsedMillis = Math.max(1L, this.getElapsedMillis());
+
+        return this.readBytes.get() / BYTES_PER_MEGABYTE / (elapsedMillis / 1000.0);
+    }
+
+    /**
+     * Gets a one-line summary of the progress, for logs and chat messages.
+     *
+     * @return The summary
+     */
+    public String describe()
+    {
+        return String.format("%d/%d worlds (%d backed up, %d skipped, %d failed), %.1f MB read, %.1f MB uploaded, %.1f MB/s",
+                this.getCompletedWorlds(), this.totalWorlds, this.backedUpWorlds.get(), this.skippedWorlds.get(), this.failedWorlds.get(),
+                this.readBytes.get() / BYTES_PER_MEGABYTE, this.uploadedBytes.get() / BYTES_PER_MEGABYTE, this.getThroughputMegabytesPerSecond());
+    }
+}
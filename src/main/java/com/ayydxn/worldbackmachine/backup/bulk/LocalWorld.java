@@ -0,0 +1,16 @@
+package com.ayydxn.worldbackmachine.backup.bulk;
+
+import java.nio.file.Path;
+
+/**
+ * A world saved on this computer which isn't necessarily loaded, found by a {@link LocalWorldScanner}.
+ *
+ * @param directoryName The name of the world's directory inside the saves directory
+ * @param worldName     The name of the world, as shown in the world list
+ * @param worldPath     The path to the world's directory
+ * @param fingerprint   The world's fingerprint at the time it was scanned
+ * @author Ayydxn
+ */
+public record LocalWorld(String directoryName, String worldName, Path worldPath, WorldFingerprint fingerprint)
+{
+}
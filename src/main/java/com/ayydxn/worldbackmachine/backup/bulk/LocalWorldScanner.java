@@ -0,0 +1,181 @@
+package com.ayydxn.worldbackmachine.backup.bulk;
+
+import com.ayydxn.worldbackmachine.WorldbackMachineMod;
+import com.ayydxn.worldbackmachine.backup.policy.BackupPathPolicy;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtSizeTracker;
+import org.jspecify.annotations.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Finds the worlds saved in a saves directory, so they can be backed up without being loaded.
+ *
+ * @author Ayydxn
+ * @see LocalWorld
+ */
+public class LocalWorldScanner
+{
+    private static final String LEVEL_DATA_FILE_NAME = "level.dat";
+    private static final String SESSION_LOCK_FILE_NAME = "session.lock";
+
+    private final Path savesDirectory;
+
+    public LocalWorldScanner(Path savesDirectory)
+    {
+        this.savesDirectory = savesDirectory;
+    }
+
+    /**
+     * Lists the directories in the saves directory which contain a world.
+     *
+     * @return The paths of the world directories, sorted by name
+     * @throws IOException If listing the saves directory fails
+     */
+    public List<Path> findWorldDirectories() throws IOException
+    {
+        if (Files.notExists(this.savesDirectory))
+            return List.of();
+
+        try (Stream<Path> savesDirectoryStream = Files.list(this.savesDirectory))
+        {
+            return savesDirectoryStream.filter(path -> Files.isRegularFile(path.resolve(LEVEL_DATA_FILE_NAME)))
+                    .sorted(Comparator.comparing(path -> path.getFileName().toString()))
+                    .toList();
+        }
+    }
+
+    /**
+     * Scans a world directory, reading the world's name and fingerprinting the files that would be backed up.
+     *
+     * @param worldPath        The path to the world's directory
+     * @param backupPathPolicy The rules deciding which files are backed up
+     * @return The scanned world
+     * @throws IOException If walking the world's directory fails
+     */
+    public LocalWorld scanWorld(Path worldPath, BackupPathPolicy backupPathPolicy) throws IOException
+    {
+        String directoryName = worldPath.getFileName().toString();
+
+        return new LocalWorld(directoryName, this.readWorldName(worldPath), worldPath, this.fingerprint(worldPath, backupPathPolicy));
+    }
+
+    /**
+     * Checks whether a world is currently loaded, either by this game or by another process.
+     * <p>
+     * Minecraft holds a lock on a world's {@code session.lock} file for as long as the world is loaded, so a world whose lock can be
+     * taken isn't being written to. The lock is released again immediately.
+     *
+     * @param worldPath The path to the world's directory
+     * @return True if the world is loaded, false otherwise
+     */
+    public boolean isWorldInUse(Path worldPath)
+    {
+        Path sessionLockPath = worldPath.resolve(SESSION_LOCK_FILE_NAME);
+        if (Files.notExists(sessionLockPath))
+            return false;
+
+        try (FileChannel fileChannel = FileChannel.open(sessionLockPath, StandardOpenOption.WRITE); FileLock fileLock = fileChannel.tryLock())
+        {
+            return fileLock == null;
+        }
+        catch (OverlappingFileLockException exception)
+        {
+            // The lock is already held by this game
+            return true;
+        }
+        catch (IOException exception)
+        {
+            WorldbackMachineMod.LOGGER.warn("Failed to check whether world '{}' is in use. Assuming it is: {}", worldPath.getFileName(),
+                    exception.getMessage());
+
+            return true;
+        }
+    }
+
+    /**
+     * Reads a world's name from its {@code level.dat}, the same name it is backed up under when it's loaded.
+     *
+     * @param worldPath The path to the world's directory
+     * @return The world's name, or the name of its directory if it can't be read
+     */
+    public String readWorldName(Path worldPath)
+    {
+        String directoryName = worldPath.getFileName().toString();
+
+        try
+        {
+            NbtCompound levelData = NbtIo.readCompressed(worldPath.resolve(LEVEL_DATA_FILE_NAME), NbtSizeTracker.ofUnlimitedBytes());
+
+            return levelData.getCompoundOrEmpty("Data").getString("LevelName", directoryName);
+        }
+        catch (IOException exception)
+        {
+            WorldbackMachineMod.LOGGER.warn("Failed to read the name of world '{}'. Using its directory name instead: {}", directoryName,
+                    exception.getMessage());
+
+            return directoryName;
+        }
+    }
+
+    private WorldFingerprint fingerprint(Path worldPath, BackupPathPolicy backupPathPolicy) throws IOException
+    {
+        List<FileEntry> fileEntries = Lists.newArrayList();
+
+        Files.walkFileTree(worldPath, new SimpleFileVisitor<>()
+        {
+            @Override
+            public @NonNull FileVisitResult visitFile(@NonNull Path file, @NonNull BasicFileAttributes attributes)
+            {
+                if (!attributes.isRegularFile() || file.getFileName().toString().equals(SESSION_LOCK_FILE_NAME))
+                    return FileVisitResult.CONTINUE;
+
+                String relativePath = worldPath.relativize(file).toString().replace(File.separatorChar, '/');
+
+                if (backupPathPolicy.getExcludingRule(relativePath) == -1)
+                    fileEntries.add(new FileEntry(relativePath, attributes.size(), attributes.lastModifiedTime().toMillis()));
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        // Hash the files in a fixed order, as the order they're visited in depends on the file system
+        fileEntries.sort(Comparator.comparing(FileEntry::relativePath));
+
+        Hasher hasher = Hashing.sha256().newHasher();
+        long sizeBytes = 0L;
+
+        for (FileEntry fileEntry : fileEntries)
+        {
+            hasher.putString(fileEntry.relativePath(), StandardCharsets.UTF_8)
+                    .putLong(fileEntry.sizeBytes())
+                    .putLong(fileEntry.lastModifiedMillis());
+
+            sizeBytes += fileEntry.sizeBytes();
+        }
+
+        return new WorldFingerprint(hasher.hash().toString(), fileEntries.size(), sizeBytes);
+    }
+
+    private record FileEntry(String relativePath, long sizeBytes, long lastModifiedMillis)
+    {
+    }
+}
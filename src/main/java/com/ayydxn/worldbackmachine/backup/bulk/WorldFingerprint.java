@@ -0,0 +1,16 @@
+package com.ayydxn.worldbackmachine.backup.bulk;
+
+/**
+ * A cheap summary of a world's files, used to tell whether a world has changed since it was last backed up without reading its files.
+ * <p>
+ * The hash covers the path, size and last modified time of every file that would be backed up, so it changes whenever a file is
+ * added, removed or written to.
+ *
+ * @param hash      The hash of the world's file listing
+ * @param fileCount The number of files that would be backed up
+ * @param sizeBytes The combined size of those files in bytes
+ * @author Ayydxn
+ */
+public record WorldFingerprint(String hash, int fileCount, long sizeBytes)
+{
+}
@@ -0,0 +1,153 @@
+package com.ayydxn.worldbackmachine.backup.capture;
+
+import com.ayydxn.worldbackmachine.mixin.ServerChunkLoadingManagerAccessor;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ChunkHolder;
+import net.minecraft.server.world.ServerChunkLoadingManager;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.chunk.SerializedChunk;
+import net.minecraft.world.chunk.WorldChunk;
+import net.minecraft.world.dimension.DimensionType;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The loaded chunks of a server's worlds which have changed since they were last saved, captured straight from memory.
+ * <p>
+ * Capturing a chunk takes a copy of its sections, heightmaps and block entities on the server thread, which is the same copy
+ * the server itself takes before saving a chunk in the background. Turning those copies into NBT, compressing them and merging
+ * them into a copy of the world's region files all happens off the server thread afterward. The server thread therefore only
+ * spends time on chunks with unsaved changes, no matter how large the world is, and nothing has to be written to disk first.
+ * <p>
+ * Only the chunks themselves are captured. The world's entities, points of interest, saved data and {@code level.dat} are stored separately,
+ * and are backed up as the server last saved them. See {@link com.ayydxn.worldbackmachine.backup.SnapshotMode#MEMORY}.
+ *
+ * @author Ayydxn
+ */
+public final class LoadedChunkCapture
+{
+    private static final String REGION_DIRECTORY_NAME = "region";
+
+    // Region file relative to the world's directory -> Index of each chunk within the region -> The chunk
+    private final Map<String, Map<Integer, SerializedChunk>> capturedRegions;
+    private final CompletableFuture<Void> pendingWrites;
+    private final int capturedChunkCount;
+    private final int timestamp;
+
+    private LoadedChunkCapture(Map<String, Map<Integer, SerializedChunk>> capturedRegions, CompletableFuture<Void> pendingWrites, int capturedChunkCount,
+                               int timestamp)
+    {
+        this.capturedRegions = capturedRegions;
+        this.pendingWrites = pendingWrites;
+        this.capturedChunkCount = capturedChunkCount;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Captures every loaded chunk with unsaved changes in all of a server's worlds.
+     * <p>
+     * This must be called on the server thread.
+     *
+     * @param server    The server whose chunks to capture
+     * @param worldPath The path to the server's world directory
+     * @return The captured chunks
+     */
+    public static LoadedChunkCapture capture(MinecraftServer server, Path worldPath)
+    {
+        Map<String, Map<Integer, SerializedChunk>> capturedRegions = Maps.newHashMap();
+        List<CompletableFuture<Void>> pendingWrites = Lists.newArrayList();
+        int capturedChunkCount = 0;
+
+        for (ServerWorld world : server.getWorlds())
+        {
+            ServerChunkLoadingManager chunkLoadingManager = world.getChunkManager().chunkLoadingManager;
+            Path regionDirectory = DimensionType.getSaveDirectory(world.getRegistryKey(), worldPath).resolve(REGION_DIRECTORY_NAME);
+
+            for (ChunkHolder chunkHolder : ((ServerChunkLoadingManagerAccessor) chunkLoadingManager).invokeEntryIterator())
+            {
+                // Chunks that are still generating belong to the worldgen threads, and are generated again if they're missing anyway
+                WorldChunk chunk = chunkHolder.getWorldChunk();
+                if (chunk == null || !chunk.needsSaving())
+                    continue;
+
+                ChunkPos chunkPos = chunk.getPos();
+                String regionPath = getRelativePath(worldPath, regionDirectory.resolve(String.format("r.%d.%d.mca", chunkPos.getRegionX(),
+                        chunkPos.getRegionZ())));
+
+                capturedRegions.computeIfAbsent(regionPath, ignored -> Maps.newHashMap())
+                        .put(chunkPos.getRegionRelativeX() + chunkPos.getRegionRelativeZ() * 32, SerializedChunk.fromChunk(world, chunk));
+
+                capturedChunkCount++;
+            }
+
+            // Chunks the server saved recently may still be waiting to be written, in which case they're missing from the region files too
+            pendingWrites.add(chunkLoadingManager.completeAll(false));
+        }
+
+        return new LoadedChunkCapture(capturedRegions, CompletableFuture.allOf(pendingWrites.toArray(CompletableFuture[]::new)), capturedChunkCount,
+                (int) (System.currentTimeMillis() / 1000L));
+    }
+
+    /**
+     * Returns a future which completes once every chunk the server had saved before the capture has been written to its region file.
+     * The region files mustn't be copied before then.
+     *
+     * @return The future
+     */
+    public CompletableFuture<Void> getPendingWrites()
+    {
+        return this.pendingWrites;
+    }
+
+    /**
+     * Returns the region files with captured chunks, relative to the world's directory.
+     *
+     * @return The region files with captured chunks
+     */
+    public Set<String> getRegionPaths()
+    {
+        return this.capturedRegions.keySet();
+    }
+
+    public int getCapturedChunkCount()
+    {
+        return this.capturedChunkCount;
+    }
+
+    /**
+     * Merges the captured chunks of a region into a copy of its region file, replacing the copies of those chunks that were on disk.
+     *
+     * @param regionPath       The region file, relative to the world's directory
+     * @param stagedRegionPath The copy of the region file to merge the chunks into, which is created if the region was never saved before
+     * @throws IOException If serializing the chunks or rewriting the region file fails
+     */
+    public void mergeInto(String regionPath, Path stagedRegionPath) throws IOException
+    {
+        Map<Integer, SerializedChunk> capturedChunks = this.capturedRegions.getOrDefault(regionPath, Map.of());
+        Map<Integer, byte[]> replacedChunks = Maps.newHashMapWithExpectedSize(capturedChunks.size());
+
+        for (Map.Entry<Integer, SerializedChunk> capturedChunk : capturedChunks.entrySet())
+        {
+            replacedChunks.put(capturedChunk.getKey(), RegionFileMerger.compressChunk(dataOutputStream ->
+                    NbtIo.writeCompound(capturedChunk.getValue().serialize(), dataOutputStream)));
+        }
+
+        RegionFileMerger.merge(stagedRegionPath, replacedChunks, this.timestamp);
+    }
+
+    private static String getRelativePath(Path worldPath, Path path)
+    {
+        // Backup rules always use forward slashes, regardless of the platform
+        return worldPath.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+}
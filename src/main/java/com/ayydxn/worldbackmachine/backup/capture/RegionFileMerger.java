@@ -0,0 +1,203 @@
+package com.ayydxn.worldbackmachine.backup.capture;
+
+import com.ayydxn.worldbackmachine.WorldbackMachineMod;
+import org.jspecify.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Rewrites a copy of a region ({@code .mca}) file so some of its chunks are replaced, leaving the rest of them byte-for-byte as they were.
+ * <p>
+ * A region file holds 32x32 chunks. It starts with a table of where each chunk is stored and a table of when each was last saved,
+ * followed by the chunks themselves, each padded out to a whole number of 4 KiB sectors. Chunks too large for the region file
+ * are stored in an external {@code .mcc} file next to it, which is what the server does too.
+ *
+ * @author Ayydxn
+ */
+final class RegionFileMerger
+{
+    private static final int CHUNKS_PER_REGION = 32 * 32;
+
+    private static final Pattern REGION_FILE_NAME_PATTERN = Pattern.compile("r\\.(-?\\d+)\\.(-?\\d+)\\.mca");
+
+    private static final int SECTOR_SIZE = 4096;
+    private static final int HEADER_SECTORS = 2;
+    private static final int MAX_SECTORS_PER_CHUNK = 255;
+
+    private static final byte EXTERNAL_CHUNK_FLAG = (byte) 0x80;
+    private static final int ZLIB_COMPRESSION_TYPE = 2;
+
+    private RegionFileMerger()
+    {
+    }
+
+    /**
+     * Replaces chunks within a region file, creating it if it doesn't exist yet.
+     *
+     * @param regionPath      The region file to rewrite
+     * @param replacedChunks  The index of each replaced chunk within the region -> Its compression type, followed by its compressed data
+     * @param timestamp       The time the replaced chunks were captured at, in seconds since the epoch
+     * @throws IOException If reading or writing the region file fails
+     */
+    static void merge(Path regionPath, Map<Integer, byte[]> replacedChunks, int timestamp) throws IOException
+    {
+        Matcher regionFileNameMatcher = REGION_FILE_NAME_PATTERN.matcher(regionPath.getFileName().toString());
+        if (!regionFileNameMatcher.matches())
+            throw new IOException(String.format("'%s' isn't a region file!", regionPath.getFileName()));
+
+        int regionX = Integer.parseInt(regionFileNameMatcher.group(1));
+        int regionZ = Integer.parseInt(regionFileNameMatcher.group(2));
+
+        ByteBuffer existingRegion = Files.exists(regionPath) ? ByteBuffer.wrap(Files.readAllBytes(regionPath)) : ByteBuffer.allocate(0);
+        boolean hasHeader = existingRegion.capacity() >= HEADER_SECTORS * SECTOR_SIZE;
+
+        int[] locations = new int[CHUNKS_PER_REGION];
+        int[] timestamps = new int[CHUNKS_PER_REGION];
+
+        Path mergedRegionPath = regionPath.resolveSibling(regionPath.getFileName() + ".merging");
+
+        try (FileChannel regionChannel = FileChannel.open(mergedRegionPath, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            int nextSector = HEADER_SECTORS;
+            regionChannel.position((long) nextSector * SECTOR_SIZE);
+
+            for (int chunkIndex = 0; chunkIndex < CHUNKS_PER_REGION; chunkIndex++)
+            {
+                byte[] replacedChunk = replacedChunks.get(chunkIndex);
+                ByteBuffer chunkData;
+
+                if (replacedChunk != null)
+                {
+                    int chunkX = regionX * 32 + (chunkIndex & 31);
+                    int chunkZ = regionZ * 32 + (chunkIndex >> 5);
+
+                    chunkData = toStoredChunk(regionPath, chunkX, chunkZ, replacedChunk);
+                    timestamps[chunkIndex] = timestamp;
+                }
+                else
+                {
+                    chunkData = hasHeader ? readStoredChunk(existingRegion, chunkIndex, regionPath) : null;
+                    if (chunkData == null)
+                        continue;
+
+                    timestamps[chunkIndex] = existingRegion.getInt(SECTOR_SIZE + chunkIndex * Integer.BYTES);
+                }
+
+                int sectorCount = (chunkData.remaining() + SECTOR_SIZE - 1) / SECTOR_SIZE;
+                locations[chunkIndex] = nextSector << 8 | sectorCount;
+
+                while (chunkData.hasRemaining())
+                    regionChannel.write(chunkData);
+
+                nextSector += sectorCount;
+                regionChannel.position((long) nextSector * SECTOR_SIZE);
+            }
+
+            // Pad the last chunk out to a whole sector, like the server does
+            long regionSize = (long) nextSector * SECTOR_SIZE;
+            if (regionChannel.size() < regionSize)
+                regionChannel.write(ByteBuffer.allocate(1), regionSize - 1);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SECTORS * SECTOR_SIZE);
+            header.asIntBuffer().put(locations).put(timestamps);
+
+            while (header.hasRemaining())
+                regionChannel.write(header, header.position());
+        }
+
+        Files.move(mergedRegionPath, regionPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static ByteBuffer toStoredChunk(Path regionPath, int chunkX, int chunkZ, byte[] chunk) throws IOException
+    {
+        int storedLength = Integer.BYTES + chunk.length;
+
+        if ((storedLength + SECTOR_SIZE - 1) / SECTOR_SIZE <= MAX_SECTORS_PER_CHUNK)
+        {
+            ByteBuffer storedChunk = ByteBuffer.allocate(storedLength);
+            storedChunk.putInt(chunk.length).put(chunk).flip();
+
+            return storedChunk;
+        }
+
+        // The chunk is too large for the region file, so only its compression type is kept in it
+        try (OutputStream externalChunkOutputStream = Files.newOutputStream(regionPath.resolveSibling(String.format("c.%d.%d.mcc", chunkX, chunkZ))))
+        {
+            externalChunkOutputStream.write(chunk, 1, chunk.length - 1);
+        }
+
+        ByteBuffer storedChunk = ByteBuffer.allocate(Integer.BYTES + 1);
+        storedChunk.putInt(1).put((byte) (chunk[0] | EXTERNAL_CHUNK_FLAG)).flip();
+
+        return storedChunk;
+    }
+
+    private static @Nullable ByteBuffer readStoredChunk(ByteBuffer region, int chunkIndex, Path regionPath)
+    {
+        int location = region.getInt(chunkIndex * Integer.BYTES);
+        if (location == 0)
+            return null;
+
+        long chunkOffset = (long) (location >>> 8) * SECTOR_SIZE;
+        int sectorCount = location & 0xFF;
+
+        if (chunkOffset + Integer.BYTES > region.capacity())
+        {
+            WorldbackMachineMod.LOGGER.warn("Chunk {} of '{}' points past the end of the file. Leaving it out of the snapshot...", chunkIndex,
+                    regionPath.getFileName());
+
+            return null;
+        }
+
+        int storedLength = Integer.BYTES + region.getInt((int) chunkOffset);
+
+        if (storedLength <= Integer.BYTES || storedLength > sectorCount * SECTOR_SIZE || chunkOffset + storedLength > region.capacity())
+        {
+            WorldbackMachineMod.LOGGER.warn("Chunk {} of '{}' is corrupt. Leaving it out of the snapshot...", chunkIndex, regionPath.getFileName());
+
+            return null;
+        }
+
+        return region.slice((int) chunkOffset, storedLength);
+    }
+
+    /**
+     * Compresses a chunk the way the server does by default, prefixed with its compression type.
+     *
+     * @param chunkWriter Writes the chunk's uncompressed NBT
+     * @throws IOException If writing the chunk fails
+     * @return The chunk's compression type, followed by its compressed data
+     */
+    static byte[] compressChunk(ChunkWriter chunkWriter) throws IOException
+    {
+        ByteArrayOutputStream chunkOutputStream = new ByteArrayOutputStream(16 * 1024);
+        chunkOutputStream.write(ZLIB_COMPRESSION_TYPE);
+
+        try (DataOutputStream dataOutputStream = new DataOutputStream(new DeflaterOutputStream(chunkOutputStream)))
+        {
+            chunkWriter.write(dataOutputStream);
+        }
+
+        return chunkOutputStream.toByteArray();
+    }
+
+    @FunctionalInterface
+    interface ChunkWriter
+    {
+        void write(DataOutputStream dataOutputStream) throws IOException;
+    }
+}
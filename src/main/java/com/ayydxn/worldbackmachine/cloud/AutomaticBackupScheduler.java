@@ -1,6 +1,7 @@
 package com.ayydxn.worldbackmachine.cloud;
 
 import com.ayydxn.worldbackmachine.WorldbackMachineMod;
+import com.ayydxn.worldbackmachine.backup.BackupTier;
 import com.ayydxn.worldbackmachine.options.WorldbackMachineGameOptions;
 import net.minecraft.server.MinecraftServer;
 
@@ -13,6 +14,8 @@ import java.util.concurrent.TimeUnit;
  * <p>
  * This class handles periodic, automatic backups of the current world to cloud storage at configurable intervals.
  * It uses a {@link Timer} to schedule backups and ensures they run on the server thread.
+ * <p>
+ * Every {@link BackupTier} is backed up on its own interval, so players' data can be protected far more often than the rest of the world.
  *
  * @see CloudStorageManager
  */
@@ -24,6 +27,7 @@ public class AutomaticBackupScheduler
     private Timer backupTimer;
     private MinecraftServer server;
     private long backupIntervalMillis = TimeUnit.HOURS.toMillis(1L);
+    private long playerDataBackupIntervalMillis = TimeUnit.MINUTES.toMillis(5L);
 
     public AutomaticBackupScheduler(CloudStorageManager cloudStorageManager)
     {
@@ -33,6 +37,8 @@ public class AutomaticBackupScheduler
         long backupIntervalSeconds = this.gameOptions.backupIntervalSeconds;
         if (backupIntervalSeconds > 0)
             this.backupIntervalMillis = TimeUnit.SECONDS.toMillis(backupIntervalSeconds);
+
+        this.playerDataBackupIntervalMillis = TimeUnit.SECONDS.toMillis(Math.max(0, this.gameOptions.playerDataBackupIntervalSeconds));
     }
 
     /**
@@ -58,9 +64,18 @@ public class AutomaticBackupScheduler
             this.backupTimer.cancel();
 
         this.backupTimer = new Timer("WorldbackMachine-AutomaticBackup", true);
-        this.backupTimer.scheduleAtFixedRate(new BackupTask(), 0L, this.backupIntervalMillis);
+        this.backupTimer.scheduleAtFixedRate(new BackupTask(BackupTier.FULL), 0L, this.backupIntervalMillis);
 
         WorldbackMachineMod.LOGGER.info("Auto-backup scheduled every {} minutes", TimeUnit.MILLISECONDS.toMinutes(this.backupIntervalMillis));
+
+        // The full backup taken right away already covers the players, so their first backup can wait a whole interval
+        if (this.playerDataBackupIntervalMillis > 0L)
+        {
+            this.backupTimer.scheduleAtFixedRate(new BackupTask(BackupTier.PLAYERS), this.playerDataBackupIntervalMillis, this.playerDataBackupIntervalMillis);
+
+            WorldbackMachineMod.LOGGER.info("Player data auto-backup scheduled every {} minutes",
+                    TimeUnit.MILLISECONDS.toMinutes(this.playerDataBackupIntervalMillis));
+        }
     }
 
     /**
@@ -84,24 +99,26 @@ public class AutomaticBackupScheduler
      * Executes the backup on the server thread to avoid concurrency issues with world access.
      * Logs the backup process and any errors.
      * This method is called automatically by the timer or manually via {@link #triggerManualBackup()}.
+     *
+     * @param tier The tier of the world's data to back up
      */
-    private void performBackup()
+    private void performBackup(BackupTier tier)
     {
         if (this.server == null)
             return;
 
         try
         {
-            WorldbackMachineMod.LOGGER.info("Performing automatic backup...");
+            WorldbackMachineMod.LOGGER.info("Performing automatic backup of the {} tier...", tier.name().toLowerCase());
 
             // Execute on server thread to avoid concurrency issues
             server.execute(() ->
             {
                 try
                 {
-                    this.cloudStorageManager.uploadWorld(server);
-
-                    WorldbackMachineMod.LOGGER.info("Automatic backup completed!");
+                    // Only taking the world's snapshot happens on the server thread, the upload itself continues in the background
+                    this.cloudStorageManager.uploadWorld(server, tier)
+                            .thenRun(() -> WorldbackMachineMod.LOGGER.info("Automatic backup of the {} tier completed!", tier.name().toLowerCase()));
                 }
                 catch (Exception exception)
                 {
@@ -129,7 +146,7 @@ public class AutomaticBackupScheduler
             return;
         }
 
-        this.performBackup();
+        this.performBackup(BackupTier.FULL);
     }
 
     /**
@@ -173,10 +190,17 @@ public class AutomaticBackupScheduler
 
     private class BackupTask extends TimerTask
     {
+        private final BackupTier tier;
+
+        private BackupTask(BackupTier tier)
+        {
+            this.tier = tier;
+        }
+
         @Override
         public void run()
         {
-            AutomaticBackupScheduler.this.performBackup();
+            AutomaticBackupScheduler.this.performBackup(this.tier);
         }
     }
 }
@@ -1,51 +1,175 @@
 package com.ayydxn.worldbackmachine.cloud;
 
 import com.ayydxn.worldbackmachine.WorldbackMachineMod;
+import com.ayydxn.worldbackmachine.backup.BackupJob;
+import com.ayydxn.worldbackmachine.backup.BackupJobJournal;
+import com.ayydxn.worldbackmachine.backup.BackupTier;
+import com.ayydxn.worldbackmachine.backup.BackupVerificationResult;
+import com.ayydxn.worldbackmachine.backup.SnapshotMode;
+import com.ayydxn.worldbackmachine.backup.WorldSnapshot;
+import com.ayydxn.worldbackmachine.backup.WorldSnapshotter;
+import com.ayydxn.worldbackmachine.backup.crypto.BackupKeyManager;
+import com.ayydxn.worldbackmachine.backup.history.BackupHistory;
+import com.ayydxn.worldbackmachine.backup.history.BackupHistoryRecord;
+import com.ayydxn.worldbackmachine.backup.history.BackupMeasurement;
+import com.ayydxn.worldbackmachine.backup.bulk.BulkBackupIndex;
+import com.ayydxn.worldbackmachine.backup.bulk.BulkBackupProgress;
+import com.ayydxn.worldbackmachine.backup.bulk.LocalWorld;
+import com.ayydxn.worldbackmachine.backup.bulk.LocalWorldScanner;
+import com.ayydxn.worldbackmachine.backup.io.BufferPool;
+import com.ayydxn.worldbackmachine.backup.io.PooledFileIO;
+import com.ayydxn.worldbackmachine.backup.policy.BackupPathPolicy;
+import com.ayydxn.worldbackmachine.backup.shard.ShardPlanner;
+import com.ayydxn.worldbackmachine.cloud.cache.CachingStorageProvider;
+import com.ayydxn.worldbackmachine.cloud.cache.LocalBackupCache;
 import com.ayydxn.worldbackmachine.cloud.google.GoogleDriveProvider;
+import com.ayydxn.worldbackmachine.cloud.remote.RemoteBackupArchive;
+import com.ayydxn.worldbackmachine.engine.BackupEngine;
+import com.ayydxn.worldbackmachine.engine.BackupEngineSettings;
 import com.ayydxn.worldbackmachine.options.WorldbackMachineGameOptions;
+import com.ayydxn.worldbackmachine.utils.WorldbackMachineConstants;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.Util;
-import net.minecraft.util.WorldSavePath;
 import net.minecraft.world.World;
 import net.minecraft.world.level.LevelProperties;
-import org.apache.commons.lang3.Validate;
+import org.jspecify.annotations.Nullable;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Stream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Responsible for managing the cloud storage operations for world backups.
  * <p>
  * This class provides a unified interface for registering and interacting with cloud storage providers
  * and managing world saves across the different cloud storage providers that are available.
+ * <p>
+ * Backups themselves are written, uploaded and restored by a {@link BackupEngine}, which is shared with the command line tool.
+ * This class supplies it with the active provider and the mod's settings, and takes care of everything tied to the game,
+ * such as taking snapshots of running worlds, the upload queue and bulk backups.
  *
  * @author Ayydxn
  * @see CloudStorageProvider
  */
 public class CloudStorageManager
 {
+    // Copying files into and out of archives shares at most 64 buffers of 128 KiB (8 MiB), however many backups run at once
+    private static final int IO_BUFFER_SIZE = 128 * 1024;
+    private static final long IO_MEMORY_BUDGET_BYTES = 8L * 1024L * 1024L;
+
+    // Failed uploads and sign-ins are retried after 30 seconds, doubling every attempt up to 30 minutes
+    private static final long INITIAL_RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30L);
+    private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(30L);
+
+    // A backup that's failed this many times (about 3 hours of retrying) is dropped, so an error that never clears can't pile up snapshots on disk
+    // Only attempts made while signed in count, so being offline or signed out never costs a backup
+    private static final int MAX_UPLOAD_ATTEMPTS = 10;
+
+    // Bulk backups compress and upload up to half as many worlds as there are CPU cores at once, but never more than 4
+    private static final int BULK_BACKUP_THREADS = Math.clamp(Runtime.getRuntime().availableProcessors() / 2, 1, 4);
+
+    // Sharded backups transfer up to 4 shards at once, shared between every backup and restore that's running
+    private static final int SHARD_TRANSFER_THREADS = 4;
+
     private final CloudStorageProviderRegistry storageProviderRegistry;
+    private final PooledFileIO pooledFileIO;
+    private final WorldSnapshotter worldSnapshotter;
+    private final BackupJobJournal backupJobJournal;
+    private final Map<BackupTier, ScheduledExecutorService> backupExecutors = Maps.newEnumMap(BackupTier.class);
+    private final Map<BackupTier, UploadQueue> uploadQueues = Maps.newEnumMap(BackupTier.class);
+    private final ExecutorService bulkBackupExecutor;
+    private final ExecutorService shardTransferExecutor;
+    private final LocalWorldScanner localWorldScanner;
+    private final BulkBackupIndex bulkBackupIndex;
+    private final BackupKeyManager backupKeyManager;
+    private final BackupHistory backupHistory;
+
+    // ID of a job in the upload queue -> Completes once its backup has been uploaded
+    private final Map<String, CompletableFuture<Void>> queuedBackupJobs = Maps.newConcurrentMap();
+    private final AtomicBoolean hasResumedPendingBackups = new AtomicBoolean();
+    private final AtomicBoolean isBulkBackupRunning = new AtomicBoolean();
+
+    // The active provider isn't created until it's first used, so only its name is known until then
+    private volatile CloudStorageProvider activeStorageProvider;
+    private volatile String activeStorageProviderName;
 
-    private CloudStorageProvider activeStorageProvider;
+    private final Object authenticationLock = new Object();
+    private long nextAuthenticationNanos = System.nanoTime();
+    private int failedAuthentications;
 
     public CloudStorageManager()
     {
         this.storageProviderRegistry = new CloudStorageProviderRegistry();
+        this.pooledFileIO = new PooledFileIO(new BufferPool(IO_BUFFER_SIZE, IO_MEMORY_BUDGET_BYTES, false));
+        this.worldSnapshotter = new WorldSnapshotter();
+        this.backupJobJournal = new BackupJobJournal(WorldbackMachineConstants.QUEUE_DIRECTORY);
+
+        // Every tier uploads on its own thread, so a slow upload of the full world never holds up the lightweight tiers
+        for (BackupTier tier : BackupTier.values())
+        {
+            this.uploadQueues.put(tier, new UploadQueue());
+            this.backupExecutors.put(tier, Executors.newSingleThreadScheduledExecutor(runnable ->
+            {
+                Thread backupThread = new Thread(runnable, "WorldbackMachine-Backup-" + tier.name().toLowerCase());
+                backupThread.setDaemon(true);
+
+                return backupThread;
+            }));
+        }
+
+        AtomicInteger bulkBackupThreadCount = new AtomicInteger();
+
+        this.bulkBackupExecutor = Executors.newFixedThreadPool(BULK_BACKUP_THREADS, runnable ->
+        {
+            Thread bulkBackupThread = new Thread(runnable, "WorldbackMachine-BulkBackup-" + bulkBackupThreadCount.incrementAndGet());
+            bulkBackupThread.setDaemon(true);
+
+            return bulkBackupThread;
+        });
+
+        AtomicInteger shardTransferThreadCount = new AtomicInteger();
+
+        this.shardTransferExecutor = Executors.newFixedThreadPool(SHARD_TRANSFER_THREADS, runnable ->
+        {
+            Thread shardTransferThread = new Thread(runnable, "WorldbackMachine-ShardTransfer-" + shardTransferThreadCount.incrementAndGet());
+            shardTransferThread.setDaemon(true);
+
+            return shardTransferThread;
+        });
+
+        this.localWorldScanner = new LocalWorldScanner(WorldbackMachineConstants.SAVES_DIRECTORY);
+        this.bulkBackupIndex = new BulkBackupIndex(WorldbackMachineConstants.BULK_BACKUP_INDEX_FILE);
+        this.backupKeyManager = new BackupKeyManager(WorldbackMachineConstants.KEYS_DIRECTORY);
+        this.backupHistory = new BackupHistory(WorldbackMachineConstants.BACKUP_HISTORY_FILE);
 
         this.registerBuiltInProviders();
+
+        // Snapshots which don't belong to a queued backup were interrupted by a crash while being copied
+        this.worldSnapshotter.deleteUnusedSnapshots(this.backupJobJournal.readPendingJobs().stream()
+                .map(backupJob -> backupJob.getStagingPath().toAbsolutePath().normalize())
+                .collect(Collectors.toSet()));
     }
 
     /**
@@ -56,203 +180,901 @@ public class CloudStorageManager
      */
     private void registerBuiltInProviders()
     {
-        this.storageProviderRegistry.register("Google Drive", new GoogleDriveProvider(), WorldbackMachineMod.MOD_ID);
+        // A lambda rather than a constructor reference, so the provider's class isn't even loaded until it's first used
+        // Its capabilities are left to the provider itself, which is only created for them once something asks
+        this.storageProviderRegistry.register("Google Drive", "Google Drive", () -> new GoogleDriveProvider(), WorldbackMachineMod.MOD_ID);
 
         WorldbackMachineMod.LOGGER.info("Registered {} built-in cloud storage providers", this.storageProviderRegistry.getProviderCount());
     }
 
+    /**
+     * Warms up the active cloud storage provider in the background, creating it and authenticating with its stored credentials.
+     * <p>
+     * Nothing has to call this, as the provider is also set up the first time it's needed, but doing so once the server has started
+     * means the first backup doesn't have to wait for it.
+     */
     public void attemptAutoAuthentication()
     {
-        if (this.activeStorageProvider == null)
+        if (this.activeStorageProviderName == null)
         {
             WorldbackMachineMod.LOGGER.warn("No cloud storage provider is currently active for auto authentication!");
             return;
         }
 
-        WorldbackMachineMod.LOGGER.info("Attempting automatic authentication with storage provider '{}'...", this.activeStorageProvider.getProviderName());
+        Util.getIoWorkerExecutor().execute(this::ensureAuthenticated);
+    }
 
-        Util.getIoWorkerExecutor().execute(() ->
+    /**
+     * Makes sure the active cloud storage provider has been created and authenticated.
+     * <p>
+     * The first call authenticates with the provider's stored credentials, which blocks until it's done, so this must not be called
+     * on the server or render thread. Any calls made while that's happening wait for it to finish. If it fails, such as while offline,
+     * it's tried again by the first call made after a delay that starts at 30 seconds and doubles every failure, up to 30 minutes.
+     * Once it succeeds, the upload queues waiting for it are resumed right away.
+     *
+     * @return True if the active provider is authenticated, false otherwise
+     */
+    private boolean ensureAuthenticated()
+    {
+        CloudStorageProvider cloudStorageProvider = this.getActiveProvider();
+        if (cloudStorageProvider == null)
+            return false;
+
+        if (cloudStorageProvider.isAuthenticated())
+            return true;
+
+        synchronized (this.authenticationLock)
         {
+            if (cloudStorageProvider.isAuthenticated() || System.nanoTime() - this.nextAuthenticationNanos < 0L)
+                return cloudStorageProvider.isAuthenticated();
+
+            WorldbackMachineMod.LOGGER.info("Attempting automatic authentication with storage provider '{}'...", cloudStorageProvider.getProviderName());
+
+            long startTimeNanos = System.nanoTime();
+
             try
             {
-                boolean authenticationSuccess = this.activeStorageProvider.authenticate();
+                boolean authenticationSuccess = cloudStorageProvider.authenticate();
 
-                if (authenticationSuccess && this.activeStorageProvider.isAuthenticated())
+                if (authenticationSuccess && cloudStorageProvider.isAuthenticated())
                 {
-                    WorldbackMachineMod.LOGGER.info("Successfully authenticated with '{}' using stored credentials",
-                            this.activeStorageProvider.getProviderName());
+                    WorldbackMachineMod.LOGGER.info("Successfully authenticated with '{}' using stored credentials in {} ms",
+                            cloudStorageProvider.getProviderName(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTimeNanos));
+
+                    this.failedAuthentications = 0;
+
+                    this.resumePendingBackups();
+                    this.wakeUploadQueues();
                 }
                 else
                 {
                     WorldbackMachineMod.LOGGER.warn("Auto-authentication with '{}' failed - Stored credentials may be invalid. " +
-                                    "Use /cloudsaves authenticate to sign in manually", this.activeStorageProvider.getProviderName());
+                                    "Use /cloudsaves authenticate to sign in manually", cloudStorageProvider.getProviderName());
                 }
             }
             catch (Exception exception)
             {
                 WorldbackMachineMod.LOGGER.error("Auto authencation with storage proivder '{}' failed. " +
-                                "Use /worldback-machine authenticate to sign-in manually\n{}", this.activeStorageProvider.getProviderName(),
+                                "Use /worldback-machine authenticate to sign-in manually\n{}", cloudStorageProvider.getProviderName(),
                         exception.getMessage());
             }
 
-        });
+            if (cloudStorageProvider.isAuthenticated())
+                return true;
+
+            long retryDelayMillis = getRetryDelayMillis(++this.failedAuthentications);
+            this.nextAuthenticationNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryDelayMillis);
+
+            WorldbackMachineMod.LOGGER.info("Retrying authentication with '{}' in {} seconds", cloudStorageProvider.getProviderName(),
+                    TimeUnit.MILLISECONDS.toSeconds(retryDelayMillis));
+
+            return false;
+        }
     }
 
     /**
      * Uploads the current world to cloud storage.
      * <p>
-     * This will compress the entire world directory into a ZIP file and upload it to the active cloud storage provider.
-     * The operation is logged and any errors are caught and logged.
+     * This must be called on the server thread. It {@link #queueWorldBackup(MinecraftServer) queues a backup} of the world,
+     * and returns a future which completes once the backup has been uploaded.
+     * <p>
+     * Any errors are caught and logged, so the returned future never completes exceptionally.
+     *
+     * @param server The Minecraft server instance containing the world to upload
+     * @return A future which completes once the backup has been uploaded or dropped, or couldn't be queued
+     */
+    public CompletableFuture<Void> uploadWorld(MinecraftServer server)
+    {
+        return this.uploadWorld(server, BackupTier.FULL);
+    }
+
+    /**
+     * Uploads a tier of the current world's data to cloud storage.
+     * <p>
+     * This must be called on the server thread. It {@link #queueWorldBackup(MinecraftServer, BackupTier) queues a backup} of the tier,
+     * and returns a future which completes once the backup has been uploaded.
+     * <p>
+     * Any errors are caught and logged, so the returned future never completes exceptionally.
      *
      * @param server The Minecraft server instance containing the world to upload
+     * @param tier   The tier of the world's data to upload
+     * @return A future which completes once the backup has been uploaded or dropped, or couldn't be queued
+     */
+    public CompletableFuture<Void> uploadWorld(MinecraftServer server, BackupTier tier)
+    {
+        return this.queueWorldBackup(server, tier)
+                .thenCompose(backupJob -> backupJob != null ? this.queuedBackupJobs.getOrDefault(backupJob.id(), CompletableFuture.completedFuture(null)) :
+                        CompletableFuture.completedFuture(null));
+    }
+
+    /**
+     * Queues a backup of the current world to be uploaded to cloud storage.
+     * <p>
+     * This must be called on the server thread. It takes a {@link WorldSnapshot snapshot} of the world, which only disables saving
+     * for as long as it takes to copy the world, and records it in the on-disk upload queue. The snapshot is then compressed and
+     * uploaded to the active cloud storage provider in the background, one backup at a time in the order they were taken.
+     * Failed uploads are retried, holding up the backups queued after them, and any which haven't completed by the time the game exits
+     * are resumed the next time it starts. A backup that's still waiting when a newer one of the same world is queued is dropped,
+     * as is one that keeps failing while signed in, along with its snapshot. Backups wait without failing for as long as there's no
+     * authenticated provider to upload them to.
+     * <p>
+     * Any errors are caught and logged, so the returned future never completes exceptionally.
+     *
+     * @param server The Minecraft server instance containing the world to back up
+     * @return A future which completes with the queued job once the snapshot has been taken, or null if it couldn't be
+     */
+    public CompletableFuture<@Nullable BackupJob> queueWorldBackup(MinecraftServer server)
+    {
+        return this.queueWorldBackup(server, BackupTier.FULL);
+    }
+
+    /**
+     * Queues a backup of a tier of the current world's data to be uploaded to cloud storage, the same way as
+     * {@link #queueWorldBackup(MinecraftServer)}. Each tier's backups are uploaded one at a time, independently of the other tiers.
+     *
+     * @param server The Minecraft server instance containing the world to back up
+     * @param tier   The tier of the world's data to back up
+     * @return A future which completes with the queued job once the snapshot has been taken, or null if it couldn't be
+     */
+    public CompletableFuture<@Nullable BackupJob> queueWorldBackup(MinecraftServer server, BackupTier tier)
+    {
+        return this.queueWorldBackup(server, tier, WorldbackMachineMod.getInstance().getGameOptions().snapshotMode);
+    }
+
+    /**
+     * Queues a backup of a tier of the current world's data to be uploaded to cloud storage, the same way as
+     * {@link #queueWorldBackup(MinecraftServer, BackupTier)}, but bringing the world on disk up to date a specific way rather than the configured one.
+     *
+     * @param server       The Minecraft server instance containing the world to back up
+     * @param tier         The tier of the world's data to back up
+     * @param snapshotMode How the world on disk is brought up to date before it's copied
+     * @return A future which completes with the queued job once the snapshot has been taken, or null if it couldn't be
      */
     @SuppressWarnings("DataFlowIssue")
-    public void uploadWorld(MinecraftServer server)
+    public CompletableFuture<@Nullable BackupJob> queueWorldBackup(MinecraftServer server, BackupTier tier, SnapshotMode snapshotMode)
     {
-        if (this.activeStorageProvider == null || !activeStorageProvider.isAuthenticated())
+        if (this.activeStorageProviderName == null)
         {
-            WorldbackMachineMod.LOGGER.warn("Failed to upload world! No authenticated cloud storage provider is available!");
-            return;
+            WorldbackMachineMod.LOGGER.warn("Failed to back up world! No cloud storage provider is active!");
+            return CompletableFuture.completedFuture(null);
         }
 
         try
         {
-            Path worldPath = server.getSavePath(WorldSavePath.ROOT);
             String worldName = ((LevelProperties) server.getWorld(World.OVERWORLD).getLevelProperties()).getLevelName();
 
-            WorldbackMachineMod.LOGGER.info("Starting backup of world '{}'...", worldName);
+            WorldbackMachineMod.LOGGER.info("Starting backup of the {} tier of world '{}'...", tier.name().toLowerCase(), worldName);
+
+            WorldbackMachineGameOptions gameOptions = WorldbackMachineMod.getInstance().getGameOptions();
+            BackupPathPolicy backupPathPolicy = BackupPathPolicy.forWorld(gameOptions.backupPathRules, gameOptions.worldBackupPathRules, worldName);
+
+            return this.worldSnapshotter.takeSnapshot(server, worldName, tier, backupPathPolicy, snapshotMode)
+                    .thenApply(worldSnapshot ->
+                    {
+                        BackupJob backupJob = BackupJob.of(worldSnapshot);
 
-            // Create temporary zip file
-            File temporaryWorldZip = this.createWorldBackup(worldPath, worldName);
+                        try
+                        {
+                            this.backupJobJournal.write(backupJob);
+                        }
+                        catch (IOException exception)
+                        {
+                            this.worldSnapshotter.deleteSnapshot(worldSnapshot.stagingPath());
 
-            // Upload to cloud
-            this.activeStorageProvider.uploadFile(temporaryWorldZip, worldName + ".zip");
+                            throw new UncheckedIOException(exception);
+                        }
 
-            // Clean up
-            Validate.isTrue(temporaryWorldZip.delete(), "Failed to delete temporary world ZIP file!");
+                        this.enqueueBackupJob(backupJob);
 
-            WorldbackMachineMod.LOGGER.info("World backup completed successfully");
+                        return backupJob;
+                    })
+                    .exceptionally(throwable ->
+                    {
+                        WorldbackMachineMod.LOGGER.error("Failed to back up world '{}'!", worldName, throwable);
+                        return null;
+                    });
         }
         catch (Exception exception)
         {
             WorldbackMachineMod.LOGGER.error(exception);
+
+            return CompletableFuture.completedFuture(null);
         }
     }
 
     /**
-     * Downloads a world from cloud storage.
+     * Resumes uploading every backup left in the upload queue when the game last exited.
      * <p>
-     * Downloads a world backup from cloud storage and extracts it to the specified target path.
+     * This only does anything the first time it is called.
+     */
+    public void resumePendingBackups()
+    {
+        if (!this.hasResumedPendingBackups.compareAndSet(false, true))
+            return;
+
+        List<BackupJob> pendingBackupJobs = this.backupJobJournal.readPendingJobs();
+        if (pendingBackupJobs.isEmpty())
+            return;
+
+        WorldbackMachineMod.LOGGER.info("Resuming {} {} which didn't finish uploading", pendingBackupJobs.size(),
+                pendingBackupJobs.size() == 1 ? "backup" : "backups");
+
+        for (BackupJob backupJob : pendingBackupJobs)
+            this.enqueueBackupJob(backupJob);
+    }
+
+    /**
+     * Backs up every world in the saves directory, without having to load any of them.
+     * <p>
+     * Worlds are compressed and uploaded in parallel through a shared, bounded pool of workers, so backing up many worlds neither
+     * runs them all at once nor one at a time. Worlds which are currently loaded are skipped, as they're backed up by their server.
+     * Worlds are stored under the name they're shown with, except for worlds sharing that name with another world, which are stored
+     * under their name followed by their directory's name so they don't replace each other's backups.
+     * After each world finishes, its progress is logged and passed to the given listener, from one of the pool's threads.
+     * <p>
+     * Only one bulk backup can run at a time.
      *
-     * @param worldName  the name of the world to download (without .zip extension)
-     * @param targetPath the directory where the world should be extracted
+     * @param onlyChangedWorlds Whether to skip worlds which haven't changed since they were last backed up by a bulk backup
+     * @param progressListener  Called with the overall progress every time a world finishes
+     * @return A future which completes with the final progress once every world has finished, or completes exceptionally if
+     *         no authenticated cloud storage provider is available, a bulk backup is already running or the saves directory can't be read
      */
-    public void downloadWorld(String worldName, Path targetPath)
+    public CompletableFuture<BulkBackupProgress> backupAllWorlds(boolean onlyChangedWorlds, Consumer<BulkBackupProgress> progressListener)
+    {
+        if (!this.isBulkBackupRunning.compareAndSet(false, true))
+            return CompletableFuture.failedFuture(new IllegalStateException("A bulk backup is already running!"));
+
+        return CompletableFuture.supplyAsync(() ->
+                {
+                    try
+                    {
+                        if (!this.ensureAuthenticated())
+                            throw new IOException("No authenticated cloud storage provider is available!");
+
+                        return this.getBulkBackupWorldNames(this.localWorldScanner.findWorldDirectories());
+                    }
+                    catch (IOException exception)
+                    {
+                        throw new UncheckedIOException(exception);
+                    }
+                }, Util.getIoWorkerExecutor())
+                .thenCompose(worldNames ->
+                {
+                    Set<Path> worldDirectories = worldNames.keySet();
+                    CloudStorageProvider storageProvider = this.activeStorageProvider;
+                    BulkBackupProgress bulkBackupProgress = new BulkBackupProgress(worldDirectories.size());
+
+                    // Providers that can't handle several transfers at once are given one world at a time
+                    int bulkBackupWorkers = storageProvider.hasCapability(CloudStorageCapability.PARALLEL_STREAMS) ? BULK_BACKUP_THREADS : 1;
+                    Semaphore bulkBackupPermits = new Semaphore(bulkBackupWorkers);
+
+                    WorldbackMachineMod.LOGGER.info("Starting bulk backup of {} {}{} using {} workers...", worldDirectories.size(),
+                            worldDirectories.size() == 1 ? "world" : "worlds", onlyChangedWorlds ? ", skipping unchanged worlds" : "", bulkBackupWorkers);
+
+                    CompletableFuture<?>[] worldBackups = worldDirectories.stream()
+                            .map(worldPath -> CompletableFuture.runAsync(() ->
+                            {
+                                bulkBackupPermits.acquireUninterruptibly();
+
+                                try
+                                {
+                                    this.backupLocalWorld(worldPath, worldNames.get(worldPath), storageProvider, onlyChangedWorlds, bulkBackupProgress);
+                                }
+                                finally
+                                {
+                                    bulkBackupPermits.release();
+                                }
+
+                                WorldbackMachineMod.LOGGER.info("Bulk backup progress: {}", bulkBackupProgress.describe());
+
+                                progressListener.accept(bulkBackupProgress);
+                            }, this.bulkBackupExecutor))
+                            .toArray(CompletableFuture[]::new);
+
+                    return CompletableFuture.allOf(worldBackups).thenApply(ignored -> bulkBackupProgress);
+                })
+                .whenComplete((bulkBackupProgress, throwable) ->
+                {
+                    this.isBulkBackupRunning.set(false);
+
+                    if (throwable != null)
+                    {
+                        WorldbackMachineMod.LOGGER.error("Bulk backup failed!", throwable);
+                    }
+                    else
+                    {
+                        WorldbackMachineMod.LOGGER.info("Bulk backup finished in {} seconds: {}", TimeUnit.MILLISECONDS.toSeconds(bulkBackupProgress.getElapsedMillis()),
+                                bulkBackupProgress.describe());
+                    }
+                });
+    }
+
+    /**
+     * Decides the name each world of a bulk backup is stored under.
+     * <p>
+     * Backups are named after the name a world is shown with, which several worlds can share, such as every world left as "New World".
+     * Those worlds would replace each other's backups, even more so when they're backed up at the same time, so they're told apart by
+     * their directory's name, which is always unique.
+     *
+     * @param worldDirectories The directories of the worlds to back up
+     * @return The name to back up each world under, in the same order as the directories
+     */
+    private Map<Path, String> getBulkBackupWorldNames(List<Path> worldDirectories)
     {
-        if (this.activeStorageProvider == null || !this.activeStorageProvider.isAuthenticated())
+        Map<Path, String> worldNames = Maps.newLinkedHashMap();
+        worldDirectories.forEach(worldPath -> worldNames.put(worldPath, this.localWorldScanner.readWorldName(worldPath)));
+
+        Map<String, Long> worldNameCounts = worldNames.values().stream()
+                .collect(Collectors.groupingBy(worldName -> worldName, Collectors.counting()));
+
+        worldNames.replaceAll((worldPath, worldName) ->
         {
-            WorldbackMachineMod.LOGGER.warn("Failed to download world '{}'! No authenticated cloud storage provider is available!", worldName);
-            return;
-        }
+            if (worldNameCounts.get(worldName) == 1L)
+                return worldName;
+
+            String backupName = String.format("%s (%s)", worldName, worldPath.getFileName());
+
+            WorldbackMachineMod.LOGGER.warn("World '{}' in '{}' has the same name as another world, so it's backed up as '{}'", worldName,
+                    worldPath.getFileName(), backupName);
+
+            return backupName;
+        });
+
+        return worldNames;
+    }
+
+    private void backupLocalWorld(Path worldPath, String worldName, CloudStorageProvider storageProvider, boolean onlyChangedWorlds,
+                                  BulkBackupProgress bulkBackupProgress)
+    {
+        String directoryName = worldPath.getFileName().toString();
 
         try
         {
-            WorldbackMachineMod.LOGGER.info("Downloading world '{}'...", worldName);
+            if (this.localWorldScanner.isWorldInUse(worldPath))
+            {
+                WorldbackMachineMod.LOGGER.info("Skipping world '{}' as it's currently loaded", directoryName);
+
+                bulkBackupProgress.recordSkipped();
+                return;
+            }
 
-            // Download zip file
-            File temporaryWorldZip = File.createTempFile(worldName.toLowerCase().replace(" ", "_") + "_download_", ".zip");
-            this.activeStorageProvider.downloadFile(worldName + ".zip", temporaryWorldZip);
+            WorldbackMachineGameOptions gameOptions = WorldbackMachineMod.getInstance().getGameOptions();
+            BackupPathPolicy backupPathPolicy = BackupPathPolicy.forWorld(gameOptions.backupPathRules, gameOptions.worldBackupPathRules, worldName);
+            LocalWorld localWorld = this.localWorldScanner.scanWorld(worldPath, backupPathPolicy);
+
+            if (onlyChangedWorlds && !this.bulkBackupIndex.hasChanged(storageProvider.getProviderName(), localWorld))
+            {
+                WorldbackMachineMod.LOGGER.info("Skipping world '{}' as it hasn't changed since its last bulk backup", worldName);
 
-            // Extract to target path
-            this.extractWorldBackup(temporaryWorldZip, targetPath);
+                bulkBackupProgress.recordSkipped();
+                return;
+            }
 
-            // Clean up
-            Validate.isTrue(temporaryWorldZip.delete());
+            WorldbackMachineMod.LOGGER.info("Backing up world '{}' ({} files, {} MB)...", worldName, localWorld.fingerprint().fileCount(),
+                    localWorld.fingerprint().sizeBytes() / (1024L * 1024L));
 
-            WorldbackMachineMod.LOGGER.info("Successfully downloaded backup of world '{}'!", worldName);
+            Instant startedAt = Instant.now();
+            BackupMeasurement backupMeasurement = new BackupMeasurement();
+
+            try
+            {
+                // Worlds that aren't loaded are archived straight from their save, so the server is never held up by them
+                long uploadedBytes = this.uploadWorldFiles(worldName, BackupTier.FULL, worldPath, startedAt.toString(), backupMeasurement);
+
+                this.backupHistory.append(backupMeasurement.toRecord(startedAt, worldName, BackupTier.FULL, uploadedBytes > 0L ?
+                        BackupHistoryRecord.Outcome.UPLOADED : BackupHistoryRecord.Outcome.UNCHANGED, uploadedBytes, 0L, 0L));
+
+                this.bulkBackupIndex.recordBackedUp(storageProvider.getProviderName(), localWorld);
+
+                bulkBackupProgress.recordBackedUp(localWorld.fingerprint().sizeBytes(), uploadedBytes);
+            }
+            catch (Exception exception)
+            {
+                this.backupHistory.append(backupMeasurement.toRecord(startedAt, worldName, BackupTier.FULL, BackupHistoryRecord.Outcome.FAILED, 0L, 0L, 0L));
+
+                throw exception;
+            }
         }
         catch (Exception exception)
         {
-            WorldbackMachineMod.LOGGER.error(exception);
+            WorldbackMachineMod.LOGGER.error("Failed to back up world '{}'!", directoryName, exception);
+
+            bulkBackupProgress.recordFailed();
         }
     }
 
     /**
-     * Creates a compressed ZIP backup of a world.
-     * <p>
-     * This walks through the entire world directory and compresses all files into a temporary ZIP file.
-     * The ZIP maintains the relative directory structure of the world.
+     * Adds a job to its tier's upload queue, in the order its snapshot was taken. Jobs of the same world that were taken before it
+     * are dropped, unless they're already being uploaded, and the job itself is dropped if a newer one of the world is already queued.
      *
-     * @param worldPath The path to the world directory
-     * @param worldName The name of the world
-     * @return A temporary file containing the compressed world
-     * @throws IOException if compression fails
+     * @param backupJob The job to queue
      */
-    private File createWorldBackup(Path worldPath, String worldName) throws IOException
+    private void enqueueBackupJob(BackupJob backupJob)
     {
-        File tempZip = File.createTempFile(worldName.toLowerCase().replace(" ", "_") + "_backup_", ".zip");
+        UploadQueue uploadQueue = this.uploadQueues.get(backupJob.getTier());
+        List<BackupJob> supersededJobs = Lists.newArrayList();
 
-        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(tempZip)))
+        synchronized (uploadQueue)
         {
-            try (Stream<Path> worldPathStream = Files.walk(worldPath))
+            if (uploadQueue.backupJobs.stream().anyMatch(queuedJob -> queuedJob.id().equals(backupJob.id())))
+                return;
+
+            this.queuedBackupJobs.putIfAbsent(backupJob.id(), new CompletableFuture<>());
+
+            BackupJob previousHead = uploadQueue.backupJobs.isEmpty() ? null : uploadQueue.backupJobs.getFirst();
+            boolean isSuperseded = uploadQueue.backupJobs.stream().anyMatch(queuedJob -> queuedJob.worldName().equals(backupJob.worldName()) &&
+                    queuedJob.getCreatedAt().isAfter(backupJob.getCreatedAt()));
+
+            if (isSuperseded)
             {
-                worldPathStream.filter(path -> !Files.isDirectory(path))
-                        .forEach(path ->
-                        {
-                            try
-                            {
-                                String zipEntryName = worldPath.relativize(path).toString();
-                                zos.putNextEntry(new ZipEntry(zipEntryName));
+                supersededJobs.add(backupJob);
+            }
+            else
+            {
+                uploadQueue.backupJobs.removeIf(queuedJob ->
+                {
+                    boolean isOlderCopy = queuedJob != uploadQueue.runningJob && queuedJob.worldName().equals(backupJob.worldName());
+                    if (isOlderCopy)
+                        supersededJobs.add(queuedJob);
 
-                                Files.copy(path, zos);
+                    return isOlderCopy;
+                });
 
-                                zos.closeEntry();
-                            }
-                            catch (IOException exception)
-                            {
-                                WorldbackMachineMod.LOGGER.error(exception);
-                            }
-                        });
+                // The job being uploaded always stays at the head of the queue, however old the snapshots queued after it are
+                int queueIndex = uploadQueue.runningJob != null ? 1 : 0;
+                while (queueIndex < uploadQueue.backupJobs.size() && !uploadQueue.backupJobs.get(queueIndex).getCreatedAt().isAfter(backupJob.getCreatedAt()))
+                    queueIndex++;
+
+                uploadQueue.backupJobs.add(queueIndex, backupJob);
             }
+
+            // A new head starts right away rather than waiting out the retry delay of the job it replaced
+            if (uploadQueue.runningJob == null && !uploadQueue.backupJobs.isEmpty() && uploadQueue.backupJobs.getFirst() != previousHead)
+                this.scheduleNextBackupJob(backupJob.getTier(), uploadQueue, 0L);
         }
 
-        return tempZip;
+        for (BackupJob supersededJob : supersededJobs)
+        {
+            WorldbackMachineMod.LOGGER.info("Dropping the backup of world '{}' taken at {}, as a newer one has been queued", supersededJob.worldName(),
+                    supersededJob.createdAt());
+
+            this.dropBackupJob(supersededJob);
+        }
     }
 
-    /**
-     * Extracts a world backup ZIP file to a target directory.
-     * <p>
-     * Extracts all files from the ZIP while preserving the directory
-     * structure. Creates any necessary parent directories.
-     *
-     * @param zipFile    the ZIP file to extract
-     * @param targetPath the directory where files should be extracted
-     * @throws IOException if extraction fails
-     */
-    private void extractWorldBackup(File zipFile, Path targetPath) throws IOException
+    // Must be called while holding the queue's lock
+    private void scheduleNextBackupJob(BackupTier tier, UploadQueue uploadQueue, long delayMillis)
+    {
+        if (uploadQueue.scheduledRun != null)
+            uploadQueue.scheduledRun.cancel(false);
+
+        uploadQueue.scheduledRun = this.backupExecutors.get(tier).schedule(() -> this.runNextBackupJob(tier, uploadQueue), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void runNextBackupJob(BackupTier tier, UploadQueue uploadQueue)
     {
-        Files.createDirectories(targetPath);
+        BackupJob backupJob;
+
+        synchronized (uploadQueue)
+        {
+            uploadQueue.scheduledRun = null;
 
-        try (ZipInputStream zipInputStream = new ZipInputStream(new FileInputStream(zipFile)))
+            if (uploadQueue.runningJob != null || uploadQueue.backupJobs.isEmpty())
+                return;
+
+            backupJob = uploadQueue.backupJobs.getFirst();
+            uploadQueue.runningJob = backupJob;
+        }
+
+        BackupJob failedBackupJob = null;
+
+        try
+        {
+            failedBackupJob = this.runBackupJob(backupJob);
+        }
+        finally
         {
-            ZipEntry entry;
-            while ((entry = zipInputStream.getNextEntry()) != null)
+            List<BackupJob> droppedJobs = Lists.newArrayList();
+
+            synchronized (uploadQueue)
             {
-                Path filePath = targetPath.resolve(entry.getName());
+                uploadQueue.runningJob = null;
+                uploadQueue.backupJobs.removeFirst();
+
+                boolean hasNewerCopy = uploadQueue.backupJobs.stream().anyMatch(queuedJob -> queuedJob.worldName().equals(backupJob.worldName()));
+
+                if (failedBackupJob != null && (hasNewerCopy || failedBackupJob.attempts() >= MAX_UPLOAD_ATTEMPTS))
+                {
+                    droppedJobs.add(failedBackupJob);
+                }
+                else if (failedBackupJob != null)
+                {
+                    // Nothing queued after a failed job is uploaded before it, so the most recent backup is always the most recent snapshot
+                    uploadQueue.backupJobs.addFirst(failedBackupJob);
+                }
 
-                if (entry.isDirectory())
+                if (failedBackupJob != null && droppedJobs.isEmpty())
                 {
-                    Files.createDirectories(filePath);
+                    // A parked job waits for the next sign-in attempt, which wakes the queue up again as soon as it succeeds
+                    boolean isParked = failedBackupJob.attempts() == backupJob.attempts();
+                    long retryDelayMillis = isParked ? Math.max(INITIAL_RETRY_DELAY_MILLIS, this.getMillisUntilAuthentication()) :
+                            getRetryDelayMillis(failedBackupJob.attempts());
+
+                    WorldbackMachineMod.LOGGER.info("{} the backup of world '{}' in {} seconds", isParked ? "Waiting to sign in before uploading" : "Retrying",
+                            backupJob.worldName(), TimeUnit.MILLISECONDS.toSeconds(retryDelayMillis));
+
+                    this.scheduleNextBackupJob(tier, uploadQueue, retryDelayMillis);
+                }
+                else if (!uploadQueue.backupJobs.isEmpty())
+                {
+                    this.scheduleNextBackupJob(tier, uploadQueue, 0L);
+                }
+            }
+
+            for (BackupJob droppedJob : droppedJobs)
+            {
+                if (droppedJob.attempts() >= MAX_UPLOAD_ATTEMPTS)
+                {
+                    WorldbackMachineMod.LOGGER.error("Giving up on the backup of world '{}' taken at {} after {} failed attempts", droppedJob.worldName(),
+                            droppedJob.createdAt(), droppedJob.attempts());
                 }
                 else
                 {
-                    Files.createDirectories(filePath.getParent());
-                    Files.copy(zipInputStream, filePath, StandardCopyOption.REPLACE_EXISTING);
+                    WorldbackMachineMod.LOGGER.info("Dropping the failed backup of world '{}' taken at {}, as a newer one is queued", droppedJob.worldName(),
+                            droppedJob.createdAt());
                 }
 
-                zipInputStream.closeEntry();
+                this.dropBackupJob(droppedJob);
+            }
+        }
+    }
+
+    /**
+     * Uploads a queued backup, recording how it went in the backup history.
+     * <p>
+     * A job is parked rather than failed while there's no authenticated provider to upload it to, including when the provider's credentials
+     * stop working partway through, so it's never given up on without having been tried against a provider that's signed in.
+     *
+     * @param backupJob The job to upload
+     * @return The job with its failed attempt recorded if uploading it failed, the job as it was if it was parked, or null if it completed
+     */
+    private @Nullable BackupJob runBackupJob(BackupJob backupJob)
+    {
+        BackupMeasurement backupMeasurement = new BackupMeasurement();
+
+        try
+        {
+            if (Files.notExists(backupJob.getStagingPath()))
+            {
+                WorldbackMachineMod.LOGGER.error("The snapshot of world '{}' taken at {} no longer exists! Dropping its backup", backupJob.worldName(),
+                        backupJob.createdAt());
+
+                this.completeBackupJob(backupJob);
+                return null;
+            }
+
+            if (!this.ensureAuthenticated())
+            {
+                WorldbackMachineMod.LOGGER.warn("Can't upload the backup of world '{}' yet, as no authenticated cloud storage provider is available",
+                        backupJob.worldName());
+
+                return backupJob;
+            }
+
+            long uploadedBytes = this.uploadSnapshot(backupJob, backupMeasurement);
+
+            this.backupHistory.append(backupMeasurement.toRecord(backupJob.getCreatedAt(), backupJob.worldName(), backupJob.getTier(), uploadedBytes > 0L ?
+                    BackupHistoryRecord.Outcome.UPLOADED : BackupHistoryRecord.Outcome.UNCHANGED, uploadedBytes, backupJob.serverThreadMillis(),
+                    backupJob.saveOffMillis()));
+
+            this.completeBackupJob(backupJob);
+
+            return null;
+        }
+        catch (Exception exception)
+        {
+            this.backupHistory.append(backupMeasurement.toRecord(backupJob.getCreatedAt(), backupJob.worldName(), backupJob.getTier(),
+                    BackupHistoryRecord.Outcome.FAILED, 0L, backupJob.serverThreadMillis(), backupJob.saveOffMillis()));
+
+            CloudStorageProvider cloudStorageProvider = this.activeStorageProvider;
+            if (cloudStorageProvider == null || !cloudStorageProvider.isAuthenticated())
+            {
+                WorldbackMachineMod.LOGGER.warn("Failed to upload backup of world '{}' as the cloud storage provider was signed out: {}", backupJob.worldName(),
+                        exception.getMessage());
+
+                return backupJob;
+            }
+
+            BackupJob failedBackupJob = backupJob.withFailedAttempt();
+
+            WorldbackMachineMod.LOGGER.warn("Failed to upload backup of world '{}' (Attempt {} of {}): {}", backupJob.worldName(),
+                    failedBackupJob.attempts(), MAX_UPLOAD_ATTEMPTS, exception.getMessage());
+
+            try
+            {
+                this.backupJobJournal.write(failedBackupJob);
+            }
+            catch (IOException journalException)
+            {
+                WorldbackMachineMod.LOGGER.error(journalException);
+            }
+
+            return failedBackupJob;
+        }
+    }
+
+    private void completeBackupJob(BackupJob backupJob) throws IOException
+    {
+        this.backupJobJournal.remove(backupJob);
+        this.worldSnapshotter.deleteSnapshot(backupJob.getStagingPath());
+
+        CompletableFuture<Void> backupJobCompletion = this.queuedBackupJobs.remove(backupJob.id());
+        if (backupJobCompletion != null)
+            backupJobCompletion.complete(null);
+    }
+
+    private void dropBackupJob(BackupJob backupJob)
+    {
+        try
+        {
+            this.completeBackupJob(backupJob);
+        }
+        catch (IOException exception)
+        {
+            WorldbackMachineMod.LOGGER.error("Failed to drop the backup of world '{}' taken at {}!", backupJob.worldName(), backupJob.createdAt(), exception);
+        }
+    }
+
+    /**
+     * Starts every upload queue that's waiting on a job parked until the provider was signed in.
+     */
+    private void wakeUploadQueues()
+    {
+        this.uploadQueues.forEach((tier, uploadQueue) ->
+        {
+            synchronized (uploadQueue)
+            {
+                if (uploadQueue.runningJob == null && !uploadQueue.backupJobs.isEmpty())
+                    this.scheduleNextBackupJob(tier, uploadQueue, 0L);
+            }
+        });
+    }
+
+    private long getMillisUntilAuthentication()
+    {
+        synchronized (this.authenticationLock)
+        {
+            return Math.max(0L, TimeUnit.NANOSECONDS.toMillis(this.nextAuthenticationNanos - System.nanoTime()));
+        }
+    }
+
+    private static long getRetryDelayMillis(int attempts)
+    {
+        return Math.min(MAX_RETRY_DELAY_MILLIS, INITIAL_RETRY_DELAY_MILLIS << Math.min(attempts - 1, 16));
+    }
+
+    /**
+     * Compresses a snapshot of a world into a ZIP file and uploads it to the active cloud storage provider.
+     *
+     * @param backupJob         The queued backup whose snapshot to upload
+     * @param backupMeasurement Measures each phase of the backup
+     * @throws IOException If compressing or uploading the snapshot fails
+     * @return The number of bytes uploaded, which is 0 if the backup was identical to the stored one and wasn't uploaded
+     */
+    private long uploadSnapshot(BackupJob backupJob, BackupMeasurement backupMeasurement) throws IOException
+    {
+        return this.uploadWorldFiles(backupJob.worldName(), backupJob.getTier(), backupJob.getStagingPath(), backupJob.createdAt(), backupMeasurement);
+    }
+
+    /**
+     * Archives a world's files and uploads them to the active cloud storage provider as the world's most recent backup,
+     * using the {@link BackupPathPolicy backup rules} the player set up for the world.
+     *
+     * @param worldName         The name of the world
+     * @param tier              The tier of the world's data the files belong to
+     * @param worldPath         The directory containing the world's files
+     * @param createdAt         When the backup was taken, as an ISO-8601 instant
+     * @param backupMeasurement Measures each phase of the backup
+     * @throws IOException If compressing or uploading the files fails
+     * @return The number of bytes uploaded, which is 0 if the backup was identical to the stored one and wasn't uploaded
+     * @see BackupEngine#backupWorld(String, BackupTier, Path, String, BackupPathPolicy, BackupMeasurement)
+     */
+    private long uploadWorldFiles(String worldName, BackupTier tier, Path worldPath, String createdAt, BackupMeasurement backupMeasurement) throws IOException
+    {
+        WorldbackMachineGameOptions gameOptions = WorldbackMachineMod.getInstance().getGameOptions();
+        BackupPathPolicy backupPathPolicy = BackupPathPolicy.forWorld(gameOptions.backupPathRules, gameOptions.worldBackupPathRules, worldName);
+
+        return this.createBackupEngine().backupWorld(worldName, tier, worldPath, createdAt, backupPathPolicy, backupMeasurement);
+    }
+
+    /**
+     * Creates the {@link BackupEngine engine} backups are made with, storing them with the active cloud storage provider
+     * and writing them the way the mod's settings say to.
+     *
+     * @return The backup engine
+     */
+    private BackupEngine createBackupEngine()
+    {
+        WorldbackMachineGameOptions gameOptions = WorldbackMachineMod.getInstance().getGameOptions();
+        BackupEngineSettings engineSettings = new BackupEngineSettings(gameOptions.backupArchiveFormat, gameOptions.isEncryptionEnabled,
+                gameOptions.isShardedBackupsEnabled, gameOptions.isSolidPackingEnabled,
+                gameOptions.isCompressedEntryCacheEnabled ? WorldbackMachineConstants.ENTRY_CACHE_DIRECTORY : null, gameOptions.maxBackupSnapshots);
+
+        return new BackupEngine(this.activeStorageProvider, this.backupKeyManager, this.pooledFileIO, this.shardTransferExecutor, engineSettings);
+    }
+
+    /**
+     * Downloads a world from cloud storage.
+     * <p>
+     * Downloads a world's most recent backup from cloud storage and extracts it to the specified target path.
+     *
+     * @param worldName  the name of the world to download (without .zip extension)
+     * @param targetPath the directory where the world should be extracted
+     */
+    public void downloadWorld(String worldName, Path targetPath)
+    {
+        this.downloadWorld(worldName, null, targetPath);
+    }
+
+    /**
+     * Downloads a world from cloud storage.
+     * <p>
+     * Downloads a backup of a world from cloud storage and extracts it to the specified target path.
+     *
+     * @param worldName    the name of the world to download (without .zip extension)
+     * @param snapshotTime the time of the {@link #listWorldSnapshots(String) snapshot} to download, or null to download the most recent backup
+     * @param targetPath   the directory where the world should be extracted
+     */
+    public void downloadWorld(String worldName, @Nullable Instant snapshotTime, Path targetPath)
+    {
+        if (!this.ensureAuthenticated())
+        {
+            WorldbackMachineMod.LOGGER.warn("Failed to download world '{}'! No authenticated cloud storage provider is available!", worldName);
+            return;
+        }
+
+        try
+        {
+            this.createBackupEngine().restoreWorld(worldName, BackupTier.FULL, snapshotTime, targetPath);
+
+            if (this.activeStorageProvider instanceof CachingStorageProvider cachingStorageProvider)
+            {
+                LocalBackupCache localBackupCache = cachingStorageProvider.getLocalBackupCache();
+
+                WorldbackMachineMod.LOGGER.info("Local backup cache: {} hits, {} misses ({} MB used)", localBackupCache.getHitCount(),
+                        localBackupCache.getMissCount(), localBackupCache.getSizeBytes() / (1024L * 1024L));
             }
         }
+        catch (Exception exception)
+        {
+            WorldbackMachineMod.LOGGER.error(exception);
+        }
+    }
+
+    /**
+     * Restores a single scope of a world from cloud storage, such as one of its dimensions, leaving the rest of the world as it is.
+     * <p>
+     * Sharded backups only have the shards holding the scope downloaded. Other backups are {@link #openRemoteBackup(String, Instant) opened remotely}
+     * instead, so only the scope's files are fetched from them.
+     *
+     * @param worldName    the name of the world to restore
+     * @param snapshotTime the time of the {@link #listWorldSnapshots(String) snapshot} to restore from, or null to restore from the most recent backup
+     * @param scope        the scope to restore, which is {@code overworld}, {@code nether}, {@code end}, the ID of a modded dimension such as
+     *                     {@code mymod_mining}, {@value ShardPlanner#PLAYERS_SCOPE} or {@value ShardPlanner#LEVEL_SCOPE}
+     * @param targetPath   the world directory to restore the scope's files to
+     */
+    public void restoreWorldScope(String worldName, @Nullable Instant snapshotTime, String scope, Path targetPath)
+    {
+        if (!this.ensureAuthenticated())
+        {
+            WorldbackMachineMod.LOGGER.warn("Failed to restore the {} of world '{}'! No authenticated cloud storage provider is available!", scope, worldName);
+            return;
+        }
+
+        try
+        {
+            this.createBackupEngine().restoreWorldScope(worldName, snapshotTime, scope, targetPath);
+        }
+        catch (Exception exception)
+        {
+            WorldbackMachineMod.LOGGER.error(exception);
+        }
+    }
+
+    /**
+     * Opens a backup of a world stored in cloud storage, so it can be browsed without downloading it.
+     * <p>
+     * Only the parts of the archive that are actually read are fetched, using the active provider's
+     * {@link CloudStorageProvider#readRange(String, long, int) ranged reads}. The returned archive must be closed once it's no longer needed.
+     *
+     * @param worldName    the name of the world to open
+     * @param snapshotTime the time of the {@link #listWorldSnapshots(String) snapshot} to open, or null to open the most recent backup
+     * @throws IOException if no authenticated cloud storage provider is available, or the backup cannot be opened
+     * @return the opened backup archive
+     */
+    public RemoteBackupArchive openRemoteBackup(String worldName, @Nullable Instant snapshotTime) throws IOException
+    {
+        return this.openRemoteBackup(worldName, BackupTier.FULL, snapshotTime);
+    }
+
+    /**
+     * Opens a backup of a tier of a world stored in cloud storage, the same way as {@link #openRemoteBackup(String, Instant)}.
+     *
+     * @param worldName    the name of the world to open
+     * @param tier         the tier of the backup to open
+     * @param snapshotTime the time of the {@link #listWorldSnapshots(String, BackupTier) snapshot} to open, or null to open the most recent backup
+     * @throws IOException if no authenticated cloud storage provider is available, or the backup cannot be opened
+     * @return the opened backup archive
+     */
+    public RemoteBackupArchive openRemoteBackup(String worldName, BackupTier tier, @Nullable Instant snapshotTime) throws IOException
+    {
+        if (!this.ensureAuthenticated())
+            throw new IOException(String.format("Failed to open backup of world '%s'! No authenticated cloud storage provider is available!", worldName));
+
+        return this.createBackupEngine().openRemoteBackup(worldName, tier, snapshotTime);
+    }
+
+    /**
+     * Restores individual files of a world from a backup stored in cloud storage, such as a single player's data or region file.
+     * <p>
+     * Unlike {@link #downloadWorld(String, Instant, Path)}, this only fetches the requested files rather than the entire backup.
+     *
+     * @param worldName    the name of the world to restore files from
+     * @param snapshotTime the time of the {@link #listWorldSnapshots(String) snapshot} to restore from, or null to restore from the most recent backup
+     * @param filePaths    the paths of the files to restore, relative to the world's directory (e.g. {@code playerdata/<uuid>.dat})
+     * @param targetPath   the world directory to restore the files to
+     */
+    public void restoreWorldFiles(String worldName, @Nullable Instant snapshotTime, Collection<String> filePaths, Path targetPath)
+    {
+        this.restoreWorldFiles(worldName, BackupTier.FULL, snapshotTime, filePaths, targetPath);
+    }
+
+    /**
+     * Restores individual files of a world from a backup of one of its tiers, such as a player's data from the more frequent
+     * {@link BackupTier#PLAYERS players tier}.
+     *
+     * @param worldName    the name of the world to restore files from
+     * @param tier         the tier of the backup to restore from
+     * @param snapshotTime the time of the {@link #listWorldSnapshots(String, BackupTier) snapshot} to restore from, or null to restore from the most recent backup
+     * @param filePaths    the paths of the files to restore, relative to the world's directory (e.g. {@code playerdata/<uuid>.dat})
+     * @param targetPath   the world directory to restore the files to
+     */
+    public void restoreWorldFiles(String worldName, BackupTier tier, @Nullable Instant snapshotTime, Collection<String> filePaths, Path targetPath)
+    {
+        if (!this.ensureAuthenticated())
+        {
+            WorldbackMachineMod.LOGGER.warn("Failed to restore files of world '{}'! No authenticated cloud storage provider is available!", worldName);
+            return;
+        }
+
+        try
+        {
+            this.createBackupEngine().restoreWorldFiles(worldName, tier, snapshotTime, filePaths, targetPath);
+        }
+        catch (Exception exception)
+        {
+            WorldbackMachineMod.LOGGER.error(exception);
+        }
     }
 
     /**
@@ -260,23 +1082,18 @@ public class CloudStorageManager
      *
      * <p>Retrieves a list of all world backup files from the active
      * cloud provider. Returns world names without the .zip extension.
+     * Snapshots of previous backups and backups of lightweight tiers aren't included.
      *
      * @return list of world names, or empty list if not authenticated or on error
      */
     public List<String> listCloudWorlds()
     {
-        if (this.activeStorageProvider == null || !this.activeStorageProvider.isAuthenticated())
+        if (!this.ensureAuthenticated())
             return Collections.emptyList();
 
         try
         {
-            List<String> files = this.activeStorageProvider.listFiles();
-
-            // Filter for zip files and remove extension
-            return files.stream()
-                    .filter(f -> f.endsWith(".zip"))
-                    .map(f -> f.substring(0, f.length() - 4))
-                    .toList();
+            return this.createBackupEngine().listWorlds();
         }
         catch (Exception exception)
         {
@@ -286,6 +1103,53 @@ public class CloudStorageManager
         }
     }
 
+    /**
+     * Lists the snapshots of a world's previous backups that are available in cloud storage.
+     *
+     * @param worldName The name of the world
+     * @throws IOException If listing the stored files fails
+     * @return The times each of the world's snapshots were created, from newest to oldest
+     */
+    public List<Instant> listWorldSnapshots(String worldName) throws IOException
+    {
+        return this.listWorldSnapshots(worldName, BackupTier.FULL);
+    }
+
+    /**
+     * Lists the snapshots of previous backups of a tier of a world that are available in cloud storage.
+     *
+     * @param worldName The name of the world
+     * @param tier      The tier of the snapshots
+     * @throws IOException If listing the stored files fails
+     * @return The times each of the tier's snapshots were created, from newest to oldest
+     */
+    public List<Instant> listWorldSnapshots(String worldName, BackupTier tier) throws IOException
+    {
+        if (!this.ensureAuthenticated())
+            return Collections.emptyList();
+
+        return this.createBackupEngine().listWorldSnapshots(worldName, tier);
+    }
+
+    /**
+     * Verifies every backup stored with the active cloud storage provider.
+     * <p>
+     * Each backup's current checksum and size, as reported by the provider, are compared against those recorded when it was created.
+     * This only uses metadata requests, so nothing has to be downloaded again.
+     *
+     * @return The verification result of each backup, or an empty list if not authenticated or on error
+     */
+    public List<BackupVerificationResult> verifyBackups()
+    {
+        if (!this.ensureAuthenticated())
+        {
+            WorldbackMachineMod.LOGGER.warn("Failed to verify backups! No authenticated cloud storage provider is available!");
+            return Collections.emptyList();
+        }
+
+        return this.createBackupEngine().verifyBackups();
+    }
+
     /**
      * Locks the provider registry.
      *
@@ -299,15 +1163,51 @@ public class CloudStorageManager
 
     /**
      * Selects the cloud provider that will be used based on the user's {@link WorldbackMachineGameOptions#cloudStorageProvider setting}
+     * <p>
+     * The provider itself isn't created until it's {@link #getActiveProvider() first used}.
      */
-    public void selectStorageProvider()
+    public synchronized void selectStorageProvider()
     {
         String cloudStorageProvider = WorldbackMachineGameOptions.HANDLER.instance().cloudStorageProvider;
-        this.activeStorageProvider = this.getRegistry().getProviderInstance(cloudStorageProvider);
 
         // Default to Google Drive
-        if (this.activeStorageProvider == null)
-            this.activeStorageProvider = this.getRegistry().getProviderInstance("google_drive");
+        if (!this.getRegistry().isRegistered(cloudStorageProvider))
+            cloudStorageProvider = "google_drive";
+
+        this.activeStorageProviderName = this.getRegistry().isRegistered(cloudStorageProvider) ? cloudStorageProvider : null;
+        this.activeStorageProvider = null;
+    }
+
+    /**
+     * Puts a {@link LocalBackupCache local cache} in front of a cloud storage provider, if the local cache is enabled.
+     *
+     * @param cloudStorageProvider The provider to cache backups of
+     * @return The caching provider, or the given provider if the local cache is disabled or cannot be created
+     */
+    private CloudStorageProvider wrapWithLocalCache(CloudStorageProvider cloudStorageProvider)
+    {
+        WorldbackMachineGameOptions gameOptions = WorldbackMachineGameOptions.HANDLER.instance();
+        if (!gameOptions.isLocalBackupCacheEnabled)
+            return cloudStorageProvider;
+
+        // Each provider gets its own cache, as the same backup name can refer to different backups on different providers
+        String providerDirectoryName = cloudStorageProvider.getProviderName().toLowerCase().replace(" ", "_");
+        long maxCacheBytes = gameOptions.localBackupCacheMaxGigabytes * 1024L * 1024L * 1024L;
+
+        try
+        {
+            LocalBackupCache localBackupCache = new LocalBackupCache(WorldbackMachineConstants.CACHE_DIRECTORY.resolve(providerDirectoryName),
+                    Math.max(1, gameOptions.localBackupCacheMaxBackups), maxCacheBytes);
+
+            return new CachingStorageProvider(cloudStorageProvider, localBackupCache, gameOptions.areUploadsInBackground);
+        }
+        catch (IOException exception)
+        {
+            WorldbackMachineMod.LOGGER.error("Failed to create the local backup cache for '{}'. Backups won't be cached locally: {}",
+                    cloudStorageProvider.getProviderName(), exception.getMessage());
+
+            return cloudStorageProvider;
+        }
     }
 
     /**
@@ -324,6 +1224,26 @@ public class CloudStorageManager
         return this.storageProviderRegistry;
     }
 
+    /**
+     * Gets the manager of the keys backups are encrypted with.
+     *
+     * @return The backup key manager
+     */
+    public BackupKeyManager getBackupKeyManager()
+    {
+        return this.backupKeyManager;
+    }
+
+    /**
+     * Gets the local record of how recent backups went.
+     *
+     * @return The backup history
+     */
+    public BackupHistory getBackupHistory()
+    {
+        return this.backupHistory;
+    }
+
     /**
      * Gets an {@link ImmutableList immutable list} of the names of all available storage providers.
      *
@@ -335,12 +1255,20 @@ public class CloudStorageManager
     }
 
     /**
-     * Gets the currently active cloud provider.
+     * Gets the currently active cloud provider, creating it if this is the first time it's used.
      *
      * @return the active provider, or null if none is set
      */
-    public CloudStorageProvider getActiveProvider()
+    public synchronized CloudStorageProvider getActiveProvider()
     {
+        if (this.activeStorageProvider == null && this.activeStorageProviderName != null)
+        {
+            CloudStorageProvider cloudStorageProvider = this.storageProviderRegistry.getProviderInstance(this.activeStorageProviderName);
+
+            if (cloudStorageProvider != null)
+                this.activeStorageProvider = this.wrapWithLocalCache(cloudStorageProvider);
+        }
+
         return this.activeStorageProvider;
     }
 
@@ -350,18 +1278,17 @@ public class CloudStorageManager
      * @param providerName the name of the provider to activate (case-insensitive)
      * @throws IllegalArgumentException if the provider name is not registered
      */
-    public void setActiveProvider(String providerName)
+    public synchronized void setActiveProvider(String providerName)
     {
-        CloudStorageProvider cloudStorageProvider = this.storageProviderRegistry.getProviderInstance(providerName);
-        if (cloudStorageProvider != null)
+        if (this.storageProviderRegistry.isRegistered(providerName))
         {
-            this.activeStorageProvider = cloudStorageProvider;
+            // The options screen sets the provider every time it saves, so don't start over with the same provider
+            if (!providerName.equalsIgnoreCase(this.activeStorageProviderName))
+                this.switchActiveProvider(providerName);
 
             WorldbackMachineGameOptions gameOptions = WorldbackMachineMod.getInstance().getGameOptions();
             gameOptions.cloudStorageProvider = providerName.toLowerCase();
             gameOptions.save();
-
-            WorldbackMachineMod.LOGGER.info("The active cloud provider has been switched to '{}'", cloudStorageProvider.getProviderName());
         }
         else
         {
@@ -379,4 +1306,31 @@ public class CloudStorageManager
                     providerName, availableProvidersString));
         }
     }
+
+    private void switchActiveProvider(String providerName)
+    {
+        CloudStorageProvider cloudStorageProvider = Objects.requireNonNull(this.storageProviderRegistry.getProviderInstance(providerName));
+
+        this.activeStorageProvider = this.wrapWithLocalCache(cloudStorageProvider);
+        this.activeStorageProviderName = providerName.toLowerCase();
+
+        // The new provider gets its own attempt at signing in with its stored credentials
+        synchronized (this.authenticationLock)
+        {
+            this.nextAuthenticationNanos = System.nanoTime();
+            this.failedAuthentications = 0;
+        }
+
+        WorldbackMachineMod.LOGGER.info("The active cloud provider has been switched to '{}'", cloudStorageProvider.getProviderName());
+    }
+
+    /**
+     * The backups of a tier waiting to be uploaded, oldest first. Only the job at the head of the queue is ever uploaded or retried.
+     */
+    private static class UploadQueue
+    {
+        private final List<BackupJob> backupJobs = Lists.newArrayList();
+        private @Nullable BackupJob runningJob;
+        private @Nullable ScheduledFuture<?> scheduledRun;
+    }
 }
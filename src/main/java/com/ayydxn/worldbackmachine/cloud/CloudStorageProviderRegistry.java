@@ -2,12 +2,16 @@ package com.ayydxn.worldbackmachine.cloud;
 
 import com.ayydxn.worldbackmachine.WorldbackMachineMod;
 import com.ayydxn.worldbackmachine.api.WorldbackMachineApi;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.Maps;
 import org.jspecify.annotations.Nullable;
 
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * The registry for all cloud storage providers that are available.
@@ -17,11 +21,15 @@ import java.util.Set;
  * <p>
  * Provider names must be unique and are case-insensitive.
  * When registering a provider, the name will be converted to lowercase automatically.
+ * <p>
+ * Providers are best registered as factories, which aren't called until the provider is first used. This keeps providers' classes,
+ * and the client libraries they depend on, from being loaded while the game is starting. Such providers can declare their
+ * {@link CloudStorageCapability capabilities} up front as well, so they can be looked up without creating the provider.
  *
  * <h2>Usage Example:</h2>
  * <pre>{@code
- * // Register a provider
- * registry.register("dropbox", new DropboxStorageProvider());
+ * // Register a provider, which isn't created until it's first used
+ * registry.register("dropbox", "Dropbox", EnumSet.of(CloudStorageCapability.RANGE_READS), DropboxStorageProvider::new, "example");
  *
  * // Check if provider exists
  * if (registry.isRegistered("dropbox")) {
@@ -38,19 +46,27 @@ import java.util.Set;
  */
 public class CloudStorageProviderRegistry
 {
-    // Name of cloud provider -> Instance of the cloud provider
-    private final Map<String, CloudStorageProvider> cloudStorageProviders;
+    // Name of cloud provider -> Instance of the cloud provider, created the first time it's needed
+    private final Map<String, Supplier<CloudStorageProvider>> cloudStorageProviders;
+
+    // Name of cloud provider -> The name it's shown to players with
+    private final Map<String, String> cloudStorageProviderDisplayNames;
 
     // Name of cloud provider -> Mod ID of the mod that they were registered from
     private final Map<String, String> cloudStorageProviderSourceMods;
 
+    // Name of cloud provider -> The capabilities it declared when it was registered, if it declared any
+    private final Map<String, Set<CloudStorageCapability>> cloudStorageProviderCapabilities;
+
     // Whether the registry is accepting new providers
     private boolean isLocked = false;
 
     public CloudStorageProviderRegistry()
     {
         this.cloudStorageProviders = Maps.newHashMap();
+        this.cloudStorageProviderDisplayNames = Maps.newHashMap();
         this.cloudStorageProviderSourceMods = Maps.newHashMap();
+        this.cloudStorageProviderCapabilities = Maps.newHashMap();
     }
 
     /**
@@ -68,6 +84,52 @@ public class CloudStorageProviderRegistry
      * @return The current instance of the registry for method chaining
      */
     public CloudStorageProviderRegistry register(String name, CloudStorageProvider instance, String modID)
+    {
+        if (instance == null)
+            throw new IllegalArgumentException("Storage provider cannot be registered with a null instance!");
+
+        return this.register(name, instance.getProviderName(), instance.getCapabilities(), () -> instance, modID);
+    }
+
+    /**
+     * Registers a cloud storage provider which isn't created until it's first used.
+     * <p>
+     * Provider names are converted to lowercase for consistency.
+     * Registering providers is only allowed while the registry isn't locked.
+     *
+     * @param name        The unique name for this storage provider
+     * @param displayName The name the provider is shown to players with, which should match its {@link CloudStorageProvider#getProviderName()}
+     * @param factory     Creates the provider's instance. It's called at most once, from whichever thread first needs the provider
+     * @param modID       The ID of the mod registering this provider
+     *
+     * @throws IllegalArgumentException If the name is null, empty, or already registered
+     * @throws IllegalStateException    If registry is locked
+     * @return The current instance of the registry for method chaining
+     */
+    public CloudStorageProviderRegistry register(String name, String displayName, Supplier<? extends CloudStorageProvider> factory, String modID)
+    {
+        return this.register(name, displayName, null, factory, modID);
+    }
+
+    /**
+     * Registers a cloud storage provider which isn't created until it's first used, along with the capabilities it has.
+     * <p>
+     * Provider names are converted to lowercase for consistency.
+     * Registering providers is only allowed while the registry isn't locked.
+     *
+     * @param name         The unique name for this storage provider
+     * @param displayName  The name the provider is shown to players with, which should match its {@link CloudStorageProvider#getProviderName()}
+     * @param capabilities The provider's capabilities, which should match its {@link CloudStorageProvider#getCapabilities()}, or null to
+     *                     ask the provider itself once it's been created
+     * @param factory      Creates the provider's instance. It's called at most once, from whichever thread first needs the provider
+     * @param modID        The ID of the mod registering this provider
+     *
+     * @throws IllegalArgumentException If the name is null, empty, or already registered
+     * @throws IllegalStateException    If registry is locked
+     * @return The current instance of the registry for method chaining
+     */
+    public CloudStorageProviderRegistry register(String name, String displayName, @Nullable Set<CloudStorageCapability> capabilities,
+                                                 Supplier<? extends CloudStorageProvider> factory, String modID)
     {
         if (this.isLocked)
             throw new IllegalStateException("The registry is locked and not accepting new storage providers! This must be done during mod initialization.");
@@ -75,12 +137,10 @@ public class CloudStorageProviderRegistry
         if (name == null || name.trim().isBlank())
             throw new IllegalArgumentException("Storage provider names cannot be empty or null!");
 
-        if (instance == null)
-            throw new IllegalArgumentException("Storage provider cannot be registered with a null instance!");
+        if (factory == null)
+            throw new IllegalArgumentException("Storage provider cannot be registered with a null factory!");
 
-        String normalizedProviderName = name.toLowerCase()
-                .replace(" ", "_")
-                .trim();
+        String normalizedProviderName = this.normalizeProviderName(name);
 
         if (this.cloudStorageProviders.containsKey(normalizedProviderName))
         {
@@ -89,9 +149,18 @@ public class CloudStorageProviderRegistry
             throw new IllegalArgumentException(String.format("Provider '%s' was already registered by mod '%s'!", normalizedProviderName, providerSourceMod));
         }
 
-        this.cloudStorageProviders.put(normalizedProviderName, instance);
+        this.cloudStorageProviders.put(normalizedProviderName, Suppliers.memoize(() -> this.createProvider(normalizedProviderName, factory)));
+        this.cloudStorageProviderDisplayNames.put(normalizedProviderName, displayName);
         this.cloudStorageProviderSourceMods.put(normalizedProviderName, modID);
 
+        if (capabilities != null)
+        {
+            Set<CloudStorageCapability> declaredCapabilities = EnumSet.noneOf(CloudStorageCapability.class);
+            declaredCapabilities.addAll(capabilities);
+
+            this.cloudStorageProviderCapabilities.put(normalizedProviderName, Collections.unmodifiableSet(declaredCapabilities));
+        }
+
         WorldbackMachineMod.LOGGER.info("Mod '{}' has registered cloud provider '{}'", modID, normalizedProviderName);
 
         return this;
@@ -112,11 +181,26 @@ public class CloudStorageProviderRegistry
             WorldbackMachineMod.LOGGER.info("The cloud storage provider has been locked with {} registered {}:",
                     this.cloudStorageProviders.size(), this.cloudStorageProviders.size() == 1 ? "provider" : "providers");
 
-            for (CloudStorageProvider cloudStorageProvider : this.cloudStorageProviders.values())
-                WorldbackMachineMod.LOGGER.info("- {}", cloudStorageProvider.getProviderName());
+            for (String displayName : this.cloudStorageProviderDisplayNames.values())
+                WorldbackMachineMod.LOGGER.info("- {}", displayName);
         }
     }
 
+    private CloudStorageProvider createProvider(String name, Supplier<? extends CloudStorageProvider> factory)
+    {
+        long startTimeNanos = System.nanoTime();
+
+        CloudStorageProvider cloudStorageProvider = factory.get();
+        if (cloudStorageProvider == null)
+            throw new IllegalStateException(String.format("The factory of storage provider '%s' didn't create a provider!", name));
+
+        // This is time that would otherwise have been spent while the game was starting
+        WorldbackMachineMod.LOGGER.info("Created cloud storage provider '{}' on first use in {} ms (Capabilities: {})", cloudStorageProvider.getProviderName(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTimeNanos), cloudStorageProvider.getCapabilities());
+
+        return cloudStorageProvider;
+    }
+
     /**
      * Checks if a provider is registered.
      *
@@ -128,11 +212,11 @@ public class CloudStorageProviderRegistry
         if (name == null)
             return false;
 
-        return this.cloudStorageProviders.containsKey(name.toLowerCase().replace(" ", "_").trim());
+        return this.cloudStorageProviders.containsKey(this.normalizeProviderName(name));
     }
 
     /**
-     * Gets the instance of a registered storage provider of the given name.
+     * Gets the instance of a registered storage provider of the given name, creating it if this is the first time it's used.
      *
      * @param name The storage provider's name (case-insensitive)
      * @return The instance of the provider, or null if it's not registered
@@ -143,17 +227,64 @@ public class CloudStorageProviderRegistry
         if (name == null)
             return null;
 
-        return this.cloudStorageProviders.get(name.toLowerCase().replace(" ", "_").trim());
+        Supplier<CloudStorageProvider> cloudStorageProvider = this.cloudStorageProviders.get(this.normalizeProviderName(name));
+
+        return cloudStorageProvider != null ? cloudStorageProvider.get() : null;
+    }
+
+    /**
+     * Gets the name a registered storage provider is shown to players with, without creating the provider.
+     *
+     * @param name The storage provider's name (case-insensitive)
+     * @return The provider's display name, or null if it's not registered
+     */
+    @Nullable
+    public String getProviderDisplayName(String name)
+    {
+        if (name == null)
+            return null;
+
+        return this.cloudStorageProviderDisplayNames.get(this.normalizeProviderName(name));
+    }
+
+    /**
+     * Gets the {@link CloudStorageCapability capabilities} of a registered storage provider.
+     * <p>
+     * If the provider declared its capabilities when it was registered, it isn't created. Otherwise, it's created so it can be asked for them.
+     *
+     * @param name The storage provider's name (case-insensitive)
+     * @return The provider's capabilities, or null if it's not registered
+     */
+    @Nullable
+    public Set<CloudStorageCapability> getProviderCapabilities(String name)
+    {
+        if (name == null)
+            return null;
+
+        Set<CloudStorageCapability> declaredCapabilities = this.cloudStorageProviderCapabilities.get(this.normalizeProviderName(name));
+        if (declaredCapabilities != null)
+            return declaredCapabilities;
+
+        CloudStorageProvider cloudStorageProvider = this.getProviderInstance(name);
+
+        return cloudStorageProvider != null ? Collections.unmodifiableSet(cloudStorageProvider.getCapabilities()) : null;
     }
 
     /**
      * Gets an unmodifiable view of all providers.
+     * <p>
+     * This creates every provider which hasn't been used yet, so prefer {@link #getProviderDisplayName(String)} when only their names are needed.
      *
      * @return An unmodifiable map of provider names to their instances
      */
     public Map<String, CloudStorageProvider> getAllProviders()
     {
-        return Collections.unmodifiableMap(this.cloudStorageProviders);
+        Map<String, CloudStorageProvider> allProviders = Maps.newHashMap();
+
+        for (Map.Entry<String, Supplier<CloudStorageProvider>> cloudStorageProvider : this.cloudStorageProviders.entrySet())
+            allProviders.put(cloudStorageProvider.getKey(), cloudStorageProvider.getValue().get());
+
+        return Collections.unmodifiableMap(allProviders);
     }
 
     /**
@@ -177,7 +308,7 @@ public class CloudStorageProviderRegistry
         if (name == null)
             return null;
 
-        return this.cloudStorageProviderSourceMods.get(name.toLowerCase().replace(" ", "_").trim());
+        return this.cloudStorageProviderSourceMods.get(this.normalizeProviderName(name));
     }
 
     /**
@@ -199,4 +330,11 @@ public class CloudStorageProviderRegistry
     {
         return this.isLocked;
     }
+
+    private String normalizeProviderName(String name)
+    {
+        return name.toLowerCase()
+                .replace(" ", "_")
+                .trim();
+    }
 }
@@ -1,12 +1,24 @@
 package com.ayydxn.worldbackmachine.cloud.google;
 
 import com.ayydxn.worldbackmachine.WorldbackMachineMod;
+import com.ayydxn.worldbackmachine.backup.BackupNames;
+import com.ayydxn.worldbackmachine.cloud.CloudFileMetadata;
+import com.ayydxn.worldbackmachine.cloud.CloudStorageCapability;
 import com.ayydxn.worldbackmachine.cloud.CloudStorageProvider;
+import com.ayydxn.worldbackmachine.cloud.http.CredentialRefresher;
+import com.ayydxn.worldbackmachine.cloud.http.SharedHttpClient;
+import com.ayydxn.worldbackmachine.cloud.request.AdaptiveConcurrencyLimiter;
+import com.ayydxn.worldbackmachine.cloud.request.RequestExecutor;
 import com.ayydxn.worldbackmachine.utils.WorldbackMachineConstants;
 import com.google.api.client.auth.oauth2.Credential;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpHeaders;
 import com.google.api.client.http.FileContent;
-import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.HttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.gson.GsonFactory;
 import com.google.api.client.util.Lists;
@@ -14,62 +26,88 @@ import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.DriveScopes;
 import com.google.api.services.drive.model.File;
 import com.google.api.services.drive.model.FileList;
+import com.google.common.collect.Iterables;
 import net.fabricmc.loader.api.FabricLoader;
 import org.apache.commons.io.FileUtils;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Path;
-import java.security.GeneralSecurityException;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 /**
  * @author Ayydxn
  */
 public class GoogleDriveProvider implements CloudStorageProvider
 {
-    private final List<String> scopes = Collections.singletonList(DriveScopes.DRIVE_FILE);
-    private final Path credentialsFile = FabricLoader.getInstance().getModContainer(WorldbackMachineMod.MOD_ID)
-            .map(modContainer -> modContainer.findPath("auth/google/credentials.json").orElseThrow())
-            .orElseThrow();
+    private static final Set<CloudStorageCapability> CAPABILITIES = Collections.unmodifiableSet(EnumSet.of(CloudStorageCapability.STREAMING_DOWNLOADS,
+            CloudStorageCapability.RANGE_READS, CloudStorageCapability.SERVER_SIDE_COPY, CloudStorageCapability.METADATA_RENAME,
+            CloudStorageCapability.CHECKSUMS, CloudStorageCapability.CUSTOM_PROPERTIES, CloudStorageCapability.PARALLEL_STREAMS));
+
+    private static final String FILE_METADATA_FIELDS = "id, name, size, md5Checksum, appProperties";
+
+    // Drive rejects batches of more than 100 requests
+    private static final int MAX_BATCH_REQUESTS = 100;
 
+    // Every request to the API shares one executor, so they're all retried and throttled together
+    private final RequestExecutor requestExecutor = new RequestExecutor(new AdaptiveConcurrencyLimiter(4, 1, 16),
+            new GoogleRequestErrorClassifier(this::onCredentialsRejected));
+
+    private final List<String> scopes = Collections.singletonList(DriveScopes.DRIVE_FILE);
     private Drive driveClientService;
     private String saveFolderID;
+    private CredentialRefresher credentialRefresher;
+    private volatile boolean hasRejectedCredentials;
 
     @Override
     public boolean authenticate() throws IOException
     {
         WorldbackMachineMod.LOGGER.info("Authenticating with the Google Drive API...");
 
-        try
-        {
-            NetHttpTransport httpTransport = GoogleNetHttpTransport.newTrustedTransport();
-            JsonFactory jsonFactory = GsonFactory.getDefaultInstance();
-            Credential credentials = GoogleDriveUtils.getCredentials(httpTransport, jsonFactory, credentialsFile, this.scopes);
+        // Every provider shares one pooled HTTP/2 transport, rather than each sign-in opening connections of its own
+        HttpTransport httpTransport = SharedHttpClient.getHttpTransport();
+        JsonFactory jsonFactory = GsonFactory.getDefaultInstance();
+        Credential credentials = GoogleDriveUtils.getCredentials(httpTransport, jsonFactory, this.getCredentialsFile(), this.scopes);
 
-            this.driveClientService = new Drive.Builder(httpTransport, jsonFactory, credentials)
-                    .setApplicationName("Worldback Machine")
-                    .build();
+        this.driveClientService = new Drive.Builder(httpTransport, jsonFactory, credentials)
+                .setApplicationName("Worldback Machine")
+                .build();
 
-            this.saveFolderID = this.getOrCreateFolder(WorldbackMachineConstants.SAVE_FOLDER_NAME);
+        this.saveFolderID = this.getOrCreateFolder(WorldbackMachineConstants.SAVE_FOLDER_NAME);
 
-            WorldbackMachineMod.LOGGER.info("Successfully authenticated with the Google Drive API!");
+        if (this.credentialRefresher != null)
+            this.credentialRefresher.stop();
 
-            return true;
-        }
-        catch (GeneralSecurityException exception)
-        {
-            WorldbackMachineMod.LOGGER.error(exception);
+        this.credentialRefresher = new CredentialRefresher(credentials, this.getProviderName());
+        this.credentialRefresher.start();
 
-            return false;
-        }
+        this.hasRejectedCredentials = false;
+
+        WorldbackMachineMod.LOGGER.info("Successfully authenticated with the Google Drive API!");
+
+        return true;
     }
 
     @Override
     public void uploadFile(java.io.File file, String name) throws IOException
+    {
+        this.uploadFile(file, name, Collections.emptyMap());
+    }
+
+    @Override
+    public CloudFileMetadata uploadFile(java.io.File file, String name, Map<String, String> properties) throws IOException
     {
         if (!this.isAuthenticated())
             throw new IOException("Tried to upload a file despite being unauthenticated!");
@@ -79,25 +117,46 @@ public class GoogleDriveProvider implements CloudStorageProvider
         File fileMetadata = new File()
                 .setName(name);
 
-        // (Ayydxn) Despite the entire point of the mod, maybe not always it'll be a ZIP file?
-        FileContent fileContent = new FileContent("application/zip", file);
+        if (!properties.isEmpty())
+            fileMetadata.setAppProperties(properties);
+
+        // Backups keep their .zip names whatever their format, so the type Drive shows comes from what the properties say they hold
+        FileContent fileContent = new FileContent(BackupNames.getContentType(properties), file);
+        File uploadedFile;
 
         if (fileID != null)
         {
-            this.driveClientService.files()
+            uploadedFile = this.requestExecutor.executeTransfer(String.format("Upload of '%s'", name), () -> this.driveClientService.files()
                     .update(fileID, fileMetadata, fileContent)
                     .setAddParents(this.saveFolderID)
-                    .execute();
+                    .setFields(FILE_METADATA_FIELDS)
+                    .execute());
         }
         else
         {
-            fileMetadata.setParents(Collections.singletonList(this.saveFolderID));
-
-            this.driveClientService.files()
-                    .create(fileMetadata, fileContent)
-                    .setFields("id, name")
-                    .execute();
+            AtomicBoolean hasAttempted = new AtomicBoolean();
+
+            uploadedFile = this.requestExecutor.executeTransfer(String.format("Upload of '%s'", name), () ->
+            {
+                // Creating a file isn't idempotent, so if an earlier attempt did create it before failing, it's updated rather than created twice
+                String createdFileID = hasAttempted.getAndSet(true) ? this.queryFileByName(name, "id").map(File::getId).orElse(null) : null;
+
+                if (createdFileID != null)
+                {
+                    return this.driveClientService.files()
+                            .update(createdFileID, fileMetadata, fileContent)
+                            .setFields(FILE_METADATA_FIELDS)
+                            .execute();
+                }
+
+                return this.driveClientService.files()
+                        .create(fileMetadata.clone().setParents(Collections.singletonList(this.saveFolderID)), fileContent)
+                        .setFields(FILE_METADATA_FIELDS)
+                        .execute();
+            });
         }
+
+        return this.toCloudFileMetadata(uploadedFile);
     }
 
     @Override
@@ -110,12 +169,58 @@ public class GoogleDriveProvider implements CloudStorageProvider
         if (fileID == null)
             throw new IllegalArgumentException(String.format("Tried to download the file '%s' which doesn't exist!", name));
 
-        try (OutputStream outputStream = new FileOutputStream(destinationPath))
+        this.requestExecutor.executeTransfer(String.format("Download of '%s'", name), () ->
         {
-            this.driveClientService.files()
-                    .get(fileID)
-                    .executeMediaAndDownloadTo(outputStream);
-        }
+            // Start over from the beginning of the file on every attempt
+            try (OutputStream outputStream = new FileOutputStream(destinationPath))
+            {
+                this.driveClientService.files()
+                        .get(fileID)
+                        .executeMediaAndDownloadTo(outputStream);
+            }
+
+            return null;
+        });
+    }
+
+    @Override
+    public InputStream openDownloadStream(String name) throws IOException
+    {
+        if (!this.isAuthenticated())
+            throw new IOException("Tried to download a file despite being unauthenticated!");
+
+        String fileID = this.getFileIDByName(name);
+        if (fileID == null)
+            throw new IOException(String.format("Tried to download the file '%s' which doesn't exist!", name));
+
+        return this.requestExecutor.executeTransfer(String.format("Download of '%s'", name), () -> this.driveClientService.files()
+                .get(fileID)
+                .executeMediaAsInputStream());
+    }
+
+    @Override
+    public byte[] readRange(String name, long offset, int length) throws IOException
+    {
+        if (!this.isAuthenticated())
+            throw new IOException("Tried to read from a file despite being unauthenticated!");
+
+        String fileID = this.getFileIDByName(name);
+        if (fileID == null)
+            throw new IOException(String.format("Tried to read from the file '%s' which doesn't exist!", name));
+
+        if (length <= 0)
+            return new byte[0];
+
+        return this.requestExecutor.execute(String.format("Ranged read of '%s'", name), () ->
+        {
+            Drive.Files.Get getRequest = this.driveClientService.files().get(fileID);
+            getRequest.getRequestHeaders().setRange(String.format("bytes=%d-%d", offset, offset + length - 1));
+
+            try (InputStream inputStream = getRequest.executeMediaAsInputStream())
+            {
+                return inputStream.readNBytes(length);
+            }
+        });
     }
 
     @Override
@@ -127,43 +232,187 @@ public class GoogleDriveProvider implements CloudStorageProvider
         String fileID = this.getFileIDByName(name);
         if (fileID != null)
         {
-            this.driveClientService.files()
+            this.requestExecutor.execute(String.format("Deletion of '%s'", name), () -> this.driveClientService.files()
                     .delete(fileID)
-                    .execute();
+                    .execute());
         }
     }
 
     @Override
-    public @NotNull List<String> listFiles() throws IOException
+    public void deleteFiles(Collection<String> names) throws IOException
     {
         if (!this.isAuthenticated())
-            throw new IOException("Tried to list all files despite being unauthenticated!");
+            throw new IOException("Tried to delete files despite being unauthenticated!");
 
-        List<String> fileNames = Lists.newArrayList();
-        String query = "'" + this.saveFolderID + "' in parents and trashed=false";
+        if (names.isEmpty())
+            return;
 
-        FileList queryResult = this.driveClientService.files()
-                .list()
-                .setQ(query)
-                .setSpaces("drive")
-                .setFields("files(id, name)")
-                .execute();
+        // One listing of the folder finds every file, rather than looking each of them up on its own
+        List<String> fileIDs = Lists.newArrayList();
 
-        List<File> files = queryResult.getFiles();
-        if (files != null)
+        for (File file : this.listFolderFiles("id, name"))
         {
-            for (File file : files)
-                fileNames.add(file.getName());
+            if (names.contains(file.getName()))
+                fileIDs.add(file.getId());
         }
 
+        for (List<String> batchFileIDs : Iterables.partition(fileIDs, MAX_BATCH_REQUESTS))
+        {
+            this.requestExecutor.execute(String.format("Deletion of %d files", batchFileIDs.size()), () ->
+            {
+                BatchRequest batchRequest = this.driveClientService.batch();
+                List<GoogleJsonError> failures = Lists.newArrayList();
+
+                JsonBatchCallback<Void> deletionCallback = new JsonBatchCallback<>()
+                {
+                    @Override
+                    public void onSuccess(Void result, HttpHeaders responseHeaders)
+                    {
+                    }
+
+                    @Override
+                    public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders)
+                    {
+                        // Files deleted by an earlier attempt of this batch are already gone
+                        if (error.getCode() != 404)
+                            failures.add(error);
+                    }
+                };
+
+                for (String fileID : batchFileIDs)
+                    this.driveClientService.files().delete(fileID).queue(batchRequest, deletionCallback);
+
+                batchRequest.execute();
+
+                if (!failures.isEmpty())
+                    throw getBatchFailure(String.format("Failed to delete %d files", failures.size()), failures);
+
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Turns the errors of the requests of a batch which failed into a single exception, which carries the status of one of them so the batch
+     * is retried or given up on the same way a single request would be.
+     *
+     * @param message  What failed
+     * @param failures The errors of the requests which failed
+     * @return The exception to throw for the batch
+     */
+    private static GoogleJsonResponseException getBatchFailure(String message, List<GoogleJsonError> failures)
+    {
+        // Retrying the batch can't help a request that failed for good, so its error wins over any that would have been retried
+        GoogleJsonError batchError = failures.stream()
+                .filter(failure -> !GoogleRequestErrorClassifier.isRetryable(failure))
+                .findFirst()
+                .orElse(failures.getFirst());
+
+        String failureMessages = failures.stream()
+                .map(failure -> String.format("%d %s", failure.getCode(), failure.getMessage()))
+                .collect(Collectors.joining(", "));
+
+        HttpResponseException.Builder responseBuilder = new HttpResponseException.Builder(batchError.getCode(), batchError.getMessage(), new HttpHeaders())
+                .setMessage(String.format("%s: [%s]", message, failureMessages));
+
+        return new GoogleJsonResponseException(responseBuilder, batchError);
+    }
+
+    @Override
+    public void copyFile(String sourceName, String destinationName) throws IOException
+    {
+        if (!this.isAuthenticated())
+            throw new IOException("Tried to copy a file despite being unauthenticated!");
+
+        String sourceFileID = this.getFileIDByName(sourceName);
+        if (sourceFileID == null)
+            throw new IOException(String.format("Tried to copy the file '%s' which doesn't exist!", sourceName));
+
+        // Drive allows several files to share a name, so the existing one has to be removed for the copy to replace it
+        this.deleteFile(destinationName);
+
+        File copyMetadata = new File()
+                .setName(destinationName)
+                .setParents(Collections.singletonList(this.saveFolderID));
+
+        AtomicBoolean hasAttempted = new AtomicBoolean();
+
+        this.requestExecutor.execute(String.format("Copy of '%s'", sourceName), () ->
+        {
+            // The destination was deleted beforehand, so if it exists now, an earlier attempt made the copy before failing
+            if (hasAttempted.getAndSet(true))
+            {
+                Optional<File> copiedFile = this.queryFileByName(destinationName, "id");
+                if (copiedFile.isPresent())
+                    return copiedFile.get();
+            }
+
+            return this.driveClientService.files()
+                    .copy(sourceFileID, copyMetadata)
+                    .setFields("id")
+                    .execute();
+        });
+    }
+
+    @Override
+    public void renameFile(String sourceName, String destinationName) throws IOException
+    {
+        if (!this.isAuthenticated())
+            throw new IOException("Tried to rename a file despite being unauthenticated!");
+
+        String sourceFileID = this.getFileIDByName(sourceName);
+        if (sourceFileID == null)
+            throw new IOException(String.format("Tried to rename the file '%s' which doesn't exist!", sourceName));
+
+        this.deleteFile(destinationName);
+
+        this.requestExecutor.execute(String.format("Rename of '%s'", sourceName), () -> this.driveClientService.files()
+                .update(sourceFileID, new File().setName(destinationName))
+                .setFields("id")
+                .execute());
+    }
+
+    @Override
+    public @NotNull List<String> listFiles() throws IOException
+    {
+        if (!this.isAuthenticated())
+            throw new IOException("Tried to list all files despite being unauthenticated!");
+
+        List<String> fileNames = Lists.newArrayList();
+
+        for (File file : this.listFolderFiles("id, name"))
+            fileNames.add(file.getName());
+
         return fileNames;
     }
 
+    @Override
+    public CloudFileMetadata getFileMetadata(String name) throws IOException
+    {
+        if (!this.isAuthenticated())
+            throw new IOException("Tried to get the metadata of a file despite being unauthenticated!");
+
+        File file = this.findFileByName(name, FILE_METADATA_FIELDS);
+
+        return file != null ? this.toCloudFileMetadata(file) : null;
+    }
+
+    @Override
+    public Set<CloudStorageCapability> getCapabilities()
+    {
+        return CAPABILITIES;
+    }
+
     @Override
     public void signOut()
     {
         this.driveClientService = null;
 
+        if (this.credentialRefresher != null)
+            this.credentialRefresher.stop();
+
+        this.credentialRefresher = null;
+
         try
         {
             FileUtils.deleteDirectory(new java.io.File(WorldbackMachineConstants.TOKENS_DIRECTORY + "/google"));
@@ -177,7 +426,18 @@ public class GoogleDriveProvider implements CloudStorageProvider
     @Override
     public boolean isAuthenticated()
     {
-        return this.driveClientService != null;
+        return this.driveClientService != null && !this.hasRejectedCredentials;
+    }
+
+    private void onCredentialsRejected()
+    {
+        if (this.hasRejectedCredentials)
+            return;
+
+        // The stored tokens are kept, as signing in again with them may still work, but nothing new is sent with them until then
+        this.hasRejectedCredentials = true;
+
+        WorldbackMachineMod.LOGGER.warn("Google Drive rejected the stored credentials. Use /worldback-machine authenticate to sign in again");
     }
 
     @Override
@@ -186,6 +446,14 @@ public class GoogleDriveProvider implements CloudStorageProvider
         return "Google Drive";
     }
 
+    private Path getCredentialsFile() throws IOException
+    {
+        // Only looked up when signing in, rather than whenever the provider is created
+        return FabricLoader.getInstance().getModContainer(WorldbackMachineMod.MOD_ID)
+                .flatMap(modContainer -> modContainer.findPath("auth/google/credentials.json"))
+                .orElseThrow(() -> new FileNotFoundException("The mod's Google Drive API credentials are missing!"));
+    }
+
     private String getOrCreateFolder(String folderName) throws IOException
     {
         // Check if the folder already exists
@@ -193,11 +461,11 @@ public class GoogleDriveProvider implements CloudStorageProvider
                 "' and mimeType='application/vnd.google-apps.folder'" +
                 " and trashed=false";
 
-        FileList result = this.driveClientService.files().list()
+        FileList result = this.requestExecutor.execute("Folder lookup", () -> this.driveClientService.files().list()
                 .setQ(query)
                 .setSpaces("drive")
                 .setFields("files(id, name)")
-                .execute();
+                .execute());
 
         List<File> files = result.getFiles();
         if (files != null && !files.isEmpty())
@@ -208,27 +476,99 @@ public class GoogleDriveProvider implements CloudStorageProvider
         folderMetadata.setName(folderName);
         folderMetadata.setMimeType("application/vnd.google-apps.folder");
 
-        File folder = this.driveClientService.files().create(folderMetadata)
-                .setFields("id")
-                .execute();
+        AtomicBoolean hasAttempted = new AtomicBoolean();
+
+        File folder = this.requestExecutor.execute("Folder creation", () ->
+        {
+            // Like uploads, creating the folder again after an attempt that did create it would leave two folders of the same name
+            if (hasAttempted.getAndSet(true))
+            {
+                List<File> createdFolders = this.driveClientService.files().list()
+                        .setQ(query)
+                        .setSpaces("drive")
+                        .setFields("files(id, name)")
+                        .execute()
+                        .getFiles();
+
+                if (createdFolders != null && !createdFolders.isEmpty())
+                    return createdFolders.getFirst();
+            }
+
+            return this.driveClientService.files().create(folderMetadata)
+                    .setFields("id")
+                    .execute();
+        });
 
         return folder.getId();
     }
 
+    private List<File> listFolderFiles(String fields) throws IOException
+    {
+        List<File> folderFiles = Lists.newArrayList();
+        String query = "'" + this.saveFolderID + "' in parents and trashed=false";
+
+        String pageToken = null;
+
+        // Every snapshot is its own file, so the folder can easily hold more files than a single page returns
+        do
+        {
+            String currentPageToken = pageToken;
+            FileList queryResult = this.requestExecutor.execute("Listing of files", () -> this.driveClientService.files()
+                    .list()
+                    .setQ(query)
+                    .setSpaces("drive")
+                    .setPageSize(1000)
+                    .setPageToken(currentPageToken)
+                    .setFields("nextPageToken, files(" + fields + ")")
+                    .execute());
+
+            List<File> files = queryResult.getFiles();
+            if (files != null)
+                folderFiles.addAll(files);
+
+            pageToken = queryResult.getNextPageToken();
+        }
+        while (pageToken != null);
+
+        return folderFiles;
+    }
+
     private String getFileIDByName(String name) throws IOException
+    {
+        File file = this.findFileByName(name, "id");
+
+        return file != null ? file.getId() : null;
+    }
+
+    private File findFileByName(String name, String fields) throws IOException
+    {
+        return this.requestExecutor.execute(String.format("Lookup of '%s'", name), () -> this.queryFileByName(name, fields)).orElse(null);
+    }
+
+    /**
+     * Looks up a file in the save folder by its name with a single request, which isn't retried on its own. Requests which aren't
+     * idempotent use this to check whether an earlier attempt of theirs took effect before they're retried.
+     */
+    private Optional<File> queryFileByName(String name, String fields) throws IOException
     {
         String query = "name='" + name + "'" +
                 " and '" + this.saveFolderID + "'" +
                 " in parents and trashed=false";
 
-        FileList queryResult = this.driveClientService.files().list()
+        List<File> files = this.driveClientService.files().list()
                 .setQ(query)
                 .setSpaces("drive")
-                .setFields("files(id)")
-                .execute();
+                .setFields("files(" + fields + ")")
+                .execute()
+                .getFiles();
+
+        return (files != null && !files.isEmpty()) ? Optional.of(files.getFirst()) : Optional.empty();
+    }
 
-        List<File> files = queryResult.getFiles();
+    private CloudFileMetadata toCloudFileMetadata(File file)
+    {
+        long fileSize = file.getSize() != null ? file.getSize() : -1L;
 
-        return (files != null && !files.isEmpty()) ? files.getFirst().getId() : null;
+        return new CloudFileMetadata(file.getName(), fileSize, file.getMd5Checksum(), file.getAppProperties());
     }
 }
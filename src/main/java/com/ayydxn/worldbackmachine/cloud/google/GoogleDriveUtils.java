@@ -7,7 +7,7 @@ import com.google.api.client.extensions.java6.auth.oauth2.AuthorizationCodeInsta
 import com.google.api.client.extensions.jetty.auth.oauth2.LocalServerReceiver;
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
 import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
-import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.http.HttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.util.store.FileDataStoreFactory;
 import net.minecraft.util.Util;
@@ -34,7 +34,7 @@ public class GoogleDriveUtils
      * @throws java.io.IOException If the credentials.json file cannot be found.
      * @return An authorized Credential object.
      */
-    public static Credential getCredentials(NetHttpTransport httpTransport, JsonFactory jsonFactory, Path credentialsFile, List<String> scopes) throws IOException
+    public static Credential getCredentials(HttpTransport httpTransport, JsonFactory jsonFactory, Path credentialsFile, List<String> scopes) throws IOException
     {
         try (InputStream credentialsFileInputStream = Files.newInputStream(credentialsFile))
         {
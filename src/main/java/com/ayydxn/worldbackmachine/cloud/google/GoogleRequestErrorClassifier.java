@@ -0,0 +1,146 @@
+package com.ayydxn.worldbackmachine.cloud.google;
+
+import com.ayydxn.worldbackmachine.cloud.request.RequestErrorClassifier;
+import com.ayydxn.worldbackmachine.cloud.request.RetryDecision;
+import com.google.api.client.auth.oauth2.TokenResponseException;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpResponseException;
+import org.jspecify.annotations.Nullable;
+
+import javax.net.ssl.SSLException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides which errors returned by the Google Drive API are worth retrying.
+ * <p>
+ * Drive reports throttling as either a 429 or a 403 with a rate limit reason, and temporary outages as 5xx errors.
+ * Network failures such as timeouts, refused or reset connections and failed TLS handshakes are retried as well, but no other errors are,
+ * as an error such as a missing local file or a permission being denied fails the same way every time. Credentials Drive no longer accepts, such as ones that were revoked, are never retried,
+ * and are reported so the provider stops treating itself as signed in.
+ *
+ * @author Ayydxn
+ */
+public class GoogleRequestErrorClassifier implements RequestErrorClassifier
+{
+    private static final Set<String> RATE_LIMIT_REASONS = Set.of("rateLimitExceeded", "userRateLimitExceeded");
+
+    // The failures of the connection itself, rather than of the request made over it
+    private static final List<Class<? extends IOException>> NETWORK_EXCEPTION_TYPES = List.of(SocketException.class, SocketTimeoutException.class,
+            HttpTimeoutException.class, UnknownHostException.class, SSLException.class, EOFException.class);
+
+    private final Runnable credentialsRejectedCallback;
+
+    /**
+     * @param credentialsRejectedCallback Called whenever a request fails because Drive rejected the credentials it was made with
+     */
+    public GoogleRequestErrorClassifier(Runnable credentialsRejectedCallback)
+    {
+        this.credentialsRejectedCallback = credentialsRejectedCallback;
+    }
+
+    @Override
+    public @Nullable RetryDecision classify(IOException exception)
+    {
+        if (!(exception instanceof HttpResponseException responseException))
+            return isNetworkFailure(exception) ? RetryDecision.transientFailure(null) : null;
+
+        int statusCode = responseException.getStatusCode();
+
+        // Refreshing a revoked or expired refresh token fails with invalid_grant, while requests made with a rejected access token get a 401
+        if (statusCode == 401 || (responseException instanceof TokenResponseException tokenResponseException &&
+                tokenResponseException.getDetails() != null && "invalid_grant".equals(tokenResponseException.getDetails().getError())))
+        {
+            this.credentialsRejectedCallback.run();
+
+            return null;
+        }
+
+        Duration retryAfter = this.getRetryAfter(responseException);
+
+        GoogleJsonError jsonError = responseException instanceof GoogleJsonResponseException jsonResponseException ? jsonResponseException.getDetails() : null;
+
+        if (isThrottled(statusCode, jsonError))
+            return RetryDecision.throttled(retryAfter);
+
+        if (statusCode >= 500)
+            return RetryDecision.transientFailure(retryAfter);
+
+        return null;
+    }
+
+    /**
+     * Checks whether an error Drive returned for a request is worth retrying, such as one returned for a single request of a batch.
+     *
+     * @param jsonError The error
+     * @return True if the request was throttled or hit a temporary outage, false otherwise
+     */
+    public static boolean isRetryable(GoogleJsonError jsonError)
+    {
+        return isThrottled(jsonError.getCode(), jsonError) || jsonError.getCode() >= 500;
+    }
+
+    private static boolean isThrottled(int statusCode, @Nullable GoogleJsonError jsonError)
+    {
+        if (statusCode == 429)
+            return true;
+
+        if (statusCode != 403 || jsonError == null || jsonError.getErrors() == null)
+            return false;
+
+        return jsonError.getErrors().stream()
+                .anyMatch(errorInfo -> RATE_LIMIT_REASONS.contains(errorInfo.getReason()));
+    }
+
+    private static boolean isNetworkFailure(IOException exception)
+    {
+        // The HTTP client often wraps the network failure that caused a request to fail in an exception of its own
+        for (Throwable cause = exception; cause != null; cause = cause.getCause())
+        {
+            Throwable failure = cause;
+
+            if (NETWORK_EXCEPTION_TYPES.stream().anyMatch(networkExceptionType -> networkExceptionType.isInstance(failure)))
+                return true;
+        }
+
+        return false;
+    }
+
+    private @Nullable Duration getRetryAfter(HttpResponseException responseException)
+    {
+        String retryAfter = responseException.getHeaders() != null ? responseException.getHeaders().getRetryAfter() : null;
+        if (retryAfter == null || retryAfter.isBlank())
+            return null;
+
+        // Retry-After is either a number of seconds or an HTTP date
+        try
+        {
+            return Duration.ofSeconds(Long.parseLong(retryAfter.trim()));
+        }
+        catch (NumberFormatException ignored)
+        {
+        }
+
+        try
+        {
+            Duration untilRetry = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+
+            return untilRetry.isNegative() ? Duration.ZERO : untilRetry;
+        }
+        catch (DateTimeParseException ignored)
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.ayydxn.worldbackmachine.cloud.http;
+
+import com.google.api.client.util.StreamingContent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pipe which turns a request body that can only be written to an {@link OutputStream} into an {@link InputStream}
+ * the JDK's HTTP client can read from as it sends the request.
+ * <p>
+ * Unlike {@link java.io.PipedInputStream}, either end may be used from any number of threads over its lifetime,
+ * which the HTTP client's pooled threads need. At most {@code maxChunks} chunks are buffered, so a slow connection
+ * holds back the writer instead of the whole body piling up in memory.
+ *
+ * @author Ayydxn
+ */
+class BodyPipe
+{
+    private static final byte[] END_OF_BODY = new byte[0];
+    private static final long ABORT_CHECK_INTERVAL_MILLIS = 250L;
+
+    private final BlockingQueue<byte[]> chunks;
+    private final int chunkSize;
+
+    private volatile IOException writeFailure;
+    private volatile boolean isAborted;
+
+    BodyPipe(int chunkSize, int maxChunks)
+    {
+        this.chunks = new ArrayBlockingQueue<>(maxChunks);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Gets the end of the pipe the body is written to. Closing it marks the end of the body.
+     *
+     * @return The writing end of the pipe
+     */
+    private OutputStream sink()
+    {
+        return new OutputStream()
+        {
+            private byte[] chunk = new byte[BodyPipe.this.chunkSize];
+            private int chunkLength;
+            private boolean isClosed;
+
+            @Override
+            public void write(int value) throws IOException
+            {
+                this.write(new byte[] { (byte) value }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException
+            {
+                while (length > 0)
+                {
+                    int copiedLength = Math.min(length, this.chunk.length - this.chunkLength);
+
+                    System.arraycopy(bytes, offset, this.chunk, this.chunkLength, copiedLength);
+
+                    this.chunkLength += copiedLength;
+                    offset += copiedLength;
+                    length -= copiedLength;
+
+                    if (this.chunkLength == this.chunk.length)
+                        this.flushChunk();
+                }
+            }
+
+            @Override
+            public void close() throws IOException
+            {
+                if (this.isClosed)
+                    return;
+
+                this.isClosed = true;
+
+                if (this.chunkLength > 0)
+                    this.flushChunk();
+
+                BodyPipe.this.put(END_OF_BODY);
+            }
+
+            private void flushChunk() throws IOException
+            {
+                BodyPipe.this.put(Arrays.copyOf(this.chunk, this.chunkLength));
+
+                this.chunkLength = 0;
+            }
+        };
+    }
+
+    /**
+     * Gets the end of the pipe the HTTP client reads the body from.
+     *
+     * @return The reading end of the pipe
+     */
+    InputStream source()
+    {
+        return new InputStream()
+        {
+            private byte[] chunk = new byte[0];
+            private int chunkPosition;
+            private boolean isFinished;
+
+            @Override
+            public int read() throws IOException
+            {
+                byte[] singleByte = new byte[1];
+
+                return this.read(singleByte, 0, 1) == -1 ? -1 : singleByte[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException
+            {
+                if (length == 0)
+                    return 0;
+
+                while (this.chunkPosition == this.chunk.length)
+                {
+                    if (this.isFinished)
+                        return -1;
+
+                    this.chunk = BodyPipe.this.take();
+                    this.chunkPosition = 0;
+
+                    if (this.chunk == END_OF_BODY)
+                    {
+                        this.isFinished = true;
+
+                        // Don't let a body that failed halfway through be sent as if it were complete
+                        if (BodyPipe.this.writeFailure != null)
+                            throw new IOException("Failed to write the request body", BodyPipe.this.writeFailure);
+                    }
+                }
+
+                int readLength = Math.min(length, this.chunk.length - this.chunkPosition);
+
+                System.arraycopy(this.chunk, this.chunkPosition, bytes, offset, readLength);
+                this.chunkPosition += readLength;
+
+                return readLength;
+            }
+        };
+    }
+
+    /**
+     * Writes a body into the pipe and marks its end. This blocks whenever the pipe is full, so it has to run on its own thread.
+     * <p>
+     * If writing the body fails, the reading end fails too instead of ending normally.
+     *
+     * @param streamingContent The body to write
+     */
+    void writeFrom(StreamingContent streamingContent)
+    {
+        OutputStream bodyOutputStream = this.sink();
+
+        try
+        {
+            streamingContent.writeTo(bodyOutputStream);
+        }
+        catch (IOException exception)
+        {
+            this.writeFailure = exception;
+        }
+        finally
+        {
+            try
+            {
+                bodyOutputStream.close();
+            }
+            catch (IOException exception)
+            {
+                // The request was aborted, so nothing is reading the body anymore
+            }
+        }
+    }
+
+    /**
+     * Stops the body from being written or read any further, once the HTTP client is done with the request.
+     */
+    void abort()
+    {
+        this.isAborted = true;
+        this.chunks.clear();
+    }
+
+    private void put(byte[] chunk) throws IOException
+    {
+        try
+        {
+            // Keep checking whether the request was given up on, otherwise the writer would wait forever for space that never frees up
+            while (!this.chunks.offer(chunk, ABORT_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS))
+            {
+                if (this.isAborted)
+                    throw new IOException("The request the body was being written for was aborted");
+            }
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while writing a request body");
+        }
+    }
+
+    private byte[] take() throws IOException
+    {
+        try
+        {
+            byte[] chunk;
+
+            while ((chunk = this.chunks.poll(ABORT_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) == null)
+            {
+                if (this.isAborted)
+                    throw new IOException("The request the body was being read for was aborted");
+            }
+
+            return chunk;
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while reading a request body");
+        }
+    }
+}
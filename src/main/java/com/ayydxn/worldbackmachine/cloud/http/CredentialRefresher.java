@@ -0,0 +1,125 @@
+package com.ayydxn.worldbackmachine.cloud.http;
+
+import com.ayydxn.worldbackmachine.WorldbackMachineMod;
+import com.google.api.client.auth.oauth2.Credential;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refreshes an OAuth 2.0 access token in the background shortly before it expires.
+ * <p>
+ * Without this, a token is only refreshed by the first request made after it expires, which then has to wait for an extra round trip
+ * to the provider's token endpoint before it can be sent. Refreshing ahead of time keeps that latency off of backups and restores.
+ *
+ * @author Ayydxn
+ */
+public class CredentialRefresher
+{
+    // Tokens are refreshed 5 minutes before they expire, and refreshes which fail are retried every minute until the token expires
+    // A token is never refreshed again within a minute of being issued, even one that doesn't last longer than the margin
+    private static final long REFRESH_MARGIN_SECONDS = TimeUnit.MINUTES.toSeconds(5L);
+    private static final long RETRY_DELAY_SECONDS = TimeUnit.MINUTES.toSeconds(1L);
+
+    private static final ScheduledExecutorService REFRESH_EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable ->
+    {
+        Thread refreshThread = new Thread(runnable, "WorldbackMachine-TokenRefresher");
+        refreshThread.setDaemon(true);
+
+        return refreshThread;
+    });
+
+    private final Credential credential;
+    private final String providerName;
+
+    private ScheduledFuture<?> scheduledRefresh;
+    private boolean isRunning;
+
+    public CredentialRefresher(Credential credential, String providerName)
+    {
+        this.credential = credential;
+        this.providerName = providerName;
+    }
+
+    /**
+     * Starts keeping the credential's access token fresh.
+     */
+    public synchronized void start()
+    {
+        this.isRunning = true;
+
+        this.scheduleRefresh(this.getSecondsUntilRefresh());
+    }
+
+    /**
+     * Stops refreshing the credential's access token, such as when signing out.
+     */
+    public synchronized void stop()
+    {
+        this.isRunning = false;
+
+        if (this.scheduledRefresh != null)
+            this.scheduledRefresh.cancel(false);
+
+        this.scheduledRefresh = null;
+    }
+
+    private synchronized void scheduleRefresh(long delaySeconds)
+    {
+        // A refresh which was already running when this was stopped mustn't start it up again
+        if (!this.isRunning)
+            return;
+
+        if (this.scheduledRefresh != null)
+            this.scheduledRefresh.cancel(false);
+
+        this.scheduledRefresh = REFRESH_EXECUTOR.schedule(this::refresh, Math.max(0L, delaySeconds), TimeUnit.SECONDS);
+    }
+
+    private void refresh()
+    {
+        try
+        {
+            if (this.credential.refreshToken())
+            {
+                WorldbackMachineMod.LOGGER.debug("Refreshed the access token for '{}' ahead of its expiry", this.providerName);
+
+                Long expiresInSeconds = this.credential.getExpiresInSeconds();
+
+                // Without an expiry, there's nothing to refresh ahead of, so the token is left to the requests that find it expired
+                if (expiresInSeconds == null)
+                {
+                    WorldbackMachineMod.LOGGER.debug("The new access token for '{}' has no expiry. No longer refreshing it in the background",
+                            this.providerName);
+                    return;
+                }
+
+                this.scheduleRefresh(Math.max(RETRY_DELAY_SECONDS, expiresInSeconds - REFRESH_MARGIN_SECONDS));
+                return;
+            }
+
+            WorldbackMachineMod.LOGGER.warn("'{}' didn't issue a new access token. Retrying in {} seconds", this.providerName, RETRY_DELAY_SECONDS);
+        }
+        catch (IOException exception)
+        {
+            WorldbackMachineMod.LOGGER.warn("Failed to refresh the access token for '{}'. Retrying in {} seconds: {}", this.providerName,
+                    RETRY_DELAY_SECONDS, exception.getMessage());
+        }
+
+        // Once the token has expired, the next request refreshes it anyway, so there's no point retrying in the background any longer
+        Long expiresInSeconds = this.credential.getExpiresInSeconds();
+        if (expiresInSeconds != null && expiresInSeconds > 0)
+            this.scheduleRefresh(Math.min(RETRY_DELAY_SECONDS, expiresInSeconds));
+    }
+
+    private long getSecondsUntilRefresh()
+    {
+        Long expiresInSeconds = this.credential.getExpiresInSeconds();
+
+        // Tokens without a known expiry are refreshed right away, which tells us when the new one expires
+        return expiresInSeconds != null ? expiresInSeconds - REFRESH_MARGIN_SECONDS : 0L;
+    }
+}
@@ -0,0 +1,176 @@
+package com.ayydxn.worldbackmachine.cloud.http;
+
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.util.StreamingContent;
+import org.jspecify.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A single request sent by a {@link JdkHttpTransport}.
+ *
+ * @author Ayydxn
+ */
+class JdkHttpRequest extends LowLevelHttpRequest
+{
+    // Bodies up to 1 MiB, which covers every metadata request, are sent from memory. Anything larger is streamed through a pipe
+    private static final int MAX_BUFFERED_BODY_SIZE = 1024 * 1024;
+    private static final int BODY_PIPE_CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_BODY_PIPE_CHUNKS = 16;
+
+    // The JDK's client sets these itself and refuses requests which try to
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "expect", "host", "upgrade");
+
+    private final HttpClient httpClient;
+    private final Executor bodyWriterExecutor;
+    private final HttpRequest.Builder requestBuilder;
+    private final String method;
+    private int readTimeoutMillis = 0;
+
+    JdkHttpRequest(HttpClient httpClient, Executor bodyWriterExecutor, String method, String url)
+    {
+        this.httpClient = httpClient;
+        this.bodyWriterExecutor = bodyWriterExecutor;
+        this.requestBuilder = HttpRequest.newBuilder(URI.create(url));
+        this.method = method;
+    }
+
+    @Override
+    public void addHeader(String name, String value)
+    {
+        if (!RESTRICTED_HEADERS.contains(name.toLowerCase()))
+            this.requestBuilder.header(name, value);
+    }
+
+    @Override
+    public void setTimeout(int connectTimeout, int readTimeout)
+    {
+        // The connect timeout belongs to the shared client, so only the time to wait for a response can be set per request
+        this.readTimeoutMillis = Math.max(0, readTimeout);
+    }
+
+    @Override
+    public LowLevelHttpResponse execute() throws IOException
+    {
+        if (this.getContentType() != null)
+            this.requestBuilder.header("Content-Type", this.getContentType());
+
+        if (this.getContentEncoding() != null)
+            this.requestBuilder.header("Content-Encoding", this.getContentEncoding());
+
+        StreamingContent streamingContent = this.getStreamingContent();
+        long contentLength = this.getContentLength();
+
+        if (streamingContent == null)
+        {
+            if (this.readTimeoutMillis > 0)
+                this.requestBuilder.timeout(Duration.ofMillis(this.readTimeoutMillis));
+
+            this.requestBuilder.method(this.method, HttpRequest.BodyPublishers.noBody());
+
+            return this.send(null, null);
+        }
+
+        // A request with a body only times out once sending it stalls, so uploads over slow connections aren't cut off partway through
+        SendProgress sendProgress = new SendProgress();
+
+        if (contentLength >= 0 && contentLength <= MAX_BUFFERED_BODY_SIZE)
+        {
+            ByteArrayOutputStream bodyOutputStream = new ByteArrayOutputStream((int) contentLength);
+            streamingContent.writeTo(bodyOutputStream);
+
+            byte[] body = bodyOutputStream.toByteArray();
+            HttpRequest.BodyPublisher bodyPublisher = HttpRequest.BodyPublishers.ofInputStream(() -> sendProgress.track(new ByteArrayInputStream(body)));
+
+            this.requestBuilder.method(this.method, HttpRequest.BodyPublishers.fromPublisher(bodyPublisher, body.length));
+
+            return this.send(null, sendProgress);
+        }
+
+        BodyPipe bodyPipe = new BodyPipe(BODY_PIPE_CHUNK_SIZE, MAX_BODY_PIPE_CHUNKS);
+        HttpRequest.BodyPublisher bodyPublisher = HttpRequest.BodyPublishers.ofInputStream(() -> sendProgress.track(bodyPipe.source()));
+
+        this.requestBuilder.method(this.method, contentLength >= 0 ? HttpRequest.BodyPublishers.fromPublisher(bodyPublisher, contentLength) : bodyPublisher);
+
+        this.bodyWriterExecutor.execute(() -> bodyPipe.writeFrom(streamingContent));
+
+        return this.send(bodyPipe, sendProgress);
+    }
+
+    private LowLevelHttpResponse send(@Nullable BodyPipe bodyPipe, @Nullable SendProgress sendProgress) throws IOException
+    {
+        CompletableFuture<HttpResponse<InputStream>> responseFuture = this.httpClient.sendAsync(this.requestBuilder.build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+
+        try
+        {
+            return new JdkHttpResponse(this.awaitResponse(responseFuture, sendProgress));
+        }
+        catch (InterruptedException exception)
+        {
+            responseFuture.cancel(true);
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException(String.format("Interrupted while sending a %s request", this.method));
+        }
+        catch (ExecutionException exception)
+        {
+            if (exception.getCause() instanceof IOException ioException)
+                throw ioException;
+
+            throw new IOException(String.format("Failed to send a %s request", this.method), exception.getCause());
+        }
+        finally
+        {
+            // The body has either been sent in full or won't be sent at all by now
+            if (bodyPipe != null)
+                bodyPipe.abort();
+        }
+    }
+
+    private HttpResponse<InputStream> awaitResponse(CompletableFuture<HttpResponse<InputStream>> responseFuture, @Nullable SendProgress sendProgress)
+            throws InterruptedException, ExecutionException, IOException
+    {
+        if (sendProgress == null || this.readTimeoutMillis == 0)
+            return responseFuture.get();
+
+        long readTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(this.readTimeoutMillis);
+
+        while (true)
+        {
+            long remainingNanos = sendProgress.getRemainingNanos(readTimeoutNanos);
+            if (remainingNanos <= 0L)
+            {
+                responseFuture.cancel(true);
+
+                throw new HttpTimeoutException(String.format("The %s request stopped making progress", this.method));
+            }
+
+            try
+            {
+                return responseFuture.get(remainingNanos, TimeUnit.NANOSECONDS);
+            }
+            catch (TimeoutException exception)
+            {
+                // The body may have made progress in the meantime, which the next check picks up
+            }
+        }
+    }
+}
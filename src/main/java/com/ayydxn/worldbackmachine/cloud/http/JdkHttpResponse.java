@@ -0,0 +1,112 @@
+package com.ayydxn.worldbackmachine.cloud.http;
+
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.common.collect.Lists;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The response to a {@link JdkHttpRequest}, whose body is streamed as it's read.
+ *
+ * @author Ayydxn
+ */
+class JdkHttpResponse extends LowLevelHttpResponse
+{
+    private final HttpResponse<InputStream> response;
+    private final List<String> headerNames = Lists.newArrayList();
+    private final List<String> headerValues = Lists.newArrayList();
+
+    JdkHttpResponse(HttpResponse<InputStream> response)
+    {
+        this.response = response;
+
+        // The library reads headers by index, so flatten headers with several values into one entry per value
+        for (Map.Entry<String, List<String>> header : response.headers().map().entrySet())
+        {
+            // HTTP/2 reports the status as a pseudo-header, which the library doesn't expect to see
+            if (header.getKey().startsWith(":"))
+                continue;
+
+            for (String headerValue : header.getValue())
+            {
+                this.headerNames.add(header.getKey());
+                this.headerValues.add(headerValue);
+            }
+        }
+    }
+
+    @Override
+    public InputStream getContent()
+    {
+        return this.response.body();
+    }
+
+    @Override
+    public String getContentEncoding()
+    {
+        return this.response.headers().firstValue("Content-Encoding").orElse(null);
+    }
+
+    @Override
+    public long getContentLength()
+    {
+        return this.response.headers().firstValueAsLong("Content-Length").orElse(-1L);
+    }
+
+    @Override
+    public String getContentType()
+    {
+        return this.response.headers().firstValue("Content-Type").orElse(null);
+    }
+
+    @Override
+    public String getStatusLine()
+    {
+        String httpVersion = this.response.version() == HttpClient.Version.HTTP_2 ? "HTTP/2" : "HTTP/1.1";
+
+        return httpVersion + " " + this.response.statusCode();
+    }
+
+    @Override
+    public int getStatusCode()
+    {
+        return this.response.statusCode();
+    }
+
+    @Override
+    public String getReasonPhrase()
+    {
+        // Neither HTTP/2 nor the JDK's client expose a reason phrase
+        return null;
+    }
+
+    @Override
+    public int getHeaderCount()
+    {
+        return this.headerNames.size();
+    }
+
+    @Override
+    public String getHeaderName(int index)
+    {
+        return this.headerNames.get(index);
+    }
+
+    @Override
+    public String getHeaderValue(int index)
+    {
+        return this.headerValues.get(index);
+    }
+
+    @Override
+    public void disconnect() throws IOException
+    {
+        // Closing the body before it's fully read stops the download, and returns the connection to the pool if it's HTTP/1.1
+        this.response.body().close();
+    }
+}
@@ -0,0 +1,48 @@
+package com.ayydxn.worldbackmachine.cloud.http;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.LowLevelHttpRequest;
+
+import java.net.http.HttpClient;
+import java.util.concurrent.Executor;
+
+/**
+ * A transport for the Google HTTP client library which sends requests through the JDK's {@link HttpClient}.
+ * <p>
+ * The library's default transport is built on {@link java.net.HttpURLConnection}, which only reuses idle HTTP/1.1 connections
+ * and can't multiplex requests. This transport gets HTTP/2 and the client's connection pool instead, and can be shared by every
+ * provider since the client is safe to use from any number of threads.
+ *
+ * @author Ayydxn
+ * @see SharedHttpClient
+ */
+public class JdkHttpTransport extends HttpTransport
+{
+    private final HttpClient httpClient;
+    private final Executor bodyWriterExecutor;
+
+    /**
+     * Creates a transport which sends requests through the given client.
+     *
+     * @param httpClient         The client to send requests through
+     * @param bodyWriterExecutor The executor large request bodies are written on while they're being sent, which must not be bounded
+     */
+    public JdkHttpTransport(HttpClient httpClient, Executor bodyWriterExecutor)
+    {
+        this.httpClient = httpClient;
+        this.bodyWriterExecutor = bodyWriterExecutor;
+    }
+
+    @Override
+    public boolean supportsMethod(String method)
+    {
+        // Unlike HttpURLConnection, the JDK's client can send any method, including PATCH
+        return true;
+    }
+
+    @Override
+    protected LowLevelHttpRequest buildRequest(String method, String url)
+    {
+        return new JdkHttpRequest(this.httpClient, this.bodyWriterExecutor, method, url);
+    }
+}
@@ -0,0 +1,80 @@
+package com.ayydxn.worldbackmachine.cloud.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks how far the JDK's HTTP client has got sending a request body, so a request can time out once it stalls rather than
+ * once it has taken too long overall.
+ * <p>
+ * The client's own timeout covers the whole exchange up to the response headers, including sending the body, so a large upload
+ * over a slow connection would time out however steadily it was going. Socket-based transports only time out a read that doesn't
+ * get any data in time, which is what this approximates: the client reads the body as the connection takes it, so a request has
+ * stalled once the body hasn't been read from in time. The operating system buffers up to a few MiB of what the client has read,
+ * though, and only wakes it up to send more once much of that has drained, so what's buffered is also given long enough to be sent
+ * at a slow, but not stalled, rate.
+ *
+ * @author Ayydxn
+ */
+class SendProgress
+{
+    // Operating systems buffer at most a few MiB of a connection's outgoing data, which is assumed to drain at 64 KiB/s or faster
+    private static final long MAX_BUFFERED_BYTES = 4L * 1024L * 1024L;
+    private static final long MIN_SEND_BYTES_PER_SECOND = 64L * 1024L;
+
+    private volatile long lastProgressNanos = System.nanoTime();
+    private volatile long sentBytes = 0L;
+
+    /**
+     * Wraps the stream a request body is read from, so every read of it counts as progress.
+     *
+     * @param bodyInputStream The stream the client reads the body from
+     * @return The wrapped stream
+     */
+    InputStream track(InputStream bodyInputStream)
+    {
+        return new FilterInputStream(bodyInputStream)
+        {
+            @Override
+            public int read() throws IOException
+            {
+                int value = super.read();
+                SendProgress.this.recordRead(value == -1 ? 0 : 1);
+
+                return value;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException
+            {
+                int readLength = super.read(bytes, offset, length);
+                SendProgress.this.recordRead(readLength);
+
+                return readLength;
+            }
+        };
+    }
+
+    /**
+     * Gets how much longer the request can go without progress before it's considered to have stalled.
+     *
+     * @param readTimeoutNanos How long the request can go without any progress, in nanoseconds
+     * @return The time left until the request has stalled in nanoseconds, which is 0 or less if it already has
+     */
+    long getRemainingNanos(long readTimeoutNanos)
+    {
+        long allowedIdleNanos = readTimeoutNanos + TimeUnit.SECONDS.toNanos(1L) * Math.min(this.sentBytes, MAX_BUFFERED_BYTES) / MIN_SEND_BYTES_PER_SECOND;
+
+        return allowedIdleNanos - (System.nanoTime() - this.lastProgressNanos);
+    }
+
+    private void recordRead(int readLength)
+    {
+        if (readLength > 0)
+            this.sentBytes += readLength;
+
+        this.lastProgressNanos = System.nanoTime();
+    }
+}
@@ -0,0 +1,106 @@
+package com.ayydxn.worldbackmachine.cloud.http;
+
+import com.ayydxn.worldbackmachine.WorldbackMachineMod;
+import com.ayydxn.worldbackmachine.options.WorldbackMachineGameOptions;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the one HTTP client every cloud storage provider shares.
+ * <p>
+ * The client keeps its connections alive and pools them, and negotiates HTTP/2 with endpoints that support it,
+ * so many requests can be multiplexed over a single connection. Sharing it means the many small requests providers make,
+ * such as listing files and reading metadata, reuse connections which are already open instead of paying for a new
+ * TCP and TLS handshake every time.
+ * <p>
+ * Providers built on the Google HTTP client library should use {@link #getHttpTransport()}, and any others can use {@link #getHttpClient()} directly.
+ *
+ * @author Ayydxn
+ * @see JdkHttpTransport
+ */
+public class SharedHttpClient
+{
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(20L);
+
+    // The JDK's HTTP client reads these once, when the first client is created
+    private static final String RECEIVE_BUFFER_SIZE_PROPERTY = "jdk.httpclient.receiveBufferSize";
+    private static final String SEND_BUFFER_SIZE_PROPERTY = "jdk.httpclient.sendBufferSize";
+
+    private static ExecutorService httpExecutor;
+    private static HttpClient httpClient;
+    private static JdkHttpTransport httpTransport;
+
+    private SharedHttpClient()
+    {
+    }
+
+    /**
+     * Gets the shared HTTP client, creating it the first time this is called.
+     *
+     * @return The shared HTTP client
+     */
+    public static synchronized HttpClient getHttpClient()
+    {
+        if (httpClient == null)
+            httpClient = createHttpClient(WorldbackMachineMod.getInstance().getGameOptions());
+
+        return httpClient;
+    }
+
+    /**
+     * Gets a transport for the Google HTTP client library which sends its requests through the shared HTTP client.
+     *
+     * @return The shared transport
+     */
+    public static synchronized JdkHttpTransport getHttpTransport()
+    {
+        if (httpTransport == null)
+            httpTransport = new JdkHttpTransport(getHttpClient(), httpExecutor);
+
+        return httpTransport;
+    }
+
+    private static HttpClient createHttpClient(WorldbackMachineGameOptions gameOptions)
+    {
+        // Socket buffers can only be configured through system properties, which are left alone if the user already set them
+        if (gameOptions.httpSocketBufferKilobytes > 0)
+        {
+            String socketBufferBytes = String.valueOf(gameOptions.httpSocketBufferKilobytes * 1024);
+
+            if (System.getProperty(RECEIVE_BUFFER_SIZE_PROPERTY) == null)
+                System.setProperty(RECEIVE_BUFFER_SIZE_PROPERTY, socketBufferBytes);
+
+            if (System.getProperty(SEND_BUFFER_SIZE_PROPERTY) == null)
+                System.setProperty(SEND_BUFFER_SIZE_PROPERTY, socketBufferBytes);
+        }
+
+        AtomicInteger httpThreadCount = new AtomicInteger();
+
+        // Shared with the transport, which writes request bodies on it
+        httpExecutor = Executors.newCachedThreadPool(runnable ->
+        {
+            Thread httpThread = new Thread(runnable, "WorldbackMachine-Http-" + httpThreadCount.incrementAndGet());
+            httpThread.setDaemon(true);
+
+            return httpThread;
+        });
+
+        HttpClient.Version httpVersion = gameOptions.isHttp2Enabled ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1;
+
+        WorldbackMachineMod.LOGGER.info("Creating the shared HTTP client (Preferred version: {}, Socket buffers: {})", httpVersion,
+                gameOptions.httpSocketBufferKilobytes > 0 ? gameOptions.httpSocketBufferKilobytes + " KiB" : "System default");
+
+        // HTTP/2 is negotiated during the TLS handshake, so endpoints which don't support it fall back to HTTP/1.1 with keep-alive.
+        // Redirects are left to the callers, as the Google HTTP client library follows them itself
+        return HttpClient.newBuilder()
+                .version(httpVersion)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .executor(httpExecutor)
+                .build();
+    }
+}
@@ -0,0 +1,140 @@
+package com.ayydxn.worldbackmachine.command;
+
+import com.ayydxn.worldbackmachine.WorldbackMachineMod;
+import com.ayydxn.worldbackmachine.backup.history.BackupHistoryRecord;
+import com.ayydxn.worldbackmachine.backup.history.BackupHistoryStats;
+import com.ayydxn.worldbackmachine.cloud.CloudStorageManager;
+import com.google.common.collect.ImmutableMap;
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import net.minecraft.command.CommandRegistryAccess;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.command.CommandManager;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.text.Text;
+import org.jspecify.annotations.Nullable;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registers the mod's {@code /worldback-machine} command.
+ * <p>
+ * Every subcommand requires the highest permission level, as they act on the world files of the whole game rather than the current world.
+ *
+ * @author Ayydxn
+ */
+public class WorldbackMachineCommands
+{
+    private static final Map<String, Duration> STATS_WINDOWS = ImmutableMap.of("Last 24 hours", Duration.ofDays(1L), "Last 7 days", Duration.ofDays(7L),
+            "Last 30 days", Duration.ofDays(30L));
+    private static final Duration TREND_WINDOW = Duration.ofDays(7L);
+
+    /**
+     * Registers the command with a dispatcher. Meant to be used as a {@code CommandRegistrationCallback}.
+     *
+     * @param dispatcher              The dispatcher to register the command with
+     * @param registryAccess          Access to the game's registries
+     * @param registrationEnvironment The environment the command is being registered in
+     */
+    public static void register(CommandDispatcher<ServerCommandSource> dispatcher, CommandRegistryAccess registryAccess,
+                                CommandManager.RegistrationEnvironment registrationEnvironment)
+    {
+        dispatcher.register(CommandManager.literal("worldback-machine")
+                .requires(CommandManager.requirePermissionLevel(CommandManager.OWNERS_CHECK))
+                .then(CommandManager.literal("backup-all")
+                        .executes(context -> backupAllWorlds(context.getSource(), false))
+                        .then(CommandManager.literal("changed")
+                                .executes(context -> backupAllWorlds(context.getSource(), true))))
+                .then(CommandManager.literal("stats")
+                        .executes(context -> showBackupStats(context.getSource(), null))
+                        .then(CommandManager.argument("world", StringArgumentType.greedyString())
+                                .executes(context -> showBackupStats(context.getSource(), StringArgumentType.getString(context, "world"))))));
+    }
+
+    private static int backupAllWorlds(ServerCommandSource source, boolean onlyChangedWorlds)
+    {
+        MinecraftServer server = source.getServer();
+        CloudStorageManager cloudStorageManager = WorldbackMachineMod.getInstance().getCloudStorageManager();
+
+        source.sendFeedback(() -> Text.literal(onlyChangedWorlds ? "Backing up every changed world..." : "Backing up every world..."), true);
+
+        // Progress is reported from the bulk backup's workers, so hand it over to the server thread before replying
+        cloudStorageManager.backupAllWorlds(onlyChangedWorlds, bulkBackupProgress ->
+                {
+                    String progressMessage = "Backup progress: " + bulkBackupProgress.describe();
+
+                    server.execute(() -> source.sendFeedback(() -> Text.literal(progressMessage), false));
+                })
+                .whenComplete((bulkBackupProgress, throwable) ->
+                {
+                    if (throwable != null)
+                    {
+                        String errorMessage = "Failed to back up worlds: " + throwable.getMessage();
+
+                        server.execute(() -> source.sendError(Text.literal(errorMessage)));
+                    }
+                    else
+                    {
+                        String summaryMessage = "Finished backing up worlds: " + bulkBackupProgress.describe();
+
+                        server.execute(() -> source.sendFeedback(() -> Text.literal(summaryMessage), true));
+                    }
+                });
+
+        return 1;
+    }
+
+    /**
+     * Summarizes the {@link com.ayydxn.worldbackmachine.backup.history.BackupHistory backup history} of full backups over the last day, week and month,
+     * and how this week's backups compare to last week's, so backups slowing down as worlds grow can be spotted.
+     *
+     * @param source    The source of the command
+     * @param worldName The name of the world to summarize, or null to summarize every world
+     * @return The number of backups that were summarized
+     */
+    private static int showBackupStats(ServerCommandSource source, @Nullable String worldName)
+    {
+        List<BackupHistoryRecord> historyRecords = WorldbackMachineMod.getInstance().getCloudStorageManager().getBackupHistory().readRecords().stream()
+                .filter(historyRecord -> historyRecord.tier().isFullWorld() && (worldName == null || historyRecord.worldName().equals(worldName)))
+                .toList();
+
+        String subject = worldName != null ? String.format("world '%s'", worldName) : "every world";
+
+        if (historyRecords.isEmpty())
+        {
+            source.sendError(Text.literal(String.format("No backups of %s have been recorded yet", subject)));
+            return 0;
+        }
+
+        source.sendFeedback(() -> Text.literal(String.format("Full backups of %s (%d recorded since %s):", subject, historyRecords.size(),
+                DateTimeFormatter.ISO_LOCAL_DATE.withZone(ZoneId.systemDefault()).format(historyRecords.getFirst().startedAt()))), false);
+
+        for (Map.Entry<String, Duration> statsWindow : STATS_WINDOWS.entrySet())
+        {
+            BackupHistoryStats windowStats = BackupHistoryStats.summarize(historyRecords, statsWindow.getValue());
+
+            if (windowStats != null)
+                source.sendFeedback(() -> Text.literal(statsWindow.getKey() + ": " + windowStats.describe()), false);
+        }
+
+        Instant now = Instant.now();
+        BackupHistoryStats thisWeekStats = BackupHistoryStats.summarize(historyRecords, now.minus(TREND_WINDOW), now.plusMillis(1L));
+        BackupHistoryStats lastWeekStats = BackupHistoryStats.summarize(historyRecords, now.minus(TREND_WINDOW.multipliedBy(2L)), now.minus(TREND_WINDOW));
+
+        if (thisWeekStats != null && lastWeekStats != null)
+        {
+            source.sendFeedback(() -> Text.literal(String.format("Compared to the week before: median duration %s, world size %s, throughput %s, server thread %s",
+                    BackupHistoryStats.describeChange(lastWeekStats.p50TotalMillis(), thisWeekStats.p50TotalMillis()),
+                    BackupHistoryStats.describeChange(lastWeekStats.medianSourceBytes(), thisWeekStats.medianSourceBytes()),
+                    BackupHistoryStats.describeChange(lastWeekStats.medianThroughput(), thisWeekStats.medianThroughput()),
+                    BackupHistoryStats.describeChange(lastWeekStats.p50ServerThreadMillis(), thisWeekStats.p50ServerThreadMillis()))), false);
+        }
+
+        return historyRecords.size();
+    }
+}
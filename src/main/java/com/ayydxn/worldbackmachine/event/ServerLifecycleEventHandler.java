@@ -1,6 +1,8 @@
 package com.ayydxn.worldbackmachine.event;
 
 import com.ayydxn.worldbackmachine.WorldbackMachineMod;
+import com.ayydxn.worldbackmachine.backup.BackupTier;
+import com.ayydxn.worldbackmachine.backup.SnapshotMode;
 import com.ayydxn.worldbackmachine.cloud.AutomaticBackupScheduler;
 import com.ayydxn.worldbackmachine.cloud.CloudStorageManager;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
@@ -24,14 +26,23 @@ public class ServerLifecycleEventHandler implements ServerLifecycleEvents.Server
         WorldbackMachineMod.LOGGER.info("The server has started. Attempting to begin automatic worlds backups...");
 
         this.automaticBackupScheduler.startAutomaticBackups(server);
+
+        // Sign in with the cloud storage provider in the background now, so the first backup doesn't have to wait for it
+        this.cloudStorageManager.attemptAutoAuthentication();
+
+        // In case signing in fails, make sure backups left over from last time are still queued, so they're uploaded once it succeeds
+        this.cloudStorageManager.resumePendingBackups();
     }
 
     @Override
     public void onServerStopping(@NonNull MinecraftServer server)
     {
-        WorldbackMachineMod.LOGGER.info("Performing one last backup as the server stops...");
+        WorldbackMachineMod.LOGGER.info("Queueing one last backup as the server stops...");
 
         this.automaticBackupScheduler.stopAutomaticBackups();
-        this.cloudStorageManager.uploadWorld(server);
+
+        // Only wait for the world's snapshot to be taken. Its upload continues in the background, or resumes the next time the game starts
+        // The server saves everything as it stops anyway, so flushing first costs nothing and the last backup has all of the world's data
+        this.cloudStorageManager.queueWorldBackup(server, BackupTier.FULL, SnapshotMode.FLUSH).join();
     }
 }
@@ -0,0 +1,13 @@
+package com.ayydxn.worldbackmachine.mixin;
+
+import net.minecraft.server.world.ChunkHolder;
+import net.minecraft.server.world.ServerChunkLoadingManager;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Invoker;
+
+@Mixin(ServerChunkLoadingManager.class)
+public interface ServerChunkLoadingManagerAccessor
+{
+    @Invoker("entryIterator")
+    Iterable<ChunkHolder> invokeEntryIterator();
+}
@@ -1,7 +1,13 @@
 package com.ayydxn.worldbackmachine.options;
 
 import com.ayydxn.worldbackmachine.WorldbackMachineMod;
+import com.ayydxn.worldbackmachine.backup.SnapshotMode;
+import com.ayydxn.worldbackmachine.backup.archive.BackupArchiveFormat;
+import com.ayydxn.worldbackmachine.backup.policy.BackupCodec;
+import com.ayydxn.worldbackmachine.backup.policy.BackupPathRule;
 import com.ayydxn.worldbackmachine.cloud.CloudStorageManager;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.gson.FieldNamingPolicy;
 import dev.isxander.yacl3.config.v2.api.ConfigClassHandler;
 import dev.isxander.yacl3.config.v2.api.SerialEntry;
@@ -9,6 +15,8 @@ import dev.isxander.yacl3.config.v2.api.serializer.GsonConfigSerializerBuilder;
 import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.util.Identifier;
 
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -43,6 +51,60 @@ public class WorldbackMachineGameOptions
     @SerialEntry(comment = "How often backups are created and uploaded in seconds")
     public int backupIntervalSeconds = (int) TimeUnit.HOURS.toSeconds(1L);
 
+    @SerialEntry(comment = "How often the players' data, advancements and statistics and the world's level.dat are backed up on their own in seconds. Set to 0 to only back them up with the rest of the world.")
+    public int playerDataBackupIntervalSeconds = (int) TimeUnit.MINUTES.toSeconds(5L);
+
+    @SerialEntry(comment = "How many previous backups of each world are kept as snapshots when a new backup replaces them. The oldest snapshots are deleted first.")
+    public int maxBackupSnapshots = 10;
+
+    @SerialEntry(comment = "If the most recent backups are kept on the local disk, so restoring them doesn't require downloading them")
+    public boolean isLocalBackupCacheEnabled = true;
+
+    @SerialEntry(comment = "The maximum number of backups kept in the local cache. The least recently used backups are removed first.")
+    public int localBackupCacheMaxBackups = 3;
+
+    @SerialEntry(comment = "The maximum amount of disk space used by the local cache in gigabytes. The least recently used backups are removed first.")
+    public int localBackupCacheMaxGigabytes = 10;
+
+    @SerialEntry(comment = "If backups are considered complete once they're in the local cache, with the upload to the cloud storage provider continuing in the background")
+    public boolean areUploadsInBackground = false;
+
+    @SerialEntry(comment = "If the compressed bytes of each world's files are kept on the local disk, so files that haven't changed since the last backup are copied into the next one instead of being compressed again. Only applies to ZIP backups, and to files whose rules don't turn off dedup.")
+    public boolean isCompressedEntryCacheEnabled = true;
+
+    @SerialEntry(comment = "Rules deciding which files of every world are backed up and how, matched by glob patterns against paths relative to the world's directory. A file is excluded if any rule excluding it matches, and otherwise each setting comes from the first matching rule that sets it.")
+    public List<BackupPathRule> backupPathRules = Lists.newArrayList(
+            BackupPathRule.exclude("session.lock"),
+            BackupPathRule.exclude("**/*.tmp"),
+            BackupPathRule.exclude("**/DistantHorizons.sqlite*"),
+            BackupPathRule.compress("**/*.mca", BackupCodec.REGION, 3),
+            BackupPathRule.compress("**/*.mcc", BackupCodec.DEFLATE, 1),
+            BackupPathRule.verify("level.dat"));
+
+    @SerialEntry(comment = "Rules for specific worlds, keyed by the world's name. These are checked before the rules for every world.")
+    public Map<String, List<BackupPathRule>> worldBackupPathRules = Maps.newHashMap();
+
+    @SerialEntry(comment = "If backups are encrypted before they're uploaded, with a key kept in 'worldback-machine/keys'. Backups can't be restored without the key they were encrypted with, so keep a copy of it somewhere safe. Off by default, as losing this computer's disk would otherwise make every backup unrestorable.")
+    public boolean isEncryptionEnabled = false;
+
+    @SerialEntry(comment = "The format backups are written in. Either 'ZIP', which any archive tool can open, or 'BLOCK', which compresses and extracts large files on every core at once.")
+    public BackupArchiveFormat backupArchiveFormat = BackupArchiveFormat.ZIP;
+
+    @SerialEntry(comment = "If block backups pack small files, such as every player's data, stats and advancements, together into solid blocks compressed with zstd and a dictionary trained on the world's own files. Has no effect on ZIP backups.")
+    public boolean isSolidPackingEnabled = true;
+
+    @SerialEntry(comment = "How the world is brought up to date before it's backed up. Either 'FLUSH', which saves every chunk to disk first, or 'MEMORY', which captures loaded chunks with unsaved changes straight from memory so the server doesn't lag while saving. MEMORY only captures terrain, so entities, points of interest, level.dat and saved data are backed up as of the server's last save. The backup taken as the server stops always uses FLUSH.")
+    public SnapshotMode snapshotMode = SnapshotMode.FLUSH;
+
+    @SerialEntry(comment = "If full backups are split into separate shards for each dimension's regions, entities and POIs, the players' data and the level's data, which are uploaded and downloaded several at a time. Only shards that changed are uploaded again, and a single dimension can be restored on its own.")
+    public boolean isShardedBackupsEnabled = false;
+
+    @SerialEntry(comment = "If connections to cloud storage providers use HTTP/2 where the provider supports it, so many requests can share one connection. Takes effect after restarting the game.")
+    public boolean isHttp2Enabled = true;
+
+    @SerialEntry(comment = "The size of the send and receive buffers of connections to cloud storage providers in kilobytes. Set to 0 to use the system's default. Takes effect after restarting the game.")
+    public int httpSocketBufferKilobytes = 0;
+
     /**
      * Writes the current options out to a JSON file.
      */
@@ -1,18 +1,23 @@
 package com.ayydxn.worldbackmachine.options.gui;
 
 import com.ayydxn.worldbackmachine.WorldbackMachineMod;
+import com.ayydxn.worldbackmachine.backup.SnapshotMode;
+import com.ayydxn.worldbackmachine.backup.archive.BackupArchiveFormat;
 import com.ayydxn.worldbackmachine.cloud.CloudStorageManager;
-import com.ayydxn.worldbackmachine.cloud.CloudStorageProvider;
 import com.ayydxn.worldbackmachine.options.WorldbackMachineGameOptions;
 import com.google.common.collect.Lists;
 import dev.isxander.yacl3.api.*;
 import dev.isxander.yacl3.gui.controllers.BooleanController;
 import dev.isxander.yacl3.gui.controllers.cycling.CyclingListController;
 import dev.isxander.yacl3.gui.controllers.slider.IntegerSliderController;
+import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.gui.screen.Screen;
+import net.minecraft.client.toast.SystemToast;
 import net.minecraft.text.Text;
+import org.jspecify.annotations.Nullable;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
@@ -48,7 +53,8 @@ public class WorldbackMachineOptionsScreen
     {
         return ConfigCategory.createBuilder()
                 .name(Text.translatable("worldback_machine.options.category.worldback_machine"))
-                .groups(Lists.newArrayList(this.getGeneralOptionsGroup(), this.getBackupsOptionsGroup()))
+                .groups(Lists.newArrayList(this.getGeneralOptionsGroup(), this.getBackupsOptionsGroup(), this.getBulkBackupOptionsGroup(),
+                        this.getLocalCacheOptionsGroup()))
                 .build();
     }
 
@@ -56,8 +62,9 @@ public class WorldbackMachineOptionsScreen
     {
         CloudStorageManager cloudStorageManager = WorldbackMachineMod.getInstance().getCloudStorageManager();
 
-        String availableCloudStorageProviders = cloudStorageManager.getRegistry().getAllProviders().values().stream()
-                .map(cloudStorageProvider -> "- " + cloudStorageProvider.getProviderName())
+        // Only the providers' names are needed, so none of them have to be created just to show this screen
+        String availableCloudStorageProviders = cloudStorageManager.getAvailableProviders().stream()
+                .map(providerName -> "- " + cloudStorageManager.getRegistry().getProviderDisplayName(providerName))
                 .collect(Collectors.joining("\n"));
 
         Option<String> cloudStorageProviderOption = Option.<String>createBuilder()
@@ -71,11 +78,7 @@ public class WorldbackMachineOptionsScreen
                     cloudStorageManager.setActiveProvider(this.gameOptions.cloudStorageProvider);
                 })
                 .customController(option -> new CyclingListController<>(option, cloudStorageManager.getAvailableProviders(), value ->
-                {
-                    CloudStorageProvider providerInstance = Objects.requireNonNull(cloudStorageManager.getRegistry().getProviderInstance(value));
-
-                    return Text.literal(providerInstance.getProviderName());
-                }))
+                        Text.literal(Objects.requireNonNull(cloudStorageManager.getRegistry().getProviderDisplayName(value)))))
                 .build();
 
         return OptionGroup.createBuilder()
@@ -93,25 +96,22 @@ public class WorldbackMachineOptionsScreen
                 .name(Text.translatable("worldback_machine.options.backups.backup_interval_seconds"))
                 .description(OptionDescription.of(Text.translatable("worldback_machine.options.backups.backup_interval_seconds.description")))
                 .binding((int) TimeUnit.HOURS.toSeconds(1L), () -> this.gameOptions.backupIntervalSeconds, newValue -> this.gameOptions.backupIntervalSeconds = newValue)
-                .customController(option -> new IntegerSliderController(option, thirtyMinsInSeconds, oneDayInSeconds, 1, value ->
-                {
-                    long hours = value / 3600;
-                    long minutes = (value % 3600) / 60;
-                    long seconds = value % 60;
-
-                    StringBuilder formattedString = new StringBuilder();
-
-                    if (hours > 0)
-                        formattedString.append(hours).append(" Hours ");
-
-                    if (minutes > 0)
-                        formattedString.append(minutes).append(" Minutes ");
+                .customController(option -> new IntegerSliderController(option, thirtyMinsInSeconds, oneDayInSeconds, 1, this::formatDuration))
+                .build();
 
-                    if (seconds > 0)
-                        formattedString.append(seconds).append(" Seconds");
+        Option<Integer> playerDataBackupIntervalSeconds = Option.<Integer>createBuilder()
+                .name(Text.translatable("worldback_machine.options.backups.player_data_backup_interval_seconds"))
+                .description(OptionDescription.of(Text.translatable("worldback_machine.options.backups.player_data_backup_interval_seconds.description")))
+                .binding((int) TimeUnit.MINUTES.toSeconds(5L), () -> this.gameOptions.playerDataBackupIntervalSeconds, newValue -> this.gameOptions.playerDataBackupIntervalSeconds = newValue)
+                .customController(option -> new IntegerSliderController(option, 0, thirtyMinsInSeconds, 60, value -> value == 0 ?
+                        Text.translatable("worldback_machine.options.backups.player_data_backup_interval_seconds.disabled") : this.formatDuration(value)))
+                .build();
 
-                    return Text.of(formattedString.toString().trim());
-                }))
+        Option<Integer> maxBackupSnapshotsOption = Option.<Integer>createBuilder()
+                .name(Text.translatable("worldback_machine.options.backups.max_backup_snapshots"))
+                .description(OptionDescription.of(Text.translatable("worldback_machine.options.backups.max_backup_snapshots.description")))
+                .binding(10, () -> this.gameOptions.maxBackupSnapshots, newValue -> this.gameOptions.maxBackupSnapshots = newValue)
+                .customController(option -> new IntegerSliderController(option, 0, 50, 1))
                 .build();
 
         Option<Boolean> areAutoBackupsEnabledOption = Option.<Boolean>createBuilder()
@@ -119,12 +119,175 @@ public class WorldbackMachineOptionsScreen
                 .description(OptionDescription.of(Text.translatable("worldback_machine.options.backups.are_auto_backups_enabled.description")))
                 .binding(true, () -> this.gameOptions.areAutoBackupsEnabled, newValue -> this.gameOptions.areAutoBackupsEnabled = newValue)
                 .customController(BooleanController::new)
-                .addListener((option, event) -> backupIntervalSeconds.setAvailable(option.pendingValue()))
+                .addListener((option, event) ->
+                {
+                    backupIntervalSeconds.setAvailable(option.pendingValue());
+                    playerDataBackupIntervalSeconds.setAvailable(option.pendingValue());
+                })
+                .build();
+
+        Option<Boolean> isEncryptionEnabledOption = Option.<Boolean>createBuilder()
+                .name(Text.translatable("worldback_machine.options.backups.is_encryption_enabled"))
+                .description(OptionDescription.of(Text.translatable("worldback_machine.options.backups.is_encryption_enabled.description")))
+                .binding(false, () -> this.gameOptions.isEncryptionEnabled, newValue -> this.gameOptions.isEncryptionEnabled = newValue)
+                .customController(BooleanController::new)
+                .build();
+
+        Option<BackupArchiveFormat> backupArchiveFormatOption = Option.<BackupArchiveFormat>createBuilder()
+                .name(Text.translatable("worldback_machine.options.backups.backup_archive_format"))
+                .description(OptionDescription.of(Text.translatable("worldback_machine.options.backups.backup_archive_format.description")))
+                .binding(BackupArchiveFormat.ZIP, () -> this.gameOptions.backupArchiveFormat, newValue -> this.gameOptions.backupArchiveFormat = newValue)
+                .customController(option -> new CyclingListController<>(option, List.of(BackupArchiveFormat.values()), value ->
+                        Text.translatable("worldback_machine.options.backups.backup_archive_format." + value.getPropertyValue())))
+                .build();
+
+        Option<Boolean> isSolidPackingEnabledOption = Option.<Boolean>createBuilder()
+                .name(Text.translatable("worldback_machine.options.backups.is_solid_packing_enabled"))
+                .description(OptionDescription.of(Text.translatable("worldback_machine.options.backups.is_solid_packing_enabled.description")))
+                .binding(true, () -> this.gameOptions.isSolidPackingEnabled, newValue -> this.gameOptions.isSolidPackingEnabled = newValue)
+                .customController(BooleanController::new)
+                .build();
+
+        Option<SnapshotMode> snapshotModeOption = Option.<SnapshotMode>createBuilder()
+                .name(Text.translatable("worldback_machine.options.backups.snapshot_mode"))
+                .description(OptionDescription.of(Text.translatable("worldback_machine.options.backups.snapshot_mode.description")))
+                .binding(SnapshotMode.FLUSH, () -> this.gameOptions.snapshotMode, newValue -> this.gameOptions.snapshotMode = newValue)
+                .customController(option -> new CyclingListController<>(option, List.of(SnapshotMode.values()), value ->
+                        Text.translatable("worldback_machine.options.backups.snapshot_mode." + value.name().toLowerCase())))
+                .build();
+
+        Option<Boolean> isShardedBackupsEnabledOption = Option.<Boolean>createBuilder()
+                .name(Text.translatable("worldback_machine.options.backups.is_sharded_backups_enabled"))
+                .description(OptionDescription.of(Text.translatable("worldback_machine.options.backups.is_sharded_backups_enabled.description")))
+                .binding(false, () -> this.gameOptions.isShardedBackupsEnabled, newValue -> this.gameOptions.isShardedBackupsEnabled = newValue)
+                .customController(BooleanController::new)
                 .build();
 
         return OptionGroup.createBuilder()
                 .name(Text.translatable("worldback_machine.options.group.backups"))
-                .options(Lists.newArrayList(areAutoBackupsEnabledOption, backupIntervalSeconds))
+                .options(Lists.newArrayList(areAutoBackupsEnabledOption, backupIntervalSeconds, playerDataBackupIntervalSeconds, maxBackupSnapshotsOption,
+                        isEncryptionEnabledOption, backupArchiveFormatOption, isSolidPackingEnabledOption, snapshotModeOption, isShardedBackupsEnabledOption))
+                .build();
+    }
+
+    private Text formatDuration(int totalSeconds)
+    {
+        long hours = totalSeconds / 3600;
+        long minutes = (totalSeconds % 3600) / 60;
+        long seconds = totalSeconds % 60;
+
+        StringBuilder formattedString = new StringBuilder();
+
+        if (hours > 0)
+            formattedString.append(hours).append(" Hours ");
+
+        if (minutes > 0)
+            formattedString.append(minutes).append(" Minutes ");
+
+        if (seconds > 0)
+            formattedString.append(seconds).append(" Seconds");
+
+        return Text.of(formattedString.toString().trim());
+    }
+
+    private OptionGroup getBulkBackupOptionsGroup()
+    {
+        ButtonOption backupAllWorldsOption = ButtonOption.createBuilder()
+                .name(Text.translatable("worldback_machine.options.bulk_backup.backup_all_worlds"))
+                .description(OptionDescription.of(Text.translatable("worldback_machine.options.bulk_backup.backup_all_worlds.description")))
+                .action((screen, option) -> this.startBulkBackup(false))
+                .build();
+
+        ButtonOption backupChangedWorldsOption = ButtonOption.createBuilder()
+                .name(Text.translatable("worldback_machine.options.bulk_backup.backup_changed_worlds"))
+                .description(OptionDescription.of(Text.translatable("worldback_machine.options.bulk_backup.backup_changed_worlds.description")))
+                .action((screen, option) -> this.startBulkBackup(true))
+                .build();
+
+        return OptionGroup.createBuilder()
+                .name(Text.translatable("worldback_machine.options.group.bulk_backup"))
+                .options(Lists.newArrayList(backupAllWorldsOption, backupChangedWorldsOption))
+                .build();
+    }
+
+    private void startBulkBackup(boolean onlyChangedWorlds)
+    {
+        MinecraftClient client = MinecraftClient.getInstance();
+
+        this.showToast(Text.translatable("worldback_machine.toast.bulk_backup.started"), null);
+
+        // Every world's progress is already logged, so only the outcome is worth a toast
+        WorldbackMachineMod.getInstance().getCloudStorageManager().backupAllWorlds(onlyChangedWorlds, bulkBackupProgress -> {})
+                .whenComplete((bulkBackupProgress, throwable) -> client.execute(() ->
+                {
+                    if (throwable != null)
+                    {
+                        this.showToast(Text.translatable("worldback_machine.toast.bulk_backup.failed"), Text.literal(throwable.getMessage()));
+                    }
+                    else
+                    {
+                        this.showToast(Text.translatable("worldback_machine.toast.bulk_backup.finished"), Text.literal(bulkBackupProgress.describe()));
+                    }
+                }));
+    }
+
+    private void showToast(Text title, @Nullable Text description)
+    {
+        MinecraftClient client = MinecraftClient.getInstance();
+
+        SystemToast.add(client.getToastManager(), SystemToast.Type.PERIODIC_NOTIFICATION, title, description);
+    }
+
+    private OptionGroup getLocalCacheOptionsGroup()
+    {
+        Option<Integer> localBackupCacheMaxBackupsOption = Option.<Integer>createBuilder()
+                .name(Text.translatable("worldback_machine.options.local_cache.max_backups"))
+                .description(OptionDescription.of(Text.translatable("worldback_machine.options.local_cache.max_backups.description")))
+                .binding(3, () -> this.gameOptions.localBackupCacheMaxBackups, newValue -> this.gameOptions.localBackupCacheMaxBackups = newValue)
+                .customController(option -> new IntegerSliderController(option, 1, 20, 1))
+                .available(this.gameOptions.isLocalBackupCacheEnabled)
+                .build();
+
+        Option<Integer> localBackupCacheMaxGigabytesOption = Option.<Integer>createBuilder()
+                .name(Text.translatable("worldback_machine.options.local_cache.max_gigabytes"))
+                .description(OptionDescription.of(Text.translatable("worldback_machine.options.local_cache.max_gigabytes.description")))
+                .binding(10, () -> this.gameOptions.localBackupCacheMaxGigabytes, newValue -> this.gameOptions.localBackupCacheMaxGigabytes = newValue)
+                .customController(option -> new IntegerSliderController(option, 1, 100, 1, value -> Text.of(value + " GB")))
+                .available(this.gameOptions.isLocalBackupCacheEnabled)
+                .build();
+
+        Option<Boolean> areUploadsInBackgroundOption = Option.<Boolean>createBuilder()
+                .name(Text.translatable("worldback_machine.options.local_cache.are_uploads_in_background"))
+                .description(OptionDescription.of(Text.translatable("worldback_machine.options.local_cache.are_uploads_in_background.description")))
+                .binding(false, () -> this.gameOptions.areUploadsInBackground, newValue -> this.gameOptions.areUploadsInBackground = newValue)
+                .customController(BooleanController::new)
+                .available(this.gameOptions.isLocalBackupCacheEnabled)
+                .build();
+
+        Option<Boolean> isCompressedEntryCacheEnabledOption = Option.<Boolean>createBuilder()
+                .name(Text.translatable("worldback_machine.options.local_cache.is_compressed_entry_cache_enabled"))
+                .description(OptionDescription.of(Text.translatable("worldback_machine.options.local_cache.is_compressed_entry_cache_enabled.description")))
+                .binding(true, () -> this.gameOptions.isCompressedEntryCacheEnabled, newValue -> this.gameOptions.isCompressedEntryCacheEnabled = newValue)
+                .customController(BooleanController::new)
+                .build();
+
+        Option<Boolean> isLocalBackupCacheEnabledOption = Option.<Boolean>createBuilder()
+                .name(Text.translatable("worldback_machine.options.local_cache.is_local_backup_cache_enabled"))
+                .description(OptionDescription.of(Text.translatable("worldback_machine.options.local_cache.is_local_backup_cache_enabled.description")))
+                .binding(true, () -> this.gameOptions.isLocalBackupCacheEnabled, newValue -> this.gameOptions.isLocalBackupCacheEnabled = newValue)
+                .customController(BooleanController::new)
+                .addListener((option, event) ->
+                {
+                    localBackupCacheMaxBackupsOption.setAvailable(option.pendingValue());
+                    localBackupCacheMaxGigabytesOption.setAvailable(option.pendingValue());
+                    areUploadsInBackgroundOption.setAvailable(option.pendingValue());
+                })
+                .build();
+
+        return OptionGroup.createBuilder()
+                .name(Text.translatable("worldback_machine.options.group.local_cache"))
+                .options(Lists.newArrayList(isLocalBackupCacheEnabledOption, localBackupCacheMaxBackupsOption, localBackupCacheMaxGigabytesOption,
+                        areUploadsInBackgroundOption, isCompressedEntryCacheEnabledOption))
                 .build();
     }
 }
@@ -11,6 +11,46 @@ public class WorldbackMachineConstants
      */
     public static final Path TOKENS_DIRECTORY = FabricLoader.getInstance().getGameDir().resolve("worldback-machine/auth-tokens");
 
+    /**
+     * A directory which holds the keys backups are encrypted with. They never leave the player's machine, so backups can't be restored without them.
+     */
+    public static final Path KEYS_DIRECTORY = FabricLoader.getInstance().getGameDir().resolve("worldback-machine/keys");
+
+    /**
+     * A directory which holds local copies of recent backups, so they can be restored without downloading them.
+     */
+    public static final Path CACHE_DIRECTORY = FabricLoader.getInstance().getGameDir().resolve("worldback-machine/cache");
+
+    /**
+     * A directory which holds the compressed bytes of the files in each world's last backup, so files that haven't changed aren't compressed again.
+     */
+    public static final Path ENTRY_CACHE_DIRECTORY = FabricLoader.getInstance().getGameDir().resolve("worldback-machine/entry-cache");
+
+    /**
+     * A directory which holds snapshots of worlds while their backups are compressed and uploaded.
+     */
+    public static final Path STAGING_DIRECTORY = FabricLoader.getInstance().getGameDir().resolve("worldback-machine/staging");
+
+    /**
+     * A directory which holds the journal of backups waiting to be uploaded, so they survive the game exiting before they're done.
+     */
+    public static final Path QUEUE_DIRECTORY = FabricLoader.getInstance().getGameDir().resolve("worldback-machine/queue");
+
+    /**
+     * A file which records the state each local world was in when it was last backed up by a bulk backup.
+     */
+    public static final Path BULK_BACKUP_INDEX_FILE = FabricLoader.getInstance().getGameDir().resolve("worldback-machine/bulk-backup-index.json");
+
+    /**
+     * A file which records how recent backups went, such as how long they took and how large they were.
+     */
+    public static final Path BACKUP_HISTORY_FILE = FabricLoader.getInstance().getGameDir().resolve("worldback-machine/backup-history.bin");
+
+    /**
+     * The directory Minecraft saves singleplayer worlds in.
+     */
+    public static final Path SAVES_DIRECTORY = FabricLoader.getInstance().getGameDir().resolve("saves");
+
     /**
      * The name of the folder where the mod will store all the world saves on cloud storage providers.
      */